@@ -0,0 +1,31 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.api.domain;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to Elasticsearch while it is known to be unavailable,
+ * so requests fail straight away rather than waiting on a connection or socket timeout.
+ */
+public class ElasticsearchUnavailableException extends IOException {
+    public ElasticsearchUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.api.domain;
+
+/**
+ * Controls how the Elasticsearch index for the items of a {@link Structure} is laid out
+ */
+public enum IndexMode {
+    /**
+     * A single index holds all the items
+     */
+    STANDARD,
+    /**
+     * For append heavy data such as events or telemetry.
+     * Items are written to the newest of a series of indices that is rolled over by size, age or document count,
+     * and reads span all of them. Whole indices are dropped once they are older than the retention period.
+     * New items are written to the newest index, while updates and deletes of existing items are sent to the index the item is in.
+     */
+    TIME_SERIES,
+    /**
+     * For Structures with few items, which would otherwise each need their own shards.
+     * The items of all shared Structures in a namespace are held in one index, and each Structure only sees its own.
+     * Field names used by more than one of these Structures must have the same type.
+     * A Structure can be moved to its own index once it grows, see {@link org.kinotic.structures.api.services.StructureService#graduate(String)}
+     */
+    SHARED
+}
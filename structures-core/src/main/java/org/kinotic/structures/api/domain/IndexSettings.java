@@ -0,0 +1,138 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.api.domain;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+
+/**
+ * Elasticsearch settings used when the index for a {@link Structure} is created.
+ * Any value left null is taken from the configured defaults, these cannot be changed once the {@link Structure} is published.
+ */
+public class IndexSettings implements Serializable {
+
+    private Integer numberOfShards = null;
+    private Integer numberOfReplicas = null;
+    private String refreshInterval = null;// such as "1s", "-1" disables refresh
+    private String codec = null;// "default" or "best_compression"
+    private LinkedHashMap<String, String> sort = null;// field name to "asc" or "desc", in sort priority order
+    private Long expectedDocumentCount = null;// used to size the index when numberOfShards is not set
+    private Long averageDocumentSize = null;// bytes, used with expectedDocumentCount
+    // the following only apply to IndexMode.TIME_SERIES
+    private String rolloverMaxSize = null;// such as "50gb", primary storage of the newest index that triggers a rollover
+    private String rolloverMaxAge = null;// such as "1d"
+    private Long rolloverMaxDocs = null;
+    private String retention = null;// such as "30d", how long after rollover an index is deleted, null keeps indices forever
+
+    public IndexSettings() {
+    }
+
+    public IndexSettings(Integer numberOfShards, Integer numberOfReplicas, String refreshInterval) {
+        this.numberOfShards = numberOfShards;
+        this.numberOfReplicas = numberOfReplicas;
+        this.refreshInterval = refreshInterval;
+    }
+
+    public Integer getNumberOfShards() {
+        return numberOfShards;
+    }
+
+    public void setNumberOfShards(Integer numberOfShards) {
+        this.numberOfShards = numberOfShards;
+    }
+
+    public Integer getNumberOfReplicas() {
+        return numberOfReplicas;
+    }
+
+    public void setNumberOfReplicas(Integer numberOfReplicas) {
+        this.numberOfReplicas = numberOfReplicas;
+    }
+
+    public String getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setRefreshInterval(String refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public LinkedHashMap<String, String> getSort() {
+        return sort;
+    }
+
+    public void setSort(LinkedHashMap<String, String> sort) {
+        this.sort = sort;
+    }
+
+    public Long getExpectedDocumentCount() {
+        return expectedDocumentCount;
+    }
+
+    public void setExpectedDocumentCount(Long expectedDocumentCount) {
+        this.expectedDocumentCount = expectedDocumentCount;
+    }
+
+    public Long getAverageDocumentSize() {
+        return averageDocumentSize;
+    }
+
+    public void setAverageDocumentSize(Long averageDocumentSize) {
+        this.averageDocumentSize = averageDocumentSize;
+    }
+
+    public String getRolloverMaxSize() {
+        return rolloverMaxSize;
+    }
+
+    public void setRolloverMaxSize(String rolloverMaxSize) {
+        this.rolloverMaxSize = rolloverMaxSize;
+    }
+
+    public String getRolloverMaxAge() {
+        return rolloverMaxAge;
+    }
+
+    public void setRolloverMaxAge(String rolloverMaxAge) {
+        this.rolloverMaxAge = rolloverMaxAge;
+    }
+
+    public Long getRolloverMaxDocs() {
+        return rolloverMaxDocs;
+    }
+
+    public void setRolloverMaxDocs(Long rolloverMaxDocs) {
+        this.rolloverMaxDocs = rolloverMaxDocs;
+    }
+
+    public String getRetention() {
+        return retention;
+    }
+
+    public void setRetention(String retention) {
+        this.retention = retention;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.api.domain;
+
+/**
+ * Whether the index holding the items of a {@link Structure} can currently be used.
+ * Indices that have not been accessed for a while can be made read only or closed to free resources,
+ * they are reopened automatically the next time the {@link Structure} is used.
+ */
+public enum ItemIndexState {
+    /**
+     * Items can be read and written
+     */
+    OPEN,
+    /**
+     * Writes are blocked and the index has been merged down to a single segment, items can still be read
+     */
+    READ_ONLY,
+    /**
+     * The index holds no resources on the cluster and must be opened before items can be read or written
+     */
+    CLOSED
+}
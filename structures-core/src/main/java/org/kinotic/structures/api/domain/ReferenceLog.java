@@ -21,14 +21,12 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
-import org.springframework.data.elasticsearch.annotations.Setting;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.UUID;
 
-@Document(indexName = "referencelog")
-@Setting(shards = 5, replicas = 2)
+@Document(indexName = "referencelog", createIndex = false)// created by DefaultStructureService using the configured system index settings
 public class ReferenceLog implements Serializable {
 
     @Id
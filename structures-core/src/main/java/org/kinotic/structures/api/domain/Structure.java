@@ -22,14 +22,12 @@ import org.springframework.data.annotation.Version;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
-import org.springframework.data.elasticsearch.annotations.Setting;
 
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 
-@Document(indexName = "structure")
-@Setting(shards = 5, replicas = 2)
+@Document(indexName = "structure", createIndex = false)// created by DefaultStructureService using the configured system index settings
 public class Structure implements Serializable {
 
     @Id
@@ -49,6 +47,32 @@ public class Structure implements Serializable {
     private String namespace = null;
     @Field(type = FieldType.Keyword)
     private String itemIndex = null;
+    @Field(type = FieldType.Long)
+    private long requestTimeout = 0;// milliseconds, 0 means use structures.default-request-timeout
+    @Field(type = FieldType.Integer)
+    private int terminateAfter = 0;// max docs to collect per shard when searching, 0 means no limit
+    @Field(type = FieldType.Keyword)
+    private IndexMode indexMode = IndexMode.STANDARD;
+    @Field(type = FieldType.Flattened)
+    private IndexSettings indexSettings = null;// null means use structures.default-index-settings
+    @Field(type = FieldType.Keyword)
+    private String routingField = null;// items with the same value for this field are kept on the same shard, null routes by id
+    @Field(type = FieldType.Keyword)
+    private String deletedItemRetention = null;// how long deleted items are kept, such as 30d, null means use structures.default-deleted-item-retention
+    @Field(type = FieldType.Boolean)
+    private boolean archiveDeletedItems = false;// copy deleted items to <itemIndex>_archive before removing them
+    @Field(type = FieldType.Boolean)
+    private boolean cacheItems = false;// keep recently read items in the item cache, for small sets of items that are read far more than written, each node has its own cache so reads can be stale until entries expire
+    @Field(type = FieldType.Keyword)
+    private String pendingItemIndex = null;// set while items are being migrated to a new index
+    @Field(type = FieldType.Keyword)
+    private String pendingItemIndexTask = null;// the Elasticsearch task copying items to the pending index, so the migration can be resumed after a restart
+    @Field(type = FieldType.Long)
+    private long pendingItemIndexStartedTime = 0;// items changed since this time are copied again once the copy task has completed
+    @Field(type = FieldType.Flattened)
+    private LinkedHashMap<String, Trait> pendingTraits = null;// the traits that will be used once the migration completes
+    @Field(type = FieldType.Keyword)
+    private ItemIndexState itemIndexState = ItemIndexState.OPEN;// system managed, idle indices are closed or made read only
 
     @Field(type = FieldType.Flattened)
     private LinkedHashMap<String, Trait> traits = new LinkedHashMap<>();
@@ -124,6 +148,110 @@ public class Structure implements Serializable {
         this.itemIndex = itemIndex;
     }
 
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int getTerminateAfter() {
+        return terminateAfter;
+    }
+
+    public void setTerminateAfter(int terminateAfter) {
+        this.terminateAfter = terminateAfter;
+    }
+
+    public IndexMode getIndexMode() {
+        return indexMode;
+    }
+
+    public void setIndexMode(IndexMode indexMode) {
+        this.indexMode = indexMode;
+    }
+
+    public IndexSettings getIndexSettings() {
+        return indexSettings;
+    }
+
+    public void setIndexSettings(IndexSettings indexSettings) {
+        this.indexSettings = indexSettings;
+    }
+
+    public String getRoutingField() {
+        return routingField;
+    }
+
+    public void setRoutingField(String routingField) {
+        this.routingField = routingField;
+    }
+
+    public String getDeletedItemRetention() {
+        return deletedItemRetention;
+    }
+
+    public void setDeletedItemRetention(String deletedItemRetention) {
+        this.deletedItemRetention = deletedItemRetention;
+    }
+
+    public boolean isArchiveDeletedItems() {
+        return archiveDeletedItems;
+    }
+
+    public void setArchiveDeletedItems(boolean archiveDeletedItems) {
+        this.archiveDeletedItems = archiveDeletedItems;
+    }
+
+    public boolean isCacheItems() {
+        return cacheItems;
+    }
+
+    public void setCacheItems(boolean cacheItems) {
+        this.cacheItems = cacheItems;
+    }
+
+    public String getPendingItemIndex() {
+        return pendingItemIndex;
+    }
+
+    public void setPendingItemIndex(String pendingItemIndex) {
+        this.pendingItemIndex = pendingItemIndex;
+    }
+
+    public String getPendingItemIndexTask() {
+        return pendingItemIndexTask;
+    }
+
+    public void setPendingItemIndexTask(String pendingItemIndexTask) {
+        this.pendingItemIndexTask = pendingItemIndexTask;
+    }
+
+    public long getPendingItemIndexStartedTime() {
+        return pendingItemIndexStartedTime;
+    }
+
+    public void setPendingItemIndexStartedTime(long pendingItemIndexStartedTime) {
+        this.pendingItemIndexStartedTime = pendingItemIndexStartedTime;
+    }
+
+    public LinkedHashMap<String, Trait> getPendingTraits() {
+        return pendingTraits;
+    }
+
+    public void setPendingTraits(LinkedHashMap<String, Trait> pendingTraits) {
+        this.pendingTraits = pendingTraits;
+    }
+
+    public ItemIndexState getItemIndexState() {
+        return itemIndexState;
+    }
+
+    public void setItemIndexState(ItemIndexState itemIndexState) {
+        this.itemIndexState = itemIndexState;
+    }
+
     public LinkedHashMap<String, Trait> getTraits() {
         return traits;
     }
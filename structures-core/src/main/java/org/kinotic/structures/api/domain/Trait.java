@@ -34,6 +34,13 @@ public class Trait implements Serializable {
     private boolean systemManaged = false; // field that means our default traits for all structures
     private boolean collection =  false; // is field an array or collection
 
+    // how the field is used by the Structure it belongs to, so the mapping only includes the data structures needed
+    private boolean searchable = true; // can be queried on, false keeps the field out of the inverted index
+    private boolean sortable = true; // can be sorted or aggregated on, false removes doc values
+    private boolean aggregated = false; // frequently aggregated on, keyword fields build their global ordinals at refresh instead of on first use
+    private boolean scored = true; // relevance scoring considers the field length, false removes norms from text fields
+    private boolean storedOnly = false; // only ever returned with the item, never searched, sorted or aggregated on
+
     public String getId() {
         return id;
     }
@@ -121,4 +128,44 @@ public class Trait implements Serializable {
     public void setCollection(boolean collection) {
         this.collection = collection;
     }
+
+    public boolean isSearchable() {
+        return searchable;
+    }
+
+    public void setSearchable(boolean searchable) {
+        this.searchable = searchable;
+    }
+
+    public boolean isSortable() {
+        return sortable;
+    }
+
+    public void setSortable(boolean sortable) {
+        this.sortable = sortable;
+    }
+
+    public boolean isAggregated() {
+        return aggregated;
+    }
+
+    public void setAggregated(boolean aggregated) {
+        this.aggregated = aggregated;
+    }
+
+    public boolean isScored() {
+        return scored;
+    }
+
+    public void setScored(boolean scored) {
+        this.scored = scored;
+    }
+
+    public boolean isStoredOnly() {
+        return storedOnly;
+    }
+
+    public void setStoredOnly(boolean storedOnly) {
+        this.storedOnly = storedOnly;
+    }
 }
@@ -21,6 +21,7 @@ import org.kinotic.continuum.api.annotations.Publish;
 import org.kinotic.structures.api.domain.*;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 
 @Publish
 public interface StructureService {
@@ -56,4 +57,31 @@ public interface StructureService {
 
     String getElasticSearchBaseMapping(String structureId) throws IOException;
 
+    /**
+     * Changes the traits of a published {@link Structure}, including ones that cannot be changed in place such as the type of existing fields.
+     * A new index is created with the new mapping, and the items are copied to it in the background while reads and writes continue against the current index.
+     * While the items are copied, writes are also made to the new index, and once all items are copied the ones changed during the copy are copied again,
+     * then the new index atomically replaces the current one and the new traits take effect. Writes are never rejected because of a migration.
+     * If the node running the migration stops, the migration is resumed by the next node to start.
+     * Fields that are not in the new traits are removed from the items as they are copied.
+     * @param structureId of the published {@link Structure} to migrate
+     * @param traits all the traits the {@link Structure} should have once migrated
+     * @return the migration progress as of when it started
+     */
+    ItemIndexMigration migrate(String structureId, LinkedHashMap<String, Trait> traits) throws IOException;
+
+    /**
+     * Moves the items of a {@link IndexMode#SHARED} {@link Structure} to an index of its own, once it has grown too large to share one.
+     * This is a {@link #migrate(String, LinkedHashMap)} that keeps the current traits.
+     * @param structureId of the published {@link Structure} to move
+     * @return the migration progress as of when it started
+     */
+    ItemIndexMigration graduate(String structureId) throws IOException;
+
+    /**
+     * @param structureId to get the migration for
+     * @return the progress of the last migration started or resumed on this node for the {@link Structure}, or null if there is none
+     */
+    ItemIndexMigration getMigration(String structureId);
+
 }
@@ -0,0 +1,132 @@
+package org.kinotic.structures.internal.api.services;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.xcontent.XContentType;
+import org.kinotic.structures.internal.api.services.storage.ItemStorageEngine;
+import org.kinotic.structures.internal.api.services.util.IndexSettingsHelper;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Leases let one node at a time do work that must not run concurrently across the cluster, such as completing a migration or compacting items.
+ * A lease is a document in the lease index holding the node that owns it and when it expires, it is changed with optimistic concurrency control
+ * so only one node can take it. A node that stops renewing a lease, because it has stopped or lost contact with Elasticsearch, loses it once it expires.
+ * <p>
+ * Expiry is compared with the clock of the node taking the lease, so leases should be much longer than the clock differences between nodes.
+ * <p>
+ * When the {@link ItemStorageEngine} keeps the items on the node itself the node is not part of a cluster, so it always holds every lease.
+ */
+@Component
+public class ClusterLeases {
+
+    public static final String LEASE_INDEX = "structures_lease";
+    private static final String MAPPING_JSON = "{ \"properties\": { \"owner\": {\"type\":\"keyword\"}, \"expiresAt\": {\"type\":\"long\"} } }";
+
+    private final RestHighLevelClient highLevelClient;
+    private final StructuresProperties structuresProperties;
+    private final ItemStorageEngine itemStorageEngine;
+    private final String owner = UUID.randomUUID().toString();
+
+    public ClusterLeases(RestHighLevelClient highLevelClient,
+                         StructuresProperties structuresProperties,
+                         ItemStorageEngine itemStorageEngine) {
+        this.highLevelClient = highLevelClient;
+        this.structuresProperties = structuresProperties;
+        this.itemStorageEngine = itemStorageEngine;
+    }
+
+    @PostConstruct
+    void createLeaseIndex() throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            return;
+        }
+        if(!highLevelClient.indices().exists(new GetIndexRequest(LEASE_INDEX), RequestOptions.DEFAULT)){
+            CreateIndexRequest indexRequest = new CreateIndexRequest(LEASE_INDEX);
+            indexRequest.mapping(MAPPING_JSON, XContentType.JSON);
+            indexRequest.settings(IndexSettingsHelper.toElasticsearchSettings(null, structuresProperties.getSystemIndexSettings()));
+            try {
+                highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+            } catch (ElasticsearchStatusException e) {
+                // another node created it first
+                if(e.status() != RestStatus.BAD_REQUEST || !e.getMessage().contains("resource_already_exists_exception")){
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the lease if no other node holds it, or renews it if this node already does
+     * @param name of the lease
+     * @param duration the lease is held for, unless renewed
+     * @return true if this node now holds the lease
+     */
+    public boolean tryAcquire(String name, Duration duration) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            return true;
+        }
+        GetResponse current = highLevelClient.get(new GetRequest(LEASE_INDEX, name), RequestOptions.DEFAULT);
+        long now = System.currentTimeMillis();
+        IndexRequest request = new IndexRequest(LEASE_INDEX).id(name)
+                                                             .source(Map.of("owner", owner, "expiresAt", now + duration.toMillis()));
+        if(current.isExists()){
+            Map<String, Object> lease = current.getSourceAsMap();
+            if(!owner.equals(lease.get("owner")) && ((Number) lease.get("expiresAt")).longValue() > now){
+                return false;
+            }
+            request.setIfSeqNo(current.getSeqNo());
+            request.setIfPrimaryTerm(current.getPrimaryTerm());
+        }else{
+            request.opType(DocWriteRequest.OpType.CREATE);
+        }
+        try {
+            highLevelClient.index(request, RequestOptions.DEFAULT);
+            return true;
+        } catch (ElasticsearchStatusException e) {
+            if(e.status() == RestStatus.CONFLICT){
+                // another node took it between the get and the write
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gives up the lease, if this node holds it, so another node can take it without waiting for it to expire
+     */
+    public void release(String name) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            return;
+        }
+        GetResponse current = highLevelClient.get(new GetRequest(LEASE_INDEX, name), RequestOptions.DEFAULT);
+        if(current.isExists() && owner.equals(current.getSourceAsMap().get("owner"))){
+            DeleteRequest request = new DeleteRequest(LEASE_INDEX, name);
+            request.setIfSeqNo(current.getSeqNo());
+            request.setIfPrimaryTerm(current.getPrimaryTerm());
+            try {
+                highLevelClient.delete(request, RequestOptions.DEFAULT);
+            } catch (ElasticsearchStatusException e) {
+                if(e.status() != RestStatus.CONFLICT){
+                    throw e;
+                }
+            }
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package org.kinotic.structures.internal.api.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import graphql.scalars.ExtendedScalars;
@@ -12,19 +13,32 @@ import org.kinotic.continuum.api.jsonSchema.datestyles.MillsDateStyle;
 import org.kinotic.continuum.api.jsonSchema.datestyles.StringDateStyle;
 import org.kinotic.continuum.api.jsonSchema.datestyles.UnixDateStyle;
 import org.kinotic.structures.api.domain.Structure;
-import org.kinotic.structures.api.domain.StructureHolder;
-import org.kinotic.structures.api.domain.Structures;
 import org.kinotic.structures.api.domain.Trait;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.internal.api.services.util.ItemChangeType;
+import org.kinotic.structures.internal.config.StructuresProperties;
 import org.kinotic.structures.internal.graphql.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.graphql.ExecutionGraphQlService;
 import org.springframework.graphql.execution.DefaultBatchLoaderRegistry;
 import org.springframework.graphql.execution.DefaultExecutionGraphQlService;
 import org.springframework.graphql.execution.GraphQlSource;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
 import static graphql.Scalars.*;
@@ -41,17 +55,31 @@ import static graphql.schema.GraphQLObjectType.newObject;
 @Component
 public class DefaultExecutionGraphQlServiceProvider implements ExecutionGraphQlServiceProvider{
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultExecutionGraphQlServiceProvider.class);
+
+    private static final String REFERENCE_TRAIT_PREFIX = "Reference ";
+
     private final AsyncLoadingCache<String, ExecutionGraphQlService> cache;
+    private final StructureServiceInternal structureService;
+    private final StructuresProperties structuresProperties;
 
     public DefaultExecutionGraphQlServiceProvider(ObjectMapper objectMapper,
                                                   ItemServiceInternal itemService,
-                                                  StructureServiceInternal structureService) {
+                                                  StructureServiceInternal structureService,
+                                                  StructuresProperties structuresProperties,
+                                                  GraphQlDocumentCache documentCache,
+                                                  ItemChangeStream itemChangeStream) {
+        this.structureService = structureService;
+        this.structuresProperties = structuresProperties;
         this.cache = Caffeine.newBuilder()
                              .expireAfterAccess(1, TimeUnit.HOURS)
                              .maximumSize(10_000)
                              .buildAsync(new ExecutionGraphQlServiceCacheLoader(objectMapper,
                                                                                 structureService,
-                                                                                itemService));
+                                                                                itemService,
+                                                                                documentCache,
+                                                                                structuresProperties,
+                                                                                itemChangeStream));
     }
 
     @Override
@@ -61,65 +89,162 @@ public class DefaultExecutionGraphQlServiceProvider implements ExecutionGraphQlS
 
     @Override
     public void evictCacheFor(String namespace) {
+        // the next request will rebuild the schema, only Structures that changed will have their traits converted again
         cache.asMap().remove(namespace);
     }
 
+    /**
+     * Builds the schemas for all namespaces in the background, so the first query after a restart does not pay for it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preWarm() {
+        if(!structuresProperties.isPreWarmGraphQlSchemas()){
+            return;
+        }
+        Mono.fromCallable(structureService::getAllNamespacesWithPublishedStructures)
+            .flatMapMany(Flux::fromIterable)
+            .flatMap(namespace -> getService(namespace)
+                             .doOnError(e -> log.warn("Failed to pre-warm GraphQL schema for namespace '" + namespace + "'", e))
+                             .onErrorResume(e -> Mono.empty()),
+                     4)
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe(service -> {},
+                       e -> log.warn("Failed to pre-warm GraphQL schemas", e),
+                       () -> log.debug("Finished pre-warming GraphQL schemas"));
+    }
+
 
     private static class ExecutionGraphQlServiceCacheLoader implements CacheLoader<String, ExecutionGraphQlService>{
 
         private final ObjectMapper objectMapper;
         private final StructureServiceInternal structureService;
         private final ItemServiceInternal itemService;
+        private final GraphQlDocumentCache documentCache;
+        private final StructuresProperties structuresProperties;
+        private final ItemChangeStream itemChangeStream;
+        /**
+         * The fields for each {@link Structure} keyed by structure version, so a namespace rebuild only converts the traits of the structures that changed.
+         * The GraphQL types themselves are created for every schema, since building a schema replaces the type references within them.
+         */
+        private final Cache<String, List<StructureGraphField>> structureFieldCache = Caffeine.newBuilder()
+                                                                                           .expireAfterAccess(1, TimeUnit.HOURS)
+                                                                                           .maximumSize(10_000)
+                                                                                           .build();
 
         public ExecutionGraphQlServiceCacheLoader(ObjectMapper objectMapper,
                                                   StructureServiceInternal structureService,
-                                                  ItemServiceInternal itemService) {
+                                                  ItemServiceInternal itemService,
+                                                  GraphQlDocumentCache documentCache,
+                                                  StructuresProperties structuresProperties,
+                                                  ItemChangeStream itemChangeStream) {
             this.objectMapper = objectMapper;
             this.structureService = structureService;
             this.itemService = itemService;
+            this.documentCache = documentCache;
+            this.structuresProperties = structuresProperties;
+            this.itemChangeStream = itemChangeStream;
         }
 
         @Override
         public @Nullable ExecutionGraphQlService load(String namespace) throws Exception {
-            GraphQLSchema schema = createGraphQlSchema(namespace);
+            List<Structure> structures = withoutTypeNameConflicts(structureService.getAllPublishedForNamespace(namespace));
+            Set<String> requestFieldCoordinates = new HashSet<>();
+            Map<String, String> sizeArguments = new HashMap<>();
+            GraphQLSchema schema = createGraphQlSchema(structures, requestFieldCoordinates, sizeArguments);
+
+            // any change to a published structure changes its updated time, or the number of structures, so parsed documents can be reused until then
+            long lastUpdated = 0;
+            for(Structure structure : structures){
+                lastUpdated = Math.max(lastUpdated, structure.getUpdated());
+            }
+            String schemaKey = namespace + ":" + structures.size() + ":" + lastUpdated;
+
+            QueryCostInstrumentation costInstrumentation = new QueryCostInstrumentation(requestFieldCoordinates,
+                                                                                        sizeArguments,
+                                                                                        structuresProperties.getGraphQlMaximumQueryCost(namespace));
 
             GraphQlSource graphQlSource = GraphQlSource.builder(schema)
-                                                       .configureGraphQl(builder -> builder.preparsedDocumentProvider(new CachingPreparsedDocumentProvider()))
+                                                       .instrumentation(List.of(costInstrumentation))
+                                                       .exceptionResolvers(List.of(new InvalidArgumentExceptionResolver()))
+                                                       .configureGraphQl(builder -> builder.preparsedDocumentProvider(new CachingPreparsedDocumentProvider(documentCache, schemaKey)))
                                                        .build();
 
 
+            // one DataLoader per Structure, so item and reference lookups are batched per execution level
+            DefaultBatchLoaderRegistry batchLoaderRegistry = new DefaultBatchLoaderRegistry();
+            for(Structure structure : structures) {
+                batchLoaderRegistry.<String, TypeCheckMap>forName(structure.getId())
+                                   .registerMappedBatchLoader(new ItemBatchLoader(structure, itemService));
+            }
+
             DefaultExecutionGraphQlService service = new DefaultExecutionGraphQlService(graphQlSource);
-            service.addDataLoaderRegistrar(new DefaultBatchLoaderRegistry());
+            service.addDataLoaderRegistrar(batchLoaderRegistry);
             return service;
         }
 
-        private GraphQLSchema createGraphQlSchema(String namespace) throws Exception {
+        /**
+         * Structures are checked for type name conflicts when published, this keeps the rest of the namespace working for any published before that check.
+         * The first Structure, by name, to use a type name keeps it.
+         */
+        private static List<Structure> withoutTypeNameConflicts(List<Structure> structures){
+            List<Structure> ret = new ArrayList<>(structures.size());
+            Set<String> typeNames = new HashSet<>(GraphQlTypeNames.RESERVED);
+            for(Structure structure : structures){
+                Set<String> structureTypeNames = GraphQlTypeNames.forStructure(structure.getName());
+                if(Collections.disjoint(typeNames, structureTypeNames)){
+                    typeNames.addAll(structureTypeNames);
+                    ret.add(structure);
+                }else{
+                    log.warn("Structure '" + structure.getId() + "' is left out of the GraphQL schema, its type names conflict with another type in the namespace");
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * @param requestFieldCoordinates will have the "Type.field" coordinates of all non root fields that result in an Elasticsearch request added
+         * @param sizeArguments will have the argument that determines the number of items returned added, for each field that returns many items
+         */
+        private GraphQLSchema createGraphQlSchema(List<Structure> structures,
+                                                  Set<String> requestFieldCoordinates,
+                                                  Map<String, String> sizeArguments) throws Exception {
             Map<String, StructureGraphTypeHolder> structureTypeMap = new HashMap<>();
-            Structures structures = structureService.getAllPublishedForNamespace(namespace, 100, 0, "name", false);
 
-            for(StructureHolder structureHolder : structures.getContent()) {
-                Structure structure = structureHolder.getStructure();
-                structureTypeMap.put(structure.getId(), getGraphQlObjectsForStructure(structure));
+            // needed to resolve the types of ObjectReference fields
+            Map<String, String> structureNames = new HashMap<>();
+            for(Structure structure : structures) {
+                structureNames.put(structure.getId(), structure.getName());
+            }
+
+            for(Structure structure : structures) {
+                structureTypeMap.put(structure.getId(), getOrCreateGraphQlObjectsForStructure(structure, structureNames));
             }
 
             GraphQLObjectType.Builder queryBuilder = newObject().name("Query");
 
             GraphQLObjectType.Builder mutationBuilder = newObject().name("Mutation");
 
+            GraphQLObjectType.Builder subscriptionBuilder = newObject().name("Subscription");
+
             for(Map.Entry<String, StructureGraphTypeHolder> entry : structureTypeMap.entrySet()){
 
                 GraphQLObjectType outputType = entry.getValue().getGraphOutputType();
                 GraphQLInputObjectType inputType = entry.getValue().getGraphInputType();
 
+                for(String referenceField : entry.getValue().getReferenceFields()){
+                    requestFieldCoordinates.add(outputType.getName() + "." + referenceField);
+                }
+
                 queryBuilder.field(newFieldDefinition()
                                            .name(outputType.getName())
                                            .type(outputType)
                                            .argument(newArgument().name("id").type(GraphQLNonNull.nonNull(GraphQLID)))
-                                           .dataFetcher(new GetItemDataFetcher(entry.getKey(), itemService)));
+                                           .dataFetcher(new GetItemDataFetcher(entry.getKey())));
 
                 GraphQLTypeReference graphQLTypeReference = new GraphQLTypeReference(outputType.getName());
                 GraphQLNamedOutputType listResponse = wrapForItemListResponse(graphQLTypeReference);
 
+                sizeArguments.put("Query." + outputType.getName() + "s", "limit");
                 queryBuilder.field(newFieldDefinition()
                                            .name(outputType.getName() + "s")
                                            .type(listResponse)
@@ -127,6 +252,7 @@ public class DefaultExecutionGraphQlServiceProvider implements ExecutionGraphQlS
                                            .argument(newArgument().name("limit").type(GraphQLNonNull.nonNull(GraphQLInt)))
                                            .dataFetcher(new GetAllItemsDataFetcher(entry.getKey(), itemService)));
 
+                sizeArguments.put("Query.search" + outputType.getName(), "limit");
                 queryBuilder.field(newFieldDefinition()
                                            .name("search" + outputType.getName())
                                            .type(listResponse)
@@ -135,6 +261,15 @@ public class DefaultExecutionGraphQlServiceProvider implements ExecutionGraphQlS
                                            .argument(newArgument().name("limit").type(GraphQLNonNull.nonNull(GraphQLInt)))
                                            .dataFetcher(new SearchItemDataFetcher(entry.getKey(), itemService)));
 
+                sizeArguments.put("Query." + outputType.getName() + "Connection", "first");
+                queryBuilder.field(newFieldDefinition()
+                                           .name(outputType.getName() + "Connection")
+                                           .type(wrapForItemConnection(graphQLTypeReference))
+                                           .argument(newArgument().name("first").type(GraphQLNonNull.nonNull(GraphQLInt)))
+                                           .argument(newArgument().name("after").type(GraphQLString))
+                                           .argument(newArgument().name("search").type(GraphQLString))
+                                           .dataFetcher(new ItemConnectionDataFetcher(entry.getKey(), itemService)));
+
                 mutationBuilder.field(newFieldDefinition()
                                               .name("upsert" + inputType.getName())
                                               .type(outputType)
@@ -145,18 +280,93 @@ public class DefaultExecutionGraphQlServiceProvider implements ExecutionGraphQlS
                                               .name("delete" + inputType.getName())
                                               .type(GraphQLBoolean)
                                               .argument(newArgument().name("id").type(GraphQLNonNull.nonNull(GraphQLString)))
-                                              .dataFetcher(new UpsertDataFetcher(entry.getKey(), itemService)));
+                                              .dataFetcher(new DeleteDataFetcher(entry.getKey(), itemService)));
+
+                GraphQLOutputType bulkResultType = GraphQLNonNull.nonNull(GraphQLList.list(GraphQLNonNull.nonNull(GraphQLTypeReference.typeRef(GraphQlTypeNames.BULK_ITEM_RESULT))));
+
+                sizeArguments.put("Mutation.bulkUpsert" + outputType.getName(), "inputs");
+                mutationBuilder.field(newFieldDefinition()
+                                              .name("bulkUpsert" + outputType.getName())
+                                              .type(bulkResultType)
+                                              .argument(newArgument().name("inputs").type(GraphQLNonNull.nonNull(GraphQLList.list(GraphQLNonNull.nonNull(inputType)))))
+                                              .dataFetcher(new BulkUpsertDataFetcher(entry.getKey(), itemService)));
+
+                sizeArguments.put("Mutation.bulkDelete" + outputType.getName(), "ids");
+                mutationBuilder.field(newFieldDefinition()
+                                              .name("bulkDelete" + outputType.getName())
+                                              .type(bulkResultType)
+                                              .argument(newArgument().name("ids").type(GraphQLNonNull.nonNull(GraphQLList.list(GraphQLNonNull.nonNull(GraphQLID)))))
+                                              .dataFetcher(new BulkDeleteDataFetcher(entry.getKey(), itemService)));
+
+                subscriptionBuilder.field(newFieldDefinition()
+                                                  .name(outputType.getName() + "Changed")
+                                                  .type(GraphQLNonNull.nonNull(wrapForItemChange(graphQLTypeReference)))
+                                                  .argument(newArgument().name("ids").type(GraphQLList.list(GraphQLNonNull.nonNull(GraphQLID))))
+                                                  .argument(newArgument().name("types").type(GraphQLList.list(GraphQLNonNull.nonNull(GraphQLTypeReference.typeRef(GraphQlTypeNames.ITEM_CHANGE_TYPE)))))
+                                                  .dataFetcher(new ItemChangeDataFetcher(entry.getKey(), itemChangeStream, itemService)));
 
             }
             return GraphQLSchema.newSchema()
                                 .query(queryBuilder.build())
                                 .mutation(mutationBuilder.build())
+                                .subscription(subscriptionBuilder.build())
+                                .additionalType(newObject()
+                                                        .name(GraphQlTypeNames.PAGE_INFO)
+                                                        .field(newFieldDefinition()
+                                                                       .name("hasNextPage")
+                                                                       .type(GraphQLNonNull.nonNull(GraphQLBoolean)))
+                                                        .field(newFieldDefinition()
+                                                                       .name("endCursor")
+                                                                       .type(GraphQLString))
+                                                        .build())
+                                .additionalType(GraphQLEnumType.newEnum()
+                                                               .name(GraphQlTypeNames.ITEM_CHANGE_TYPE)
+                                                               .value(ItemChangeType.CREATED.name(), ItemChangeType.CREATED)
+                                                               .value(ItemChangeType.UPDATED.name(), ItemChangeType.UPDATED)
+                                                               .value(ItemChangeType.DELETED.name(), ItemChangeType.DELETED)
+                                                               .build())
+                                .additionalType(newObject()
+                                                        .name(GraphQlTypeNames.BULK_ITEM_RESULT)
+                                                        .field(newFieldDefinition()
+                                                                       .name("id")
+                                                                       .type(GraphQLID))
+                                                        .field(newFieldDefinition()
+                                                                       .name("success")
+                                                                       .type(GraphQLNonNull.nonNull(GraphQLBoolean)))
+                                                        .field(newFieldDefinition()
+                                                                       .name("error")
+                                                                       .type(GraphQLString))
+                                                        .build())
+                                .additionalType(newInputObject()
+                                                        .name(GraphQlTypeNames.REFERENCE_INPUT)
+                                                        .field(newInputObjectField()
+                                                                       .name("structureId")
+                                                                       .type(GraphQLNonNull.nonNull(GraphQLString)))
+                                                        .field(newInputObjectField()
+                                                                       .name("id")
+                                                                       .type(GraphQLNonNull.nonNull(GraphQLString)))
+                                                        .build())
                                 .build();
         }
 
+        private GraphQLNamedOutputType wrapForItemChange(GraphQLNamedOutputType graphQlOutputStructureItem){
+            return newObject()
+                    .name(graphQlOutputStructureItem.getName() + GraphQlTypeNames.CHANGE_SUFFIX)
+                    .field(newFieldDefinition()
+                                   .name("type")
+                                   .type(GraphQLNonNull.nonNull(GraphQLTypeReference.typeRef(GraphQlTypeNames.ITEM_CHANGE_TYPE))))
+                    .field(newFieldDefinition()
+                                   .name("id")
+                                   .type(GraphQLNonNull.nonNull(GraphQLID)))
+                    .field(newFieldDefinition()
+                                   .name("item")
+                                   .type(graphQlOutputStructureItem))
+                    .build();
+        }
+
         private GraphQLNamedOutputType wrapForItemListResponse(GraphQLNamedOutputType graphQlOutputStructureItem){
             return newObject()
-                    .name(graphQlOutputStructureItem.getName() + "Page")
+                    .name(graphQlOutputStructureItem.getName() + GraphQlTypeNames.PAGE_SUFFIX)
                     .field(newFieldDefinition()
                                    .name("totalElements")
                                    .type(GraphQLInt))
@@ -167,45 +377,127 @@ public class DefaultExecutionGraphQlServiceProvider implements ExecutionGraphQlS
         }
 
 
-        private StructureGraphTypeHolder getGraphQlObjectsForStructure(Structure structure){
+        private GraphQLNamedOutputType wrapForItemConnection(GraphQLNamedOutputType graphQlOutputStructureItem){
+            GraphQLObjectType edge = newObject()
+                    .name(graphQlOutputStructureItem.getName() + GraphQlTypeNames.EDGE_SUFFIX)
+                    .field(newFieldDefinition()
+                                   .name("node")
+                                   .type(graphQlOutputStructureItem))
+                    .field(newFieldDefinition()
+                                   .name("cursor")
+                                   .type(GraphQLNonNull.nonNull(GraphQLString)))
+                    .build();
+
+            return newObject()
+                    .name(graphQlOutputStructureItem.getName() + GraphQlTypeNames.CONNECTION_SUFFIX)
+                    .field(newFieldDefinition()
+                                   .name("totalElements")
+                                   .type(GraphQLInt))
+                    .field(newFieldDefinition()
+                                   .name("edges")
+                                   .type(GraphQLList.list(edge)))
+                    .field(newFieldDefinition()
+                                   .name("pageInfo")
+                                   .type(GraphQLNonNull.nonNull(GraphQLTypeReference.typeRef(GraphQlTypeNames.PAGE_INFO))))
+                    .build();
+        }
+
+        private StructureGraphTypeHolder getOrCreateGraphQlObjectsForStructure(Structure structure, Map<String, String> structureNames){
+            // reference fields are only present when the referenced structure is in the namespace, so that is part of the version as well
+            TreeSet<String> references = new TreeSet<>();
+            for (Trait trait : structure.getTraits().values()) {
+                if(trait.getName().startsWith(REFERENCE_TRAIT_PREFIX)){
+                    String referencedStructureId = trait.getName().substring(REFERENCE_TRAIT_PREFIX.length());
+                    if(structureNames.containsKey(referencedStructureId)){
+                        references.add(referencedStructureId + "=" + structureNames.get(referencedStructureId));
+                    }
+                }
+            }
+            String key = structure.getId() + ":" + structure.getUpdated() + ":" + references;
+            List<StructureGraphField> fields = structureFieldCache.get(key, k -> getGraphQlFieldsForStructure(structure, structureNames));
+            return createGraphQlObjectsForStructure(structure, fields);
+        }
+
+        private StructureGraphTypeHolder createGraphQlObjectsForStructure(Structure structure, List<StructureGraphField> fields){
             GraphQLObjectType.Builder outputBuilder = newObject().name(structure.getName());
-            GraphQLInputObjectType.Builder inputBuilder = newInputObject().name(structure.getName()+"Input");
+            GraphQLInputObjectType.Builder inputBuilder = newInputObject().name(structure.getName() + GraphQlTypeNames.INPUT_SUFFIX);
+            List<String> referenceFields = new ArrayList<>();
+
+            for (StructureGraphField field : fields) {
+                GraphQLOutputType outputType;
+                GraphQLInputType inputType;
+                if(field.getReferencedName() != null){
+                    outputType = GraphQLTypeReference.typeRef(field.getReferencedName());
+                    inputType = GraphQLTypeReference.typeRef(GraphQlTypeNames.REFERENCE_INPUT);
+                    referenceFields.add(field.getName());
+                }else{
+                    outputType = field.getScalarType();
+                    inputType = field.getScalarType();
+                }
 
-            for (Map.Entry<String, Trait> traitEntry : structure.getTraits().entrySet()) {
-                try {
-                    Trait trait = traitEntry.getValue();
+                if(field.isNonNull()){
+                    outputType = GraphQLNonNull.nonNull(outputType);
+                    inputType = GraphQLNonNull.nonNull(inputType);
+                }
 
-                    GraphQLScalarType scalarType = getGraphQlScalarTypeForTrait(trait);
+                if(field.isCollection()){
+                    outputType = GraphQLList.list(outputType);
+                    inputType = GraphQLList.list(inputType);
+                }
 
-                    GraphQLOutputType outputType = scalarType;
-                    GraphQLInputType inputType = scalarType;
+                GraphQLFieldDefinition.Builder fieldBuilder = newFieldDefinition()
+                                                                    .name(field.getName())
+                                                                    .type(outputType);
+                if(field.getReferencedName() != null){
+                    fieldBuilder.dataFetcher(new ReferenceDataFetcher(field.getName()));
+                }
+                outputBuilder.field(fieldBuilder);
 
-                    if(trait.isRequired() && !trait.getName().equals("DeletedTime")){
-                        outputType = GraphQLNonNull.nonNull(outputType);
-                        inputType = GraphQLNonNull.nonNull(inputType);
-                    }
+                if(field.isInput()){
+                    inputBuilder.field(newInputObjectField()
+                                               .name(field.getName())
+                                               .type(inputType));
+                }
+            }
 
-                    if(traitEntry.getValue().isCollection()){
-                        outputType = GraphQLList.list(outputType);
-                        inputType = GraphQLList.list(inputType);
-                    }
+            return new StructureGraphTypeHolder(outputBuilder.build(), inputBuilder.build(), referenceFields);
+        }
 
-                    outputBuilder.field(newFieldDefinition()
-                                                .name(traitEntry.getKey())
-                                                .type(outputType));
+        private List<StructureGraphField> getGraphQlFieldsForStructure(Structure structure, Map<String, String> structureNames){
+            List<StructureGraphField> ret = new ArrayList<>();
 
-                    if(!trait.isSystemManaged()){
-                        inputBuilder.field(newInputObjectField()
-                                                   .name(traitEntry.getKey())
-                                                   .type(inputType));
+            for (Map.Entry<String, Trait> traitEntry : structure.getTraits().entrySet()) {
+                try {
+                    Trait trait = traitEntry.getValue();
+
+                    GraphQLScalarType scalarType = null;
+                    String referencedName = null;
+
+                    if(trait.getName().startsWith(REFERENCE_TRAIT_PREFIX)){
+                        String referencedStructureId = trait.getName().substring(REFERENCE_TRAIT_PREFIX.length());
+                        referencedName = structureNames.get(referencedStructureId);
+                        if(referencedName == null){
+                            log.warn("Structure '{}' field '{}' references Structure '{}' which is not published in the same namespace, the field will not be available with GraphQL",
+                                     structure.getId(), traitEntry.getKey(), referencedStructureId);
+                            continue;
+                        }
+                    }else{
+                        scalarType = getGraphQlScalarTypeForTrait(trait);
                     }
 
+                    ret.add(new StructureGraphField(traitEntry.getKey(),
+                                                    scalarType,
+                                                    referencedName,
+                                                    trait.isRequired() && !trait.getName().equals("DeletedTime"),
+                                                    trait.isCollection(),
+                                                    !trait.isSystemManaged()));
+
                 } catch (Exception e) {
                     throw new RuntimeException("Failed to get schema for trait " + traitEntry.getKey(), e);
                 }
             }
 
-            return new StructureGraphTypeHolder(outputBuilder.build(), inputBuilder.build());
+            return ret;
         }
 
         private GraphQLScalarType getGraphQlScalarTypeForTrait(Trait trait) throws Exception {
@@ -246,13 +538,80 @@ public class DefaultExecutionGraphQlServiceProvider implements ExecutionGraphQlS
         }
     }
 
+    /**
+     * The GraphQL definition of a single {@link Structure} field, this does not hold any GraphQL types that can be changed when a schema is built
+     */
+    private static class StructureGraphField {
+        private final String name;
+        private final GraphQLScalarType scalarType;
+        private final String referencedName;
+        private final boolean nonNull;
+        private final boolean collection;
+        private final boolean input;
+
+        public StructureGraphField(String name,
+                                   GraphQLScalarType scalarType,
+                                   String referencedName,
+                                   boolean nonNull,
+                                   boolean collection,
+                                   boolean input) {
+            this.name = name;
+            this.scalarType = scalarType;
+            this.referencedName = referencedName;
+            this.nonNull = nonNull;
+            this.collection = collection;
+            this.input = input;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public GraphQLScalarType getScalarType() {
+            return scalarType;
+        }
+
+        /**
+         * @return the name of the type of the referenced {@link Structure}, or null if this is not a reference field
+         */
+        public String getReferencedName() {
+            return referencedName;
+        }
+
+        public boolean isNonNull() {
+            return nonNull;
+        }
+
+        public boolean isCollection() {
+            return collection;
+        }
+
+        /**
+         * @return true if the field can be provided when upserting an item
+         */
+        public boolean isInput() {
+            return input;
+        }
+    }
+
     private static class StructureGraphTypeHolder {
         private final GraphQLObjectType graphOutputType;
         private final GraphQLInputObjectType graphInputType;
+        private final List<String> referenceFields;
 
-        public StructureGraphTypeHolder(GraphQLObjectType graphOutputType, GraphQLInputObjectType graphInputType) {
+        public StructureGraphTypeHolder(GraphQLObjectType graphOutputType,
+                                        GraphQLInputObjectType graphInputType,
+                                        List<String> referenceFields) {
             this.graphOutputType = graphOutputType;
             this.graphInputType = graphInputType;
+            this.referenceFields = referenceFields;
+        }
+
+        /**
+         * @return the names of the fields that are resolved by loading the referenced item
+         */
+        public List<String> getReferenceFields() {
+            return referenceFields;
         }
 
         public GraphQLObjectType getGraphOutputType() {
@@ -18,47 +18,76 @@
 package org.kinotic.structures.internal.api.services;
 
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.action.update.UpdateRequest;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
 import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.get.GetResult;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.IdsQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.xcontent.XContentType;
+import org.kinotic.structures.api.domain.DeadlineExceededException;
 import org.kinotic.structures.api.domain.NotFoundException;
 import org.kinotic.structures.api.domain.Structure;
 import org.kinotic.structures.api.domain.Trait;
 import org.kinotic.structures.api.domain.TypeCheckMap;
 import org.kinotic.structures.api.services.ItemService;
+import org.kinotic.structures.internal.api.services.storage.ItemStorageEngine;
+import org.kinotic.structures.internal.api.services.util.BulkItemResult;
 import org.kinotic.structures.internal.api.services.util.BulkUpdate;
+import org.kinotic.structures.internal.api.services.util.Deadline;
+import org.kinotic.structures.internal.api.services.util.EsHighLevelClientUtil;
+import org.kinotic.structures.internal.api.services.util.ItemChangeEvent;
+import org.kinotic.structures.internal.api.services.util.ItemChangeType;
+import org.kinotic.structures.internal.api.services.util.RoutingHelper;
+import org.kinotic.structures.internal.api.services.util.StaleReads;
+import org.kinotic.structures.internal.config.StructuresProperties;
 import org.kinotic.structures.internal.trait.TraitLifecycles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -69,18 +98,36 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
 
     private static final Logger log = LoggerFactory.getLogger(DefaultItemService.class);
 
-    private final RestHighLevelClient highLevelClient;
+    private final ItemStorageEngine itemStorageEngine;
     private final StructureServiceInternal structureService;
     private final TraitLifecycles traitLifecycles;
+    private final StructuresProperties structuresProperties;
+    private final ItemChangeStream itemChangeStream;
+    private final ItemIndexManager itemIndexManager;
+    private final IdleItemIndexManager idleItemIndexManager;
+    private final ItemSourceCache itemSourceCache;
+    private final ElasticsearchCircuitBreaker circuitBreaker;
     private final ConcurrentHashMap<String, BulkUpdate> bulkRequests = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, AtomicLong> activeBulkRequests = new ConcurrentHashMap<>();
 
-    public DefaultItemService(RestHighLevelClient highLevelClient,
+    public DefaultItemService(ItemStorageEngine itemStorageEngine,
                               StructureServiceInternal structureService,
-                              TraitLifecycles traitLifecycles) {
-        this.highLevelClient = highLevelClient;
+                              TraitLifecycles traitLifecycles,
+                              StructuresProperties structuresProperties,
+                              ItemChangeStream itemChangeStream,
+                              ItemIndexManager itemIndexManager,
+                              IdleItemIndexManager idleItemIndexManager,
+                              ItemSourceCache itemSourceCache,
+                              ElasticsearchCircuitBreaker circuitBreaker) {
+        this.itemStorageEngine = itemStorageEngine;
         this.structureService = structureService;
         this.traitLifecycles = traitLifecycles;
+        this.structuresProperties = structuresProperties;
+        this.itemChangeStream = itemChangeStream;
+        this.itemIndexManager = itemIndexManager;
+        this.idleItemIndexManager = idleItemIndexManager;
+        this.itemSourceCache = itemSourceCache;
+        this.circuitBreaker = circuitBreaker;
     }
 
     @PreDestroy
@@ -104,24 +151,34 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
             throw new IllegalStateException("'" + structure.getId() + "' Structure is not published and cannot have had Items modified for it");
         }
 
-        // ensure required fields are present, system managed fields are automatically processed by hooks; so don't require them
-        for (Map.Entry<String, Trait> traitEntry : structure.getTraits().entrySet()) {
-            if (!traitEntry.getValue().isSystemManaged() && traitEntry.getValue()
-                                                                      .isRequired() && !item.has(traitEntry.getKey())) {
-                throw new IllegalStateException("'" + structure.getId() + "' Structure create/modify has been called without all required fields");
-            }
-        }
+        validateRequiredFields(structure, item);
+
+        // an item without an id is always new, so we only need to look for an existing one if given an id
+        boolean mayExist = item.has("id");
 
         // perform before create/update hooks - id is created if it does not already exist
         TypeCheckMap toUpsert = traitLifecycles.processBeforeModifyLifecycle(item, structure, context);
 
+        String index = structure.getItemIndex();
+        if (mayExist) {
+            checkIdsNotUsedByOtherStructures(structure, List.of(toUpsert.getString("id")));
+            checkRoutingNotChanged(structure,
+                                   itemIndexManager.findRoutingOfItems(structure, List.of(toUpsert.getString("id"))),
+                                   toUpsert);
+            index = resolveIndexForUpdate(structure, toUpsert.getString("id"));
+        }
+
         // process upsert
-        processUpdateRequest(structure, toUpsert, true);
+        UpdateResponse response = processUpdateRequest(structure, index, toUpsert, true, context);
 
         // get value fresh from db
         TypeCheckMap ret = getItemById(structureId, toUpsert.getString("id"), context).orElseThrow();
 
-        return (TypeCheckMap) traitLifecycles.processAfterModifyLifecycle(ret, structure, context);
+        ret = (TypeCheckMap) traitLifecycles.processAfterModifyLifecycle(ret, structure, context);
+
+        emitChange(structure, response.getId(), response.getResult());
+
+        return ret;
     }
 
     @Override
@@ -131,8 +188,13 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
             if (structureOptional.isEmpty()) {
                 throw new NotFoundException("Not able to find requested Structure");
             }
+            idleItemIndexManager.ensureAvailable(structureOptional.get(), true);
             BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer =
-                    (request, bulkListener) -> highLevelClient.bulkAsync(request, RequestOptions.DEFAULT, bulkListener);
+                    (request, bulkListener) -> itemStorageEngine.bulk(request)
+                                                                .subscribe(bulkListener::onResponse,
+                                                                           throwable -> bulkListener.onFailure(throwable instanceof Exception
+                                                                                                                       ? (Exception) throwable
+                                                                                                                       : new RuntimeException(throwable)));
             BulkProcessor bulkProcessor = BulkProcessor.builder(bulkConsumer, new BulkProcessor.Listener() {
                         private final AtomicLong count = new AtomicLong(0);
 
@@ -145,6 +207,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                         public void afterBulk(long executionId,
                                               BulkRequest request,
                                               BulkResponse response) {
+                            invalidateCachedItems(structureOptional.get(), request);
                             if (response.hasFailures()) {
                                 for (BulkItemResponse itemResponse : response.getItems()) {
                                     log.error("DefaultItemService: Encountered an error while ingesting data.  for Structure: '" + structureId + "'    Index: " + itemResponse.getIndex() + " \n\r    " + itemResponse.getFailureMessage(),
@@ -152,6 +215,14 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                                 }
                             }
 
+                            if (itemChangeStream.hasSubscribers()) {
+                                for (BulkItemResponse itemResponse : response.getItems()) {
+                                    if (!itemResponse.isFailed()) {
+                                        emitChange(structureOptional.get(), itemResponse.getId(), itemResponse.getResponse().getResult());
+                                    }
+                                }
+                            }
+
                             long currentCount = count.addAndGet(request.numberOfActions());
                             log.debug("DefaultItemService: bulk processing for Structure '" + structureId + "' finished indexing : " + currentCount);
                         }
@@ -160,6 +231,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                         public void afterBulk(long executionId,
                                               BulkRequest request,
                                               Throwable failure) {
+                            invalidateCachedItems(structureOptional.get(), request);
                             log.error("DefaultItemService: Bulk Ingestion encountered an error. ", failure);
                         }
                     })
@@ -184,6 +256,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
 
         //FIXME: what if the structure changes mid bulk update?
         BulkUpdate bulkUpdate = this.bulkRequests.get(structureId);
+        idleItemIndexManager.ensureAvailable(bulkUpdate.getStructure(), true);
         for (Map.Entry<String, Trait> traitEntry : bulkUpdate.getStructure().getTraits().entrySet()) {
             if (!traitEntry.getValue().isSystemManaged() && traitEntry.getValue()
                                                                       .isRequired() && !item.has(traitEntry.getKey())) {
@@ -191,11 +264,19 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
             }
         }
 
+        if (item.has("id")) {
+            checkIdsNotUsedByOtherStructures(bulkUpdate.getStructure(), List.of(item.getString("id")));
+            checkRoutingNotChanged(bulkUpdate.getStructure(),
+                                   itemIndexManager.findRoutingOfItems(bulkUpdate.getStructure(), List.of(item.getString("id"))),
+                                   item);
+        }
+
         TypeCheckMap ret = traitLifecycles.processBeforeModifyLifecycle(item, bulkUpdate.getStructure(), context);
 
         UpdateRequest request = new UpdateRequest(bulkUpdate.getStructure().getItemIndex(), item.getString("id"));
+        request.routing(RoutingHelper.getRouting(bulkUpdate.getStructure(), item));
         request.docAsUpsert(true);
-        request.doc(item, XContentType.JSON);
+        request.doc(item, structuresProperties.getElasticContentType().getXContentType());
 
         this.bulkRequests.get(structureId).getBulkProcessor().add(request);
 
@@ -223,32 +304,57 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
 
     @Override
     public long count(String structureId, Map<String, Object> context) throws Exception {
-        Optional<Structure> optional = structureService.getById(structureId);
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
 
-        SearchSourceBuilder builder = new SearchSourceBuilder();
-        builder.size(0);
+        CountRequest request = new CountRequest(structure.getItemIndex());
         if(queryBuilder.hasClauses()){
-            builder.query(queryBuilder);
+            request.query(queryBuilder);
         }
-        SearchRequest request = new SearchRequest(structure.getItemIndex());
-        request.source(builder);
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
-
-        return response.getHits().getTotalHits().value;
+        if(structure.getRoutingField() != null){
+            String[] routing = RoutingHelper.findRoutingValues(queryBuilder, structure.getRoutingField());
+            if(routing != null){
+                request.routing(routing);
+            }
+        }
+        Deadline deadline = resolveDeadline(structure, context);
+        CountResponse response = EsHighLevelClientUtil.await(idleItemIndexManager.ensureAvailableAsync(structure, false)
+                                                                                 .then(itemStorageEngine.count(request)),
+                                                             deadline);
+        return response.getCount();
     }
 
     @Override
     public Optional<TypeCheckMap> getById(Structure structure, String id, Map<String, Object> context) throws Exception {
-        GetResponse response = highLevelClient.get(new GetRequest(structure.getItemIndex()).id(id),
-                                                   RequestOptions.DEFAULT);
-
+        if (requiresSearchForGet(structure)) {
+            return Optional.ofNullable(getByIds(structure, List.of(id), context).get(id));
+        }
         // LOOK: We can restrict access by adding a AfterGet lifecycle trait to a structure - but is there another way?
+        // the after get lifecycle is run for cached items too, so access checks still apply
+        if (structure.isCacheItems()) {
+            Map<String, Object> cached = itemSourceCache.get(structure, id);
+            if (cached != null) {
+                if (circuitBreaker.isOpen()) {
+                    // may have changed while Elasticsearch has been unavailable
+                    StaleReads.markStale(context);
+                }
+                return Optional.ofNullable(traitLifecycles.processAfterGetLifecycle(new TypeCheckMap(cached), structure, context));
+            }
+        }
+        long loadStamp = structure.isCacheItems() ? itemSourceCache.startLoad(structure, id) : 0;
+
+        idleItemIndexManager.ensureAvailable(structure, false);
+        GetRequest request = new GetRequest(structure.getItemIndex()).id(id);
+        GetResponse response = EsHighLevelClientUtil.await(itemStorageEngine.get(request),
+                                                            resolveDeadline(structure, context));
 
         TypeCheckMap ret = null;
         if (response.isExists()) {
+            if (structure.isCacheItems()) {
+                itemSourceCache.put(structure, id, response.getSourceAsBytesRef(), loadStamp);
+            }
             ret = new TypeCheckMap(response.getSourceAsMap());
             ret = traitLifecycles.processAfterGetLifecycle(ret, structure, context);
         }
@@ -256,6 +362,86 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
         return Optional.ofNullable(ret);
     }
 
+    @Override
+    public Map<String, TypeCheckMap> getByIds(Structure structure, Collection<String> ids, Map<String, Object> context) throws Exception {
+        if(ids.isEmpty()){
+            return new HashMap<>();
+        }
+        Map<String, Map<String, Object>> sources = EsHighLevelClientUtil.await(executeMultiGet(structure, ids), resolveDeadline(structure, context));
+        return processMultiGetResponse(structure, sources, context);
+    }
+
+    @Override
+    public Mono<Map<String, TypeCheckMap>> getByIdsAsync(Structure structure, Collection<String> ids, Map<String, Object> context) {
+        if(ids.isEmpty()){
+            return Mono.just(new HashMap<>());
+        }
+        return Mono.defer(() -> EsHighLevelClientUtil.withDeadline(executeMultiGet(structure, ids), resolveDeadline(structure, context)))
+                   // after get lifecycles are allowed to block
+                   .publishOn(Schedulers.boundedElastic())
+                   .flatMap(sources -> Mono.fromCallable(() -> processMultiGetResponse(structure, sources, context)));
+    }
+
+    /**
+     * @return the source of every item found, keyed by id
+     */
+    private Mono<Map<String, Map<String, Object>>> executeMultiGet(Structure structure, Collection<String> ids){
+        return idleItemIndexManager.ensureAvailableAsync(structure, false)
+                                   .then(Mono.defer(() -> multiGet(structure, ids)));
+    }
+
+    private Mono<Map<String, Map<String, Object>>> multiGet(Structure structure, Collection<String> ids){
+        if (requiresSearchForGet(structure)) {
+            SearchSourceBuilder builder = new SearchSourceBuilder();
+            builder.query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])));
+            builder.size(ids.size());
+            SearchRequest request = new SearchRequest(structure.getItemIndex()).source(builder);
+            return itemStorageEngine.search(request)
+                                    .map(response -> {
+                                        Map<String, Map<String, Object>> ret = new HashMap<>();
+                                        for (SearchHit hit : response.getHits()) {
+                                            ret.put(hit.getId(), hit.getSourceAsMap());
+                                        }
+                                        return ret;
+                                    });
+        }
+        MultiGetRequest request = new MultiGetRequest();
+        for(String id : ids){
+            request.add(structure.getItemIndex(), id);
+        }
+        return itemStorageEngine.multiGet(request)
+                                .handle((response, sink) -> {
+                                    Map<String, Map<String, Object>> ret = new HashMap<>();
+                                    for(MultiGetItemResponse itemResponse : response.getResponses()){
+                                        if(itemResponse.isFailed()){
+                                            sink.error(itemResponse.getFailure().getFailure());
+                                            return;
+                                        }
+                                        if(itemResponse.getResponse().isExists()){
+                                            ret.put(itemResponse.getId(), itemResponse.getResponse().getSourceAsMap());
+                                        }
+                                    }
+                                    sink.next(ret);
+                                });
+    }
+
+    /**
+     * A get cannot be sent to an alias that spans more than one index, needs the routing value for the item when custom routing is used,
+     * and does not apply the filter of the alias for a shared index
+     */
+    private static boolean requiresSearchForGet(Structure structure) {
+        return ItemIndexManager.isTimeSeries(structure) || ItemIndexManager.isShared(structure) || structure.getRoutingField() != null;
+    }
+
+    private Map<String, TypeCheckMap> processMultiGetResponse(Structure structure, Map<String, Map<String, Object>> sources, Map<String, Object> context) throws Exception {
+        Map<String, TypeCheckMap> ret = new HashMap<>();
+        for(Map.Entry<String, Map<String, Object>> entry : sources.entrySet()){
+            TypeCheckMap item = new TypeCheckMap(entry.getValue());
+            ret.put(entry.getKey(), traitLifecycles.processAfterGetLifecycle(item, structure, context));
+        }
+        return ret;
+    }
+
     /**
      * This function will act ast the ObjectReference Resolver function.  The ObjectReference will already
      * have the structureName, which we use as the index name in ES.  This means we don't have to do a
@@ -263,7 +449,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
      */
     @Override
     public Optional<TypeCheckMap> getItemById(String structureId, String id, Map<String, Object> context) throws Exception {
-        Optional<Structure> optional = structureService.getById(structureId);
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         return getById(structure, id, context);
@@ -277,7 +463,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
      */
     @Override
     public SearchHits searchForItemsById(String structureId, Map<String, Object> context, String... ids) throws Exception {
-        Optional<Structure> optional = structureService.getById(structureId);
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
@@ -292,16 +478,37 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
         SearchRequest request = new SearchRequest(structure.getItemIndex());
         request.source(builder);
 
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
+        SearchResponse response = executeSearch(structure, request, true, context);
 
         return response.getHits();
     }
 
     @Override
     public SearchHits getAll(String structureId, int numberPerPage, int from, Map<String, Object> context) throws Exception {
-        Optional<Structure> optional = structureService.getById(structureId);
+        return getAll(structureId, numberPerPage, from, null, context);
+    }
+
+    @Override
+    public SearchHits getAll(String structureId, int numberPerPage, int from, String[] includes, Map<String, Object> context) throws Exception {
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
+        SearchRequest request = createGetAllRequest(structure, numberPerPage, from, includes, context);
+
+        SearchResponse response = executeSearch(structure, request, true, context);
+
+        return response.getHits();
+    }
+
+    @Override
+    public Mono<SearchHits> getAllAsync(String structureId, int numberPerPage, int from, String[] includes, Map<String, Object> context) {
+        return findStructure(structureId, context)
+                .flatMap(structure -> Mono.fromCallable(() -> createGetAllRequest(structure, numberPerPage, from, includes, context))
+                                          .flatMap(request -> executeSearchAsync(structure, request, true, context)))
+                .map(SearchResponse::getHits);
+    }
+
+    private SearchRequest createGetAllRequest(Structure structure, int numberPerPage, int from, String[] includes, Map<String, Object> context) throws Exception {
         BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
 
         SearchSourceBuilder builder = new SearchSourceBuilder()
@@ -310,13 +517,11 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
         if(queryBuilder.hasClauses()){
             builder.query(queryBuilder);
         }
+        applySourceIncludes(builder, includes);
 
         SearchRequest request = new SearchRequest(structure.getItemIndex());
         request.source(builder);
-
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
-
-        return response.getHits();
+        return request;
     }
 
 
@@ -333,7 +538,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                                   Map<String, Object> context,
                                   Object... searchTerms) throws Exception {
 
-        Optional<Structure> optional = structureService.getById(structureId);
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
@@ -346,7 +551,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                                .from(from * numberPerPage)
                                .size(numberPerPage));
 
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
+        SearchResponse response = executeSearch(structure, request, true, context);
 
         return response.getHits();
     }
@@ -363,7 +568,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                                      String search,
                                      Map<String, Object> context,
                                      String... fieldNames) throws Exception {
-        Optional<Structure> optional = structureService.getById(structureId);
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
@@ -376,7 +581,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                                .from(from * numberPerPage)
                                .size(numberPerPage));
 
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
+        SearchResponse response = executeSearch(structure, request, true, context);
 
         return response.getHits();
     }
@@ -388,7 +593,20 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
      */
     @Override
     public SearchHits search(String structureId, String search, int numberPerPage, int from, Map<String, Object> context) throws Exception {
-        return search(structureId, search, numberPerPage, from, null, null, context);
+        return search(structureId, search, numberPerPage, from, null, null, null, context);
+    }
+
+    @Override
+    public SearchHits search(String structureId, String search, int numberPerPage, int from, String[] includes, Map<String, Object> context) throws Exception {
+        return search(structureId, search, numberPerPage, from, null, null, includes, context);
+    }
+
+    @Override
+    public Mono<SearchHits> searchAsync(String structureId, String search, int numberPerPage, int from, String[] includes, Map<String, Object> context) {
+        return findStructure(structureId, context)
+                .flatMap(structure -> Mono.fromCallable(() -> createSearchRequest(structure, search, numberPerPage, from, null, null, includes, context))
+                                          .flatMap(request -> executeSearchAsync(structure, request, true, context)))
+                .map(SearchResponse::getHits);
     }
 
     @Override
@@ -399,10 +617,73 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
                              String sortField,
                              SortOrder sortOrder,
                              Map<String, Object> context) throws Exception {
+        return search(structureId, search, numberPerPage, from, sortField, sortOrder, null, context);
+    }
 
-        Optional<Structure> optional = structureService.getById(structureId);
+    private SearchHits search(String structureId,
+                              String search,
+                              int numberPerPage,
+                              int from,
+                              String sortField,
+                              SortOrder sortOrder,
+                              String[] includes,
+                              Map<String, Object> context) throws Exception {
+
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
+        SearchRequest request = createSearchRequest(structure, search, numberPerPage, from, sortField, sortOrder, includes, context);
+
+        SearchResponse response = executeSearch(structure, request, true, context);
+
+        return response.getHits();
+    }
+
+    @Override
+    public Mono<SearchHits> searchAfterAsync(String structureId,
+                                             String search,
+                                             int numberPerPage,
+                                             Object[] searchAfter,
+                                             boolean trackTotalHits,
+                                             String[] includes,
+                                             Map<String, Object> context) {
+        return findStructure(structureId, context)
+                .flatMap(structure -> Mono.fromCallable(() -> {
+                                              BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
+                                              if(search != null && !search.isBlank()){
+                                                  queryBuilder.must(new QueryStringQueryBuilder(search));
+                                              }
+
+                                              // id is unique so the sort is stable, which search_after requires
+                                              SearchSourceBuilder builder = new SearchSourceBuilder()
+                                                      .size(numberPerPage)
+                                                      .sort("id", SortOrder.ASC)
+                                                      .trackTotalHits(trackTotalHits);
+                                              if(queryBuilder.hasClauses()){
+                                                  builder.query(queryBuilder);
+                                              }
+                                              if(searchAfter != null){
+                                                  builder.searchAfter(searchAfter);
+                                              }
+                                              applySourceIncludes(builder, includes);
+
+                                              SearchRequest request = new SearchRequest(structure.getItemIndex());
+                                              request.source(builder);
+                                              return request;
+                                          })
+                                          // terminate after would silently cut pages short when sorting, so it is not applied
+                                          .flatMap(request -> executeSearchAsync(structure, request, false, context)))
+                .map(SearchResponse::getHits);
+    }
+
+    private SearchRequest createSearchRequest(Structure structure,
+                                              String search,
+                                              int numberPerPage,
+                                              int from,
+                                              String sortField,
+                                              SortOrder sortOrder,
+                                              String[] includes,
+                                              Map<String, Object> context) throws Exception {
         BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
 
         SearchSourceBuilder builder = new SearchSourceBuilder()
@@ -417,13 +698,11 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
         if (sortField != null) {
             builder.sort(sortField, sortOrder);
         }
+        applySourceIncludes(builder, includes);
 
         SearchRequest request = new SearchRequest(structure.getItemIndex());
         request.source(builder);
-
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
-
-        return response.getHits();
+        return request;
     }
 
     @Override
@@ -445,7 +724,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
 
     @Override
     public List<String> searchDistinct(String structureId, String search, String field, int limit, Map<String, Object> context) throws Exception {
-        Optional<Structure> optional = structureService.getById(structureId);
+        Optional<Structure> optional = structureService.getById(structureId, context);
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         BoolQueryBuilder queryBuilder = traitLifecycles.processBeforeSearchLifecycle(new BoolQueryBuilder(), structure, context);
@@ -462,7 +741,7 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
         SearchRequest request = new SearchRequest(structure.getItemIndex());
         request.source(sourceBuilder);
 
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
+        SearchResponse response = executeSearch(structure, request, false, context);
 
         ArrayList<String> keys = new ArrayList<>();
         Terms byCoach = response.getAggregations().get(field);
@@ -481,20 +760,463 @@ public class DefaultItemService implements ItemService, ItemServiceInternal { //
         TypeCheckMap item = getById(structure, itemId, context).orElseThrow();
         TypeCheckMap ret = traitLifecycles.processBeforeDeleteLifecycle(item, structure, context);
 
-        processUpdateRequest(structure, ret, false);
+        processUpdateRequest(structure, resolveIndexForUpdate(structure, itemId), ret, false, context);
 
         //TODO: find out how this will operate concurrently
         traitLifecycles.processAfterDeleteLifecycle(ret, structure, context);
+
+        itemChangeStream.emit(new ItemChangeEvent(structure.getId(), itemId, ItemChangeType.DELETED));
+    }
+
+    /**
+     * Modifications run lifecycles that are allowed to block, so they are performed on the bounded elastic scheduler
+     */
+    @Override
+    public Mono<TypeCheckMap> upsertItemAsync(String structureId, TypeCheckMap item, Map<String, Object> context) {
+        return Mono.fromCallable(() -> upsertItem(structureId, item, context))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> deleteAsync(String structureId, String itemId, Map<String, Object> context) {
+        return Mono.fromCallable(() -> {
+                       delete(structureId, itemId, context);
+                       return true;
+                   })
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .then();
+    }
+
+    @Override
+    public Mono<List<BulkItemResult>> bulkUpsertAsync(String structureId, List<TypeCheckMap> items, Map<String, Object> context) {
+        return findStructure(structureId)
+                .flatMap(structure -> {
+                    if (!structure.isPublished()) {
+                        return Mono.error(new IllegalStateException("'" + structure.getId() + "' Structure is not published and cannot have had Items modified for it"));
+                    }
+
+                    BulkItemResult[] results = new BulkItemResult[items.size()];
+                    TypeCheckMap[] prepared = new TypeCheckMap[items.size()];
+                    BulkRequest bulkRequest = new BulkRequest();
+                    List<Integer> positions = new ArrayList<>();
+
+                    // only items given an id can already exist
+                    List<String> givenIds = new ArrayList<>();
+                    for (TypeCheckMap item : items) {
+                        String id = getIdIfPresent(item);
+                        if (id != null) {
+                            givenIds.add(id);
+                        }
+                    }
+                    Map<String, String> indices;
+                    Set<String> usedByOthers;
+                    Map<String, String> existingRouting;
+                    try {
+                        indices = resolveIndicesForUpdate(structure, givenIds);
+                        usedByOthers = itemIndexManager.findIdsUsedByOtherStructures(structure, givenIds);
+                        existingRouting = itemIndexManager.findRoutingOfItems(structure, givenIds);
+                    } catch (IOException e) {
+                        return Mono.error(e);
+                    }
+
+                    for (int i = 0; i < items.size(); i++) {
+                        TypeCheckMap item = items.get(i);
+                        try {
+                            validateRequiredFields(structure, item);
+                            prepared[i] = traitLifecycles.processBeforeModifyLifecycle(item, structure, context);
+
+                            String id = prepared[i].getString("id");
+                            if (usedByOthers.contains(id)) {
+                                throw new IllegalStateException("Id '" + id + "' is already used by another Structure sharing the index");
+                            }
+                            checkRoutingNotChanged(structure, existingRouting, prepared[i]);
+                            UpdateRequest request = new UpdateRequest(indices.getOrDefault(id, structure.getItemIndex()), id);
+                            request.routing(RoutingHelper.getRouting(structure, prepared[i]));
+                            request.docAsUpsert(true);
+                            request.doc(prepared[i], structuresProperties.getElasticContentType().getXContentType());
+                            bulkRequest.add(request);
+                            positions.add(i);
+                        } catch (Exception e) {
+                            results[i] = BulkItemResult.failure(getIdIfPresent(item), e.getMessage());
+                        }
+                    }
+
+                    return executeBulk(structure, bulkRequest, context)
+                            .publishOn(Schedulers.boundedElastic())
+                            .map(response -> {
+                                BulkItemResponse[] responses = response.getItems();
+                                for (int j = 0; j < responses.length; j++) {
+                                    int i = positions.get(j);
+                                    if (responses[j].isFailed()) {
+                                        results[i] = BulkItemResult.failure(responses[j].getId(), responses[j].getFailureMessage());
+                                    } else {
+                                        try {
+                                            traitLifecycles.processAfterModifyLifecycle(prepared[i], structure, context);
+                                            results[i] = BulkItemResult.success(responses[j].getId());
+                                            emitChange(structure, responses[j].getId(), responses[j].getResponse().getResult());
+                                        } catch (Exception e) {
+                                            results[i] = BulkItemResult.failure(responses[j].getId(), e.getMessage());
+                                        }
+                                    }
+                                }
+                                return Arrays.asList(results);
+                            });
+                });
+    }
+
+    @Override
+    public Mono<List<BulkItemResult>> bulkDeleteAsync(String structureId, List<String> ids, Map<String, Object> context) {
+        return findStructure(structureId)
+                .flatMap(structure -> getByIdsAsync(structure, ids, context)
+                        // lifecycles are allowed to block
+                        .publishOn(Schedulers.boundedElastic())
+                        .flatMap(existing -> {
+                            BulkItemResult[] results = new BulkItemResult[ids.size()];
+                            TypeCheckMap[] prepared = new TypeCheckMap[ids.size()];
+                            BulkRequest bulkRequest = new BulkRequest();
+                            List<Integer> positions = new ArrayList<>();
+
+                            Map<String, String> indices;
+                            try {
+                                indices = resolveIndicesForUpdate(structure, existing.keySet());
+                            } catch (IOException e) {
+                                return Mono.error(e);
+                            }
+
+                            for (int i = 0; i < ids.size(); i++) {
+                                String id = ids.get(i);
+                                // if document level security is in use, the get will have validated access
+                                TypeCheckMap item = existing.get(id);
+                                if (item == null) {
+                                    results[i] = BulkItemResult.failure(id, "Item not found");
+                                    continue;
+                                }
+                                try {
+                                    prepared[i] = traitLifecycles.processBeforeDeleteLifecycle(item, structure, context);
+
+                                    UpdateRequest request = new UpdateRequest(indices.getOrDefault(id, structure.getItemIndex()), id);
+                                    request.routing(RoutingHelper.getRouting(structure, prepared[i]));
+                                    request.doc(prepared[i], structuresProperties.getElasticContentType().getXContentType());
+                                    bulkRequest.add(request);
+                                    positions.add(i);
+                                } catch (Exception e) {
+                                    results[i] = BulkItemResult.failure(id, e.getMessage());
+                                }
+                            }
+
+                            return executeBulk(structure, bulkRequest, context)
+                                    .publishOn(Schedulers.boundedElastic())
+                                    .map(response -> {
+                                        BulkItemResponse[] responses = response.getItems();
+                                        for (int j = 0; j < responses.length; j++) {
+                                            int i = positions.get(j);
+                                            if (responses[j].isFailed()) {
+                                                results[i] = BulkItemResult.failure(responses[j].getId(), responses[j].getFailureMessage());
+                                            } else {
+                                                try {
+                                                    traitLifecycles.processAfterDeleteLifecycle(prepared[i], structure, context);
+                                                    results[i] = BulkItemResult.success(responses[j].getId());
+                                                    itemChangeStream.emit(new ItemChangeEvent(structure.getId(), responses[j].getId(), ItemChangeType.DELETED));
+                                                } catch (Exception e) {
+                                                    results[i] = BulkItemResult.failure(responses[j].getId(), e.getMessage());
+                                                }
+                                            }
+                                        }
+                                        return Arrays.asList(results);
+                                    });
+                        }));
+    }
+
+    /**
+     * Executes all the modifications as a single bulk request.
+     * Unlike single item modifications this does not force a refresh, instead it waits for the next scheduled refresh so the changes are visible once complete.
+     */
+    private Mono<BulkResponse> executeBulk(Structure structure, BulkRequest bulkRequest, Map<String, Object> context) {
+        if (bulkRequest.numberOfActions() == 0) {
+            return Mono.just(new BulkResponse(new BulkItemResponse[0], 0));
+        }
+        bulkRequest.setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+        boolean migrating = structure.getPendingItemIndex() != null;
+        if (migrating) {
+            for (DocWriteRequest<?> request : bulkRequest.requests()) {
+                if (request instanceof UpdateRequest) {
+                    ((UpdateRequest) request).fetchSource(true);
+                }
+            }
+        }
+        return idleItemIndexManager.ensureAvailableAsync(structure, true)
+                                   .then(Mono.defer(() -> EsHighLevelClientUtil.withDeadline(itemStorageEngine.bulk(bulkRequest),
+                                                                                             resolveDeadline(structure, context))))
+                                   .flatMap(response -> migrating
+                                           ? writeToPendingIndex(structure, bulkRequest, response).thenReturn(response)
+                                           : Mono.just(response))
+                                   // the items may have been changed even if the request failed or was cancelled
+                                   .doOnTerminate(() -> invalidateCachedItems(structure, bulkRequest))
+                                   .doOnCancel(() -> invalidateCachedItems(structure, bulkRequest));
+    }
+
+    private static String getIdIfPresent(TypeCheckMap item) {
+        return item.has("id") && item.get("id") != null ? item.get("id").toString() : null;
+    }
+
+    /**
+     * Ensures required fields are present, system managed fields are automatically processed by hooks; so don't require them
+     */
+    private void validateRequiredFields(Structure structure, TypeCheckMap item) {
+        for (Map.Entry<String, Trait> traitEntry : structure.getTraits().entrySet()) {
+            if (!traitEntry.getValue().isSystemManaged() && traitEntry.getValue()
+                                                                      .isRequired() && !item.has(traitEntry.getKey())) {
+                throw new IllegalStateException("'" + structure.getId() + "' Structure create/modify has been called without all required fields");
+            }
+        }
+    }
+
+    /**
+     * Soft deletes are updates as far as Elasticsearch is concerned, so this is only used for upserts
+     */
+    private void emitChange(Structure structure, String id, DocWriteResponse.Result result) {
+        if (result == DocWriteResponse.Result.CREATED || result == DocWriteResponse.Result.UPDATED) {
+            itemChangeStream.emit(new ItemChangeEvent(structure.getId(),
+                                                      id,
+                                                      result == DocWriteResponse.Result.CREATED ? ItemChangeType.CREATED : ItemChangeType.UPDATED));
+        }
+    }
+
+    /**
+     * An item is stored on the shard its routing value maps to, so writing it with another value would add a second copy on another shard.
+     * Changing the routing field of an item requires deleting it and creating it again.
+     * @param existingRouting the routing values of the existing items, see {@link ItemIndexManager#findRoutingOfItems(Structure, Collection)}
+     */
+    private static void checkRoutingNotChanged(Structure structure, Map<String, String> existingRouting, Map<String, Object> item) {
+        String existing = existingRouting.get(String.valueOf(item.get("id")));
+        if (existing != null && !existing.equals(RoutingHelper.getRouting(structure, item))) {
+            throw new IllegalStateException("'" + structure.getRoutingField() + "' cannot be changed for existing item '" + item.get("id")
+                                                    + "', since items are routed by it");
+        }
+    }
+
+    /**
+     * Structures sharing an index also share its ids, an item given the id of an item of another structure would overwrite it
+     */
+    private void checkIdsNotUsedByOtherStructures(Structure structure, Collection<String> ids) throws IOException {
+        Set<String> usedByOthers = itemIndexManager.findIdsUsedByOtherStructures(structure, ids);
+        if (!usedByOthers.isEmpty()) {
+            throw new IllegalStateException("Id '" + usedByOthers.iterator().next() + "' is already used by another Structure sharing the index");
+        }
+    }
+
+    /**
+     * Time series structures write through an alias that points to the newest index, existing items must be updated in the index they are in
+     * @return the index to send an update for the item to
+     */
+    private String resolveIndexForUpdate(Structure structure, String id) throws IOException {
+        return resolveIndicesForUpdate(structure, List.of(id)).getOrDefault(id, structure.getItemIndex());
+    }
+
+    /**
+     * @return the concrete index for the ids of existing items when the structure is time series, otherwise an empty map
+     */
+    private Map<String, String> resolveIndicesForUpdate(Structure structure, Collection<String> ids) throws IOException {
+        if (ItemIndexManager.isTimeSeries(structure)) {
+            return itemIndexManager.findConcreteIndices(structure, ids);
+        }
+        return Map.of();
     }
 
-    private void processUpdateRequest(Structure structure, TypeCheckMap ret, boolean asUpsert) throws IOException {
-        UpdateRequest request = new UpdateRequest(structure.getItemIndex(), ret.getString("id"));
+    private UpdateResponse processUpdateRequest(Structure structure, String index, TypeCheckMap ret, boolean asUpsert, Map<String, Object> context) throws Exception {
+        // writes are not cancelled once sent, but there is no point starting one the client has already given up on
+        resolveDeadline(structure, context).checkNotExpired();
+        idleItemIndexManager.ensureAvailable(structure, true);
+
+        UpdateRequest request = new UpdateRequest(index, ret.getString("id"));
+        request.routing(RoutingHelper.getRouting(structure, ret));
         request.docAsUpsert(asUpsert);
-        request.doc(ret, XContentType.JSON);
+        request.doc(ret, structuresProperties.getElasticContentType().getXContentType());
         // forces a cluster refresh of the index.. for high volume data this wouldn't work - lets see how it works in our case.
         request.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        boolean migrating = structure.getPendingItemIndex() != null;
+        if (migrating) {
+            request.fetchSource(true);
+        }
 
-        highLevelClient.update(request, RequestOptions.DEFAULT);
+        try {
+            UpdateResponse response = itemStorageEngine.update(request);
+            if (migrating) {
+                BulkRequest pendingWrites = new BulkRequest();
+                addPendingIndexWrite(structure, request, response, pendingWrites);
+                writeToPendingIndex(structure, pendingWrites).block();
+            }
+            return response;
+        } finally {
+            if (structure.isCacheItems()) {
+                itemSourceCache.invalidate(structure.getId(), request.id());
+            }
+        }
+    }
+
+    private Mono<Void> writeToPendingIndex(Structure structure, BulkRequest bulkRequest, BulkResponse response) {
+        BulkRequest pendingWrites = new BulkRequest();
+        BulkItemResponse[] items = response.getItems();
+        for (int i = 0; i < items.length; i++) {
+            if (!items[i].isFailed() && bulkRequest.requests().get(i) instanceof UpdateRequest) {
+                addPendingIndexWrite(structure, (UpdateRequest) bulkRequest.requests().get(i), items[i].getResponse(), pendingWrites);
+            }
+        }
+        return writeToPendingIndex(structure, pendingWrites);
+    }
+
+    /**
+     * While a {@link Structure} is being migrated, writes are also made to the pending index so they continue without interruption.
+     * The whole item returned by the write is indexed with the version it has in the current index, as the migration copies items,
+     * so an older copy of the item never replaces a newer one whichever is written last.
+     */
+    private void addPendingIndexWrite(Structure structure, UpdateRequest request, UpdateResponse response, BulkRequest pendingWrites) {
+        GetResult result = response.getGetResult();
+        if (result == null || !result.isExists()) {
+            return;
+        }
+        Map<String, Object> source = new HashMap<>(result.sourceAsMap());
+        source.keySet().removeAll(DefaultStructureService.getRemovedFields(structure));
+        pendingWrites.add(new IndexRequest(structure.getPendingItemIndex())
+                                  .id(response.getId())
+                                  // items are routed by structure in the shared index, but by id once in an index of their own
+                                  .routing(ItemIndexManager.isShared(structure) ? null : request.routing())
+                                  .source(source, structuresProperties.getElasticContentType().getXContentType())
+                                  .versionType(VersionType.EXTERNAL_GTE)
+                                  .version(response.getVersion()));
+    }
+
+    /**
+     * A failure is only logged, the items changed during a migration are copied again before it completes
+     */
+    private Mono<Void> writeToPendingIndex(Structure structure, BulkRequest pendingWrites) {
+        if (pendingWrites.numberOfActions() == 0) {
+            return Mono.empty();
+        }
+        return itemStorageEngine.bulk(pendingWrites)
+                                .doOnNext(response -> {
+                                    for (BulkItemResponse itemResponse : response.getItems()) {
+                                        // a conflict means a newer version of the item is already there
+                                        if (itemResponse.isFailed() && itemResponse.status() != RestStatus.CONFLICT) {
+                                            log.warn("Could not write item '" + itemResponse.getId() + "' of '" + structure.getId() + "' to "
+                                                             + structure.getPendingItemIndex() + ", " + itemResponse.getFailureMessage());
+                                        }
+                                    }
+                                })
+                                .onErrorResume(e -> {
+                                    log.warn("Could not write items of '" + structure.getId() + "' to " + structure.getPendingItemIndex(), e);
+                                    return Mono.empty();
+                                })
+                                .then();
+    }
+
+    private void invalidateCachedItems(Structure structure, BulkRequest bulkRequest) {
+        if (structure.isCacheItems()) {
+            for (DocWriteRequest<?> request : bulkRequest.requests()) {
+                itemSourceCache.invalidate(structure.getId(), request.id());
+            }
+        }
+    }
+
+    /**
+     * Limits the _source returned by Elasticsearch, so we do not transfer or parse fields the caller does not want.
+     * @param includes null returns all fields and an empty array returns no source
+     */
+    private void applySourceIncludes(SearchSourceBuilder builder, String[] includes){
+        if(includes != null){
+            if(includes.length == 0){
+                builder.fetchSource(false);
+            }else{
+                builder.fetchSource(includes, null);
+            }
+        }
+    }
+
+    /**
+     * Executes the search so that it is bounded by the request {@link Deadline}.
+     * Elasticsearch is told to stop collecting once the deadline passes, and the request is cancelled if we stop waiting for it.
+     *
+     * @param limitHits true if the {@link Structure#getTerminateAfter()} limit should be applied, this should be false for counts and aggregations
+     */
+    private SearchResponse executeSearch(Structure structure, SearchRequest request, boolean limitHits, Map<String, Object> context) throws Exception {
+        Deadline deadline = resolveDeadline(structure, context);
+        deadline.checkNotExpired();
+
+        return EsHighLevelClientUtil.await(prepareSearch(structure, request, limitHits, deadline), deadline);
+    }
+
+    /**
+     * Non-blocking version of {@link #executeSearch(Structure, SearchRequest, boolean, Map)}
+     */
+    private Mono<SearchResponse> executeSearchAsync(Structure structure, SearchRequest request, boolean limitHits, Map<String, Object> context) {
+        return Mono.defer(() -> {
+            Deadline deadline = resolveDeadline(structure, context);
+            if(deadline.isExpired()){
+                return Mono.error(new DeadlineExceededException("Request deadline exceeded"));
+            }
+            return EsHighLevelClientUtil.withDeadline(prepareSearch(structure, request, limitHits, deadline), deadline);
+        });
+    }
+
+    private Mono<SearchResponse> prepareSearch(Structure structure, SearchRequest request, boolean limitHits, Deadline deadline) {
+        request.source().timeout(TimeValue.timeValueMillis(deadline.remaining().toMillis()));
+        if(limitHits && structure.getTerminateAfter() > 0){
+            request.source().terminateAfter(structure.getTerminateAfter());
+        }
+        if(structure.getRoutingField() != null && request.routing() == null){
+            // only the shards holding the routing values the query requires need to be searched
+            String[] routing = RoutingHelper.findRoutingValues(request.source().query(), structure.getRoutingField());
+            if(routing == null){
+                routing = RoutingHelper.findRoutingValues(request.source().postFilter(), structure.getRoutingField());
+            }
+            if(routing != null){
+                request.routing(routing);
+            }
+        }
+        return idleItemIndexManager.ensureAvailableAsync(structure, false)
+                                   .then(itemStorageEngine.search(request));
+    }
+
+    /**
+     * The {@link Structure} is emitted on the bounded elastic scheduler, since the lifecycles run with it are allowed to block.
+     * This way reads and writes run their lifecycles the same way, rather than on the thread that completed the Elasticsearch request.
+     */
+    private Mono<Structure> findStructure(String structureId){
+        return structureService.findById(structureId)
+                               .switchIfEmpty(Mono.error(() -> new NoSuchElementException("No Structure found for id '" + structureId + "'")))
+                               .publishOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Used by reads, which can use the last known {@link Structure} while Elasticsearch is unavailable
+     */
+    private Mono<Structure> findStructure(String structureId, Map<String, Object> context){
+        return structureService.findById(structureId, context)
+                               .switchIfEmpty(Mono.error(() -> new NoSuchElementException("No Structure found for id '" + structureId + "'")))
+                               .publishOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Deadline resolveDeadline(String structureId, Map<String, Object> context) throws Exception {
+        Deadline ret = Deadline.fromContext(context);
+        if(ret == null){
+            Optional<Structure> optional = structureService.getById(structureId, context);
+            // if there is no such structure the request itself will fail, so the global default is fine
+            ret = optional.isPresent()
+                    ? resolveDeadline(optional.get(), context)
+                    : Deadline.resolve(context, structuresProperties.getDefaultRequestTimeout());
+        }
+        return ret;
+    }
+
+    /**
+     * The deadline provided by the caller wins, otherwise the {@link Structure} default is used, falling back to the global default.
+     */
+    private Deadline resolveDeadline(Structure structure, Map<String, Object> context){
+        return Deadline.resolve(context,
+                                structure.getRequestTimeout() > 0
+                                        ? Duration.ofMillis(structure.getRequestTimeout())
+                                        : structuresProperties.getDefaultRequestTimeout());
     }
 
 }
@@ -1,6 +1,7 @@
 package org.kinotic.structures.internal.api.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
@@ -8,16 +9,11 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.WriteRequest;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.client.indices.CreateIndexRequest;
-import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.xcontent.XContentBuilder;
 import org.elasticsearch.xcontent.XContentFactory;
-import org.elasticsearch.xcontent.XContentType;
 import org.kinotic.structures.api.domain.AlreadyExistsException;
 import org.kinotic.structures.api.domain.Namespace;
 import org.kinotic.structures.api.domain.Structures;
@@ -28,7 +24,6 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -36,12 +31,19 @@ import java.util.Optional;
 public class DefaultNamespaceService implements NamespaceService {
 
     private final ObjectMapper mapper = new ObjectMapper();
-    private RestHighLevelClient highLevelClient;
+    private MetadataStorage metadataStorage;
     private StructureServiceInternal structureService;
-
-    public DefaultNamespaceService(RestHighLevelClient highLevelClient, StructureServiceInternal structureService){
-        this.highLevelClient = highLevelClient;
+    private ElasticsearchCircuitBreaker circuitBreaker;
+    // last known copies, returned while Elasticsearch is unavailable
+    private final Cache<String, Namespace> lastKnownNamespaces;
+
+    public DefaultNamespaceService(MetadataStorage metadataStorage,
+                                   StructureServiceInternal structureService,
+                                   ElasticsearchCircuitBreaker circuitBreaker){
+        this.metadataStorage = metadataStorage;
         this.structureService = structureService;
+        this.circuitBreaker = circuitBreaker;
+        this.lastKnownNamespaces = circuitBreaker.createLastKnownCache();
     }
 
     @PostConstruct
@@ -85,14 +87,18 @@ public class DefaultNamespaceService implements NamespaceService {
         request.source(builder);
 
         // FIXME: Need to handle exceptions and edge cases.
-        highLevelClient.index(request, RequestOptions.DEFAULT);
+        metadataStorage.index(request);
         return namespace;
     }
 
     @Override
     public Optional<Namespace> getNamespace(String namespace) throws IOException {
+        return circuitBreaker.readWithFallback(namespace, lastKnownNamespaces, () -> readNamespace(namespace), null);
+    }
 
-        GetResponse response = highLevelClient.get(new GetRequest("namespace").id(namespace), RequestOptions.DEFAULT);
+    private Optional<Namespace> readNamespace(String namespace) throws IOException {
+
+        GetResponse response = metadataStorage.get(new GetRequest("namespace").id(namespace));
         Namespace ret = null;
         if (response.isExists()) {
             ret = EsHighLevelClientUtil.getTypeFromBytesReference(response.getSourceAsBytesRef(), Namespace.class);
@@ -132,7 +138,8 @@ public class DefaultNamespaceService implements NamespaceService {
             request.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
 
             // FIXME: Need to handle exceptions and edge cases.
-            highLevelClient.delete(request, RequestOptions.DEFAULT);
+            metadataStorage.delete(request);
+            lastKnownNamespaces.invalidate(toBeDeleted.getName());
         }else{
             // what to do here? if anything.
         }
@@ -141,25 +148,14 @@ public class DefaultNamespaceService implements NamespaceService {
     @Override
     public void createNamespaceIndex() {
         try {
-            if(!highLevelClient.indices().exists(new GetIndexRequest("namespace"), RequestOptions.DEFAULT)){
-                HashMap<String, Object> settings = new HashMap<>();
-                settings.put("index.number_of_shards", 5);
-                settings.put("index.number_of_replicas", 2);
-                settings.put("index.refresh_interval", "1s");
-                settings.put("index.store.type", "fs");
-
-                CreateIndexRequest indexRequest = new CreateIndexRequest("namespace");
-                indexRequest.mapping("{\"dynamic\":\"strict\",\"properties\":{\"name\":{\"type\":\"keyword\"},\"description\":{\"type\":\"text\"},\"updated\":{\"type\":\"date\",\"format\":\"epoch_millis\"}}}", XContentType.JSON);
-                indexRequest.settings(settings);
-                highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
-            }
+            metadataStorage.createIndex("namespace", "{\"dynamic\":\"strict\",\"properties\":{\"name\":{\"type\":\"keyword\"},\"description\":{\"type\":\"text\"},\"updated\":{\"type\":\"date\",\"format\":\"epoch_millis\"}}}");
         } catch (Exception e) {
             throw new IllegalStateException("We were not able to check for 'namespace' existence or create 'namespace' index.", e);
         }
     }
 
     private SearchHits getNamespaces(SearchSourceBuilder builder) throws IOException {
-        SearchResponse response = highLevelClient.search(new SearchRequest("namespace").source(builder), RequestOptions.DEFAULT);
+        SearchResponse response = metadataStorage.search(new SearchRequest("namespace").source(builder));
         return response.getHits();
     }
 }
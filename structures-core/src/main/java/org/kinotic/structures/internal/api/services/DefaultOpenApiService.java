@@ -1,6 +1,9 @@
 package org.kinotic.structures.internal.api.services;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.swagger.v3.oas.models.*;
 import io.swagger.v3.oas.models.info.Info;
 import io.swagger.v3.oas.models.media.*;
@@ -16,19 +19,22 @@ import org.kinotic.continuum.api.jsonSchema.datestyles.MillsDateStyle;
 import org.kinotic.continuum.api.jsonSchema.datestyles.StringDateStyle;
 import org.kinotic.continuum.api.jsonSchema.datestyles.UnixDateStyle;
 import org.kinotic.structures.api.domain.Structure;
-import org.kinotic.structures.api.domain.StructureHolder;
-import org.kinotic.structures.api.domain.Structures;
 import org.kinotic.structures.api.domain.Trait;
+import org.kinotic.structures.internal.api.services.util.OpenApiDocument;
 import org.kinotic.structures.internal.config.OpenApiSecurityType;
 import org.kinotic.structures.internal.config.StructuresProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by Navíd Mitchell 🤪 on 3/17/23.
@@ -38,9 +44,18 @@ public class DefaultOpenApiService implements OpenApiService {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultOpenApiService.class);
 
+    /**
+     * We do not want nulls in our output, and the shared {@link ObjectMapper} must not be reconfigured
+     */
+    private static final ObjectMapper specMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
     private final ObjectMapper objectMapper;
     private final StructureServiceInternal structureService;
     private final StructuresProperties structuresProperties;
+    private final Cache<String, OpenApiDocument> documentCache = Caffeine.newBuilder()
+                                                                         .expireAfterAccess(1, TimeUnit.HOURS)
+                                                                         .maximumSize(10_000)
+                                                                         .build();
 
     public DefaultOpenApiService(ObjectMapper objectMapper,
                                  StructureServiceInternal structureService,
@@ -52,6 +67,56 @@ public class DefaultOpenApiService implements OpenApiService {
 
     @Override
     public OpenAPI getOpenApiSpec(String namespace) throws IOException {
+        return createOpenApiSpec(namespace, structureService.getAllPublishedForNamespace(namespace));
+    }
+
+    /**
+     * Documents are cached by the version of the namespace, so a change made through another node is seen as soon as it is published.
+     * Evicting only frees the documents of versions that will not be used again.
+     */
+    @Override
+    public OpenApiDocument getOpenApiDocument(String namespace) throws IOException {
+        List<Structure> structures = structureService.getAllPublishedForNamespace(namespace);
+        String key = namespace + ":" + getVersion(structures);
+        OpenApiDocument ret = documentCache.getIfPresent(key);
+        if(ret == null){
+            ret = createOpenApiDocument(namespace, structures);
+            documentCache.put(key, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public void evictCacheFor(String namespace) {
+        documentCache.asMap().keySet().removeIf(key -> key.startsWith(namespace + ":"));
+    }
+
+    /**
+     * Any change to a published structure changes its updated time, and publishing or removing one changes the number of structures
+     */
+    private static String getVersion(List<Structure> structures){
+        long lastUpdated = 0;
+        for(Structure structure : structures){
+            lastUpdated = Math.max(lastUpdated, structure.getUpdated());
+        }
+        return Long.toHexString(lastUpdated) + "-" + structures.size();
+    }
+
+    private OpenApiDocument createOpenApiDocument(String namespace, List<Structure> structures) throws IOException {
+        byte[] json = specMapper.writeValueAsBytes(createOpenApiSpec(namespace, structures));
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(json.length / 4);
+        try(GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipped)){
+            gzipOutputStream.write(json);
+        }
+
+        // versioned by the structures, the content hash covers anything else that can change the spec such as configuration
+        String eTag = "\"" + getVersion(structures) + "-" + DigestUtils.md5DigestAsHex(json) + "\"";
+
+        return new OpenApiDocument(eTag, json, gzipped.toByteArray());
+    }
+
+    private OpenAPI createOpenApiSpec(String namespace, List<Structure> structures) {
         OpenAPI openAPI = new OpenAPI();
 
         Info info = new Info()
@@ -81,10 +146,8 @@ public class DefaultOpenApiService implements OpenApiService {
             openAPI.setSecurity(List.of(new SecurityRequirement().addList("BearerAuth")));
         }
 
-        Structures structures = structureService.getAllPublishedForNamespace(namespace, 100, 0, "name", false);
         Paths paths = new Paths();
-        for(StructureHolder structureHolder : structures.getContent()){
-            Structure structure = structureHolder.getStructure();
+        for(Structure structure : structures){
             // Add path items for the structure
             addPathItemsForStructure(paths, structure);
 
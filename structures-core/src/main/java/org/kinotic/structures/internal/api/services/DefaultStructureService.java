@@ -18,69 +18,106 @@
 package org.kinotic.structures.internal.api.services;
 
 import net.logstash.logback.encoder.org.apache.commons.lang.WordUtils;
-import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import com.github.benmanes.caffeine.cache.Cache;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.support.master.AcknowledgedResponse;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.client.indices.CreateIndexRequest;
-import org.elasticsearch.client.indices.GetIndexRequest;
-import org.elasticsearch.client.indices.PutMappingRequest;
-import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
-import org.elasticsearch.xcontent.XContentType;
 import org.kinotic.structures.api.domain.*;
 import org.kinotic.structures.api.services.StructureService;
 import org.kinotic.structures.api.services.TraitService;
 import org.kinotic.structures.internal.api.services.util.EsHighLevelClientUtil;
+import org.kinotic.structures.internal.api.services.util.MappingHelper;
 import org.kinotic.structures.internal.api.services.util.StructureHelper;
 import org.kinotic.structures.internal.config.StructuresProperties;
-import org.kinotic.structures.internal.repositories.StructureElasticRepository;
+import org.kinotic.structures.internal.graphql.GraphQlTypeNames;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class DefaultStructureService implements StructureService, StructureServiceInternal { // TODO: after continuum fix remove StructureService
 
     private static final Logger log = LoggerFactory.getLogger(DefaultStructureService.class);
+    private static final Duration MIGRATION_POLL_INTERVAL = Duration.ofSeconds(2);
+    // allows for clock differences between nodes when finding items changed during a migration
+    private static final long MIGRATION_CLOCK_SKEW_MILLIS = 5000;
+    // renewed every poll, so another node only takes over a migration once the node running it has stopped
+    private static final Duration MIGRATION_LEASE_DURATION = Duration.ofMinutes(1);
+    // writes continue while the items are counted, the copies of the items just written may take a moment to be visible in the target
+    private static final int MIGRATION_COUNT_ATTEMPTS = 5;
+    private static final long MIGRATION_COUNT_RETRY_MILLIS = 200;
 
-    private RestHighLevelClient highLevelClient;
+    private MetadataStorage metadataStorage;
 
     private TraitService traitService;
 
-    private StructureElasticRepository structureElasticRepository;
+    private ItemIndexManager itemIndexManager;
     private StructuresProperties structuresProperties;
+    private ExecutionGraphQlServiceProvider graphQlServiceProvider;
+    private OpenApiService openApiService;
+    private ElasticsearchCircuitBreaker circuitBreaker;
+    private ClusterLeases clusterLeases;
+    private final Cache<String, Structure> lastKnownStructures;
+    private final ConcurrentHashMap<String, ItemIndexMigration> migrations = new ConcurrentHashMap<>();
+    // item index state changes are serialized per structure, so changing one does not wait on another
+    private final ConcurrentHashMap<String, Object> itemIndexStateLocks = new ConcurrentHashMap<>();
 
     private Trait id;
     private Trait deleted;
     private Trait deletedTime;
     private Trait updatedTime;
     private Trait structureId;
-    public DefaultStructureService(RestHighLevelClient highLevelClient,
+    public DefaultStructureService(MetadataStorage metadataStorage,
                                    TraitService traitService,
-                                   StructureElasticRepository structureElasticRepository,
-                                   StructuresProperties structuresProperties){
-        this.highLevelClient = highLevelClient;
+                                   ItemIndexManager itemIndexManager,
+                                   StructuresProperties structuresProperties,
+                                   @Lazy ExecutionGraphQlServiceProvider graphQlServiceProvider,
+                                   @Lazy OpenApiService openApiService,
+                                   ElasticsearchCircuitBreaker circuitBreaker,
+                                   ClusterLeases clusterLeases){
+        this.metadataStorage = metadataStorage;
         this.traitService = traitService;
-        this.structureElasticRepository = structureElasticRepository;
+        this.itemIndexManager = itemIndexManager;
         this.structuresProperties = structuresProperties;
+        this.graphQlServiceProvider = graphQlServiceProvider;
+        this.openApiService = openApiService;
+        this.circuitBreaker = circuitBreaker;
+        this.clusterLeases = clusterLeases;
+        this.lastKnownStructures = circuitBreaker.createLastKnownCache();
+    }
+
+    /**
+     * Evicts everything generated from the published {@link Structure}s of a namespace, so it is rebuilt on next use
+     */
+    private void evictCachesFor(String namespace){
+        graphQlServiceProvider.evictCacheFor(namespace);
+        openApiService.evictCacheFor(namespace);
     }
 
     @PostConstruct
     void init(){
         try {
 
+            // the indices for our Spring Data documents are not created by Spring Data, so they get the configured settings
+            metadataStorage.createIndex(Structure.class);
+            metadataStorage.createIndex(ReferenceLog.class);
+
             // need to make sure we have created the trait index before booting.
             traitService.createTraitIndex();
 
@@ -303,8 +340,13 @@ public class DefaultStructureService implements StructureService, StructureServi
         // will throw an exception if invalid
         StructureHelper.indexNameValidation(logicalIndexName);
 
+        for(Map.Entry<String, Trait> traitEntry : structure.getTraits().entrySet()){
+            checkFieldNameFormat(traitEntry.getKey());
+            MappingHelper.checkFieldUsage(traitEntry.getKey(), traitEntry.getValue());
+        }
+
         // check to ensure we either have this unique index or not
-        Optional<Structure> alreadyCreated = structureElasticRepository.findById(logicalIndexName);
+        Optional<Structure> alreadyCreated = readById(logicalIndexName);
 
         // ensure we are not trying to do something odd here, if you are updating we must have the same
         // version(updated field) from the request as we have in the database.
@@ -327,63 +369,104 @@ public class DefaultStructureService implements StructureService, StructureServi
             structure.setUpdated(System.currentTimeMillis());
         }
 
-        for(Map.Entry<String, Trait> traitEntry : structure.getTraits().entrySet()){
-            checkFieldNameFormat(traitEntry.getKey());
+        addDefaultTraits(structure.getTraits());
+
+        Structure ret;
+        if(alreadyCreated.isPresent() && alreadyCreated.get().isPublished()){
+            // can only update 'description', 'metadata', request limits, deleted item retention and item caching after publishing, we know we have already saved by this time
+            alreadyCreated.get().setDescription(structure.getDescription());
+            alreadyCreated.get().setMetadata(structure.getMetadata());
+            alreadyCreated.get().setRequestTimeout(structure.getRequestTimeout());
+            alreadyCreated.get().setTerminateAfter(structure.getTerminateAfter());
+            alreadyCreated.get().setDeletedItemRetention(structure.getDeletedItemRetention());
+            alreadyCreated.get().setArchiveDeletedItems(structure.isArchiveDeletedItems());
+            alreadyCreated.get().setCacheItems(structure.isCacheItems());
+            validateItemStorage(alreadyCreated.get());
+            alreadyCreated.get().setUpdated(System.currentTimeMillis());
+            ret = metadataStorage.save(alreadyCreated.get());
+            evictCachesFor(ret.getNamespace());
+        }else{
+            // can update everything until published
+            structure.setId(logicalIndexName);
+            ret = metadataStorage.save(structure);
         }
 
+        return ret;
+    }
+
+    /**
+     * Adds the traits every {@link Structure} must have, if not already present
+     */
+    private void addDefaultTraits(LinkedHashMap<String, Trait> traits) throws IOException {
         // defaults - we add our defaults in a ordered way (our tests depend on that when testing reordering)
 
         // id is not a "system managed" trait anymore
-        if(!structure.getTraits().containsKey("id")){
-            structure.getTraits().put("id", this.id);
+        if(!traits.containsKey("id")){
+            traits.put("id", this.id);
         }
-        if(!structure.getTraits().containsKey("deleted")){
-            structure.getTraits().put("deleted", this.deleted);
+        if(!traits.containsKey("deleted")){
+            traits.put("deleted", this.deleted);
         }
-        if(!structure.getTraits().containsKey("deletedTime")){
-            structure.getTraits().put("deletedTime", this.deletedTime);
+        if(!traits.containsKey("deletedTime")){
+            traits.put("deletedTime", this.deletedTime);
         }
-        if(!structure.getTraits().containsKey("updatedTime")){
-            structure.getTraits().put("updatedTime", this.updatedTime);
+        if(!traits.containsKey("updatedTime")){
+            traits.put("updatedTime", this.updatedTime);
         }
-        if(!structure.getTraits().containsKey("structureId")){
-            structure.getTraits().put("structureId", this.structureId);
+        if(!traits.containsKey("structureId")){
+            traits.put("structureId", this.structureId);
         }
 
         // now allow any user defined default traits to be added
         ArrayList<Trait> defaultTraits = new ArrayList<>(this.traitService.getAllSystemManaged());
         for(Trait trait : defaultTraits){
             boolean hasTrait = false;
-            for(Map.Entry<String, Trait> entry : structure.getTraits().entrySet()){
+            for(Map.Entry<String, Trait> entry : traits.entrySet()){
                 if(entry.getKey().equalsIgnoreCase(trait.getName())){
                     hasTrait = true;
                     break;
                 }
             }
             if(!hasTrait){
-                structure.getTraits().put(WordUtils.uncapitalize(trait.getName().trim()), trait);
+                traits.put(WordUtils.uncapitalize(trait.getName().trim()), trait);
             }
         }
+    }
 
-        Structure ret;
-        if(alreadyCreated.isPresent() && alreadyCreated.get().isPublished()){
-            // can only update 'description' and 'metadata' after publishing, we know we have already saved by this time
-            alreadyCreated.get().setDescription(structure.getDescription());
-            alreadyCreated.get().setMetadata(structure.getMetadata());
-            alreadyCreated.get().setUpdated(System.currentTimeMillis());
-            ret = structureElasticRepository.save(alreadyCreated.get());
-        }else{
-            // can update everything until published
-            structure.setId(logicalIndexName);
-            ret = structureElasticRepository.save(structure);
-        }
+    @Override
+    public Optional<Structure> getById(String id) throws IOException {
+        return circuitBreaker.call(() -> readById(id));
+    }
 
-        return ret;
+    @Override
+    public Optional<Structure> getById(String id, Map<String, Object> context) throws IOException {
+        return circuitBreaker.readWithFallback(id.toLowerCase(), lastKnownStructures, () -> readById(id), context);
+    }
+
+    private Optional<Structure> readById(String id) throws IOException {
+        return toStructure(metadataStorage.get(createGetRequest(id)));
     }
 
     @Override
-    public Optional<Structure> getById(String id) throws IOException {
-        GetResponse response = highLevelClient.get(new GetRequest("structure").id(id.toLowerCase()), RequestOptions.DEFAULT);
+    public Mono<Structure> findById(String id) {
+        return circuitBreaker.protect(readByIdAsync(id));
+    }
+
+    @Override
+    public Mono<Structure> findById(String id, Map<String, Object> context) {
+        return circuitBreaker.readWithFallback(id.toLowerCase(), lastKnownStructures, readByIdAsync(id), context);
+    }
+
+    private Mono<Structure> readByIdAsync(String id) {
+        return metadataStorage.getAsync(createGetRequest(id))
+                              .flatMap(response -> Mono.justOrEmpty(toStructure(response)));
+    }
+
+    private static GetRequest createGetRequest(String id) {
+        return new GetRequest("structure").id(id.toLowerCase());
+    }
+
+    private static Optional<Structure> toStructure(GetResponse response) {
         Structure ret = null;
         if (response.isExists()) {
             ret = EsHighLevelClientUtil.getTypeFromBytesReference(response.getSourceAsBytesRef(), Structure.class);
@@ -407,7 +490,8 @@ public class DefaultStructureService implements StructureService, StructureServi
 
     @Override
     public StructureHolder getStructureById(String id) throws IOException {
-        Structure structure = this.getById(id).orElseThrow();
+        // metadata reads are served from the last known copy while Elasticsearch is unavailable
+        Structure structure = this.getById(id, null).orElseThrow();
         LinkedList<TraitHolder> traits = new LinkedList<>();
         int index = 0;
         for(Map.Entry<String, Trait> traitEntry : structure.getTraits().entrySet()){
@@ -467,21 +551,15 @@ public class DefaultStructureService implements StructureService, StructureServi
         if(structure.isPublished()){
             // if its published we should check to see if we can remove the
             // ElasticSearch index, but only if there are not any items created
-            if(highLevelClient.indices().exists(new GetIndexRequest(structure.getItemIndex()), RequestOptions.DEFAULT)){
-                long countOfItemsForStructure = this.count(structure.getItemIndex());
+            if(itemIndexManager.itemIndexExists(structure)){
+                structure = changeItemIndexState(structure.getId(), ItemIndexState.OPEN);// items cannot be counted in a closed index
+                long countOfItemsForStructure = itemIndexManager.countItems(structure.getItemIndex(), QueryBuilders.termQuery("deleted", false));
 
                 if(countOfItemsForStructure > 0){
                     throw new IllegalStateException("you cannot delete a Structure until all Items associated are also deleted.");
                 }
-                DeleteIndexRequest request = new DeleteIndexRequest(structure.getItemIndex());
-                AcknowledgedResponse response = highLevelClient.indices().delete(request, RequestOptions.DEFAULT);
-                if(!response.isAcknowledged()){
-                    response = highLevelClient.indices().delete(request, RequestOptions.DEFAULT);
-                    if(!response.isAcknowledged()){
-                        throw new IllegalStateException("We were not able to delete requested index, please review and try again.");
-                    }
-                }
             }
+            itemIndexManager.deleteItemIndex(structure);
 
             // remove Object Reference Trait that was created when published.
             // if there are not more items then there can be no more reference logs
@@ -495,9 +573,11 @@ public class DefaultStructureService implements StructureService, StructureServi
 //            // FIXME: Need to handle exceptions and edge cases.
 //            highLevelClient.delete(request, RequestOptions.DEFAULT);
 
+            evictCachesFor(structure.getNamespace());
         }
 
-        structureElasticRepository.delete(structure);
+        metadataStorage.delete(structure);
+        lastKnownStructures.invalidate(structure.getId());
     }
 
     @Override
@@ -506,37 +586,19 @@ public class DefaultStructureService implements StructureService, StructureServi
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         if(!structure.isPublished()){
-            // this is when we create the index
-            HashMap<String, Object> settings = new HashMap<>();
-            settings.put("index.number_of_shards", 5);
-            settings.put("index.number_of_replicas", 2);
-            settings.put("index.refresh_interval", "1s");
-
-            /**
-             * fs
-             * Default file system implementation. This will pick the best implementation depending on the operating environment, which is currently mmapfs on all supported systems but is subject to change.
-             * simplefs
-             * The Simple FS type is a straightforward implementation of file system storage (maps to Lucene SimpleFsDirectory) using a random access file. This implementation has poor concurrent performance (multiple threads will bottleneck). It is usually better to use the niofs when you need index persistence.
-             * niofs
-             * The NIO FS type stores the shard index on the file system (maps to Lucene NIOFSDirectory) using NIO. It allows multiple threads to read from the same file concurrently. It is not recommended on Windows because of a bug in the SUN Java implementation.
-             * mmapfs
-             * The MMap FS type stores the shard index on the file system (maps to Lucene MMapDirectory) by mapping a file into memory (mmap). Memory mapping uses up a portion of the virtual memory address space in your process equal to the size of the file being mapped. Before using this class, be sure you have allowed plenty of virtual address space.
-             * https://www.elastic.co/guide/en/elasticsearch/reference/6.4/vm-max-map-count.html
-             */
-            settings.put("index.store.type", "fs");
+            validateIndexLayout(structure);
+            validateGraphQlTypeNames(structure);
 
-            // Item ES Index
-            CreateIndexRequest indexRequest = new CreateIndexRequest(structure.getItemIndex());
-            String mapping = getElasticSearchBaseMapping(structure);
-            indexRequest.mapping(mapping, XContentType.JSON);
-            indexRequest.settings(settings);
-            highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+            // this is when we create the index
+            itemIndexManager.createItemIndex(structure, getElasticSearchBaseMapping(structure));
 
             structure.setPublished(true);
             structure.setPublishedTimestamp(System.currentTimeMillis());
+            structure.setItemIndexState(ItemIndexState.OPEN);
             // version type field
             structure.setUpdated(structure.getPublishedTimestamp());
-            structureElasticRepository.save(structure);
+            metadataStorage.save(structure);
+            evictCachesFor(structure.getNamespace());
 
 
             // we can check that we have an object reference for it, if not create it.
@@ -565,26 +627,85 @@ public class DefaultStructureService implements StructureService, StructureServi
         }
     }
 
+    /**
+     * Ensures the fields used to sort and route the item index are part of the {@link Structure}, since neither can be changed once published.
+     * Shared structures use the settings of the shared index, so cannot have either.
+     */
+    private void validateIndexLayout(Structure structure){
+        validateItemStorage(structure);
+        if(ItemIndexManager.isShared(structure)){
+            if(structure.getRoutingField() != null){
+                throw new IllegalStateException("'" + structure.getId() + "' Structure is shared, shared structures are routed by structure and cannot have a routing field");
+            }
+            if(structure.getIndexSettings() != null && structure.getIndexSettings().getSort() != null){
+                throw new IllegalStateException("'" + structure.getId() + "' Structure is shared, shared structures cannot have an index sort");
+            }
+        }
+        if(structure.getRoutingField() != null){
+            Trait trait = structure.getTraits().get(structure.getRoutingField());
+            if(trait == null || trait.isOperational()){
+                throw new IllegalStateException("Routing field '" + structure.getRoutingField() + "' is not a field of '" + structure.getId() + "'");
+            }
+            if(!trait.isRequired()){
+                throw new IllegalStateException("Routing field '" + structure.getRoutingField() + "' must be required, every item needs a value for it");
+            }
+        }
+        if(structure.getIndexSettings() != null && structure.getIndexSettings().getSort() != null){
+            for(String field : structure.getIndexSettings().getSort().keySet()){
+                Trait trait = structure.getTraits().get(field);
+                if(trait == null || trait.isOperational() || !trait.isSortable() || trait.isStoredOnly()){
+                    throw new IllegalStateException("Index sort field '" + field + "' is not a sortable field of '" + structure.getId() + "'");
+                }
+            }
+        }
+    }
+
+    /**
+     * Item storage engines other than Elasticsearch use the item index name as given and keep no routing or archive,
+     * so only the features that do not need Elasticsearch to administer the indices can be used with them
+     */
+    private void validateItemStorage(Structure structure){
+        if(itemIndexManager.storesItemsInElasticsearch()){
+            return;
+        }
+        if(structure.getIndexMode() != null && structure.getIndexMode() != IndexMode.STANDARD){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure must use the STANDARD index mode, the configured item storage engine does not support " + structure.getIndexMode());
+        }
+        if(structure.getRoutingField() != null){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure cannot have a routing field, the configured item storage engine does not support routing");
+        }
+        if(structure.isArchiveDeletedItems()){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure cannot archive deleted items, the configured item storage engine does not support archiving");
+        }
+    }
+
+    /**
+     * All published structures in a namespace share one GraphQL schema, so the types for this one cannot have the same name as any other type in it
+     */
+    private void validateGraphQlTypeNames(Structure structure) throws IOException {
+        List<String> publishedNames = new ArrayList<>();
+        for(Structure published : getAllPublishedForNamespace(structure.getNamespace())){
+            publishedNames.add(published.getName());
+        }
+        String conflict = GraphQlTypeNames.findConflict(structure.getName(), publishedNames);
+        if(conflict != null){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure cannot be published, the GraphQL type '" + conflict + "' is already used in namespace '" + structure.getNamespace() + "'");
+        }
+    }
+
     @Override
     public StructureHolder unPublish(String structureId) throws IOException {
         Optional<Structure> optional = getById(structureId.toLowerCase());
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         if(structure.isPublished()){
-            if(highLevelClient.indices().exists(new GetIndexRequest(structure.getItemIndex()), RequestOptions.DEFAULT)){
-                DeleteIndexRequest request = new DeleteIndexRequest(structure.getItemIndex());
-                AcknowledgedResponse response = highLevelClient.indices().delete(request, RequestOptions.DEFAULT);
-                if(!response.isAcknowledged()){
-                    response = highLevelClient.indices().delete(request, RequestOptions.DEFAULT);
-                    if(!response.isAcknowledged()){
-                        throw new IllegalStateException("We were not able to delete requested index, please review and try again.");
-                    }
-                }
-            }
+            itemIndexManager.deleteItemIndex(structure);
             structure.setPublished(false);
             structure.setPublishedTimestamp(0);
+            structure.setItemIndexState(ItemIndexState.OPEN);
             structure.setUpdated(System.currentTimeMillis());
-            structureElasticRepository.save(structure);
+            metadataStorage.save(structure);
+            evictCachesFor(structure.getNamespace());
         }
 
         return getStructureById(structure.getId());
@@ -596,23 +717,27 @@ public class DefaultStructureService implements StructureService, StructureServi
         Structure structure = optional.orElseThrow();// will throw null pointer/element not available
 
         checkFieldNameFormat(fieldName);
+        MappingHelper.checkFieldUsage(fieldName, newTrait);
 
         if(structure.isPublished()){
+            if(structure.getPendingItemIndex() != null){
+                throw new IllegalStateException("'" + structure.getId() + "' Structure is being migrated, traits cannot be added until it completes.");
+            }
             if(structure.getTraits().containsKey(fieldName)){
                 throw new IllegalStateException("Field Name '"+fieldName+"' is already used, you cannot modify a published schema - only add to it.");
             }
+            structure = changeItemIndexState(structure.getId(), ItemIndexState.OPEN);
         }
 
         structure.getTraits().put(fieldName, newTrait);
         // version type field
         structure.setUpdated(System.currentTimeMillis());
-        structureElasticRepository.save(structure);
+        metadataStorage.save(structure);
 
         if(structure.isPublished()){
-            String mapping = "{ \"properties\": { \""+fieldName+"\": "+newTrait.getEsSchema()+" } }";
-            PutMappingRequest putMappingRequest = new PutMappingRequest(structure.getItemIndex());
-            putMappingRequest.source(mapping, XContentType.JSON);
-            highLevelClient.indices().putMapping(putMappingRequest, RequestOptions.DEFAULT);
+            String mapping = "{ \"properties\": { \""+fieldName+"\": "+MappingHelper.getFieldMapping(newTrait)+" } }";
+            itemIndexManager.putItemMapping(structure, mapping, getElasticSearchBaseMapping(structure));
+            evictCachesFor(structure.getNamespace());
         }
     }
 
@@ -652,7 +777,10 @@ public class DefaultStructureService implements StructureService, StructureServi
         // version type field
         structure.setUpdated(System.currentTimeMillis());
 
-        structureElasticRepository.save(structure);
+        metadataStorage.save(structure);
+        if(structure.isPublished()){
+            evictCachesFor(structure.getNamespace());
+        }
     }
 
     @Override
@@ -691,7 +819,10 @@ public class DefaultStructureService implements StructureService, StructureServi
         // version type field
         structure.setUpdated(System.currentTimeMillis());
 
-        structureElasticRepository.save(structure);
+        metadataStorage.save(structure);
+        if(structure.isPublished()){
+            evictCachesFor(structure.getNamespace());
+        }
 
     }
 
@@ -707,18 +838,311 @@ public class DefaultStructureService implements StructureService, StructureServi
         return getElasticSearchBaseMapping(structure);
     }
 
-    private long count(String indexName) throws IOException {
-        BoolQueryBuilder boolQueryBuilder = new BoolQueryBuilder();
-        boolQueryBuilder.filter(QueryBuilders.termQuery("deleted", false));
+    @Override
+    public ItemIndexMigration migrate(String structureId, LinkedHashMap<String, Trait> traits) throws IOException {
+        Structure structure = getById(structureId.toLowerCase()).orElseThrow();// will throw null pointer/element not available
 
-        SearchSourceBuilder builder = new SearchSourceBuilder();
-        builder.query(boolQueryBuilder);
-        builder.size(0);
-        SearchRequest request = new SearchRequest(indexName);
-        request.source(builder);
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
+        if(!structure.isPublished()){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure is not published, its traits can be changed directly.");
+        }
+        if(!itemIndexManager.storesItemsInElasticsearch()){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure cannot be migrated, the configured item storage engine does not support migrations.");
+        }
+        if(ItemIndexManager.isTimeSeries(structure)){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure is time series, new traits can only be added.");
+        }
+        if(structure.getPendingItemIndex() != null){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure is already being migrated.");
+        }
+        structure = changeItemIndexState(structure.getId(), ItemIndexState.OPEN);
+
+        LinkedHashMap<String, Trait> newTraits = new LinkedHashMap<>(traits);
+        for(Map.Entry<String, Trait> traitEntry : newTraits.entrySet()){
+            checkFieldNameFormat(traitEntry.getKey());
+            MappingHelper.checkFieldUsage(traitEntry.getKey(), traitEntry.getValue());
+        }
+        addDefaultTraits(newTraits);
+
+        ItemIndexMigration migration = new ItemIndexMigration();
+        migration.setStructureId(structure.getId());
+        migration.setStartedTime(System.currentTimeMillis());
+        migration.setSourceIndex(itemIndexManager.getCurrentIndex(structure));
+        migration.setTargetIndex(ItemIndexManager.nextVersionIndex(structure, migration.getSourceIndex()));
+
+        if(!clusterLeases.tryAcquire(getMigrationLeaseName(structure), MIGRATION_LEASE_DURATION)){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure is already being migrated.");
+        }
+
+        Structure migrated = new Structure();
+        migrated.setTraits(newTraits);
+        migrated.setRoutingField(structure.getRoutingField());
+
+        structure.setPendingItemIndex(migration.getTargetIndex());
+        structure.setPendingTraits(newTraits);
+        Set<String> removedFields = getRemovedFields(structure);
+        migrations.put(structure.getId(), migration);
+        String task;
+        try {
+            itemIndexManager.createMigrationIndex(structure, migration.getTargetIndex(), getElasticSearchBaseMapping(migrated));
+            task = itemIndexManager.startCopy(structure, migration.getTargetIndex(), removedFields);
+
+            // recorded so the migration can be resumed, or cleaned up, if this node stops before it completes
+            structure.setPendingItemIndexTask(task);
+            structure.setPendingItemIndexStartedTime(migration.getStartedTime());
+            structure.setUpdated(System.currentTimeMillis());
+            metadataStorage.save(structure);
+        } catch (Exception e) {
+            failMigration(migration, e);
+            releaseMigrationLease(getMigrationLeaseName(structure));
+            throw e;
+        }
+        log.info("Migrating items for '{}' from {} to {}", structure.getId(), migration.getSourceIndex(), migration.getTargetIndex());
+
+        monitorMigration(migration, task, removedFields);
+        return migration;
+    }
+
+    /**
+     * Resumes the migrations that were running on a node that has since stopped.
+     * The copy task runs in Elasticsearch, so it is still running or has completed, and is monitored from here on.
+     * A migration whose task was not recorded cannot be resumed, so it is cleaned up and has to be started again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeMigrations(){
+        try {
+            SearchSourceBuilder builder = new SearchSourceBuilder();
+            builder.query(QueryBuilders.existsQuery("pendingItemIndex"));
+            builder.size(10000);
+            for(StructureHolder holder : getStructures(builder).getContent()){
+                Structure structure = holder.getStructure();
+                if(!clusterLeases.tryAcquire(getMigrationLeaseName(structure), MIGRATION_LEASE_DURATION)){
+                    continue;// still running on another node
+                }
+                ItemIndexMigration migration = new ItemIndexMigration();
+                migration.setStructureId(structure.getId());
+                migration.setStartedTime(structure.getPendingItemIndexStartedTime());
+                migration.setSourceIndex(itemIndexManager.getCurrentIndex(structure));
+                migration.setTargetIndex(structure.getPendingItemIndex());
+                migrations.put(structure.getId(), migration);
+                if(migration.getSourceIndex().equals(migration.getTargetIndex())){
+                    // the node stopped after the swap, before the structure was saved
+                    saveCompletedMigration(structure);
+                    migration.setFinishedTime(System.currentTimeMillis());
+                    migration.setState(ItemIndexMigration.State.COMPLETED);
+                    releaseMigrationLease(getMigrationLeaseName(structure));
+                }else if(structure.getPendingItemIndexTask() == null){
+                    failMigration(migration, new IllegalStateException("The copy task for the migration was not recorded, it must be started again"));
+                    releaseMigrationLease(getMigrationLeaseName(structure));
+                }else{
+                    log.info("Resuming the migration of items for '{}' to {}", structure.getId(), migration.getTargetIndex());
+                    monitorMigration(migration, structure.getPendingItemIndexTask(), getRemovedFields(structure));
+                }
+            }
+        } catch (Exception e) {
+            log.error("Could not resume the migrations of items", e);
+        }
+    }
+
+    /**
+     * Polls the copy task until it completes, then completes the migration.
+     * The lease is renewed on every poll, if it is lost another node has taken over the migration and this one stops.
+     */
+    private void monitorMigration(ItemIndexMigration migration, String task, Set<String> removedFields){
+        String leaseName = getMigrationLeaseName(migration.getStructureId());
+        Mono.fromCallable(() -> {
+                if(!clusterLeases.tryAcquire(leaseName, MIGRATION_LEASE_DURATION)){
+                    throw new LeaseLostException();
+                }
+                return itemIndexManager.updateCopyProgress(task, migration);
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnNext(completed -> log.debug("Migration for '{}' has copied {} of {} items",
+                                            migration.getStructureId(), migration.getCopied(), migration.getTotal()))
+            .filter(completed -> completed)
+            .repeatWhenEmpty(Integer.MAX_VALUE, attempts -> attempts.delayElements(MIGRATION_POLL_INTERVAL))
+            .publishOn(Schedulers.boundedElastic())
+            .subscribe(completed -> {
+                try {
+                    completeMigration(migration, removedFields);
+                } catch (Exception e) {
+                    failMigration(migration, e);
+                } finally {
+                    releaseMigrationLease(leaseName);
+                }
+            }, throwable -> {
+                if(throwable instanceof LeaseLostException){
+                    log.warn("Another node has taken over the migration of items for '{}'", migration.getStructureId());
+                    migrations.remove(migration.getStructureId(), migration);
+                }else{
+                    failMigration(migration, throwable);
+                    releaseMigrationLease(leaseName);
+                }
+            });
+    }
+
+    private void releaseMigrationLease(String leaseName){
+        try {
+            clusterLeases.release(leaseName);
+        } catch (Exception e) {
+            log.warn("Could not release the lease " + leaseName + ", it will expire", e);
+        }
+    }
+
+    private static String getMigrationLeaseName(Structure structure){
+        return getMigrationLeaseName(structure.getId());
+    }
+
+    private static String getMigrationLeaseName(String structureId){
+        return "migration_" + structureId;
+    }
+
+    private static class LeaseLostException extends RuntimeException {
+        LeaseLostException() {
+            super("The migration lease was lost", null, false, false);
+        }
+    }
+
+    @Override
+    public ItemIndexMigration graduate(String structureId) throws IOException {
+        Structure structure = getById(structureId.toLowerCase()).orElseThrow();// will throw null pointer/element not available
+        if(!ItemIndexManager.isShared(structure)){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure already has an index of its own.");
+        }
+        // a shared structure is always migrated to an index of its own
+        return migrate(structureId, structure.getTraits());
+    }
+
+    @Override
+    public ItemIndexMigration getMigration(String structureId) {
+        return migrations.get(structureId.toLowerCase());
+    }
+
+    @Override
+    public Structure changeItemIndexState(String structureId, ItemIndexState state) throws IOException {
+        synchronized (itemIndexStateLocks.computeIfAbsent(structureId.toLowerCase(), id -> new Object())) {
+            Structure structure = getById(structureId).orElseThrow();// will throw null pointer/element not available
+            ItemIndexState current = structure.getItemIndexState() != null ? structure.getItemIndexState() : ItemIndexState.OPEN;
+            if(current == state){
+                return structure;
+            }
 
-        return response.getHits().getTotalHits().value;
+            if(current == ItemIndexState.CLOSED){
+                itemIndexManager.openItemIndex(structure, structuresProperties.getIdleIndexWarmUpTimeout());
+            }else if(current == ItemIndexState.READ_ONLY){
+                itemIndexManager.makeItemIndexWritable(structure);
+            }
+            if(state == ItemIndexState.CLOSED){
+                itemIndexManager.closeItemIndex(structure);
+            }else if(state == ItemIndexState.READ_ONLY){
+                itemIndexManager.makeItemIndexReadOnly(structure);
+            }
+
+            structure.setItemIndexState(state);
+            structure.setUpdated(System.currentTimeMillis());
+            Structure ret = metadataStorage.save(structure);
+            evictCachesFor(structure.getNamespace());
+            log.info("Item index for '{}' changed from {} to {}", structure.getId(), current, state);
+            return ret;
+        }
+    }
+
+    /**
+     * @return the fields that are in the current traits but not the pending ones, these are removed from items as they are copied
+     */
+    static Set<String> getRemovedFields(Structure structure){
+        Set<String> ret = new HashSet<>(structure.getTraits().keySet());
+        if(structure.getPendingTraits() != null){
+            ret.removeAll(structure.getPendingTraits().keySet());
+        }
+        return ret;
+    }
+
+    /**
+     * Copies the items changed while the copy task ran, then points the item index at the new index.
+     * Writes continue throughout, the item service also writes them to the pending index, see {@link Structure#getPendingItemIndex()}.
+     * The catch up copies the writes the item service could not, such as those made through a bulk update started before the migration.
+     * Both are written with the version the item has in the source, so neither replaces a newer copy of an item.
+     */
+    private void completeMigration(ItemIndexMigration migration, Set<String> removedFields) throws IOException, InterruptedException {
+        Structure structure = getById(migration.getStructureId()).orElseThrow();
+        if(!migration.getTargetIndex().equals(structure.getPendingItemIndex())){
+            log.info("Migration of items for '{}' to {} was already completed", structure.getId(), migration.getTargetIndex());
+            migration.setState(ItemIndexMigration.State.COMPLETED);
+            return;
+        }
+
+        itemIndexManager.copyChangedSince(structure,
+                                          migration.getTargetIndex(),
+                                          removedFields,
+                                          migration.getStartedTime() - MIGRATION_CLOCK_SKEW_MILLIS);
+        itemIndexManager.completeCopy(structure, migration.getTargetIndex());
+
+        long sourceCount = 0;
+        long targetCount = 0;
+        for(int attempt = 0; attempt < MIGRATION_COUNT_ATTEMPTS; attempt++){
+            if(attempt > 0){
+                Thread.sleep(MIGRATION_COUNT_RETRY_MILLIS);
+            }
+            // through the alias, since the source may be shared with other structures
+            sourceCount = itemIndexManager.countItems(structure.getItemIndex());
+            itemIndexManager.refreshIndex(migration.getTargetIndex());
+            targetCount = itemIndexManager.countItems(migration.getTargetIndex());
+            if(targetCount >= sourceCount){
+                break;
+            }
+        }
+        if(targetCount < sourceCount){
+            throw new IllegalStateException("Only " + targetCount + " of " + sourceCount + " items were copied to " + migration.getTargetIndex());
+        }
+
+        itemIndexManager.swapItemIndex(structure, migration.getSourceIndex(), migration.getTargetIndex());
+
+        saveCompletedMigration(structure);
+
+        migration.setFinishedTime(System.currentTimeMillis());
+        migration.setState(ItemIndexMigration.State.COMPLETED);
+        log.info("Migrated {} items for '{}' to {}", targetCount, structure.getId(), migration.getTargetIndex());
+    }
+
+    /**
+     * Records that the items of the structure are now in the pending index, with the pending traits
+     */
+    private void saveCompletedMigration(Structure structure) throws IOException {
+        structure.setTraits(structure.getPendingTraits());
+        structure.setPendingTraits(null);
+        structure.setPendingItemIndex(null);
+        structure.setPendingItemIndexTask(null);
+        structure.setPendingItemIndexStartedTime(0);
+        if(ItemIndexManager.isShared(structure)){
+            structure.setIndexMode(IndexMode.STANDARD);
+        }
+        structure.setUpdated(System.currentTimeMillis());
+        metadataStorage.save(structure);
+        evictCachesFor(structure.getNamespace());
+    }
+
+    private void failMigration(ItemIndexMigration migration, Throwable cause){
+        log.error("Migration of items for '" + migration.getStructureId() + "' to " + migration.getTargetIndex() + " failed", cause);
+        migration.setState(ItemIndexMigration.State.FAILED);
+        migration.setMessage(cause.getMessage());
+        migration.setFinishedTime(System.currentTimeMillis());
+        try {
+            Structure structure = getById(migration.getStructureId()).orElseThrow();
+            if(migration.getTargetIndex().equals(itemIndexManager.getCurrentIndex(structure))){
+                // the failure came after the swap, the target is now the only copy of the items so the migration is kept
+                saveCompletedMigration(structure);
+                return;
+            }
+            itemIndexManager.deleteIndex(migration.getTargetIndex());
+            structure.setPendingTraits(null);
+            structure.setPendingItemIndex(null);
+            structure.setPendingItemIndexTask(null);
+            structure.setPendingItemIndexStartedTime(0);
+            structure.setUpdated(System.currentTimeMillis());
+            metadataStorage.save(structure);
+        } catch (Exception e) {
+            log.error("Could not clean up the failed migration for '" + migration.getStructureId() + "'", e);
+        }
     }
 
     static void checkFieldNameFormat(String fieldName){
@@ -745,7 +1169,7 @@ public class DefaultStructureService implements StructureService, StructureServi
     }
 
     private Structures getStructures(SearchSourceBuilder builder) throws IOException {
-        SearchResponse response = highLevelClient.search(new SearchRequest("structure").source(builder), RequestOptions.DEFAULT);
+        SearchResponse response = metadataStorage.search(new SearchRequest("structure").source(builder));
         LinkedList<StructureHolder> holderList = new LinkedList<>();
         for(SearchHit hit : response.getHits()){
             Structure structure = EsHighLevelClientUtil.getTypeFromBytesReference(hit.getSourceRef(), Structure.class);
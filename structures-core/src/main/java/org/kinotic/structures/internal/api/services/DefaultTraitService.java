@@ -17,6 +17,7 @@
 
 package org.kinotic.structures.internal.api.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
@@ -24,9 +25,6 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.WriteRequest;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.client.indices.*;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
@@ -34,12 +32,12 @@ import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.xcontent.XContentBuilder;
 import org.elasticsearch.xcontent.XContentFactory;
-import org.elasticsearch.xcontent.XContentType;
 import org.kinotic.structures.api.domain.AlreadyExistsException;
 import org.kinotic.structures.api.domain.PermenentTraitException;
 import org.kinotic.structures.api.domain.Trait;
 import org.kinotic.structures.api.services.TraitService;
 import org.kinotic.structures.internal.api.services.util.EsHighLevelClientUtil;
+import org.kinotic.structures.internal.api.services.util.MappingHelper;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
@@ -55,10 +53,18 @@ public class DefaultTraitService implements TraitService {
     private static final String INDEX_NAME = "trait";
     private static final String MAPPING_JSON = "{ \"dynamic\": \"strict\", \"properties\":{\"created\":{\"type\":\"date\",\"format\":\"epoch_millis\"},\"describeTrait\":{\"type\":\"text\"},\"esSchema\":{\"type\":\"text\"},\"id\":{\"type\":\"text\",\"fields\":{\"keyword\":{\"type\":\"keyword\",\"ignore_above\":256}}},\"includeInLabel\":{\"type\":\"boolean\"},\"includeInQRCode\":{\"type\":\"boolean\"},\"name\":{\"type\":\"keyword\"},\"operational\":{\"type\":\"boolean\"},\"required\":{\"type\":\"boolean\"},\"schema\":{\"type\":\"text\"},\"systemManaged\":{\"type\":\"boolean\"},\"collection\":{\"type\":\"boolean\"},\"updated\":{\"type\":\"date\",\"format\":\"epoch_millis\"}}}}";
 
-    private RestHighLevelClient highLevelClient;
-
-    public DefaultTraitService(RestHighLevelClient highLevelClient){
-        this.highLevelClient = highLevelClient;
+    private MetadataStorage metadataStorage;
+    private ElasticsearchCircuitBreaker circuitBreaker;
+    // last known copies, returned while Elasticsearch is unavailable
+    private final Cache<String, Trait> lastKnownById;
+    private final Cache<String, Trait> lastKnownByName;
+
+    public DefaultTraitService(MetadataStorage metadataStorage,
+                               ElasticsearchCircuitBreaker circuitBreaker){
+        this.metadataStorage = metadataStorage;
+        this.circuitBreaker = circuitBreaker;
+        this.lastKnownById = circuitBreaker.createLastKnownCache();
+        this.lastKnownByName = circuitBreaker.createLastKnownCache();
     }
 
     @PostConstruct
@@ -69,6 +75,8 @@ public class DefaultTraitService implements TraitService {
     @Override
     public Trait save(Trait saveTrait) throws AlreadyExistsException, PermenentTraitException, IOException {
 
+        MappingHelper.checkFieldUsage(saveTrait.getName(), saveTrait);
+
         IndexRequest request = new IndexRequest(INDEX_NAME);
 
         if(saveTrait.getCreated() == 0){ // new trait, name must be unique
@@ -107,14 +115,23 @@ public class DefaultTraitService implements TraitService {
         request.source(builder);
 
         // FIXME: Need to handle exceptions and edge cases.
-        highLevelClient.index(request, RequestOptions.DEFAULT);
+        metadataStorage.index(request);
         return saveTrait;
     }
 
     @Override
     public Optional<Trait> getTraitById(String id) throws IOException {
+        return circuitBreaker.readWithFallback(id, lastKnownById, () -> readTraitById(id), null);
+    }
 
-        GetResponse response = highLevelClient.get(new GetRequest(INDEX_NAME).id(id), RequestOptions.DEFAULT);
+    @Override
+    public Optional<Trait> getTraitByName(String name) throws IOException {
+        return circuitBreaker.readWithFallback(name, lastKnownByName, () -> readTraitByName(name), null);
+    }
+
+    private Optional<Trait> readTraitById(String id) throws IOException {
+
+        GetResponse response = metadataStorage.get(new GetRequest(INDEX_NAME).id(id));
         Trait ret = null;
         if (response.isExists()) {
             ret = EsHighLevelClientUtil.getTypeFromBytesReference(response.getSourceAsBytesRef(), Trait.class);
@@ -123,8 +140,7 @@ public class DefaultTraitService implements TraitService {
         return Optional.ofNullable(ret);
     }
 
-    @Override
-    public Optional<Trait> getTraitByName(String name) throws IOException {
+    private Optional<Trait> readTraitByName(String name) throws IOException {
 
         BoolQueryBuilder boolQueryBuilder = new BoolQueryBuilder();
         boolQueryBuilder.filter(QueryBuilders.termQuery("name", name));
@@ -135,7 +151,7 @@ public class DefaultTraitService implements TraitService {
                 .from(0)
                 .size(10000));
 
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
+        SearchResponse response = metadataStorage.search(request);
 
         Trait ret = null;
         if(response.getHits().getTotalHits().value != 0){
@@ -154,7 +170,7 @@ public class DefaultTraitService implements TraitService {
         builder.query(boolBuilder);
         SearchRequest request = new SearchRequest(INDEX_NAME);
         request.source(builder);
-        SearchResponse response = highLevelClient.search(request, RequestOptions.DEFAULT);
+        SearchResponse response = metadataStorage.search(request);
 
         ArrayList<Trait> ret = new ArrayList<>();
         for(SearchHit hit : response.getHits()){
@@ -192,7 +208,9 @@ public class DefaultTraitService implements TraitService {
             request.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
 
             // FIXME: Need to handle exceptions and edge cases.
-            highLevelClient.delete(request, RequestOptions.DEFAULT);
+            metadataStorage.delete(request);
+            lastKnownById.invalidate(traitId);
+            lastKnownByName.invalidate(toBeDeleted.getName());
         }else{
             // what to do here? if anything.
         }
@@ -202,35 +220,14 @@ public class DefaultTraitService implements TraitService {
     @Override
     public void createTraitIndex() {
         try {
-            if(!highLevelClient.indices().exists(new GetIndexRequest(INDEX_NAME), RequestOptions.DEFAULT)){
-                HashMap<String, Object> settings = new HashMap<>();
-                settings.put("index.number_of_shards", 5);
-                settings.put("index.number_of_replicas", 2);
-                settings.put("index.refresh_interval", "1s");
-                settings.put("index.store.type", "fs");
-
-                CreateIndexRequest indexRequest = new CreateIndexRequest(INDEX_NAME);
-                indexRequest.mapping(MAPPING_JSON, XContentType.JSON);
-                indexRequest.settings(settings);
-                highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
-            }else{
-                GetMappingsRequest request = new GetMappingsRequest();
-                request.indices(INDEX_NAME);
-                GetMappingsResponse getMappingResponse = highLevelClient.indices().getMapping(request, RequestOptions.DEFAULT);
-                if(!getMappingResponse.mappings().containsKey("collection")){
-                    String mapping = "{ \"properties\": { \"collection\": {\"type\":\"boolean\"} } }";
-                    PutMappingRequest putMappingRequest = new PutMappingRequest(INDEX_NAME);
-                    putMappingRequest.source(mapping, XContentType.JSON);
-                    highLevelClient.indices().putMapping(putMappingRequest, RequestOptions.DEFAULT);
-                }
-            }
+            metadataStorage.createIndex(INDEX_NAME, MAPPING_JSON);
         } catch (Exception e) {
             throw new IllegalStateException("We were not able to check for '"+INDEX_NAME+"' existence or create '"+INDEX_NAME+"' index.", e);
         }
     }
 
     private SearchHits getTraits(SearchSourceBuilder builder) throws IOException {
-        SearchResponse response = highLevelClient.search(new SearchRequest(INDEX_NAME).source(builder), RequestOptions.DEFAULT);
+        SearchResponse response = metadataStorage.search(new SearchRequest(INDEX_NAME).source(builder));
         return response.getHits();
     }
 }
@@ -0,0 +1,101 @@
+package org.kinotic.structures.internal.api.services;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Direct memory used by the {@link ItemSourceCache}, allocated in slabs which are split into fixed size blocks.
+ * Slabs are only allocated when all the blocks are in use, up to the capacity, and are kept for the life of the pool.
+ * Blocks are handed out and given back through a free list, so caching an item never allocates direct memory,
+ * which is slow to allocate and is only freed once the garbage collector finds the buffer unreachable.
+ */
+final class DirectBlockPool {
+
+    static final int BLOCK_SIZE = 1024;
+    private static final int BLOCKS_PER_SLAB = 1024;
+
+    private final ByteBuffer[] slabs;
+    private int slabCount;
+    private int[] free = new int[0];
+    private int freeCount;
+
+    /**
+     * @param capacity the most direct memory the pool will allocate, rounded up to a whole slab
+     */
+    DirectBlockPool(long capacity) {
+        long slabSize = (long) BLOCK_SIZE * BLOCKS_PER_SLAB;
+        this.slabs = new ByteBuffer[(int) Math.max(1, (capacity + slabSize - 1) / slabSize)];
+    }
+
+    /**
+     * Copies the bytes into free blocks
+     * @return the blocks holding the bytes, or null if there are not enough free blocks left
+     */
+    int[] write(byte[] bytes) {
+        int[] ret = allocate((bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (ret != null) {
+            for (int i = 0; i < ret.length; i++) {
+                int offset = i * BLOCK_SIZE;
+                block(ret[i]).put(bytes, offset, Math.min(BLOCK_SIZE, bytes.length - offset));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Copies the bytes held by the blocks, which must not be released until this returns
+     */
+    byte[] read(int[] blocks, int length) {
+        byte[] ret = new byte[length];
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * BLOCK_SIZE;
+            block(blocks[i]).get(ret, offset, Math.min(BLOCK_SIZE, length - offset));
+        }
+        return ret;
+    }
+
+    synchronized void release(int[] blocks) {
+        for (int block : blocks) {
+            free[freeCount++] = block;
+        }
+    }
+
+    /**
+     * @return the bytes of direct memory in blocks that have not been released
+     */
+    synchronized long getUsedBytes() {
+        return ((long) slabCount * BLOCKS_PER_SLAB - freeCount) * BLOCK_SIZE;
+    }
+
+    private synchronized int[] allocate(int count) {
+        while (freeCount < count && slabCount < slabs.length) {
+            addSlab();
+        }
+        if (freeCount < count) {
+            return null;
+        }
+        int[] ret = new int[count];
+        for (int i = 0; i < count; i++) {
+            ret[i] = free[--freeCount];
+        }
+        return ret;
+    }
+
+    private void addSlab() {
+        int slab = slabCount++;
+        slabs[slab] = ByteBuffer.allocateDirect(BLOCK_SIZE * BLOCKS_PER_SLAB);
+        free = Arrays.copyOf(free, slabCount * BLOCKS_PER_SLAB);
+        for (int i = 0; i < BLOCKS_PER_SLAB; i++) {
+            free[freeCount++] = slab * BLOCKS_PER_SLAB + i;
+        }
+    }
+
+    /**
+     * A block is only handed out after its slab was allocated, so the slab is visible to whoever was given the block
+     */
+    private ByteBuffer block(int block) {
+        ByteBuffer ret = slabs[block / BLOCKS_PER_SLAB].duplicate();
+        ret.position((block % BLOCKS_PER_SLAB) * BLOCK_SIZE);
+        return ret;
+    }
+}
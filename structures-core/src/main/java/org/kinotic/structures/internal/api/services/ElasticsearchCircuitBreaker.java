@@ -0,0 +1,379 @@
+package org.kinotic.structures.internal.api.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.core.TimeValue;
+import org.kinotic.structures.api.domain.ElasticsearchUnavailableException;
+import org.kinotic.structures.internal.api.services.util.StaleReads;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Stops requests being sent to Elasticsearch while it is unavailable, so they fail with an {@link ElasticsearchUnavailableException}
+ * straight away instead of tying up a thread until a socket times out.
+ * <p>
+ * The breaker opens when the failure rate of the most recent requests passes structures.elastic-circuit-breaker-failure-rate-threshold,
+ * or when the cluster health, checked every structures.elastic-health-check-interval, is red or cannot be fetched.
+ * Once structures.elastic-circuit-breaker-open-duration has passed a single request is let through, which closes the breaker if it succeeds.
+ * A successful health check that is not red also closes it.
+ * Only connection failures, timeouts and 5xx or 429 responses count as failures, a missing document or a bad query means Elasticsearch is working.
+ * <p>
+ * Metadata is read with {@link #readWithFallback(String, Cache, ElasticsearchCall, Map)}, which serves the last copy read while Elasticsearch is unavailable.
+ * The breaker is always closed when structures.item-storage-engine is not elasticsearch.
+ */
+@Component
+public class ElasticsearchCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchCircuitBreaker.class);
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final RestHighLevelClient highLevelClient;
+    private final StructuresProperties structuresProperties;
+    private final boolean[] outcomes;
+    private final int minimumRequests;
+
+    private volatile State state = State.CLOSED;
+    private String openReason;
+    private long openedAt;
+    private boolean probeInProgress;
+    private int position;
+    private int recorded;
+    private int failures;
+    private Disposable schedule;
+
+    public ElasticsearchCircuitBreaker(RestHighLevelClient highLevelClient, StructuresProperties structuresProperties) {
+        this.highLevelClient = highLevelClient;
+        this.structuresProperties = structuresProperties;
+        this.outcomes = new boolean[Math.max(1, structuresProperties.getElasticCircuitBreakerWindowSize())];
+        this.minimumRequests = Math.max(1, outcomes.length / 2);
+    }
+
+    /**
+     * Nothing is sent to Elasticsearch when the items are kept on the node, so there is nothing to protect and no health to check.
+     * The property is used rather than the {@link org.kinotic.structures.internal.api.services.storage.ItemStorageEngine},
+     * since the Elasticsearch engine sends its requests through this breaker.
+     */
+    private boolean isEnabled() {
+        return structuresProperties.isElasticCircuitBreakerEnabled()
+                && "elasticsearch".equals(structuresProperties.getItemStorageEngine());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        Duration interval = structuresProperties.getElasticHealthCheckInterval();
+        schedule = Flux.interval(interval, interval, Schedulers.boundedElastic())
+                       .onBackpressureDrop()
+                       .concatMap(tick -> Mono.fromRunnable(this::checkHealth))
+                       .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    /**
+     * @return true if requests are not currently being sent to Elasticsearch
+     */
+    public boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    /**
+     * Executes a blocking request to Elasticsearch, unless the breaker is open
+     * @throws ElasticsearchUnavailableException if the breaker is open
+     */
+    public <T> T call(ElasticsearchCall<T> call) throws IOException {
+        checkAvailable();
+        T ret;
+        try {
+            ret = call.call();
+        } catch (IOException | RuntimeException e) {
+            recordFailure(e);
+            throw e;
+        }
+        recordSuccess();
+        return ret;
+    }
+
+    /**
+     * Subscribes to the request when subscribed to, unless the breaker is open in which case the {@link Mono} errors with an {@link ElasticsearchUnavailableException}
+     */
+    public <T> Mono<T> protect(Mono<T> request) {
+        return Mono.defer(() -> {
+            try {
+                checkAvailable();
+            } catch (ElasticsearchUnavailableException e) {
+                return Mono.error(e);
+            }
+            return request.doOnSuccess(value -> recordSuccess())
+                          .doOnError(this::recordFailure)
+                          .doOnCancel(this::releaseProbe);
+        });
+    }
+
+    /**
+     * Reads metadata from Elasticsearch, keeping the last copy read so it can be returned if Elasticsearch becomes unavailable.
+     * @param key the metadata is kept under
+     * @param lastKnown created with {@link #createLastKnownCache()}
+     * @param read the request for the metadata
+     * @param context the stale read is recorded in with {@link StaleReads}, can be null
+     * @return the metadata, or the last copy read if Elasticsearch is unavailable
+     * @throws IOException if the read failed and there is no copy to return
+     */
+    public <T> Optional<T> readWithFallback(String key,
+                                            Cache<String, T> lastKnown,
+                                            ElasticsearchCall<Optional<T>> read,
+                                            Map<String, Object> context) throws IOException {
+        Optional<T> ret;
+        try {
+            ret = call(read);
+        } catch (IOException | RuntimeException e) {
+            T stale = isUnavailable(e) ? lastKnown.getIfPresent(key) : null;
+            if (stale == null) {
+                throw e;
+            }
+            log.debug("Returning the last known copy of '{}' since Elasticsearch is unavailable", key);
+            StaleReads.markStale(context);
+            return Optional.of(stale);
+        }
+        if (ret.isPresent()) {
+            lastKnown.put(key, ret.get());
+        } else {
+            lastKnown.invalidate(key);
+        }
+        return ret;
+    }
+
+    /**
+     * Non-blocking version of {@link #readWithFallback(String, Cache, ElasticsearchCall, Map)}
+     */
+    public <T> Mono<T> readWithFallback(String key,
+                                        Cache<String, T> lastKnown,
+                                        Mono<T> read,
+                                        Map<String, Object> context) {
+        return protect(read)
+                .doOnSuccess(value -> {
+                    if (value != null) {
+                        lastKnown.put(key, value);
+                    } else {
+                        lastKnown.invalidate(key);
+                    }
+                })
+                .onErrorResume(this::isUnavailable, e -> {
+                    T stale = lastKnown.getIfPresent(key);
+                    if (stale == null) {
+                        return Mono.error(e);
+                    }
+                    StaleReads.markStale(context);
+                    return Mono.just(stale);
+                });
+    }
+
+    /**
+     * @return a cache for the last known copies of a type of metadata, bounded by structures.stale-metadata-maximum-size
+     */
+    public <T> Cache<String, T> createLastKnownCache() {
+        return Caffeine.newBuilder()
+                       .maximumSize(structuresProperties.getStaleMetadataMaximumSize())
+                       .build();
+    }
+
+    /**
+     * @return true if the error means Elasticsearch could not be reached or could not handle the request, rather than the request being wrong
+     */
+    public boolean isUnavailable(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof ElasticsearchUnavailableException || current instanceof TimeoutException) {
+                return true;
+            }
+            if (current instanceof ResponseException) {
+                return isUnavailableStatus(((ResponseException) current).getResponse().getStatusLine().getStatusCode());
+            }
+            if (current instanceof ElasticsearchException) {
+                return isUnavailableStatus(((ElasticsearchException) current).status().getStatus());
+            }
+            if (current instanceof IOException) {
+                // connection refused or reset, socket timeouts and the like
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void checkHealth() {
+        if (!isEnabled()) {
+            return;
+        }
+        int timeout = (int) structuresProperties.getElasticHealthCheckInterval().toMillis();
+        RequestOptions options = RequestOptions.DEFAULT.toBuilder()
+                                                       .setRequestConfig(RequestConfig.custom()
+                                                                                      .setConnectTimeout(timeout)
+                                                                                      .setSocketTimeout(timeout)
+                                                                                      .build())
+                                                       .build();
+        try {
+            ClusterHealthRequest request = new ClusterHealthRequest().timeout(TimeValue.timeValueMillis(timeout));
+            ClusterHealthStatus status = highLevelClient.cluster().health(request, options).getStatus();
+            if (status == ClusterHealthStatus.RED) {
+                open("cluster health is red");
+            } else if (isOpen()) {
+                close();
+            }
+        } catch (Exception e) {
+            if (isUnavailable(e)) {
+                open("the cluster health could not be checked, " + e.getMessage());
+            } else {
+                log.warn("Could not check the Elasticsearch cluster health", e);
+            }
+        }
+    }
+
+    private void checkAvailable() throws ElasticsearchUnavailableException {
+        if (!isEnabled() || state == State.CLOSED) {
+            return;
+        }
+        String reason;
+        synchronized (this) {
+            if (state == State.OPEN
+                    && System.currentTimeMillis() - openedAt >= structuresProperties.getElasticCircuitBreakerOpenDuration().toMillis()) {
+                state = State.HALF_OPEN;
+                probeInProgress = false;
+            }
+            if (state == State.CLOSED || (state == State.HALF_OPEN && !probeInProgress)) {
+                probeInProgress = state == State.HALF_OPEN;
+                return;
+            }
+            reason = openReason;
+        }
+        throw new ElasticsearchUnavailableException("Elasticsearch is unavailable, " + reason);
+    }
+
+    private void recordSuccess() {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                close();
+                return;
+            }
+            record(false);
+        }
+    }
+
+    private void recordFailure(Throwable error) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!isUnavailable(error)) {
+            // Elasticsearch answered, the request was just not one it could complete
+            recordSuccess();
+            return;
+        }
+        if (error instanceof ElasticsearchUnavailableException) {
+            return;
+        }
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                open(error.getMessage());
+                return;
+            }
+            record(true);
+            if (state == State.CLOSED
+                    && recorded >= minimumRequests
+                    && failures * 100 >= structuresProperties.getElasticCircuitBreakerFailureRateThreshold() * recorded) {
+                open(failures + " of the last " + recorded + " requests failed");
+            }
+        }
+    }
+
+    private synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probeInProgress = false;
+        }
+    }
+
+    private void record(boolean failure) {
+        if (recorded == outcomes.length) {
+            if (outcomes[position]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % outcomes.length;
+    }
+
+    private synchronized void open(String reason) {
+        if (state != State.OPEN) {
+            log.warn("Not sending requests to Elasticsearch for at least {}, {}",
+                     structuresProperties.getElasticCircuitBreakerOpenDuration(), reason);
+        }
+        state = State.OPEN;
+        openReason = reason;
+        openedAt = System.currentTimeMillis();
+        probeInProgress = false;
+    }
+
+    private synchronized void close() {
+        if (state != State.CLOSED) {
+            log.info("Elasticsearch is available again, sending requests to it");
+        }
+        state = State.CLOSED;
+        openReason = null;
+        probeInProgress = false;
+        position = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    private static boolean isUnavailableStatus(int status) {
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * A blocking request to Elasticsearch
+     */
+    @FunctionalInterface
+    public interface ElasticsearchCall<T> {
+        T call() throws IOException;
+    }
+
+}
@@ -0,0 +1,188 @@
+package org.kinotic.structures.internal.api.services;
+
+import org.kinotic.structures.api.domain.IndexMode;
+import org.kinotic.structures.api.domain.ItemIndexState;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.config.IdleIndexAction;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of when the items of each {@link Structure} were last accessed, and periodically closes or makes read only
+ * the item indices that have been idle for longer than {@link StructuresProperties#getIdleIndexThreshold()}.
+ * The next access to the items of such a {@link Structure} reopens its index before continuing, see {@link #ensureAvailable(Structure, boolean)}.
+ * <p>
+ * Access times are only known to the node that served the request, so an index is only considered idle once Elasticsearch also reports
+ * that no node has searched, read or written it for the threshold. Only the node holding the idle index lease checks for idle indices.
+ * An index may still be closed just as another node starts to use it, which only costs that node a reopen,
+ * since the state of the index is kept with the {@link Structure}.
+ */
+@Component
+public class IdleItemIndexManager {
+
+    private static final Logger log = LoggerFactory.getLogger(IdleItemIndexManager.class);
+    private static final String LEASE_NAME = "idle_item_indices";
+
+    private final StructureServiceInternal structureService;
+    private final StructuresProperties structuresProperties;
+    private final ItemIndexManager itemIndexManager;
+    private final ClusterLeases clusterLeases;
+    private final ConcurrentHashMap<String, Long> lastAccessed = new ConcurrentHashMap<>();
+    // the operation count Elasticsearch reported for each item index, and when it was last seen to change
+    private final ConcurrentHashMap<String, OperationCount> operationCounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> reopenLocks = new ConcurrentHashMap<>();
+    // structures never accessed on this node are considered accessed at startup, so a restart does not close everything at once
+    private final long startedTime = System.currentTimeMillis();
+    private Disposable schedule;
+
+    public IdleItemIndexManager(StructureServiceInternal structureService,
+                                StructuresProperties structuresProperties,
+                                ItemIndexManager itemIndexManager,
+                                ClusterLeases clusterLeases) {
+        this.structureService = structureService;
+        this.structuresProperties = structuresProperties;
+        this.itemIndexManager = itemIndexManager;
+        this.clusterLeases = clusterLeases;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (structuresProperties.getIdleIndexAction() == IdleIndexAction.NONE) {
+            return;
+        }
+        Duration interval = structuresProperties.getIdleIndexCheckInterval();
+        schedule = Flux.interval(interval, interval, Schedulers.boundedElastic())
+                       .onBackpressureDrop()
+                       .concatMap(tick -> Mono.fromRunnable(this::closeIdleAll))
+                       .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    /**
+     * Records an access to the items of the {@link Structure}, and reopens its item index if it cannot serve the access in its current state
+     * @param structure whose items are about to be accessed
+     * @param forWrite true if items will be written, which a read only index must be reopened for
+     * @return the {@link Structure}, refreshed if its item index had to be reopened
+     */
+    public Structure ensureAvailable(Structure structure, boolean forWrite) throws IOException {
+        lastAccessed.put(structure.getId(), System.currentTimeMillis());
+        if (isAvailable(structure, forWrite)) {
+            return structure;
+        }
+        synchronized (reopenLocks.computeIfAbsent(structure.getId(), id -> new Object())) {
+            // another request may have reopened it while we waited
+            Structure current = structureService.getById(structure.getId()).orElseThrow();
+            if (isAvailable(current, forWrite)) {
+                return current;
+            }
+            return structureService.changeItemIndexState(current.getId(), ItemIndexState.OPEN);
+        }
+    }
+
+    /**
+     * Non-blocking version of {@link #ensureAvailable(Structure, boolean)}, which only leaves the calling thread when the index must be reopened
+     */
+    public Mono<Structure> ensureAvailableAsync(Structure structure, boolean forWrite) {
+        if (isAvailable(structure, forWrite)) {
+            lastAccessed.put(structure.getId(), System.currentTimeMillis());
+            return Mono.just(structure);
+        }
+        return Mono.fromCallable(() -> ensureAvailable(structure, forWrite))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    void closeIdleAll() {
+        try {
+            // held for an interval past the last check, so the same node keeps checking and its operation counts stay meaningful
+            if (!clusterLeases.tryAcquire(LEASE_NAME, structuresProperties.getIdleIndexCheckInterval().multipliedBy(2))) {
+                operationCounts.clear();
+                return;
+            }
+            for (String namespace : structureService.getAllNamespacesWithPublishedStructures()) {
+                for (Structure structure : structureService.getAllPublishedForNamespace(namespace)) {
+                    try {
+                        closeIfIdle(structure);
+                    } catch (Exception e) {
+                        log.warn("Failed to change the item index for idle '" + structure.getId() + "'", e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to check for idle item indices", e);
+        }
+    }
+
+    /**
+     * Applies the configured {@link IdleIndexAction} to the item index of the {@link Structure} if it has been idle long enough.
+     * Only {@link IndexMode#STANDARD} indices are changed, time series indices are managed by their lifecycle policy and shared ones are used by other Structures.
+     * Nothing is changed when the items are not kept in Elasticsearch, since the indices closed would not hold them.
+     * @return true if the item index was changed
+     */
+    public boolean closeIfIdle(Structure structure) throws IOException {
+        IdleIndexAction action = structuresProperties.getIdleIndexAction();
+        if (action == IdleIndexAction.NONE
+                || !itemIndexManager.storesItemsInElasticsearch()
+                || structure.getIndexMode() != IndexMode.STANDARD
+                || structure.getPendingItemIndex() != null
+                || structure.getItemIndexState() != ItemIndexState.OPEN) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long threshold = structuresProperties.getIdleIndexThreshold().toMillis();
+        long lastAccess = lastAccessed.getOrDefault(structure.getId(), Math.max(startedTime, structure.getPublishedTimestamp()));
+        if (now - lastAccess < threshold) {
+            return false;
+        }
+        // accesses served by other nodes are only known through the stats Elasticsearch keeps for the index
+        long count = itemIndexManager.getOperationCount(structure);
+        OperationCount previous = operationCounts.get(structure.getId());
+        if (previous == null || previous.count != count) {
+            operationCounts.put(structure.getId(), new OperationCount(count, now));
+            return false;
+        }
+        if (now - previous.changedTime < threshold) {
+            return false;
+        }
+        structureService.changeItemIndexState(structure.getId(),
+                                              action == IdleIndexAction.CLOSE ? ItemIndexState.CLOSED : ItemIndexState.READ_ONLY);
+        lastAccessed.remove(structure.getId());
+        operationCounts.remove(structure.getId());
+        return true;
+    }
+
+    private static final class OperationCount {
+        private final long count;
+        private final long changedTime;
+
+        private OperationCount(long count, long changedTime) {
+            this.count = count;
+            this.changedTime = changedTime;
+        }
+    }
+
+    private static boolean isAvailable(Structure structure, boolean forWrite) {
+        ItemIndexState state = structure.getItemIndexState();
+        return state == null
+                || state == ItemIndexState.OPEN
+                || (state == ItemIndexState.READ_ONLY && !forWrite);
+    }
+}
@@ -0,0 +1,43 @@
+package org.kinotic.structures.internal.api.services;
+
+import org.kinotic.structures.internal.api.services.util.ItemChangeEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * In memory stream of the item modifications made through this node.
+ * <p>
+ * Events are delivered best effort, a subscriber that is not keeping up will miss events rather than slow down writes.
+ * When nobody is subscribed emitting is a no-op, so writers can check {@link #hasSubscribers()} before doing any work to build an event.
+ */
+@Component
+public class ItemChangeStream {
+
+    private final Sinks.Many<ItemChangeEvent> sink = Sinks.many().multicast().directBestEffort();
+
+    public boolean hasSubscribers(){
+        return sink.currentSubscriberCount() > 0;
+    }
+
+    public void emit(ItemChangeEvent event){
+        if(hasSubscribers()){
+            // the sink does not allow concurrent emission, and writes happen on many threads
+            synchronized (sink){
+                sink.tryEmitNext(event);
+            }
+        }
+    }
+
+    /**
+     * @param structureId to receive changes for
+     * @return the changes made to items of the structure from the time of subscription
+     */
+    public Flux<ItemChangeEvent> changes(String structureId){
+        return sink.asFlux()
+                   .filter(event -> event.getStructureId().equals(structureId))
+                   // hand off so emitting never waits on a subscriber doing work
+                   .publishOn(Schedulers.parallel());
+    }
+}
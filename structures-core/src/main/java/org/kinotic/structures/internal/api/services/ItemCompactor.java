@@ -0,0 +1,157 @@
+package org.kinotic.structures.internal.api.services;
+
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.kinotic.structures.api.domain.ItemIndexState;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Deleting an item only marks it as deleted, so it can still be referenced and restored.
+ * This periodically removes the deleted items that are older than the retention of their {@link Structure},
+ * so the size of an index and the cost of searching it stay proportional to the items that are not deleted.
+ * <p>
+ * Only the node holding the compaction lease removes items. The lease is renewed as it works and is not released,
+ * so the same node keeps compacting until it stops, after which another node takes over within an interval.
+ * Removing the items of a large Structure can take longer than the lease, so it is also renewed in the background while a Structure is compacted.
+ */
+@Component
+public class ItemCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemCompactor.class);
+    private static final String LEASE_NAME = "item_compaction";
+
+    private final StructureServiceInternal structureService;
+    private final ItemIndexManager itemIndexManager;
+    private final StructuresProperties structuresProperties;
+    private final ItemSourceCache itemSourceCache;
+    private final ClusterLeases clusterLeases;
+    private Disposable schedule;
+
+    public ItemCompactor(StructureServiceInternal structureService,
+                         ItemIndexManager itemIndexManager,
+                         StructuresProperties structuresProperties,
+                         ItemSourceCache itemSourceCache,
+                         ClusterLeases clusterLeases) {
+        this.structureService = structureService;
+        this.itemIndexManager = itemIndexManager;
+        this.structuresProperties = structuresProperties;
+        this.itemSourceCache = itemSourceCache;
+        this.clusterLeases = clusterLeases;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Duration interval = structuresProperties.getItemCompactionInterval();
+        schedule = Flux.interval(interval, interval, Schedulers.boundedElastic())
+                       // a run that takes longer than the interval just delays the next one
+                       .onBackpressureDrop()
+                       .concatMap(tick -> Mono.fromRunnable(this::compactAll))
+                       .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    /**
+     * Removes the deleted items of every published {@link Structure}, if this node holds or can take the compaction lease
+     */
+    public void compactAll() {
+        try {
+            for (String namespace : structureService.getAllNamespacesWithPublishedStructures()) {
+                for (Structure structure : structureService.getAllPublishedForNamespace(namespace)) {
+                    if (!clusterLeases.tryAcquire(LEASE_NAME, structuresProperties.getItemCompactionInterval())) {
+                        log.debug("Another node is removing deleted items");
+                        return;
+                    }
+                    Disposable heartbeat = renewLeaseWhileCompacting(structure);
+                    try {
+                        compact(structure);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        log.warn("Failed to remove deleted items for '" + structure.getId() + "'", e);
+                    } finally {
+                        heartbeat.dispose();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to remove deleted items", e);
+        }
+    }
+
+    private Disposable renewLeaseWhileCompacting(Structure structure) {
+        Duration leaseDuration = structuresProperties.getItemCompactionInterval();
+        Duration renewInterval = leaseDuration.dividedBy(3);
+        return Flux.interval(renewInterval, renewInterval, Schedulers.boundedElastic())
+                   .onBackpressureDrop()
+                   .concatMap(tick -> Mono.fromCallable(() -> clusterLeases.tryAcquire(LEASE_NAME, leaseDuration))
+                                          .onErrorResume(e -> {
+                                              log.warn("Failed to renew the compaction lease", e);
+                                              return Mono.just(true);
+                                          }))
+                   .subscribe(held -> {
+                       if (!held) {
+                           log.warn("The compaction lease was lost while removing deleted items for '{}'", structure.getId());
+                       }
+                   });
+    }
+
+    /**
+     * Removes the deleted items of the {@link Structure} that are older than its retention, archiving them first if configured to
+     * @param structure to remove the deleted items for
+     * @return the number of items removed
+     */
+    public long compact(Structure structure) throws IOException, InterruptedException {
+        String retention = structure.getDeletedItemRetention() != null
+                ? structure.getDeletedItemRetention()
+                : structuresProperties.getDefaultDeletedItemRetention();
+        // items removed during a migration would come back once it completes, and idle indices are left alone until they are used again
+        if (retention == null
+                || structure.getPendingItemIndex() != null
+                || (structure.getItemIndexState() != null && structure.getItemIndexState() != ItemIndexState.OPEN)) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - TimeValue.parseTimeValue(retention, "deletedItemRetention").millis();
+        QueryBuilder query = QueryBuilders.boolQuery()
+                                          .filter(QueryBuilders.termQuery("deleted", true))
+                                          .filter(QueryBuilders.rangeQuery("deletedTime").lt(cutoff));
+
+        long count = itemIndexManager.countItems(structure.getItemIndex(), query);
+        if (count == 0) {
+            return 0;
+        }
+
+        float requestsPerSecond = structuresProperties.getItemCompactionRequestsPerSecond();
+        if (structure.isArchiveDeletedItems()
+                && !itemIndexManager.archiveItems(structure, query, structureService.getElasticSearchBaseMapping(structure), requestsPerSecond)) {
+            log.warn("Not all deleted items for '{}' could be archived, they will not be removed", structure.getId());
+            return 0;
+        }
+
+        itemIndexManager.deleteItems(structure, query, requestsPerSecond);
+        itemSourceCache.invalidateAll(structure.getId());
+        log.info("Removed {} deleted items for '{}'", count, structure.getId());
+        return count;
+    }
+}
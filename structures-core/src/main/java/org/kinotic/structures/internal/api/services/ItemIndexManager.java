@@ -0,0 +1,879 @@
+package org.kinotic.structures.internal.api.services;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeResponse;
+import org.elasticsearch.action.admin.indices.open.OpenIndexRequest;
+import org.elasticsearch.action.admin.indices.open.OpenIndexResponse;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.ActiveShardCount;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.indexlifecycle.DeleteAction;
+import org.elasticsearch.client.indexlifecycle.DeleteLifecyclePolicyRequest;
+import org.elasticsearch.client.indexlifecycle.LifecycleAction;
+import org.elasticsearch.client.indexlifecycle.LifecyclePolicy;
+import org.elasticsearch.client.indexlifecycle.Phase;
+import org.elasticsearch.client.indexlifecycle.PutLifecyclePolicyRequest;
+import org.elasticsearch.client.indexlifecycle.RolloverAction;
+import org.elasticsearch.client.indices.CloseIndexRequest;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.DeleteComposableIndexTemplateRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.PutComposableIndexTemplateRequest;
+import org.elasticsearch.client.indices.PutMappingRequest;
+import org.elasticsearch.client.tasks.GetTaskRequest;
+import org.elasticsearch.client.tasks.GetTaskResponse;
+import org.elasticsearch.cluster.metadata.AliasMetadata;
+import org.elasticsearch.cluster.metadata.ComposableIndexTemplate;
+import org.elasticsearch.cluster.metadata.Template;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.AbstractBulkByScrollRequest;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.index.reindex.ReindexRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.tasks.RawTaskStatus;
+import org.elasticsearch.xcontent.XContentType;
+import org.kinotic.structures.api.domain.IndexMode;
+import org.kinotic.structures.api.domain.IndexSettings;
+import org.kinotic.structures.api.domain.ItemIndexMigration;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.api.services.storage.ItemStorageEngine;
+import org.kinotic.structures.internal.api.services.util.EsHighLevelClientUtil;
+import org.kinotic.structures.internal.api.services.util.IndexSettingsHelper;
+import org.kinotic.structures.internal.api.services.util.StructureHelper;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates, changes and removes the Elasticsearch indices that hold the items for a {@link Structure}.
+ * <p>
+ * For {@link IndexMode#TIME_SERIES} the item index name is an alias. New items are written to the newest generation, named {@code <itemIndex>-000001} and so on,
+ * and reads span every generation. Rollover and retention are handled by an Elasticsearch index lifecycle policy, with an index template
+ * so each new generation gets the current mapping.
+ * <p>
+ * For {@link IndexMode#STANDARD} the item index name is also an alias, pointing to a single index named {@code <itemIndex>_v1} and so on.
+ * This allows the items to be copied to a new index with a different mapping and the alias swapped once done, see {@link #startCopy(Structure, String, Set)}.
+ * Structures published before this point have a concrete index using the item index name, the alias replaces it on their first migration.
+ * <p>
+ * Items are always read, counted and written through the {@link ItemStorageEngine}. Migrations, archiving, closing indices and
+ * the other operations that use Elasticsearch APIs on the indices directly are only available when the engine keeps the items in Elasticsearch,
+ * otherwise creating, mapping and deleting the item index is left to the engine and Elasticsearch is not used at all.
+ */
+@Component
+public class ItemIndexManager {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemIndexManager.class);
+    private static final String FIRST_GENERATION_SUFFIX = "-000001";
+    private static final Pattern VERSION_SUFFIX = Pattern.compile("_v(\\d+)$");
+    private static final long TASK_POLL_INTERVAL_MILLIS = 2000;
+    // removes fields that are no longer part of the structure as items are copied
+    private static final String REMOVE_FIELDS_SCRIPT = "for (String field : params.fields) { ctx._source.remove(field); }";
+    private static final String DEFAULT_ROLLOVER_MAX_SIZE = "50gb";
+    private static final String DEFAULT_ROLLOVER_MAX_AGE = "30d";
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final RestHighLevelClient highLevelClient;
+    private final StructuresProperties structuresProperties;
+    private final ItemStorageEngine itemStorageEngine;
+
+    public ItemIndexManager(RestHighLevelClient highLevelClient,
+                            StructuresProperties structuresProperties,
+                            ItemStorageEngine itemStorageEngine) {
+        this.highLevelClient = highLevelClient;
+        this.structuresProperties = structuresProperties;
+        this.itemStorageEngine = itemStorageEngine;
+    }
+
+    /**
+     * @return true if the items are kept in Elasticsearch, so the indices created for them hold the items
+     */
+    public boolean storesItemsInElasticsearch(){
+        return itemStorageEngine.storesItemsInElasticsearch();
+    }
+
+    public static boolean isTimeSeries(Structure structure){
+        return structure.getIndexMode() == IndexMode.TIME_SERIES;
+    }
+
+    public static boolean isShared(Structure structure){
+        return structure.getIndexMode() == IndexMode.SHARED;
+    }
+
+    /**
+     * @return the index holding the items of every {@link IndexMode#SHARED} structure in the namespace of the given one
+     */
+    public String getSharedIndex(Structure structure){
+        return structuresProperties.getIndexPrefix().trim().toLowerCase() + "shared_" + structure.getNamespace().trim().toLowerCase();
+    }
+
+    /**
+     * @param structure to create the item index for
+     * @param mapping the complete Elasticsearch mapping for the items
+     */
+    public void createItemIndex(Structure structure, String mapping) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            itemStorageEngine.putMapping(structure.getItemIndex(), mapping);
+            return;
+        }
+        Map<String, Object> settings = IndexSettingsHelper.toElasticsearchSettings(structure.getIndexSettings(),
+                                                                                    structuresProperties.getDefaultIndexSettings());
+        if(isTimeSeries(structure)){
+            String policyName = getPolicyName(structure);
+            highLevelClient.indexLifecycle().putLifecyclePolicy(new PutLifecyclePolicyRequest(createLifecyclePolicy(policyName, structure.getIndexSettings())),
+                                                                RequestOptions.DEFAULT);
+
+            settings.put("index.lifecycle.name", policyName);
+            settings.put("index.lifecycle.rollover_alias", structure.getItemIndex());
+            putIndexTemplate(structure, settings, mapping);
+
+            // the template provides the settings and mapping
+            CreateIndexRequest indexRequest = new CreateIndexRequest(structure.getItemIndex() + FIRST_GENERATION_SUFFIX);
+            indexRequest.alias(new Alias(structure.getItemIndex()).writeIndex(true));
+            highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+        }else if(isShared(structure)){
+            createSharedItemIndex(structure, mapping);
+        }else{
+            CreateIndexRequest indexRequest = new CreateIndexRequest(structure.getItemIndex() + "_v1");
+            indexRequest.mapping(mapping, XContentType.JSON);
+            indexRequest.settings(settings);
+            indexRequest.alias(new Alias(structure.getItemIndex()));
+            highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+        }
+        itemStorageEngine.putMapping(structure.getItemIndex(), mapping);
+    }
+
+    /**
+     * The item index name is a filtered alias on the shared index, which only sees the items of the structure and routes them all to the same shard
+     */
+    private void createSharedItemIndex(Structure structure, String mapping) throws IOException {
+        String sharedIndex = getSharedIndex(structure);
+        StructureHelper.indexNameValidation(sharedIndex);
+        if(!highLevelClient.indices().exists(new GetIndexRequest(sharedIndex), RequestOptions.DEFAULT)){
+            CreateIndexRequest indexRequest = new CreateIndexRequest(sharedIndex);
+            indexRequest.mapping(mapping, XContentType.JSON);
+            indexRequest.settings(IndexSettingsHelper.toElasticsearchSettings(null, structuresProperties.getSharedIndexSettings()));
+            try {
+                highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+            } catch (ElasticsearchStatusException e) {
+                // another structure in the namespace created it at the same time
+                if(e.status() != RestStatus.BAD_REQUEST || !e.getMessage().contains("resource_already_exists_exception")){
+                    throw e;
+                }
+            }
+        }
+        // fails if a field is already used by another structure with a different type
+        highLevelClient.indices().putMapping(new PutMappingRequest(sharedIndex).source(mapping, XContentType.JSON), RequestOptions.DEFAULT);
+
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        request.addAliasAction(IndicesAliasesRequest.AliasActions.add()
+                                                                 .index(sharedIndex)
+                                                                 .alias(structure.getItemIndex())
+                                                                 .filter(QueryBuilders.termQuery("structureId", structure.getId()))
+                                                                 .routing(structure.getId()));
+        highLevelClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Finds ids that are used by items of other structures in the shared index.
+     * Writing an item with one of these ids would change the item of the other structure, since they share a shard.
+     * @return the ids used by other structures
+     */
+    public Set<String> findIdsUsedByOtherStructures(Structure structure, Collection<String> ids) throws IOException {
+        Set<String> ret = new HashSet<>();
+        if(!isShared(structure) || ids.isEmpty()){
+            return ret;
+        }
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.query(QueryBuilders.boolQuery()
+                                   .filter(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+                                   .mustNot(QueryBuilders.termQuery("structureId", structure.getId())));
+        builder.fetchSource(false);
+        builder.size(ids.size());
+        SearchRequest request = new SearchRequest(getSharedIndex(structure)).source(builder).routing(structure.getId());
+        for(SearchHit hit : await(itemStorageEngine.search(request)).getHits()){
+            ret.add(hit.getId());
+        }
+        return ret;
+    }
+
+    /**
+     * Finds the routing values existing items were written with, for a structure that uses custom routing.
+     * Search is near real time, so an item written since the last refresh is not found.
+     * @return the routing value for each of the ids that belong to an existing item
+     */
+    public Map<String, String> findRoutingOfItems(Structure structure, Collection<String> ids) throws IOException {
+        Map<String, String> ret = new HashMap<>();
+        if(structure.getRoutingField() == null || ids.isEmpty()){
+            return ret;
+        }
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        // without routing, so every shard is searched
+        builder.query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])));
+        builder.fetchSource(false);
+        builder.size(ids.size());
+        for(SearchHit hit : await(itemStorageEngine.search(new SearchRequest(structure.getItemIndex()).source(builder))).getHits()){
+            DocumentField routing = hit.field("_routing");
+            if(routing != null && routing.getValue() != null){
+                ret.put(hit.getId(), routing.getValue().toString());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the concrete index the items for a {@link IndexMode#STANDARD} or {@link IndexMode#SHARED} structure currently live in
+     */
+    public String getCurrentIndex(Structure structure) throws IOException {
+        String[] indices = highLevelClient.indices().get(new GetIndexRequest(structure.getItemIndex()), RequestOptions.DEFAULT).getIndices();
+        if(indices.length != 1){
+            throw new IllegalStateException("Expected a single index for '" + structure.getItemIndex() + "' but found " + indices.length);
+        }
+        return indices[0];
+    }
+
+    /**
+     * @return the name of the index that follows the given one, {@code <itemIndex>_v2} for {@code <itemIndex>_v1} and so on
+     */
+    public static String nextVersionIndex(Structure structure, String currentIndex){
+        if(!currentIndex.startsWith(structure.getItemIndex())){
+            // moving out of the shared index
+            return structure.getItemIndex() + "_v1";
+        }
+        Matcher matcher = VERSION_SUFFIX.matcher(currentIndex);
+        int version = matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+        return structure.getItemIndex() + "_v" + (version + 1);
+    }
+
+    /**
+     * Creates the index items will be copied to during a migration.
+     * Refresh and replicas are disabled while copying, since they only slow the copy down, see {@link #completeCopy(Structure, String)}
+     */
+    public void createMigrationIndex(Structure structure, String index, String mapping) throws IOException {
+        Map<String, Object> settings = IndexSettingsHelper.toElasticsearchSettings(structure.getIndexSettings(),
+                                                                                    structuresProperties.getDefaultIndexSettings());
+        settings.put("index.refresh_interval", "-1");
+        settings.put("index.number_of_replicas", 0);
+        CreateIndexRequest indexRequest = new CreateIndexRequest(index);
+        indexRequest.mapping(mapping, XContentType.JSON);
+        indexRequest.settings(settings);
+        highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Starts copying all items of the structure to another index as an Elasticsearch task, sliced so the copy runs in parallel across shards.
+     * Items changed while the copy runs are copied again once it completes, see {@link #copyChangedSince(Structure, String, Set, long)}
+     * @param removedFields fields to remove from the items as they are copied
+     * @return the id of the task performing the copy
+     */
+    public String startCopy(Structure structure, String targetIndex, Set<String> removedFields) throws IOException {
+        ReindexRequest request = createCopyRequest(structure, targetIndex, removedFields);
+        request.setSlices(AbstractBulkByScrollRequest.AUTO_SLICES);
+        return highLevelClient.submitReindexTask(request, RequestOptions.DEFAULT).getTask();
+    }
+
+    /**
+     * Updates the migration with the progress of the copy task
+     * @return true if the task has completed
+     */
+    public boolean updateCopyProgress(String task, ItemIndexMigration migration) throws IOException {
+        String[] parts = task.split(":");
+        Optional<GetTaskResponse> response = highLevelClient.tasks().get(new GetTaskRequest(parts[0], Long.parseLong(parts[1])), RequestOptions.DEFAULT);
+        if(response.isEmpty()){
+            throw new IllegalStateException("Copy task " + task + " no longer exists");
+        }
+        if(response.get().getTaskInfo().getStatus() instanceof RawTaskStatus){
+            Map<String, Object> status = ((RawTaskStatus) response.get().getTaskInfo().getStatus()).toMap();
+            migration.setTotal(getLong(status, "total"));
+            migration.setCopied(getLong(status, "created") + getLong(status, "updated") + getLong(status, "version_conflicts"));
+            double seconds = response.get().getTaskInfo().getRunningTimeNanos() / 1_000_000_000d;
+            if(seconds > 0){
+                migration.setItemsPerSecond(migration.getCopied() / seconds);
+            }
+        }
+        return response.get().isCompleted();
+    }
+
+    /**
+     * Copies the items changed or deleted since the given time, unless the target already has the same or a newer version of them.
+     * This catches the writes made while the copy task was running that were not also written to the target.
+     */
+    public void copyChangedSince(Structure structure, String targetIndex, Set<String> removedFields, long since) throws IOException {
+        ReindexRequest request = createCopyRequest(structure, targetIndex, removedFields);
+        request.setSourceQuery(QueryBuilders.boolQuery()
+                                            .should(QueryBuilders.rangeQuery("updatedTime").gte(since))
+                                            .should(QueryBuilders.rangeQuery("deletedTime").gte(since))
+                                            .minimumShouldMatch(1));
+        request.setRefresh(true);
+        highLevelClient.reindex(request, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Restores the settings that were disabled while copying and makes all copied items visible
+     */
+    public void completeCopy(Structure structure, String index) throws IOException {
+        Map<String, Object> settings = IndexSettingsHelper.toElasticsearchSettings(structure.getIndexSettings(),
+                                                                                    structuresProperties.getDefaultIndexSettings());
+        Map<String, Object> restore = new HashMap<>();
+        restore.put("index.refresh_interval", settings.get("index.refresh_interval"));
+        restore.put("index.number_of_replicas", settings.get("index.number_of_replicas"));
+        highLevelClient.indices().putSettings(new UpdateSettingsRequest(index).settings(restore), RequestOptions.DEFAULT);
+        highLevelClient.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    public long countItems(String index) throws IOException {
+        return countItems(index, QueryBuilders.matchAllQuery());
+    }
+
+    public long countItems(String index, QueryBuilder query) throws IOException {
+        return await(itemStorageEngine.count(new CountRequest(index).query(query))).getCount();
+    }
+
+    public static String getArchiveIndex(Structure structure){
+        return structure.getItemIndex() + "_archive";
+    }
+
+    /**
+     * Copies the matching items to the archive index for the {@link Structure}, creating it if needed.
+     * The archive does not reject fields missing from its mapping, so items written before a migration can still be archived.
+     * @param mapping the complete Elasticsearch mapping for the items, used if the archive index is created
+     * @param requestsPerSecond throttles the copy, -1 means no limit
+     * @return true if every matching item was copied to the archive, false if the copy reported any failure or could not be verified
+     */
+    public boolean archiveItems(Structure structure, QueryBuilder query, String mapping, float requestsPerSecond) throws IOException, InterruptedException {
+        String archiveIndex = getArchiveIndex(structure);
+        if(!highLevelClient.indices().exists(new GetIndexRequest(archiveIndex), RequestOptions.DEFAULT)){
+            CreateIndexRequest indexRequest = new CreateIndexRequest(archiveIndex);
+            indexRequest.mapping(mapping, XContentType.JSON);
+            indexRequest.settings(IndexSettingsHelper.toElasticsearchSettings(structure.getIndexSettings(),
+                                                                             structuresProperties.getDefaultIndexSettings()));
+            highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+            highLevelClient.indices().putMapping(new PutMappingRequest(archiveIndex).source("{ \"dynamic\": false }", XContentType.JSON),
+                                                 RequestOptions.DEFAULT);
+        }
+        ReindexRequest request = new ReindexRequest();
+        request.setSourceIndices(structure.getItemIndex());
+        request.setDestIndex(archiveIndex);
+        request.setSourceQuery(query);
+        request.setAbortOnVersionConflict(false);
+        request.setSlices(AbstractBulkByScrollRequest.AUTO_SLICES);
+        request.setRequestsPerSecond(toRequestsPerSecond(requestsPerSecond));
+        Map<String, Object> result = waitForTask(highLevelClient.submitReindexTask(request, RequestOptions.DEFAULT).getTask());
+        highLevelClient.indices().refresh(new RefreshRequest(archiveIndex), RequestOptions.DEFAULT);
+
+        // counts cannot be compared, since items archived by an earlier run, or for another query, are counted as well
+        if(result.isEmpty()){
+            log.warn("The result of archiving items for '{}' is not known", structure.getId());
+            return false;
+        }
+        List<?> failures = result.get("failures") instanceof List ? (List<?>) result.get("failures") : List.of();
+        long versionConflicts = getLong(result, "version_conflicts");
+        if(!failures.isEmpty() || versionConflicts > 0){
+            log.warn("Archiving items for '{}' had {} failures and {} version conflicts, first failure {}",
+                     structure.getId(), failures.size(), versionConflicts, failures.isEmpty() ? null : failures.get(0));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Permanently removes the matching items, and waits until they are removed
+     * @param requestsPerSecond throttles the removal, -1 means no limit
+     */
+    public void deleteItems(Structure structure, QueryBuilder query, float requestsPerSecond) throws IOException, InterruptedException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            deleteItemsFromStorageEngine(structure, query);
+            return;
+        }
+        DeleteByQueryRequest request = new DeleteByQueryRequest(structure.getItemIndex());
+        request.setQuery(query);
+        // an item changed since the query started, such as one no longer deleted, is left alone
+        request.setAbortOnVersionConflict(false);
+        request.setSlices(AbstractBulkByScrollRequest.AUTO_SLICES);
+        request.setRequestsPerSecond(toRequestsPerSecond(requestsPerSecond));
+        waitForTask(highLevelClient.submitDeleteByQueryTask(request, RequestOptions.DEFAULT).getTask());
+    }
+
+    /**
+     * Engines other than Elasticsearch have no delete by query, so the matching items are found and deleted in batches
+     */
+    private void deleteItemsFromStorageEngine(Structure structure, QueryBuilder query) throws IOException, InterruptedException {
+        SearchSourceBuilder builder = new SearchSourceBuilder().query(query).fetchSource(false).size(DELETE_BATCH_SIZE);
+        SearchHit[] hits;
+        do {
+            if(Thread.interrupted()){
+                throw new InterruptedException();
+            }
+            hits = await(itemStorageEngine.search(new SearchRequest(structure.getItemIndex()).source(builder))).getHits().getHits();
+            if(hits.length > 0){
+                BulkRequest request = new BulkRequest();
+                // so the next batch does not find them again
+                request.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+                for(SearchHit hit : hits){
+                    request.add(new DeleteRequest(structure.getItemIndex(), hit.getId()));
+                }
+                if(await(itemStorageEngine.bulk(request)).hasFailures()){
+                    throw new IllegalStateException("Failed to delete items for '" + structure.getId() + "'");
+                }
+            }
+        } while (hits.length == DELETE_BATCH_SIZE);
+    }
+
+    /**
+     * Closes the index behind the item index, so it no longer uses heap or file handles on the cluster.
+     * Items cannot be read or written until it is opened again, see {@link #openItemIndex(Structure, Duration)}
+     */
+    public void closeItemIndex(Structure structure) throws IOException {
+        String index = getCurrentIndex(structure);
+        if(!highLevelClient.indices().close(new CloseIndexRequest(index), RequestOptions.DEFAULT).isAcknowledged()){
+            throw new IllegalStateException("The index '" + index + "' was not closed");
+        }
+    }
+
+    /**
+     * Opens the index behind the item index, waiting for its primary shards to be started
+     * @param warmUpTimeout how long to wait for the shards, items may not be available yet if this elapses
+     */
+    public void openItemIndex(Structure structure, Duration warmUpTimeout) throws IOException {
+        String index = getCurrentIndex(structure);
+        OpenIndexRequest request = new OpenIndexRequest(index);
+        request.waitForActiveShards(ActiveShardCount.ONE);
+        request.timeout(TimeValue.timeValueMillis(warmUpTimeout.toMillis()));
+        request.masterNodeTimeout(TimeValue.timeValueMillis(warmUpTimeout.toMillis()));
+        OpenIndexResponse response = highLevelClient.indices().open(request, RequestOptions.DEFAULT);
+        if(!response.isAcknowledged()){
+            throw new IllegalStateException("The index '" + index + "' was not opened");
+        }
+        if(!response.isShardsAcknowledged()){
+            log.warn("The shards of '{}' were not started within {}, items may not be available yet", index, warmUpTimeout);
+        }
+    }
+
+    /**
+     * Gets the number of searches, gets and writes the item index has served, as reported by Elasticsearch for every node in the cluster.
+     * The count only means something compared to an earlier one, since it starts over when the shards of the index are moved or reopened.
+     */
+    @SuppressWarnings("unchecked")
+    public long getOperationCount(Structure structure) throws IOException {
+        Request request = new Request("GET", "/" + structure.getItemIndex() + "/_stats/search,get,indexing");
+        Map<String, Object> body = EsHighLevelClientUtil.responseToMap(highLevelClient.getLowLevelClient().performRequest(request));
+        Object all = body.get("_all");
+        Object total = all instanceof Map ? ((Map<String, Object>) all).get("total") : null;
+        if(!(total instanceof Map)){
+            throw new IllegalStateException("No stats were returned for '" + structure.getItemIndex() + "'");
+        }
+        Map<String, Object> stats = (Map<String, Object>) total;
+        return getLong(getMap(stats, "search"), "query_total")
+                + getLong(getMap(stats, "get"), "total")
+                + getLong(getMap(stats, "indexing"), "index_total")
+                + getLong(getMap(stats, "indexing"), "delete_total");
+    }
+
+    /**
+     * Blocks writes to the index behind the item index then merges it down to a single segment, which is what makes reads cheaper.
+     * The merge continues in the background once this returns.
+     */
+    public void makeItemIndexReadOnly(Structure structure) throws IOException {
+        String index = getCurrentIndex(structure);
+        highLevelClient.indices().putSettings(new UpdateSettingsRequest(index).settings(Settings.builder().put("index.blocks.write", true)),
+                                              RequestOptions.DEFAULT);
+        highLevelClient.indices().forcemergeAsync(new ForceMergeRequest(index).maxNumSegments(1), RequestOptions.DEFAULT, new ActionListener<>() {
+            @Override
+            public void onResponse(ForceMergeResponse response) {
+                log.debug("Merged '{}' down to a single segment", index);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.warn("Failed to merge '" + index + "'", e);
+            }
+        });
+    }
+
+    /**
+     * Removes the write block added by {@link #makeItemIndexReadOnly(Structure)}
+     */
+    public void makeItemIndexWritable(Structure structure) throws IOException {
+        String index = getCurrentIndex(structure);
+        highLevelClient.indices().putSettings(new UpdateSettingsRequest(index).settings(Settings.builder().putNull("index.blocks.write")),
+                                              RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Makes all the writes to the index visible to searches and counts
+     */
+    public void refreshIndex(String index) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            // only migrations refresh the index, which are only available with Elasticsearch
+            return;
+        }
+        highLevelClient.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Atomically points the item index alias at the new index, then deletes the old one.
+     * When moving out of the shared index only the items of the structure are removed from it.
+     */
+    public void swapItemIndex(Structure structure, String oldIndex, String newIndex) throws IOException {
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(newIndex).alias(structure.getItemIndex()));
+        if(isShared(structure)){
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(oldIndex).alias(structure.getItemIndex()));
+            if(!highLevelClient.indices().updateAliases(request, RequestOptions.DEFAULT).isAcknowledged()){
+                throw new IllegalStateException("The alias for '" + structure.getItemIndex() + "' was not moved to '" + newIndex + "'");
+            }
+            // the other structures in the namespace continue to use the shared index
+            deleteSharedItems(structure, oldIndex);
+            return;
+        }
+        if(oldIndex.equals(structure.getItemIndex())){
+            // published before aliases were used, the index has to be removed in the same request so the alias can take its name
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(oldIndex));
+        }else{
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(oldIndex).alias(structure.getItemIndex()));
+        }
+        if(!highLevelClient.indices().updateAliases(request, RequestOptions.DEFAULT).isAcknowledged()){
+            throw new IllegalStateException("The alias for '" + structure.getItemIndex() + "' was not moved to '" + newIndex + "'");
+        }
+        deleteIndex(oldIndex);
+    }
+
+    /**
+     * Deletes the index if it exists, used to clean up after a failed migration
+     */
+    public void deleteIndex(String index) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            itemStorageEngine.deleteIndex(index);
+            return;
+        }
+        if(highLevelClient.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)){
+            highLevelClient.indices().delete(new DeleteIndexRequest(index), RequestOptions.DEFAULT);
+        }
+    }
+
+    public boolean itemIndexExists(Structure structure) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            // the engine creates the index when the structure is published
+            return structure.isPublished();
+        }
+        return highLevelClient.indices().exists(new GetIndexRequest(structure.getItemIndex()), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Removes every index behind the item index, and for {@link IndexMode#TIME_SERIES} the template and lifecycle policy
+     */
+    public void deleteItemIndex(Structure structure) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            itemStorageEngine.deleteIndex(structure.getItemIndex());
+            return;
+        }
+        if(structure.getPendingItemIndex() != null){
+            deleteIndex(structure.getPendingItemIndex());
+        }
+        deleteIndex(getArchiveIndex(structure));
+        if(isShared(structure)){
+            if(itemIndexExists(structure)){
+                String sharedIndex = getCurrentIndex(structure);
+                IndicesAliasesRequest request = new IndicesAliasesRequest();
+                request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(sharedIndex).alias(structure.getItemIndex()));
+                highLevelClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+                deleteSharedItems(structure, sharedIndex);
+            }
+        }else if(itemIndexExists(structure)){
+            // indices cannot be deleted through an alias
+            String[] indices = highLevelClient.indices().get(new GetIndexRequest(structure.getItemIndex()), RequestOptions.DEFAULT).getIndices();
+            DeleteIndexRequest request = new DeleteIndexRequest(indices);
+            if(!highLevelClient.indices().delete(request, RequestOptions.DEFAULT).isAcknowledged()){
+                if(!highLevelClient.indices().delete(request, RequestOptions.DEFAULT).isAcknowledged()){
+                    throw new IllegalStateException("We were not able to delete requested index, please review and try again.");
+                }
+            }
+        }
+        if(isTimeSeries(structure)){
+            // these may not exist if the index was only partially created
+            try {
+                highLevelClient.indices().deleteIndexTemplate(new DeleteComposableIndexTemplateRequest(getTemplateName(structure)), RequestOptions.DEFAULT);
+            } catch (ElasticsearchStatusException e) {
+                if(e.status() != RestStatus.NOT_FOUND){
+                    throw e;
+                }
+            }
+            try {
+                highLevelClient.indexLifecycle().deleteLifecyclePolicy(new DeleteLifecyclePolicyRequest(getPolicyName(structure)), RequestOptions.DEFAULT);
+            } catch (ElasticsearchStatusException e) {
+                if(e.status() != RestStatus.NOT_FOUND){
+                    throw e;
+                }
+            }
+        }
+        itemStorageEngine.deleteIndex(structure.getItemIndex());
+    }
+
+    /**
+     * Adds to the mapping of an existing item index
+     * @param propertyMapping the mapping to add
+     * @param mapping the complete Elasticsearch mapping for the items, including what is being added
+     */
+    public void putItemMapping(Structure structure, String propertyMapping, String mapping) throws IOException {
+        if(!itemStorageEngine.storesItemsInElasticsearch()){
+            itemStorageEngine.putMapping(structure.getItemIndex(), mapping);
+            return;
+        }
+        // applies to every index the alias points to when time series
+        PutMappingRequest putMappingRequest = new PutMappingRequest(structure.getItemIndex());
+        putMappingRequest.source(propertyMapping, XContentType.JSON);
+        highLevelClient.indices().putMapping(putMappingRequest, RequestOptions.DEFAULT);
+
+        if(isTimeSeries(structure)){
+            Map<String, Object> settings = IndexSettingsHelper.toElasticsearchSettings(structure.getIndexSettings(),
+                                                                                        structuresProperties.getDefaultIndexSettings());
+            settings.put("index.lifecycle.name", getPolicyName(structure));
+            settings.put("index.lifecycle.rollover_alias", structure.getItemIndex());
+            putIndexTemplate(structure, settings, mapping);
+        }
+        itemStorageEngine.putMapping(structure.getItemIndex(), mapping);
+    }
+
+    /**
+     * Finds the concrete index each item lives in, writes to an existing item must go to its index rather than the write alias
+     * @return the concrete index keyed by item id, items that do not exist yet are not included
+     */
+    public Map<String, String> findConcreteIndices(Structure structure, Collection<String> ids) throws IOException {
+        Map<String, String> ret = new HashMap<>();
+        if(ids.isEmpty()){
+            return ret;
+        }
+        refreshRolledOverIndices(structure);
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])));
+        builder.fetchSource(false);
+        builder.size(ids.size());
+        SearchResponse response = await(itemStorageEngine.search(new SearchRequest(structure.getItemIndex()).source(builder)));
+        for(SearchHit hit : response.getHits()){
+            ret.put(hit.getId(), hit.getIndex());
+        }
+        return ret;
+    }
+
+    /**
+     * A search only sees items once they have been refreshed, an item written shortly before its index was rolled over would not be found.
+     * It would then be written again to the newest index, rather than updated where it is.
+     * Items not found in the write index are written to it anyway, so only the indices that have been rolled over need to be refreshed.
+     * These only receive updates to existing items, so this is cheap when there are no pending changes.
+     */
+    private void refreshRolledOverIndices(Structure structure) throws IOException {
+        GetAliasesResponse response = highLevelClient.indices().getAlias(new GetAliasesRequest(structure.getItemIndex()), RequestOptions.DEFAULT);
+        List<String> rolledOver = new ArrayList<>();
+        for(Map.Entry<String, Set<AliasMetadata>> entry : response.getAliases().entrySet()){
+            boolean writeIndex = false;
+            for(AliasMetadata alias : entry.getValue()){
+                if(alias.alias().equals(structure.getItemIndex()) && Boolean.TRUE.equals(alias.writeIndex())){
+                    writeIndex = true;
+                }
+            }
+            if(!writeIndex){
+                rolledOver.add(entry.getKey());
+            }
+        }
+        if(!rolledOver.isEmpty()){
+            highLevelClient.indices().refresh(new RefreshRequest(rolledOver.toArray(new String[0])), RequestOptions.DEFAULT);
+        }
+    }
+
+    private ReindexRequest createCopyRequest(Structure structure, String targetIndex, Set<String> removedFields){
+        ReindexRequest request = new ReindexRequest();
+        // through the alias, so only the items of the structure are copied when the index is shared
+        request.setSourceIndices(structure.getItemIndex());
+        request.setDestIndex(targetIndex);
+        if(isShared(structure)){
+            // items are routed by structure in the shared index, but by id once in an index of their own
+            request.setDestRouting("discard");
+        }
+        // the version of the item in the source is kept, as it is by the item service when it writes to the target during a migration,
+        // so a conflict means the target already has the same or a newer version of the item
+        request.setDestVersionType(VersionType.EXTERNAL);
+        request.setAbortOnVersionConflict(false);
+        if(!removedFields.isEmpty()){
+            request.setScript(new Script(ScriptType.INLINE,
+                                         Script.DEFAULT_SCRIPT_LANG,
+                                         REMOVE_FIELDS_SCRIPT,
+                                         Map.of("fields", List.copyOf(removedFields))));
+        }
+        return request;
+    }
+
+    /**
+     * Removes the items of the structure from the shared index, which the other structures in the namespace continue to use
+     */
+    private void deleteSharedItems(Structure structure, String sharedIndex) throws IOException {
+        DeleteByQueryRequest request = new DeleteByQueryRequest(sharedIndex);
+        request.setQuery(QueryBuilders.termQuery("structureId", structure.getId()));
+        request.setRouting(structure.getId());
+        request.setAbortOnVersionConflict(false);
+        try {
+            waitForTask(highLevelClient.submitDeleteByQueryTask(request, RequestOptions.DEFAULT).getTask());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while removing the items of '" + structure.getId() + "' from " + sharedIndex);
+        }
+    }
+
+    /**
+     * Long running tasks are polled rather than waited on with a single request, which would be cut off by the socket timeout.
+     * The low level client is used since the response of the task, with its failures, is not available through the high level client.
+     * @return the response of the completed task, such as the number of items created and any failures, or empty if the task is no longer known
+     * @throws IllegalStateException if the task failed as a whole
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> waitForTask(String task) throws IOException, InterruptedException {
+        while(true){
+            Map<String, Object> body;
+            try {
+                body = EsHighLevelClientUtil.responseToMap(highLevelClient.getLowLevelClient().performRequest(new Request("GET", "/_tasks/" + task)));
+            } catch (ResponseException e) {
+                if(e.getResponse().getStatusLine().getStatusCode() == 404){
+                    return Map.of();
+                }
+                throw e;
+            }
+            if(Boolean.TRUE.equals(body.get("completed"))){
+                if(body.get("error") instanceof Map){
+                    throw new IllegalStateException("Task " + task + " failed: " + ((Map<?, ?>) body.get("error")).get("reason"));
+                }
+                return body.get("response") instanceof Map ? (Map<String, Object>) body.get("response") : Map.of();
+            }
+            Thread.sleep(TASK_POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Waits for a request made through the {@link ItemStorageEngine}, rethrowing the exception it failed with
+     */
+    private static <T> T await(Mono<T> mono) throws IOException {
+        try {
+            return mono.block();
+        } catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static float toRequestsPerSecond(float requestsPerSecond){
+        return requestsPerSecond > 0 ? requestsPerSecond : Float.POSITIVE_INFINITY;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(Map<String, Object> map, String key){
+        Object value = map.get(key);
+        return value instanceof Map ? (Map<String, Object>) value : Map.of();
+    }
+
+    private static long getLong(Map<String, Object> map, String key){
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private void putIndexTemplate(Structure structure, Map<String, Object> settings, String mapping) throws IOException {
+        Template template = new Template(Settings.builder().loadFromMap(settings).build(), new CompressedXContent(mapping), null);
+        ComposableIndexTemplate indexTemplate = new ComposableIndexTemplate(List.of(structure.getItemIndex() + "-*"),
+                                                                            template,
+                                                                            null,
+                                                                            // above any broad templates that might match our indices
+                                                                            500L,
+                                                                            null,
+                                                                            null);
+        highLevelClient.indices().putIndexTemplate(new PutComposableIndexTemplateRequest().name(getTemplateName(structure))
+                                                                                          .indexTemplate(indexTemplate),
+                                                   RequestOptions.DEFAULT);
+    }
+
+    private LifecyclePolicy createLifecyclePolicy(String policyName, IndexSettings indexSettings){
+        IndexSettings defaults = structuresProperties.getDefaultIndexSettings();
+        if(indexSettings == null){
+            indexSettings = new IndexSettings();
+        }
+        String maxSize = indexSettings.getRolloverMaxSize() != null ? indexSettings.getRolloverMaxSize() : defaults.getRolloverMaxSize();
+        String maxAge = indexSettings.getRolloverMaxAge() != null ? indexSettings.getRolloverMaxAge() : defaults.getRolloverMaxAge();
+        Long maxDocs = indexSettings.getRolloverMaxDocs() != null ? indexSettings.getRolloverMaxDocs() : defaults.getRolloverMaxDocs();
+        String retention = indexSettings.getRetention() != null ? indexSettings.getRetention() : defaults.getRetention();
+
+        // rollover requires at least one condition
+        if(maxSize == null && maxAge == null && maxDocs == null){
+            maxSize = DEFAULT_ROLLOVER_MAX_SIZE;
+            maxAge = DEFAULT_ROLLOVER_MAX_AGE;
+        }
+
+        Map<String, LifecycleAction> hotActions = new HashMap<>();
+        hotActions.put(RolloverAction.NAME, new RolloverAction(maxSize != null ? ByteSizeValue.parseBytesSizeValue(maxSize, "rollover_max_size") : null,
+                                                               null,
+                                                               maxAge != null ? TimeValue.parseTimeValue(maxAge, "rollover_max_age") : null,
+                                                               maxDocs));
+        Map<String, Phase> phases = new HashMap<>();
+        phases.put("hot", new Phase("hot", TimeValue.ZERO, hotActions));
+
+        if(retention != null){
+            Map<String, LifecycleAction> deleteActions = new HashMap<>();
+            deleteActions.put(DeleteAction.NAME, new DeleteAction());
+            phases.put("delete", new Phase("delete", TimeValue.parseTimeValue(retention, "retention"), deleteActions));
+        }
+        return new LifecyclePolicy(policyName, phases);
+    }
+
+    private static String getPolicyName(Structure structure){
+        return structure.getItemIndex() + "_policy";
+    }
+
+    private static String getTemplateName(Structure structure){
+        return structure.getItemIndex() + "_template";
+    }
+}
@@ -5,7 +5,11 @@ import org.elasticsearch.search.sort.SortOrder;
 import org.kinotic.structures.api.domain.Structure;
 import org.kinotic.structures.api.domain.TypeCheckMap;
 import org.kinotic.structures.api.services.ItemService;
+import org.kinotic.structures.internal.api.services.util.BulkItemResult;
+import org.kinotic.structures.internal.api.services.util.Deadline;
+import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -15,10 +19,91 @@ import java.util.Optional;
  */
 public interface ItemServiceInternal extends ItemService {
 
+    /**
+     * Resolves the {@link Deadline} for a request to the given {@link Structure}, the context is not changed.
+     * This should be called once at the entry point of a request, which can then store the deadline in a context it owns under {@link Deadline#CONTEXT_KEY},
+     * so the deadline used to abandon the request is the same one used for each Elasticsearch call.
+     * @return the deadline provided by the caller, otherwise one created from the {@link Structure} or global default
+     */
+    Deadline resolveDeadline(String structureId, Map<String, Object> context) throws Exception;
+
     Optional<TypeCheckMap> getById(Structure structure, String id, Map<String, Object> context) throws Exception;
 
+    /**
+     * Gets all the requested items using a single multi get request
+     * @return a map of id to item, ids that could not be found will not be present
+     */
+    Map<String, TypeCheckMap> getByIds(Structure structure, Collection<String> ids, Map<String, Object> context) throws Exception;
+
     SearchHits search(String structureId, String search, int numberPerPage, int from, String sortField, SortOrder sortOrder, Map<String, Object> context) throws Exception;
 
+    /**
+     * Same as {@link #getAll(String, int, int, Map)} but only the given fields will be returned for each item
+     * @param includes the fields to include in the returned source, null returns all fields and an empty array returns no source
+     */
+    SearchHits getAll(String structureId, int numberPerPage, int from, String[] includes, Map<String, Object> context) throws Exception;
+
+    /**
+     * Same as {@link #search(String, String, int, int, Map)} but only the given fields will be returned for each item
+     * @param includes the fields to include in the returned source, null returns all fields and an empty array returns no source
+     */
+    SearchHits search(String structureId, String search, int numberPerPage, int from, String[] includes, Map<String, Object> context) throws Exception;
+
+    /**
+     * Searches for items sorted by id, continuing after the given sort values, this performs the same for any page unlike from/size paging.
+     * @param search a lucene query string or null to match all items
+     * @param numberPerPage the number of items to return
+     * @param searchAfter the sort values of the last item of the previous page, or null for the first page
+     * @param trackTotalHits true if the exact number of matching items should be calculated
+     * @param includes the fields to include in the returned source, null returns all fields and an empty array returns no source
+     */
+    Mono<SearchHits> searchAfterAsync(String structureId,
+                                      String search,
+                                      int numberPerPage,
+                                      Object[] searchAfter,
+                                      boolean trackTotalHits,
+                                      String[] includes,
+                                      Map<String, Object> context);
+
+    /**
+     * Non-blocking version of {@link #getByIds(Structure, Collection, Map)}
+     */
+    Mono<Map<String, TypeCheckMap>> getByIdsAsync(Structure structure, Collection<String> ids, Map<String, Object> context);
+
+    /**
+     * Non-blocking version of {@link #getAll(String, int, int, String[], Map)}
+     */
+    Mono<SearchHits> getAllAsync(String structureId, int numberPerPage, int from, String[] includes, Map<String, Object> context);
+
+    /**
+     * Non-blocking version of {@link #search(String, String, int, int, String[], Map)}
+     */
+    Mono<SearchHits> searchAsync(String structureId, String search, int numberPerPage, int from, String[] includes, Map<String, Object> context);
+
+    /**
+     * Non-blocking version of {@link #upsertItem(String, TypeCheckMap, Map)}
+     */
+    Mono<TypeCheckMap> upsertItemAsync(String structureId, TypeCheckMap item, Map<String, Object> context);
+
+    /**
+     * Non-blocking version of {@link #delete(String, String, Map)}
+     */
+    Mono<Void> deleteAsync(String structureId, String itemId, Map<String, Object> context);
+
+    /**
+     * Upserts all the items using a single bulk request, lifecycles are run for every item.
+     * A failure for one item does not prevent the others from being upserted.
+     * @return the result for each item, in the same order as the items provided
+     */
+    Mono<List<BulkItemResult>> bulkUpsertAsync(String structureId, List<TypeCheckMap> items, Map<String, Object> context);
+
+    /**
+     * Deletes all the items using a single bulk request, lifecycles are run for every item.
+     * A failure for one item does not prevent the others from being deleted.
+     * @return the result for each item, in the same order as the ids provided
+     */
+    Mono<List<BulkItemResult>> bulkDeleteAsync(String structureId, List<String> ids, Map<String, Object> context);
+
     List<String> searchDistinct(String structureId, String search, String field, int limit, Map<String, Object> context) throws Exception;
 
 }
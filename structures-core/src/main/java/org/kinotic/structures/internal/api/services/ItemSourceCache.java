@@ -0,0 +1,194 @@
+package org.kinotic.structures.internal.api.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.xcontent.XContentType;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the source of recently read items for Structures that have {@link Structure#isCacheItems()} set, so reads of popular items do not go to Elasticsearch.
+ * <p>
+ * Sources are kept as read, JSON or SMILE, in blocks of direct memory from a {@link DirectBlockPool} bounded by the maximum weight,
+ * so a large cache does not add to the heap the garbage collector has to trace. The blocks go back to the pool once an entry is removed
+ * and no reader is still copying it, an item is not cached while the pool has too few free blocks.
+ * Caffeine decides what is kept, which only admits an item over the one it would evict if it is read more often.
+ * Entries are only used while the Structure is unchanged, so a migration or any other change to it invalidates all of its items.
+ * <p>
+ * Writes invalidate the item after they complete. A read that started before the write could otherwise put the old source back,
+ * so every load is stamped with an invalidation counter and the result is only cached if no invalidation happened in between.
+ * <p>
+ * The cache is local to this node and nothing tells it about writes made through other nodes, so with more than one node a cached item
+ * can be stale until it expires, see {@link StructuresProperties#getItemCacheExpireAfterWrite()}.
+ */
+@Component
+public class ItemSourceCache {
+
+    private static final int STRIPES = 64;
+    // approximate size of the key, entry and buffer objects on the heap
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final DirectBlockPool pool;
+    private final Cache<Key, Entry> cache;
+    private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+
+    public ItemSourceCache(StructuresProperties structuresProperties) {
+        this.pool = new DirectBlockPool(structuresProperties.getItemCacheMaximumWeight());
+        this.cache = Caffeine.newBuilder()
+                             .expireAfterWrite(structuresProperties.getItemCacheExpireAfterWrite())
+                             .maximumWeight(structuresProperties.getItemCacheMaximumWeight())
+                             .<Key, Entry>weigher((key, entry) -> entry.blocks.length * DirectBlockPool.BLOCK_SIZE + key.id.length() * 2 + ENTRY_OVERHEAD)
+                             // releasing the blocks is cheap, and doing it on the calling thread frees them as soon as possible
+                             .executor(Runnable::run)
+                             .removalListener((Key key, Entry entry, RemovalCause cause) -> {
+                                 if (entry != null) {
+                                     entry.release();
+                                 }
+                             })
+                             .recordStats()
+                             .build();
+    }
+
+    /**
+     * @return the source of the item, or null if it is not cached
+     */
+    public Map<String, Object> get(Structure structure, String id) {
+        Entry entry = cache.getIfPresent(new Key(structure.getId(), id));
+        // the entry may have been removed and its blocks released since it was found
+        if (entry == null || !Objects.equals(entry.structureUpdated, structure.getUpdated()) || !entry.retain()) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = pool.read(entry.blocks, entry.length);
+        } finally {
+            entry.release();
+        }
+        return XContentHelper.convertToMap(new BytesArray(bytes), false, entry.contentType).v2();
+    }
+
+    /**
+     * Must be called before the item is read, and the result given to {@link #put(Structure, String, BytesReference, long)}
+     */
+    public long startLoad(Structure structure, String id) {
+        return invalidations.get(stripe(structure.getId(), id));
+    }
+
+    /**
+     * Caches the source of an item read from Elasticsearch, unless it was invalidated since the read started
+     * @param loadStamp returned by {@link #startLoad(Structure, String)} before the item was read
+     */
+    public void put(Structure structure, String id, BytesReference source, long loadStamp) {
+        int stripe = stripe(structure.getId(), id);
+        if (invalidations.get(stripe) != loadStamp) {
+            return;
+        }
+        byte[] bytes = BytesReference.toBytes(source);
+        int[] blocks = pool.write(bytes);
+        if (blocks == null) {
+            return;
+        }
+        Key key = new Key(structure.getId(), id);
+        Entry entry = new Entry(blocks, bytes.length, XContentHelper.xContentType(source), structure.getUpdated());
+        cache.put(key, entry);
+        // an invalidation between the check and the put may have missed this entry
+        if (invalidations.get(stripe) != loadStamp) {
+            cache.asMap().remove(key, entry);
+        }
+    }
+
+    public void invalidate(String structureId, String id) {
+        invalidations.incrementAndGet(stripe(structureId, id));
+        cache.invalidate(new Key(structureId, id));
+    }
+
+    /**
+     * Used for changes that are not made item by item, such as removing deleted items
+     */
+    public void invalidateAll(String structureId) {
+        for (int i = 0; i < STRIPES; i++) {
+            invalidations.incrementAndGet(i);
+        }
+        cache.asMap().keySet().removeIf(key -> key.structureId.equals(structureId));
+    }
+
+    /**
+     * @return the bytes of direct memory holding cached sources, including those of removed entries still being read
+     */
+    public long getDirectMemoryUsed() {
+        return pool.getUsedBytes();
+    }
+
+    private static int stripe(String structureId, String id) {
+        return Math.floorMod(31 * structureId.hashCode() + id.hashCode(), STRIPES);
+    }
+
+    private static class Key {
+        private final String structureId;
+        private final String id;
+
+        Key(String structureId, String id) {
+            this.structureId = structureId;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return structureId.equals(key.structureId) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * structureId.hashCode() + id.hashCode();
+        }
+    }
+
+    /**
+     * Counts the cache and every reader copying the source, the blocks are released by whichever lets go last
+     */
+    private class Entry {
+        private final int[] blocks;
+        private final int length;
+        // sources are kept in the format they were read in, see StructuresProperties#getElasticContentType
+        private final XContentType contentType;
+        private final Long structureUpdated;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Entry(int[] blocks, int length, XContentType contentType, Long structureUpdated) {
+            this.blocks = blocks;
+            this.length = length;
+            this.contentType = contentType;
+            this.structureUpdated = structureUpdated;
+        }
+
+        boolean retain() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                pool.release(blocks);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.kinotic.structures.internal.api.services;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.PutMappingRequest;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.xcontent.XContentType;
+import org.kinotic.structures.internal.api.services.storage.ItemStorageEngine;
+import org.kinotic.structures.internal.api.services.util.EsHighLevelClientUtil;
+import org.kinotic.structures.internal.api.services.util.IndexSettingsHelper;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stores the {@link org.kinotic.structures.api.domain.Structure}s, {@link org.kinotic.structures.api.domain.Trait}s,
+ * {@link org.kinotic.structures.api.domain.Namespace}s and reference logs.
+ * <p>
+ * These are kept in Elasticsearch alongside the items when the {@link ItemStorageEngine} does, otherwise they are kept by the engine
+ * in an index of their own, so a node using the lucene or memory engine does not need Elasticsearch at all.
+ * Either way requests and responses use the Elasticsearch types, and documents mapped with Spring Data are written the way Spring Data writes them.
+ */
+@Component
+public class MetadataStorage {
+
+    private final RestHighLevelClient highLevelClient;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ItemStorageEngine itemStorageEngine;
+    private final StructuresProperties structuresProperties;
+
+    public MetadataStorage(RestHighLevelClient highLevelClient,
+                           ElasticsearchOperations elasticsearchOperations,
+                           ItemStorageEngine itemStorageEngine,
+                           StructuresProperties structuresProperties) {
+        this.highLevelClient = highLevelClient;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.itemStorageEngine = itemStorageEngine;
+        this.structuresProperties = structuresProperties;
+    }
+
+    /**
+     * @return true if the metadata is kept in Elasticsearch
+     */
+    public boolean storesMetadataInElasticsearch() {
+        return itemStorageEngine.storesItemsInElasticsearch();
+    }
+
+    /**
+     * Creates the index with the configured system index settings if it does not exist,
+     * otherwise puts the mapping so fields added since the index was created are mapped
+     */
+    public void createIndex(String index, String mapping) throws IOException {
+        if (!storesMetadataInElasticsearch()) {
+            itemStorageEngine.putMapping(index, mapping);
+            return;
+        }
+        if (!highLevelClient.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+            CreateIndexRequest indexRequest = new CreateIndexRequest(index);
+            indexRequest.mapping(mapping, XContentType.JSON);
+            indexRequest.settings(IndexSettingsHelper.toElasticsearchSettings(null, structuresProperties.getSystemIndexSettings()));
+            highLevelClient.indices().create(indexRequest, RequestOptions.DEFAULT);
+        } else {
+            highLevelClient.indices().putMapping(new PutMappingRequest(index).source(mapping, XContentType.JSON), RequestOptions.DEFAULT);
+        }
+    }
+
+    /**
+     * Creates the index for a document mapped with Spring Data, since Spring Data is not left to create it with its own settings
+     */
+    public void createIndex(Class<?> documentType) throws IOException {
+        IndexOperations indexOperations = elasticsearchOperations.indexOps(documentType);
+        if (!storesMetadataInElasticsearch()) {
+            // only builds the mapping from the annotations, nothing is sent to Elasticsearch
+            itemStorageEngine.putMapping(getIndexName(documentType), indexOperations.createMapping().toJson());
+            return;
+        }
+        if (!indexOperations.exists()) {
+            indexOperations.create(IndexSettingsHelper.toElasticsearchSettings(null, structuresProperties.getSystemIndexSettings()),
+                                   indexOperations.createMapping());
+        }
+    }
+
+    public void index(IndexRequest request) throws IOException {
+        if (storesMetadataInElasticsearch()) {
+            highLevelClient.index(request, RequestOptions.DEFAULT);
+        } else {
+            write(request);
+        }
+    }
+
+    public GetResponse get(GetRequest request) throws IOException {
+        if (storesMetadataInElasticsearch()) {
+            return highLevelClient.get(request, RequestOptions.DEFAULT);
+        }
+        return await(itemStorageEngine.get(request));
+    }
+
+    public Mono<GetResponse> getAsync(GetRequest request) {
+        if (storesMetadataInElasticsearch()) {
+            return EsHighLevelClientUtil.toMono(listener -> highLevelClient.getAsync(request, RequestOptions.DEFAULT, listener));
+        }
+        return itemStorageEngine.get(request);
+    }
+
+    public SearchResponse search(SearchRequest request) throws IOException {
+        if (storesMetadataInElasticsearch()) {
+            return highLevelClient.search(request, RequestOptions.DEFAULT);
+        }
+        return await(itemStorageEngine.search(request));
+    }
+
+    public void delete(DeleteRequest request) throws IOException {
+        if (storesMetadataInElasticsearch()) {
+            highLevelClient.delete(request, RequestOptions.DEFAULT);
+        } else {
+            write(request);
+        }
+    }
+
+    /**
+     * Saves a document mapped with Spring Data, giving it an id if it does not have one, and waits for it to be searchable
+     * @return the saved document
+     */
+    public <T> T save(T document) throws IOException {
+        if (storesMetadataInElasticsearch()) {
+            T ret = elasticsearchOperations.save(document);
+            elasticsearchOperations.indexOps(document.getClass()).refresh();
+            return ret;
+        }
+        ElasticsearchPersistentEntity<?> entity = getEntity(document.getClass());
+        PersistentPropertyAccessor<T> accessor = entity.getPropertyAccessor(document);
+        Object id = accessor.getProperty(entity.getRequiredIdProperty());
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            accessor.setProperty(entity.getRequiredIdProperty(), id);
+        }
+        write(new IndexRequest(entity.getIndexCoordinates().getIndexName())
+                      .id(id.toString())
+                      .source(elasticsearchOperations.getElasticsearchConverter().mapObject(document).toJson(), XContentType.JSON)
+                      .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE));
+        return document;
+    }
+
+    /**
+     * Deletes a document mapped with Spring Data, and waits for it to no longer be searchable
+     */
+    public void delete(Object document) throws IOException {
+        if (storesMetadataInElasticsearch()) {
+            elasticsearchOperations.delete(document);
+            elasticsearchOperations.indexOps(document.getClass()).refresh();
+            return;
+        }
+        ElasticsearchPersistentEntity<?> entity = getEntity(document.getClass());
+        Object id = entity.getPropertyAccessor(document).getProperty(entity.getRequiredIdProperty());
+        write(new DeleteRequest(entity.getIndexCoordinates().getIndexName(), String.valueOf(id))
+                      .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE));
+    }
+
+    /**
+     * Finds documents mapped with Spring Data
+     * @param size the most documents to return
+     */
+    public <T> List<T> find(Class<T> documentType, QueryBuilder query, int size) throws IOException {
+        SearchRequest request = new SearchRequest(getIndexName(documentType))
+                .source(new SearchSourceBuilder().query(query).size(size));
+        ElasticsearchPersistentEntity<?> entity = getEntity(documentType);
+        List<T> ret = new ArrayList<>();
+        for (SearchHit hit : search(request).getHits()) {
+            T document = EsHighLevelClientUtil.getTypeFromBytesReference(hit.getSourceRef(), documentType);
+            entity.getPropertyAccessor(document).setProperty(entity.getRequiredIdProperty(), hit.getId());
+            ret.add(document);
+        }
+        return ret;
+    }
+
+    private String getIndexName(Class<?> documentType) {
+        return getEntity(documentType).getIndexCoordinates().getIndexName();
+    }
+
+    private ElasticsearchPersistentEntity<?> getEntity(Class<?> documentType) {
+        return elasticsearchOperations.getElasticsearchConverter().getMappingContext().getRequiredPersistentEntity(documentType);
+    }
+
+    /**
+     * Writes through the engine, failing like a request to Elasticsearch would if the write was rejected
+     */
+    private void write(DocWriteRequest<?> request) throws IOException {
+        BulkRequest bulkRequest = new BulkRequest().add(request);
+        bulkRequest.setRefreshPolicy(request instanceof WriteRequest ? ((WriteRequest<?>) request).getRefreshPolicy() : WriteRequest.RefreshPolicy.NONE);
+        BulkItemResponse response = await(itemStorageEngine.bulk(bulkRequest)).getItems()[0];
+        if (response.isFailed()) {
+            Exception cause = response.getFailure().getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ElasticsearchException(cause);
+        }
+    }
+
+    private static <T> T await(Mono<T> request) throws IOException {
+        try {
+            return request.block();
+        } catch (RuntimeException e) {
+            // block wraps checked exceptions
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
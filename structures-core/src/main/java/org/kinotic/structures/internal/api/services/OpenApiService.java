@@ -1,6 +1,7 @@
 package org.kinotic.structures.internal.api.services;
 
 import io.swagger.v3.oas.models.OpenAPI;
+import org.kinotic.structures.internal.api.services.util.OpenApiDocument;
 
 import java.io.IOException;
 
@@ -16,4 +17,18 @@ public interface OpenApiService {
      */
     OpenAPI getOpenApiSpec(String namespace) throws IOException;
 
+    /**
+     * Gets the serialized OpenAPI spec for all the structures in the given namespace.
+     * The document is cached until a {@link org.kinotic.structures.api.domain.Structure} in the namespace changes.
+     * @param namespace the namespace to get the OpenAPI spec for
+     * @return the serialized OpenAPI spec
+     */
+    OpenApiDocument getOpenApiDocument(String namespace) throws IOException;
+
+    /**
+     * Evicts the cached OpenAPI spec for a given namespace
+     * @param namespace the namespace to evict
+     */
+    void evictCacheFor(String namespace);
+
 }
@@ -1,13 +1,22 @@
 package org.kinotic.structures.internal.api.services;
 
 import org.kinotic.structures.api.domain.AlreadyExistsException;
+import org.kinotic.structures.api.domain.ItemIndexState;
 import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.api.domain.StructureHolder;
+import org.kinotic.structures.api.domain.Structures;
 import org.kinotic.structures.api.domain.Trait;
 import org.kinotic.structures.api.services.StructureService;
+import org.kinotic.structures.internal.api.services.util.MappingHelper;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Created by Navíd Mitchell 🤪 on 3/30/23.
@@ -18,6 +27,72 @@ public interface StructureServiceInternal extends StructureService {
 
     Optional<Structure> getById(String id) throws IOException;
 
+    /**
+     * Same as {@link #getById(String)}, but returns the last copy read if Elasticsearch is unavailable.
+     * This is meant for reads, since the copy may be out of date.
+     * @param context a stale copy being returned is recorded in, see {@link org.kinotic.structures.internal.api.services.util.StaleReads}
+     */
+    Optional<Structure> getById(String id, Map<String, Object> context) throws IOException;
+
+    /**
+     * Non-blocking version of {@link #getById(String)}
+     * @return a {@link Mono} that completes empty if no {@link Structure} exists for the id
+     */
+    Mono<Structure> findById(String id);
+
+    /**
+     * Non-blocking version of {@link #getById(String, Map)}
+     */
+    Mono<Structure> findById(String id, Map<String, Object> context);
+
+    /**
+     * Opens, closes or makes read only the item index of a published {@link Structure} and records the new state.
+     * Does nothing if the item index is already in the given state.
+     * @param structureId of the {@link Structure} to change
+     * @param state the item index should be in
+     * @return the {@link Structure} as saved with the new state
+     */
+    Structure changeItemIndexState(String structureId, ItemIndexState state) throws IOException;
+
+    /**
+     * Pages through all the published {@link Structure}s for the given namespace
+     * @param namespace to get the {@link Structure}s for
+     * @return all the published {@link Structure}s, sorted by name
+     */
+    default List<Structure> getAllPublishedForNamespace(String namespace) throws IOException {
+        List<Structure> ret = new ArrayList<>();
+        int page = 0;
+        Structures structures;
+        do {
+            structures = getAllPublishedForNamespace(namespace, 100, page, "name", false);
+            for(StructureHolder structureHolder : structures.getContent()){
+                ret.add(structureHolder.getStructure());
+            }
+            page++;
+        } while (!structures.getContent().isEmpty() && ret.size() < structures.getTotalElements());
+        return ret;
+    }
+
+    /**
+     * Pages through all the published {@link Structure}s to find every namespace that has at least one
+     * @return the namespaces with published {@link Structure}s
+     */
+    default Set<String> getAllNamespacesWithPublishedStructures() throws IOException {
+        Set<String> ret = new LinkedHashSet<>();
+        int page = 0;
+        long fetched = 0;
+        Structures structures;
+        do {
+            structures = getAllPublished(100, page, "name", false);
+            for(StructureHolder structureHolder : structures.getContent()){
+                ret.add(structureHolder.getStructure().getNamespace());
+            }
+            fetched += structures.getContent().size();
+            page++;
+        } while (!structures.getContent().isEmpty() && fetched < structures.getTotalElements());
+        return ret;
+    }
+
     default String getJsonSchema(Structure structure) {
         StringBuilder ret = new StringBuilder();
         StringBuilder properties = new StringBuilder();
@@ -80,12 +155,16 @@ public interface StructureServiceInternal extends StructureService {
                 } else {
                     properties.append(",");
                 }
-                properties.append("\"").append(traitEntry.getKey()).append("\":").append(traitEntry.getValue().getEsSchema());
+                properties.append("\"").append(traitEntry.getKey()).append("\":").append(MappingHelper.getFieldMapping(traitEntry.getValue()));
             }
         }
         properties.append("}");// end properties
 
         ret.append("{ \"dynamic\": \"strict\", ");// start object
+        if (structure.getRoutingField() != null) {
+            // rejects writes that would put an item on the wrong shard
+            ret.append("\"_routing\": { \"required\": true }, ");
+        }
         ret.append(properties);
         ret.append("}");// end object
         return ret.toString();
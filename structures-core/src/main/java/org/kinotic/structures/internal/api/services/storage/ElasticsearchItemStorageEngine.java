@@ -0,0 +1,75 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+import org.kinotic.structures.internal.api.services.ElasticsearchCircuitBreaker;
+import org.kinotic.structures.internal.api.services.util.EsHighLevelClientUtil;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+
+/**
+ * The default {@link ItemStorageEngine}, which keeps the items in Elasticsearch.
+ * Requests fail straight away while the {@link ElasticsearchCircuitBreaker} is open.
+ */
+@Component
+@ConditionalOnProperty(prefix = "structures", name = "item-storage-engine", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchItemStorageEngine implements ItemStorageEngine {
+
+    private final RestHighLevelClient highLevelClient;
+    private final ElasticsearchCircuitBreaker circuitBreaker;
+
+    public ElasticsearchItemStorageEngine(RestHighLevelClient highLevelClient, ElasticsearchCircuitBreaker circuitBreaker) {
+        this.highLevelClient = highLevelClient;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public Mono<GetResponse> get(GetRequest request) {
+        return circuitBreaker.protect(EsHighLevelClientUtil.toMono(listener -> highLevelClient.getAsync(request, RequestOptions.DEFAULT, listener)));
+    }
+
+    @Override
+    public Mono<MultiGetResponse> multiGet(MultiGetRequest request) {
+        return circuitBreaker.protect(EsHighLevelClientUtil.toMono(listener -> highLevelClient.mgetAsync(request, RequestOptions.DEFAULT, listener)));
+    }
+
+    @Override
+    public Mono<SearchResponse> search(SearchRequest request) {
+        return circuitBreaker.protect(EsHighLevelClientUtil.toMono(listener -> highLevelClient.searchAsync(request, RequestOptions.DEFAULT, listener)));
+    }
+
+    @Override
+    public Mono<CountResponse> count(CountRequest request) {
+        return circuitBreaker.protect(EsHighLevelClientUtil.toMono(listener -> highLevelClient.countAsync(request, RequestOptions.DEFAULT, listener)));
+    }
+
+    @Override
+    public Mono<BulkResponse> bulk(BulkRequest request) {
+        return circuitBreaker.protect(EsHighLevelClientUtil.toMono(listener -> highLevelClient.bulkAsync(request, RequestOptions.DEFAULT, listener)));
+    }
+
+    @Override
+    public UpdateResponse update(UpdateRequest request) throws IOException {
+        return circuitBreaker.call(() -> highLevelClient.update(request, RequestOptions.DEFAULT));
+    }
+
+    @Override
+    public boolean storesItemsInElasticsearch() {
+        return true;
+    }
+}
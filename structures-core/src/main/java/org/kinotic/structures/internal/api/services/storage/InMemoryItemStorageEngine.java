@@ -0,0 +1,396 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.ScoreSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ItemStorageEngine} that keeps the items in memory, for tests and load benchmarks that should not depend on an Elasticsearch cluster.
+ * Enabled with structures.item-storage-engine=memory, the Structures, Traits and Namespaces are then kept in memory as well.
+ * <p>
+ * Items are visible as soon as they are written. Index names are used as given, so aliases are not resolved,
+ * which means only {@link org.kinotic.structures.api.domain.IndexMode#STANDARD} Structures are supported.
+ * See {@link InMemoryQueryMatcher} for the queries that can be used. Terms aggregations without sub aggregations are supported,
+ * and answered with the values as strings, since the engine does not know the field types. See {@link InMemoryScripts} for the
+ * update scripts that can be used. Other aggregations and scrolling are not supported.
+ */
+@Component
+@ConditionalOnProperty(prefix = "structures", name = "item-storage-engine", havingValue = "memory")
+public class InMemoryItemStorageEngine implements ItemStorageEngine {
+
+    private static final int DEFAULT_SEARCH_SIZE = 10;
+    private static final long PRIMARY_TERM = 1;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, StoredItem>> indices = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public Mono<GetResponse> get(GetRequest request) {
+        return Mono.fromCallable(() -> new GetResponse(getResult(request.index(), request.id(), request.fetchSourceContext())));
+    }
+
+    @Override
+    public Mono<MultiGetResponse> multiGet(MultiGetRequest request) {
+        return Mono.fromCallable(() -> {
+            MultiGetItemResponse[] responses = new MultiGetItemResponse[request.getItems().size()];
+            for (int i = 0; i < responses.length; i++) {
+                MultiGetRequest.Item item = request.getItems().get(i);
+                responses[i] = new MultiGetItemResponse(new GetResponse(getResult(item.index(), item.id(), item.fetchSourceContext())), null);
+            }
+            return new MultiGetResponse(responses);
+        });
+    }
+
+    @Override
+    public Mono<SearchResponse> search(SearchRequest request) {
+        return Mono.fromCallable(() -> executeSearch(request));
+    }
+
+    @Override
+    public Mono<CountResponse> count(CountRequest request) {
+        return Mono.fromCallable(() -> {
+            long count = 0;
+            for (String index : request.indices()) {
+                for (Map.Entry<String, StoredItem> entry : items(index).entrySet()) {
+                    if (InMemoryQueryMatcher.matches(request.query(), entry.getKey(), entry.getValue().source)) {
+                        count++;
+                    }
+                }
+            }
+            return new CountResponse(count, false, new CountResponse.ShardStats(1, 1, 0, ShardSearchFailure.EMPTY_ARRAY));
+        });
+    }
+
+    @Override
+    public Mono<BulkResponse> bulk(BulkRequest request) {
+        return Mono.fromCallable(() -> {
+            long start = System.currentTimeMillis();
+            BulkItemResponse[] responses = new BulkItemResponse[request.numberOfActions()];
+            for (int i = 0; i < responses.length; i++) {
+                DocWriteRequest<?> writeRequest = request.requests().get(i);
+                try {
+                    responses[i] = BulkItemResponse.success(i, writeRequest.opType(), write(writeRequest));
+                } catch (Exception e) {
+                    responses[i] = BulkItemResponse.failure(i, writeRequest.opType(),
+                                                            new BulkItemResponse.Failure(writeRequest.index(), "_doc", writeRequest.id(), e));
+                }
+            }
+            return new BulkResponse(responses, System.currentTimeMillis() - start);
+        });
+    }
+
+    @Override
+    public UpdateResponse update(UpdateRequest request) {
+        ShardId shardId = shardId(request.index());
+        DocWriteResponse.Result[] result = new DocWriteResponse.Result[1];
+        StoredItem stored = items(request.index()).compute(request.id(), (id, existing) -> {
+            if (existing == null) {
+                Map<String, Object> source;
+                if (request.docAsUpsert()) {
+                    source = request.doc().sourceAsMap();
+                } else if (request.upsertRequest() != null) {
+                    source = request.upsertRequest().sourceAsMap();
+                } else {
+                    throw new DocumentMissingException(shardId, "_doc", id);
+                }
+                result[0] = DocWriteResponse.Result.CREATED;
+                return new StoredItem(source, 1, sequence.incrementAndGet());
+            }
+            Map<String, Object> merged = ItemSources.deepCopy(existing.source);
+            if (request.script() != null) {
+                // like Elasticsearch, a script that changes nothing is still an update
+                InMemoryScripts.run(request.script(), merged);
+                result[0] = DocWriteResponse.Result.UPDATED;
+                return new StoredItem(merged, existing.version + 1, sequence.incrementAndGet());
+            }
+            boolean changed = ItemSources.merge(merged, request.doc().sourceAsMap());
+            if (!changed && request.detectNoop()) {
+                result[0] = DocWriteResponse.Result.NOOP;
+                return existing;
+            }
+            result[0] = DocWriteResponse.Result.UPDATED;
+            return new StoredItem(merged, existing.version + 1, sequence.incrementAndGet());
+        });
+        return new UpdateResponse(shardId, "_doc", request.id(), stored.seqNo, PRIMARY_TERM, stored.version, result[0]);
+    }
+
+    @Override
+    public void deleteIndex(String index) {
+        indices.remove(index);
+    }
+
+    private DocWriteResponse write(DocWriteRequest<?> request) {
+        if (request instanceof UpdateRequest) {
+            return update((UpdateRequest) request);
+        }
+        ShardId shardId = shardId(request.index());
+        if (request instanceof DeleteRequest) {
+            StoredItem removed = items(request.index()).remove(request.id());
+            return new DeleteResponse(shardId, "_doc", request.id(), sequence.incrementAndGet(), PRIMARY_TERM,
+                                      removed != null ? removed.version + 1 : 1, removed != null);
+        }
+        IndexRequest indexRequest = (IndexRequest) request;
+        boolean[] created = new boolean[1];
+        StoredItem stored = items(request.index()).compute(request.id(), (id, existing) -> {
+            if (existing != null && indexRequest.opType() == DocWriteRequest.OpType.CREATE) {
+                throw new VersionConflictEngineException(shardId, id, "document already exists");
+            }
+            created[0] = existing == null;
+            return new StoredItem(indexRequest.sourceAsMap(), existing != null ? existing.version + 1 : 1, sequence.incrementAndGet());
+        });
+        return new IndexResponse(shardId, "_doc", request.id(), stored.seqNo, PRIMARY_TERM, stored.version, created[0]);
+    }
+
+    private GetResult getResult(String index, String id, FetchSourceContext fetchSourceContext) throws IOException {
+        StoredItem stored = items(index).get(id);
+        if (stored == null) {
+            return new GetResult(index, "_doc", id, SequenceNumbers.UNASSIGNED_SEQ_NO, SequenceNumbers.UNASSIGNED_PRIMARY_TERM, -1,
+                                 false, null, null, null);
+        }
+        return new GetResult(index, "_doc", id, stored.seqNo, PRIMARY_TERM, stored.version,
+                             true, ItemSources.toSource(stored.source, fetchSourceContext), null, null);
+    }
+
+    private SearchResponse executeSearch(SearchRequest request) throws IOException {
+        long start = System.currentTimeMillis();
+        SearchSourceBuilder source = request.source() != null ? request.source() : new SearchSourceBuilder();
+        List<TermsAggregationBuilder> aggregations = getTermsAggregations(source);
+        List<Map<String, Long>> aggregationCounts = new ArrayList<>();
+        for (int i = 0; i < aggregations.size(); i++) {
+            aggregationCounts.add(new HashMap<>());
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (String index : request.indices()) {
+            for (Map.Entry<String, StoredItem> entry : items(index).entrySet()) {
+                if (!InMemoryQueryMatcher.matches(source.query(), entry.getKey(), entry.getValue().source)) {
+                    continue;
+                }
+                // aggregations are over everything the query matches, the post filter only narrows the hits
+                for (int i = 0; i < aggregations.size(); i++) {
+                    countValues(aggregations.get(i), entry.getValue(), aggregationCounts.get(i));
+                }
+                if (InMemoryQueryMatcher.matches(source.postFilter(), entry.getKey(), entry.getValue().source)) {
+                    matches.add(new Match(index, entry.getKey(), entry.getValue(), getSortValues(source.sorts(), entry.getValue())));
+                }
+            }
+        }
+
+        Comparator<Match> order = Comparator.comparingLong(match -> match.item.seqNo);
+        if (source.sorts() != null && !source.sorts().isEmpty()) {
+            order = (first, second) -> compareSortValues(source.sorts(), first.sortValues, second.sortValues);
+        }
+        matches.sort(order);
+        if (source.searchAfter() != null) {
+            matches.removeIf(match -> compareSortValues(source.sorts(), match.sortValues, source.searchAfter()) <= 0);
+        }
+
+        int from = Math.max(source.from(), 0);
+        int size = source.size() >= 0 ? source.size() : DEFAULT_SEARCH_SIZE;
+        List<SearchHit> hits = new ArrayList<>();
+        for (int i = from; i < matches.size() && hits.size() < size; i++) {
+            Match match = matches.get(i);
+            SearchHit hit = new SearchHit(i, match.id, new Text("_doc"), new HashMap<>(), new HashMap<>());
+            BytesReference hitSource = ItemSources.toSource(match.item.source, source.fetchSource());
+            if (hitSource != null) {
+                hit.sourceRef(hitSource);
+            }
+            hit.shard(new SearchShardTarget("memory", shardId(match.index), null));
+            hit.score(1.0f);
+            hit.version(match.item.version);
+            if (match.sortValues.length > 0) {
+                DocValueFormat[] formats = new DocValueFormat[match.sortValues.length];
+                Arrays.fill(formats, DocValueFormat.RAW);
+                hit.sortValues(match.sortValues, formats);
+            }
+            hits.add(hit);
+        }
+
+        SearchHits searchHits = new SearchHits(hits.toArray(new SearchHit[0]),
+                                               new TotalHits(matches.size(), TotalHits.Relation.EQUAL_TO),
+                                               1.0f);
+        InternalAggregations internalAggregations = null;
+        if (!aggregations.isEmpty()) {
+            List<InternalAggregation> terms = new ArrayList<>();
+            for (int i = 0; i < aggregations.size(); i++) {
+                terms.add(ItemSources.toStringTerms(aggregations.get(i), aggregationCounts.get(i)));
+            }
+            internalAggregations = InternalAggregations.from(terms);
+        }
+        return new SearchResponse(new InternalSearchResponse(searchHits, internalAggregations, null, null, false, null, 1),
+                                  null,
+                                  1,
+                                  1,
+                                  0,
+                                  System.currentTimeMillis() - start,
+                                  ShardSearchFailure.EMPTY_ARRAY,
+                                  SearchResponse.Clusters.EMPTY);
+    }
+
+    private static List<TermsAggregationBuilder> getTermsAggregations(SearchSourceBuilder source) {
+        List<TermsAggregationBuilder> ret = new ArrayList<>();
+        if (source.aggregations() != null) {
+            if (!source.aggregations().getPipelineAggregatorFactories().isEmpty()) {
+                throw new UnsupportedOperationException("The in-memory item storage engine does not support pipeline aggregations");
+            }
+            for (AggregationBuilder aggregation : source.aggregations().getAggregatorFactories()) {
+                if (!(aggregation instanceof TermsAggregationBuilder)
+                        || !aggregation.getSubAggregations().isEmpty()
+                        || ((TermsAggregationBuilder) aggregation).field() == null) {
+                    throw new UnsupportedOperationException("The in-memory item storage engine only supports terms aggregations of a field without sub aggregations");
+                }
+                ret.add((TermsAggregationBuilder) aggregation);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Each distinct value is counted once per item, as Elasticsearch does for fields holding several values
+     */
+    private static void countValues(TermsAggregationBuilder aggregation, StoredItem item, Map<String, Long> counts) {
+        Set<String> values = new HashSet<>();
+        for (Object value : InMemoryQueryMatcher.getValues(item.source, aggregation.field())) {
+            if (value != null) {
+                values.add(value.toString());
+            }
+        }
+        for (String value : values) {
+            counts.merge(value, 1L, Long::sum);
+        }
+    }
+
+    private static Object[] getSortValues(List<SortBuilder<?>> sorts, StoredItem item) {
+        if (sorts == null) {
+            return new Object[0];
+        }
+        List<Object> ret = new ArrayList<>();
+        for (SortBuilder<?> sort : sorts) {
+            if (sort instanceof FieldSortBuilder) {
+                List<Object> values = InMemoryQueryMatcher.getValues(item.source, ((FieldSortBuilder) sort).getFieldName());
+                ret.add(values.isEmpty() ? null : values.get(0));
+            } else if (!(sort instanceof ScoreSortBuilder)) {
+                throw new UnsupportedOperationException("The in-memory item storage engine does not support " + sort.getWriteableName() + " sorts");
+            }
+        }
+        return ret.toArray();
+    }
+
+    /**
+     * Items missing a sort value are always last, as Elasticsearch does by default
+     */
+    private static int compareSortValues(List<SortBuilder<?>> sorts, Object[] first, Object[] second) {
+        int valueIndex = 0;
+        for (SortBuilder<?> sort : sorts) {
+            if (!(sort instanceof FieldSortBuilder)) {
+                continue;
+            }
+            Object firstValue = valueIndex < first.length ? first[valueIndex] : null;
+            Object secondValue = valueIndex < second.length ? second[valueIndex] : null;
+            valueIndex++;
+            int comparison;
+            if (firstValue == null || secondValue == null) {
+                comparison = firstValue == null ? (secondValue == null ? 0 : 1) : -1;
+            } else {
+                comparison = InMemoryQueryMatcher.compareValues(firstValue, secondValue);
+                if (sort.order() == SortOrder.DESC) {
+                    comparison = -comparison;
+                }
+            }
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private ConcurrentHashMap<String, StoredItem> items(String index) {
+        return indices.computeIfAbsent(index, name -> new ConcurrentHashMap<>());
+    }
+
+    private static ShardId shardId(String index) {
+        return new ShardId(index, "_na_", 0);
+    }
+
+    private static class StoredItem {
+        private final Map<String, Object> source;
+        private final long version;
+        private final long seqNo;
+
+        StoredItem(Map<String, Object> source, long version, long seqNo) {
+            this.source = source;
+            this.version = version;
+            this.seqNo = seqNo;
+        }
+    }
+
+    private static class Match {
+        private final String index;
+        private final String id;
+        private final StoredItem item;
+        private final Object[] sortValues;
+
+        Match(String index, String id, StoredItem item, Object[] sortValues) {
+            this.index = index;
+            this.id = id;
+            this.item = item;
+            this.sortValues = sortValues;
+        }
+    }
+}
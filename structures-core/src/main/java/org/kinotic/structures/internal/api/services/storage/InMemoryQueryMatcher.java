@@ -0,0 +1,461 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.ExistsQueryBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.index.query.WildcardQueryBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Evaluates Elasticsearch queries against item sources held in memory.
+ * Only the queries built by the item service and the trait lifecycles are supported. The engine does not know the field types,
+ * so text queries match a value that equals the text or shares a token with it once both are split by the standard analyzer,
+ * whatever the type of the field. Scoring and relevance are not reproduced.
+ */
+final class InMemoryQueryMatcher {
+
+    // used for the fields not given in query strings
+    private static final String ALL_FIELDS = "*";
+    private static final Analyzer ANALYZER = new StandardAnalyzer();
+
+    private InMemoryQueryMatcher() {
+    }
+
+    static boolean matches(QueryBuilder query, String id, Map<String, Object> source) {
+        if (query == null || query instanceof MatchAllQueryBuilder) {
+            return true;
+        }
+        if (query instanceof BoolQueryBuilder) {
+            return matchesBool((BoolQueryBuilder) query, id, source);
+        }
+        if (query instanceof ConstantScoreQueryBuilder) {
+            return matches(((ConstantScoreQueryBuilder) query).innerQuery(), id, source);
+        }
+        if (query instanceof IdsQueryBuilder) {
+            return ((IdsQueryBuilder) query).ids().contains(id);
+        }
+        if (query instanceof TermQueryBuilder) {
+            TermQueryBuilder term = (TermQueryBuilder) query;
+            return anyEquals(getValues(source, term.fieldName()), term.value());
+        }
+        if (query instanceof TermsQueryBuilder) {
+            TermsQueryBuilder terms = (TermsQueryBuilder) query;
+            List<Object> values = getValues(source, terms.fieldName());
+            for (Object value : terms.values()) {
+                if (anyEquals(values, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (query instanceof RangeQueryBuilder) {
+            return matchesRange((RangeQueryBuilder) query, source);
+        }
+        if (query instanceof ExistsQueryBuilder) {
+            return !getValues(source, ((ExistsQueryBuilder) query).fieldName()).isEmpty();
+        }
+        if (query instanceof MatchQueryBuilder) {
+            MatchQueryBuilder match = (MatchQueryBuilder) query;
+            return anyMatchesText(getValues(source, match.fieldName()), String.valueOf(match.value()));
+        }
+        if (query instanceof MultiMatchQueryBuilder) {
+            MultiMatchQueryBuilder multiMatch = (MultiMatchQueryBuilder) query;
+            for (String field : multiMatch.fields().keySet()) {
+                if (anyMatchesText(getValues(source, field), String.valueOf(multiMatch.value()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (query instanceof QueryStringQueryBuilder) {
+            return matchesQueryString((QueryStringQueryBuilder) query, source);
+        }
+        if (query instanceof WildcardQueryBuilder) {
+            WildcardQueryBuilder wildcard = (WildcardQueryBuilder) query;
+            return anyMatchesWildcard(getValues(source, wildcard.fieldName()), wildcard.value(), wildcard.caseInsensitive());
+        }
+        throw new UnsupportedOperationException("The in-memory item storage engine does not support " + query.getName() + " queries");
+    }
+
+    /**
+     * Compares two field values the way Elasticsearch would for numeric, boolean and keyword fields
+     * @return a negative number, zero or a positive number as the first value is less than, equal to or greater than the second
+     */
+    static int compareValues(Object first, Object second) {
+        Double firstNumber = toNumber(first);
+        Double secondNumber = toNumber(second);
+        if (firstNumber != null && secondNumber != null && (first instanceof Number || second instanceof Number)) {
+            return Double.compare(firstNumber, secondNumber);
+        }
+        return String.valueOf(first).compareTo(String.valueOf(second));
+    }
+
+    /**
+     * @param field name, using dots for fields of nested objects
+     * @return every value of the field, arrays are flattened and nulls left out
+     */
+    static List<Object> getValues(Map<String, Object> source, String field) {
+        List<Object> ret = new ArrayList<>();
+        collectValues(source, field.split("\\."), 0, ret);
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectValues(Object current, String[] path, int depth, List<Object> values) {
+        if (current == null) {
+            return;
+        }
+        if (current instanceof Collection) {
+            for (Object element : (Collection<Object>) current) {
+                collectValues(element, path, depth, values);
+            }
+            return;
+        }
+        if (depth == path.length) {
+            values.add(current);
+            return;
+        }
+        if (current instanceof Map) {
+            collectValues(((Map<String, Object>) current).get(path[depth]), path, depth + 1, values);
+        }
+    }
+
+    private static boolean matchesBool(BoolQueryBuilder bool, String id, Map<String, Object> source) {
+        for (QueryBuilder clause : bool.must()) {
+            if (!matches(clause, id, source)) {
+                return false;
+            }
+        }
+        for (QueryBuilder clause : bool.filter()) {
+            if (!matches(clause, id, source)) {
+                return false;
+            }
+        }
+        for (QueryBuilder clause : bool.mustNot()) {
+            if (matches(clause, id, source)) {
+                return false;
+            }
+        }
+        if (bool.should().isEmpty()) {
+            return true;
+        }
+        // should clauses are optional when there are required ones, unless a minimum is given
+        int minimumShouldMatch = bool.must().isEmpty() && bool.filter().isEmpty() ? 1 : 0;
+        if (bool.minimumShouldMatch() != null) {
+            try {
+                minimumShouldMatch = Integer.parseInt(bool.minimumShouldMatch());
+            } catch (NumberFormatException e) {
+                throw new UnsupportedOperationException("The in-memory item storage engine only supports a whole number minimum_should_match");
+            }
+        }
+        int matched = 0;
+        for (QueryBuilder clause : bool.should()) {
+            if (matches(clause, id, source)) {
+                matched++;
+            }
+        }
+        return matched >= minimumShouldMatch;
+    }
+
+    private static boolean matchesRange(RangeQueryBuilder range, Map<String, Object> source) {
+        for (Object value : getValues(source, range.fieldName())) {
+            if (range.from() != null) {
+                int comparison = compareValues(value, range.from());
+                if (comparison < 0 || (comparison == 0 && !range.includeLower())) {
+                    continue;
+                }
+            }
+            if (range.to() != null) {
+                int comparison = compareValues(value, range.to());
+                if (comparison > 0 || (comparison == 0 && !range.includeUpper())) {
+                    continue;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses the query string with the Lucene query parser, as Elasticsearch does, and evaluates the parsed query against the source
+     */
+    private static boolean matchesQueryString(QueryStringQueryBuilder queryString, Map<String, Object> source) {
+        String defaultField = queryString.defaultField() != null ? queryString.defaultField() : ALL_FIELDS;
+        QueryParser parser = new RawQueryParser(defaultField);
+        if (queryString.defaultOperator() == Operator.AND) {
+            parser.setDefaultOperator(QueryParser.Operator.AND);
+        }
+        try {
+            return matchesParsed(parser.parse(queryString.queryString()), source);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Failed to parse query [" + queryString.queryString() + "]", e);
+        }
+    }
+
+    private static boolean matchesParsed(Query query, Map<String, Object> source) {
+        if (query instanceof MatchAllDocsQuery) {
+            return true;
+        }
+        if (query instanceof BoostQuery) {
+            return matchesParsed(((BoostQuery) query).getQuery(), source);
+        }
+        if (query instanceof BooleanQuery) {
+            return matchesParsedBool((BooleanQuery) query, source);
+        }
+        if (query instanceof DocValuesFieldExistsQuery) {
+            return !getParsedValues(source, ((DocValuesFieldExistsQuery) query).getField()).isEmpty();
+        }
+        if (query instanceof TermQuery) {
+            Term term = ((TermQuery) query).getTerm();
+            return anyMatchesText(getParsedValues(source, term.field()), term.text());
+        }
+        if (query instanceof PhraseQuery) {
+            Term term = ((PhraseQuery) query).getTerms()[0];
+            return anyContainsPhrase(getParsedValues(source, term.field()), term.text());
+        }
+        if (query instanceof TermRangeQuery) {
+            TermRangeQuery range = (TermRangeQuery) query;
+            String lower = range.getLowerTerm() != null ? range.getLowerTerm().utf8ToString() : null;
+            String upper = range.getUpperTerm() != null ? range.getUpperTerm().utf8ToString() : null;
+            for (Object value : getParsedValues(source, range.getField())) {
+                if (lower != null) {
+                    int comparison = compareValues(value, lower);
+                    if (comparison < 0 || (comparison == 0 && !range.includesLower())) {
+                        continue;
+                    }
+                }
+                if (upper != null) {
+                    int comparison = compareValues(value, upper);
+                    if (comparison > 0 || (comparison == 0 && !range.includesUpper())) {
+                        continue;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+        if (query instanceof AutomatonQuery) {
+            // wildcard, prefix and regular expression queries
+            AutomatonQuery automatonQuery = (AutomatonQuery) query;
+            CharacterRunAutomaton automaton = new CharacterRunAutomaton(automatonQuery.getAutomaton());
+            for (Object value : getParsedValues(source, automatonQuery.getField())) {
+                String text = value.toString();
+                if (automaton.run(text) || automaton.run(text.toLowerCase(Locale.ROOT))) {
+                    return true;
+                }
+                for (String token : tokens(text)) {
+                    if (automaton.run(token)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        throw new UnsupportedOperationException("The in-memory item storage engine does not support the query string [" + query + "]");
+    }
+
+    private static boolean matchesParsedBool(BooleanQuery bool, Map<String, Object> source) {
+        boolean required = false;
+        int shouldMatched = 0;
+        for (BooleanClause clause : bool.clauses()) {
+            boolean matched = matchesParsed(clause.getQuery(), source);
+            switch (clause.getOccur()) {
+                case MUST:
+                case FILTER:
+                    if (!matched) {
+                        return false;
+                    }
+                    required = true;
+                    break;
+                case MUST_NOT:
+                    if (matched) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (matched) {
+                        shouldMatched++;
+                    }
+            }
+        }
+        boolean hasShould = bool.clauses().stream().anyMatch(clause -> clause.getOccur() == BooleanClause.Occur.SHOULD);
+        // as in Elasticsearch, a query with only must not clauses matches everything else
+        int minimumShouldMatch = Math.max(bool.getMinimumNumberShouldMatch(), hasShould && !required ? 1 : 0);
+        return shouldMatched >= minimumShouldMatch;
+    }
+
+    private static List<Object> getParsedValues(Map<String, Object> source, String field) {
+        if (!field.equals(ALL_FIELDS)) {
+            return getValues(source, field);
+        }
+        List<Object> ret = new ArrayList<>();
+        collectAllValues(source, ret);
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectAllValues(Object current, List<Object> values) {
+        if (current instanceof Map) {
+            for (Object value : ((Map<String, Object>) current).values()) {
+                collectAllValues(value, values);
+            }
+        } else if (current instanceof Collection) {
+            for (Object value : (Collection<Object>) current) {
+                collectAllValues(value, values);
+            }
+        } else if (current != null) {
+            values.add(current);
+        }
+    }
+
+    private static boolean anyEquals(List<Object> values, Object expected) {
+        for (Object value : values) {
+            if (compareValues(value, expected) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a value equals the text, or shares a token with it
+     */
+    private static boolean anyMatchesText(List<Object> values, String text) {
+        List<String> textTokens = tokens(text);
+        for (Object value : values) {
+            if (compareValues(value, text) == 0 || !Collections.disjoint(tokens(value.toString()), textTokens)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a value equals the phrase, or has all its tokens in the same order
+     */
+    private static boolean anyContainsPhrase(List<Object> values, String phrase) {
+        List<String> phraseTokens = tokens(phrase);
+        for (Object value : values) {
+            if (compareValues(value, phrase) == 0 || (!phraseTokens.isEmpty() && Collections.indexOfSubList(tokens(value.toString()), phraseTokens) >= 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> ret = new ArrayList<>();
+        try (TokenStream stream = ANALYZER.tokenStream("", text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                ret.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            // only thrown when reading the text fails, which cannot happen with a string
+            throw new UncheckedIOException(e);
+        }
+        return ret;
+    }
+
+    /**
+     * Uses the same pattern syntax as Elasticsearch, where * matches any characters, ? matches one and \\ escapes either
+     */
+    private static boolean anyMatchesWildcard(List<Object> values, String pattern, boolean caseInsensitive) {
+        String normalized = caseInsensitive ? pattern.toLowerCase(Locale.ROOT) : pattern;
+        CharacterRunAutomaton automaton = new CharacterRunAutomaton(WildcardQuery.toAutomaton(new Term("", normalized)));
+        for (Object value : values) {
+            String text = value.toString();
+            if (automaton.run(caseInsensitive ? text.toLowerCase(Locale.ROOT) : text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Leaves the text of terms and ranges as written, so they can be compared with the values of any type of field
+     */
+    private static class RawQueryParser extends QueryParser {
+
+        RawQueryParser(String defaultField) {
+            super(defaultField, ANALYZER);
+            setAllowLeadingWildcard(true);
+        }
+
+        @Override
+        protected Query getFieldQuery(String field, String queryText, boolean quoted) {
+            return quoted ? new PhraseQuery(field, queryText) : new TermQuery(new Term(field, queryText));
+        }
+
+        @Override
+        protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive, boolean endInclusive) {
+            return TermRangeQuery.newStringRange(field,
+                                                 part1 == null || part1.equals("*") ? null : part1,
+                                                 part2 == null || part2.equals("*") ? null : part2,
+                                                 startInclusive,
+                                                 endInclusive);
+        }
+
+        @Override
+        protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+            if (termStr.equals("*")) {
+                // as in Elasticsearch, a lone * matches every item and field:* every item with the field
+                return field.equals(ALL_FIELDS) ? new MatchAllDocsQuery() : new DocValuesFieldExistsQuery(field);
+            }
+            return super.getWildcardQuery(field, termStr);
+        }
+    }
+}
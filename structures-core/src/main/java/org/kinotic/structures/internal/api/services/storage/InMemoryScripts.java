@@ -0,0 +1,130 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs update scripts against item sources held in memory.
+ * Painless is not available without Elasticsearch, so only inline scripts made of these statements are supported:
+ * <ul>
+ *     <li>ctx._source.field = params.name</li>
+ *     <li>ctx._source.field += params.name, for numbers</li>
+ *     <li>ctx._source.remove('field')</li>
+ *     <li>for (String field : params.name) { ctx._source.remove(field); }</li>
+ * </ul>
+ * Fields can be nested by separating their names with dots, and any other statement is rejected.
+ */
+final class InMemoryScripts {
+
+    private static final String FIELD = "[A-Za-z_][A-Za-z0-9_]*(?:\\.[A-Za-z_][A-Za-z0-9_]*)*";
+    private static final String PARAM = "params\\.([A-Za-z_][A-Za-z0-9_]*)";
+    private static final Pattern ASSIGN = Pattern.compile("ctx\\._source\\.(" + FIELD + ")\\s*(\\+?=)\\s*" + PARAM);
+    private static final Pattern REMOVE = Pattern.compile("ctx\\._source\\.remove\\(\\s*['\"](" + FIELD + ")['\"]\\s*\\)");
+    private static final Pattern REMOVE_ALL = Pattern.compile("for\\s*\\(\\s*String\\s+(\\w+)\\s*:\\s*" + PARAM + "\\s*\\)\\s*\\{\\s*ctx\\._source\\.remove\\(\\s*\\1\\s*\\)\\s*;?\\s*}");
+
+    private InMemoryScripts() {
+    }
+
+    /**
+     * Runs the script against the source, changing it in place
+     * @throws UnsupportedOperationException if the script is not one of the supported statements
+     */
+    static void run(Script script, Map<String, Object> source) {
+        if (script.getType() != ScriptType.INLINE || !Script.DEFAULT_SCRIPT_LANG.equals(script.getLang())) {
+            throw new UnsupportedOperationException("The in-memory item storage engine only supports inline painless scripts");
+        }
+        Map<String, Object> params = script.getParams() != null ? script.getParams() : Map.of();
+        String remaining = script.getIdOrCode().trim();
+        while (!remaining.isEmpty()) {
+            Matcher matcher;
+            if ((matcher = REMOVE_ALL.matcher(remaining)).lookingAt()) {
+                Object fields = getParam(params, matcher.group(2));
+                if (!(fields instanceof Collection)) {
+                    throw new IllegalArgumentException("Script parameter '" + matcher.group(2) + "' must be a list of field names");
+                }
+                for (Object field : (Collection<?>) fields) {
+                    remove(source, field.toString());
+                }
+            } else if ((matcher = ASSIGN.matcher(remaining)).lookingAt()) {
+                Object value = getParam(params, matcher.group(3));
+                if (matcher.group(2).equals("+=")) {
+                    value = add(getValue(source, matcher.group(1)), value, matcher.group(1));
+                }
+                put(source, matcher.group(1), ItemSources.deepCopy(value));
+            } else if ((matcher = REMOVE.matcher(remaining)).lookingAt()) {
+                remove(source, matcher.group(1));
+            } else {
+                throw new UnsupportedOperationException("The in-memory item storage engine does not support the script statement '" + remaining + "'");
+            }
+            remaining = remaining.substring(matcher.end()).trim();
+            if (remaining.startsWith(";")) {
+                remaining = remaining.substring(1).trim();
+            }
+        }
+    }
+
+    private static Object getParam(Map<String, Object> params, String name) {
+        if (!params.containsKey(name)) {
+            throw new IllegalArgumentException("Script parameter '" + name + "' is missing");
+        }
+        return params.get(name);
+    }
+
+    private static Object add(Object current, Object value, String field) {
+        if (!(current instanceof Number) || !(value instanceof Number)) {
+            throw new IllegalArgumentException("Only numbers can be added to, '" + field + "' is " + current);
+        }
+        if (isIntegral(current) && isIntegral(value)) {
+            return ((Number) current).longValue() + ((Number) value).longValue();
+        }
+        return ((Number) current).doubleValue() + ((Number) value).doubleValue();
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static Object getValue(Map<String, Object> source, String field) {
+        Map<String, Object> parent = getParent(source, field, false);
+        return parent != null ? parent.get(lastName(field)) : null;
+    }
+
+    private static void put(Map<String, Object> source, String field, Object value) {
+        getParent(source, field, true).put(lastName(field), value);
+    }
+
+    private static void remove(Map<String, Object> source, String field) {
+        Map<String, Object> parent = getParent(source, field, false);
+        if (parent != null) {
+            parent.remove(lastName(field));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getParent(Map<String, Object> source, String field, boolean create) {
+        String[] names = field.split("\\.");
+        Map<String, Object> ret = source;
+        for (int i = 0; i < names.length - 1; i++) {
+            Object child = ret.get(names[i]);
+            if (!(child instanceof Map)) {
+                if (!create) {
+                    return null;
+                }
+                child = new HashMap<String, Object>();
+                ret.put(names[i], child);
+            }
+            ret = (Map<String, Object>) child;
+        }
+        return ret;
+    }
+
+    private static String lastName(String field) {
+        return field.substring(field.lastIndexOf('.') + 1);
+    }
+}
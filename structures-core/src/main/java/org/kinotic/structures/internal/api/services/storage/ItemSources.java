@@ -0,0 +1,112 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.xcontent.XContentFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Works with item sources the way Elasticsearch does, for the {@link ItemStorageEngine}s that keep the items themselves
+ */
+final class ItemSources {
+
+    private ItemSources() {
+    }
+
+    /**
+     * @return the source with the {@link FetchSourceContext} applied, or null if no source should be returned
+     */
+    static BytesReference toSource(Map<String, Object> source, FetchSourceContext fetchSourceContext) {
+        if (fetchSourceContext != null && !fetchSourceContext.fetchSource()) {
+            return null;
+        }
+        Map<String, Object> filtered = fetchSourceContext != null ? fetchSourceContext.getFilter().apply(source) : source;
+        try {
+            return BytesReference.bytes(XContentFactory.jsonBuilder().map(filtered));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Merges the changes into the source the way a partial document update does, objects are merged and everything else replaced
+     * @return true if the source was changed
+     */
+    @SuppressWarnings("unchecked")
+    static boolean merge(Map<String, Object> source, Map<String, Object> changes) {
+        boolean changed = false;
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            Object current = source.get(change.getKey());
+            if (current instanceof Map && change.getValue() instanceof Map) {
+                changed |= merge((Map<String, Object>) current, (Map<String, Object>) change.getValue());
+            } else if (!source.containsKey(change.getKey()) || !Objects.equals(current, change.getValue())) {
+                source.put(change.getKey(), deepCopy(change.getValue()));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Builds the result of a terms aggregation from the number of items holding each value, ordering and limiting the buckets as Elasticsearch does
+     */
+    static StringTerms toStringTerms(TermsAggregationBuilder aggregation, Map<String, Long> counts) {
+        List<StringTerms.Bucket> buckets = new ArrayList<>();
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            if (count.getValue() >= aggregation.minDocCount()) {
+                buckets.add(new StringTerms.Bucket(new BytesRef(count.getKey()), count.getValue(), InternalAggregations.EMPTY,
+                                                   false, 0, DocValueFormat.RAW));
+            }
+        }
+        buckets.sort(aggregation.order().comparator());
+        long otherDocCount = 0;
+        for (int i = aggregation.size(); i < buckets.size(); i++) {
+            otherDocCount += buckets.get(i).getDocCount();
+        }
+        List<StringTerms.Bucket> kept = new ArrayList<>(buckets.subList(0, Math.min(aggregation.size(), buckets.size())));
+        return new StringTerms(aggregation.getName(),
+                               aggregation.order(),
+                               aggregation.order(),
+                               aggregation.size(),
+                               aggregation.minDocCount(),
+                               aggregation.getMetadata(),
+                               DocValueFormat.RAW,
+                               aggregation.shardSize(),
+                               false,
+                               otherDocCount,
+                               kept,
+                               0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T deepCopy(T value) {
+        if (value instanceof Map) {
+            Map<String, Object> ret = new HashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                ret.put(entry.getKey(), deepCopy(entry.getValue()));
+            }
+            return (T) ret;
+        }
+        if (value instanceof Collection) {
+            List<Object> ret = new ArrayList<>();
+            for (Object element : (Collection<Object>) value) {
+                ret.add(deepCopy(element));
+            }
+            return (T) ret;
+        }
+        return value;
+    }
+}
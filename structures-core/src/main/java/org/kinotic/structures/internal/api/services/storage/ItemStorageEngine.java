@@ -0,0 +1,73 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+
+/**
+ * Stores and finds the items of every {@link org.kinotic.structures.api.domain.Structure}.
+ * This is the only way {@link org.kinotic.structures.internal.api.services.DefaultItemService} reaches the items,
+ * so another backend or a caching layer can be put in place by providing a different implementation.
+ * <p>
+ * Requests and responses use the Elasticsearch types, since these are what the trait lifecycles build queries with.
+ * The implementation is chosen with structures.item-storage-engine, see {@link ElasticsearchItemStorageEngine}, {@link LuceneItemStorageEngine}
+ * and {@link InMemoryItemStorageEngine}.
+ * The indices themselves are created and changed by {@link org.kinotic.structures.internal.api.services.ItemIndexManager}.
+ * <p>
+ * Everything that reads or writes items goes through the engine, including counts and the id lookups made before writes.
+ * Index administration, such as aliases, migrations, archiving, closing idle indices and lifecycle policies, is only done for
+ * engines that keep the items in Elasticsearch, see {@link #storesItemsInElasticsearch()}. Other engines only support
+ * {@link org.kinotic.structures.api.domain.IndexMode#STANDARD} Structures without a routing field, and this is checked when a Structure is published.
+ * <p>
+ * Returned {@link Mono}s must not start the request until subscribed, and should cancel it if the subscription is cancelled.
+ */
+public interface ItemStorageEngine {
+
+    Mono<GetResponse> get(GetRequest request);
+
+    Mono<MultiGetResponse> multiGet(MultiGetRequest request);
+
+    Mono<SearchResponse> search(SearchRequest request);
+
+    Mono<CountResponse> count(CountRequest request);
+
+    Mono<BulkResponse> bulk(BulkRequest request);
+
+    /**
+     * Blocking, since single item modifications are made from the blocking item service methods
+     */
+    UpdateResponse update(UpdateRequest request) throws IOException;
+
+    /**
+     * Called with the complete Elasticsearch mapping when an item index is created or its mapping changes.
+     * Does nothing by default, for engines that do not need to know field types before items are written.
+     */
+    default void putMapping(String index, String mapping) throws IOException {
+    }
+
+    /**
+     * Called when an item index is deleted, so any items the engine holds for it can be removed.
+     */
+    default void deleteIndex(String index) throws IOException {
+    }
+
+    /**
+     * @return true if the items are kept in the Elasticsearch indices created for them, so Elasticsearch APIs can be used to administer them
+     */
+    default boolean storesItemsInElasticsearch() {
+        return false;
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How a field of an item is indexed by the {@link LuceneItemStorageEngine}, taken from the Elasticsearch mapping generated for the Trait
+ */
+final class LuceneFieldMapping {
+
+    enum Kind {
+        /**
+         * Exact values, such as keyword and boolean fields
+         */
+        KEYWORD,
+        /**
+         * Analyzed full text
+         */
+        TEXT,
+        LONG,
+        DOUBLE,
+        /**
+         * Kept in the source only, such as flattened fields and objects that are not indexed
+         */
+        SOURCE_ONLY
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> LONG_TYPES = Set.of("long", "integer", "short", "byte", "date", "unsigned_long");
+    private static final Set<String> DOUBLE_TYPES = Set.of("double", "float", "half_float", "scaled_float");
+    private static final Set<String> TEXT_TYPES = Set.of("text", "match_only_text", "search_as_you_type");
+    private static final Set<String> KEYWORD_TYPES = Set.of("keyword", "constant_keyword", "wildcard", "boolean", "ip", "version");
+
+    private final Kind kind;
+    private final boolean indexed;
+    private final boolean docValues;
+
+    LuceneFieldMapping(Kind kind, boolean indexed, boolean docValues) {
+        this.kind = kind;
+        this.indexed = indexed;
+        this.docValues = docValues;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    boolean hasDocValues() {
+        return docValues;
+    }
+
+    /**
+     * The mapping for a field that is not in the Elasticsearch mapping, chosen from its value the way Elasticsearch dynamic mapping would
+     */
+    static LuceneFieldMapping forValue(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return new LuceneFieldMapping(Kind.LONG, true, true);
+        }
+        if (value instanceof Number) {
+            return new LuceneFieldMapping(Kind.DOUBLE, true, true);
+        }
+        return new LuceneFieldMapping(Kind.KEYWORD, true, true);
+    }
+
+    /**
+     * @param mapping the complete Elasticsearch mapping for the items
+     * @return the mapping of every field, keyed by its path using dots for the fields of objects
+     */
+    static Map<String, LuceneFieldMapping> parse(String mapping) throws IOException {
+        Map<String, LuceneFieldMapping> ret = new HashMap<>();
+        JsonNode properties = MAPPER.readTree(mapping).path("properties");
+        addFields(ret, "", properties);
+        return ret;
+    }
+
+    private static void addFields(Map<String, LuceneFieldMapping> fields, String prefix, JsonNode properties) {
+        Iterator<Map.Entry<String, JsonNode>> iterator = properties.fields();
+        while (iterator.hasNext()) {
+            Map.Entry<String, JsonNode> property = iterator.next();
+            String path = prefix + property.getKey();
+            JsonNode field = property.getValue();
+            if (field.has("properties") && field.path("enabled").asBoolean(true)) {
+                addFields(fields, path + ".", field.get("properties"));
+                continue;
+            }
+            String type = field.path("type").asText("object");
+            boolean indexed = field.path("index").asBoolean(true);
+            boolean docValues = field.path("doc_values").asBoolean(true);
+            Kind kind;
+            if (LONG_TYPES.contains(type)) {
+                kind = Kind.LONG;
+            } else if (DOUBLE_TYPES.contains(type)) {
+                kind = Kind.DOUBLE;
+            } else if (TEXT_TYPES.contains(type)) {
+                kind = Kind.TEXT;
+                docValues = false;
+            } else if (KEYWORD_TYPES.contains(type)) {
+                kind = Kind.KEYWORD;
+            } else {
+                kind = Kind.SOURCE_ONLY;
+            }
+            fields.put(path, new LuceneFieldMapping(kind, indexed, docValues));
+        }
+    }
+
+    /**
+     * @return a compact form that can be kept in the Lucene commit data, see {@link #decode(String)}
+     */
+    String encode() {
+        return kind.name() + "," + indexed + "," + docValues;
+    }
+
+    static LuceneFieldMapping decode(String encoded) {
+        String[] parts = encoded.split(",");
+        return new LuceneFieldMapping(Kind.valueOf(parts[0]), Boolean.parseBoolean(parts[1]), Boolean.parseBoolean(parts[2]));
+    }
+}
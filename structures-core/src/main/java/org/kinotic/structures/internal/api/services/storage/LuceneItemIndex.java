@@ -0,0 +1,579 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.xcontent.XContentFactory;
+import org.elasticsearch.xcontent.XContentType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Lucene index holding the items of one item index, used by the {@link LuceneItemStorageEngine}.
+ * <p>
+ * Each item is a document with its id, its source as JSON, its version and sequence number, plus a Lucene field for every
+ * value indexed according to its {@link LuceneFieldMapping}. Every text and keyword value is also indexed into an _all field,
+ * so query strings without a field search the whole item as they do in Elasticsearch.
+ * <p>
+ * Writes are visible to searches after the next refresh, but can be read by id straight away, since recent writes are
+ * kept in a version map until a refresh makes them searchable. Writes are serialized, which is what makes
+ * read, merge and write updates safe without optimistic concurrency.
+ */
+final class LuceneItemIndex implements Closeable {
+
+    static final String ID_FIELD = "_id";
+    static final String FIELD_NAMES_FIELD = "_field_names";
+    static final String ALL_FIELD = "_all";
+    private static final String SOURCE_FIELD = "_source";
+    private static final String VERSION_FIELD = "_version";
+    private static final String SEQ_NO_FIELD = "_seq_no";
+    private static final Set<String> LOADED_FIELDS = Set.of(ID_FIELD, SOURCE_FIELD, VERSION_FIELD, SEQ_NO_FIELD);
+
+    private static final String MAPPING_COMMIT_PREFIX = "mapping.";
+    private static final String MAX_SEQ_NO_COMMIT_KEY = "max_seq_no";
+    private static final int DEFAULT_SEARCH_SIZE = 10;
+    private static final long PRIMARY_TERM = 1;
+
+    private final String name;
+    private final ShardId shardId;
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final ConcurrentHashMap<String, LuceneFieldMapping> mappings = new ConcurrentHashMap<>();
+    private final LuceneQueryTranslator translator;
+    private long maxSeqNo;
+
+    /**
+     * Writes not yet visible to searches. Current is swapped into old when a refresh starts and old is dropped once it is done,
+     * so every write can be found either here or by the searcher.
+     */
+    private volatile Map<String, VersionedItem> currentWrites = new ConcurrentHashMap<>();
+    private volatile Map<String, VersionedItem> oldWrites = Collections.emptyMap();
+
+    LuceneItemIndex(String name, Path path) throws IOException {
+        this.name = name;
+        this.shardId = new ShardId(name, "_na_", 0);
+        this.directory = new MMapDirectory(path);
+        if (DirectoryReader.indexExists(directory)) {
+            for (Map.Entry<String, String> entry : SegmentInfos.readLatestCommit(directory).getUserData().entrySet()) {
+                if (entry.getKey().startsWith(MAPPING_COMMIT_PREFIX)) {
+                    mappings.put(entry.getKey().substring(MAPPING_COMMIT_PREFIX.length()), LuceneFieldMapping.decode(entry.getValue()));
+                } else if (entry.getKey().equals(MAX_SEQ_NO_COMMIT_KEY)) {
+                    maxSeqNo = Long.parseLong(entry.getValue());
+                }
+            }
+        }
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+        this.searcherManager.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+                oldWrites = currentWrites;
+                currentWrites = new ConcurrentHashMap<>();
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                oldWrites = Collections.emptyMap();
+            }
+        });
+        this.translator = new LuceneQueryTranslator(this::getMapping, analyzer);
+    }
+
+    /**
+     * Replaces the mapping of the fields in the given Elasticsearch mapping, fields that were only seen in items keep the one inferred for them
+     */
+    void putMapping(String mapping) throws IOException {
+        mappings.putAll(LuceneFieldMapping.parse(mapping));
+    }
+
+    GetResult get(String id, FetchSourceContext fetchSourceContext) throws IOException {
+        VersionedItem item = getLatest(id);
+        if (item == null || item.source == null) {
+            return new GetResult(name, "_doc", id, SequenceNumbers.UNASSIGNED_SEQ_NO, SequenceNumbers.UNASSIGNED_PRIMARY_TERM, -1,
+                                 false, null, null, null);
+        }
+        return new GetResult(name, "_doc", id, item.seqNo, PRIMARY_TERM, item.version,
+                             true, ItemSources.toSource(item.source, fetchSourceContext), null, null);
+    }
+
+    synchronized IndexResponse index(IndexRequest request) throws IOException {
+        VersionedItem existing = getLatest(request.id());
+        boolean exists = existing != null && existing.source != null;
+        if (exists && request.opType() == DocWriteRequest.OpType.CREATE) {
+            throw new VersionConflictEngineException(shardId, request.id(), "document already exists");
+        }
+        VersionedItem written = write(request.id(), request.sourceAsMap(), existing);
+        return new IndexResponse(shardId, "_doc", request.id(), written.seqNo, PRIMARY_TERM, written.version, !exists);
+    }
+
+    synchronized UpdateResponse update(UpdateRequest request) throws IOException {
+        if (request.script() != null) {
+            throw new UnsupportedOperationException("The lucene item storage engine does not support scripted updates");
+        }
+        VersionedItem existing = getLatest(request.id());
+        if (existing == null || existing.source == null) {
+            Map<String, Object> source;
+            if (request.docAsUpsert()) {
+                source = request.doc().sourceAsMap();
+            } else if (request.upsertRequest() != null) {
+                source = request.upsertRequest().sourceAsMap();
+            } else {
+                throw new DocumentMissingException(shardId, "_doc", request.id());
+            }
+            VersionedItem written = write(request.id(), source, existing);
+            return new UpdateResponse(shardId, "_doc", request.id(), written.seqNo, PRIMARY_TERM, written.version,
+                                      DocWriteResponse.Result.CREATED);
+        }
+        Map<String, Object> merged = ItemSources.deepCopy(existing.source);
+        boolean changed = ItemSources.merge(merged, request.doc().sourceAsMap());
+        if (!changed && request.detectNoop()) {
+            return new UpdateResponse(shardId, "_doc", request.id(), existing.seqNo, PRIMARY_TERM, existing.version,
+                                      DocWriteResponse.Result.NOOP);
+        }
+        VersionedItem written = write(request.id(), merged, existing);
+        return new UpdateResponse(shardId, "_doc", request.id(), written.seqNo, PRIMARY_TERM, written.version,
+                                  DocWriteResponse.Result.UPDATED);
+    }
+
+    synchronized DeleteResponse delete(String id) throws IOException {
+        VersionedItem existing = getLatest(id);
+        boolean found = existing != null && existing.source != null;
+        long version = existing != null ? existing.version + 1 : 1;
+        long seqNo = ++maxSeqNo;
+        writer.deleteDocuments(new Term(ID_FIELD, id));
+        currentWrites.put(id, new VersionedItem(null, version, seqNo));
+        return new DeleteResponse(shardId, "_doc", id, seqNo, PRIMARY_TERM, version, found);
+    }
+
+    /**
+     * Makes all writes visible to searches, waiting for another refresh in progress to finish
+     */
+    void refresh() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    /**
+     * Persists all writes along with the mappings, so they survive a restart
+     */
+    void commit() throws IOException {
+        Map<String, String> commitData = new HashMap<>();
+        for (Map.Entry<String, LuceneFieldMapping> entry : mappings.entrySet()) {
+            commitData.put(MAPPING_COMMIT_PREFIX + entry.getKey(), entry.getValue().encode());
+        }
+        synchronized (this) {
+            commitData.put(MAX_SEQ_NO_COMMIT_KEY, Long.toString(maxSeqNo));
+        }
+        writer.setLiveCommitData(commitData.entrySet());
+        writer.commit();
+    }
+
+    SearchResult search(SearchSourceBuilder source) throws IOException {
+        Query query = translator.toQuery(source.query());
+        if (source.postFilter() != null) {
+            query = new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.MUST)
+                    .add(translator.toQuery(source.postFilter()), BooleanClause.Occur.FILTER)
+                    .build();
+        }
+        List<TermsCollector> aggregations = new ArrayList<>();
+        if (source.aggregations() != null) {
+            for (AggregationBuilder aggregation : source.aggregations().getAggregatorFactories()) {
+                aggregations.add(new TermsCollector(aggregation));
+            }
+        }
+        int from = Math.max(source.from(), 0);
+        int size = source.size() >= 0 ? source.size() : DEFAULT_SEARCH_SIZE;
+        Sort sort = translator.toSort(source.sorts());
+        FieldDoc after = null;
+        if (source.searchAfter() != null) {
+            if (sort == null) {
+                throw new IllegalArgumentException("search_after requires a sort");
+            }
+            after = translator.toSearchAfter(sort, source.searchAfter());
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            List<Collector> collectors = new ArrayList<>(aggregations);
+            TopDocsCollector<?> topDocsCollector = null;
+            TotalHitCountCollector countCollector = null;
+            if (from + size == 0) {
+                countCollector = new TotalHitCountCollector();
+                collectors.add(countCollector);
+            } else if (sort != null) {
+                topDocsCollector = TopFieldCollector.create(sort, from + size, after, Integer.MAX_VALUE);
+                collectors.add(topDocsCollector);
+            } else {
+                topDocsCollector = TopScoreDocCollector.create(from + size, Integer.MAX_VALUE);
+                collectors.add(topDocsCollector);
+            }
+            searcher.search(query, MultiCollector.wrap(collectors));
+
+            List<SearchHit> hits = new ArrayList<>();
+            long totalHits;
+            float maxScore = Float.NaN;
+            if (topDocsCollector != null) {
+                TopDocs topDocs = topDocsCollector.topDocs(from, size);
+                totalHits = topDocs.totalHits.value;
+                for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                    ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                    hits.add(toSearchHit(searcher, scoreDoc, source.fetchSource()));
+                    if (!Float.isNaN(scoreDoc.score)) {
+                        maxScore = Float.isNaN(maxScore) ? scoreDoc.score : Math.max(maxScore, scoreDoc.score);
+                    }
+                }
+            } else {
+                totalHits = countCollector.getTotalHits();
+            }
+            List<InternalAggregation> internalAggregations = new ArrayList<>();
+            for (TermsCollector aggregation : aggregations) {
+                internalAggregations.add(aggregation.toTerms());
+            }
+            return new SearchResult(hits,
+                                    new TotalHits(totalHits, TotalHits.Relation.EQUAL_TO),
+                                    maxScore,
+                                    internalAggregations.isEmpty() ? null : InternalAggregations.from(internalAggregations));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Discards everything not yet committed and releases the index, see {@link #commit()}
+     */
+    @Override
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.rollback();
+        directory.close();
+    }
+
+    private SearchHit toSearchHit(IndexSearcher searcher, ScoreDoc scoreDoc, FetchSourceContext fetchSourceContext) throws IOException {
+        Document document = searcher.doc(scoreDoc.doc, LOADED_FIELDS);
+        SearchHit hit = new SearchHit(scoreDoc.doc, document.get(ID_FIELD), new Text("_doc"), new HashMap<>(), new HashMap<>());
+        BytesRef sourceBytes = document.getBinaryValue(SOURCE_FIELD);
+        if (fetchSourceContext == null) {
+            hit.sourceRef(new BytesArray(sourceBytes));
+        } else if (fetchSourceContext.fetchSource()) {
+            hit.sourceRef(ItemSources.toSource(toMap(sourceBytes), fetchSourceContext));
+        }
+        hit.shard(new SearchShardTarget("lucene", shardId, null));
+        hit.score(scoreDoc.score);
+        hit.version(document.getField(VERSION_FIELD).numericValue().longValue());
+        if (scoreDoc instanceof FieldDoc) {
+            Object[] sortValues = ((FieldDoc) scoreDoc).fields.clone();
+            for (int i = 0; i < sortValues.length; i++) {
+                if (sortValues[i] instanceof BytesRef) {
+                    sortValues[i] = ((BytesRef) sortValues[i]).utf8ToString();
+                }
+            }
+            DocValueFormat[] formats = new DocValueFormat[sortValues.length];
+            Arrays.fill(formats, DocValueFormat.RAW);
+            hit.sortValues(sortValues, formats);
+        }
+        return hit;
+    }
+
+    /**
+     * @return the latest write of the item, which has a null source if it was deleted, or null if it was never written
+     */
+    private VersionedItem getLatest(String id) throws IOException {
+        VersionedItem ret = currentWrites.get(id);
+        if (ret == null) {
+            ret = oldWrites.get(id);
+        }
+        if (ret != null) {
+            return ret;
+        }
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(new TermQuery(new Term(ID_FIELD, id)), 1);
+            if (topDocs.scoreDocs.length == 0) {
+                return null;
+            }
+            Document document = searcher.doc(topDocs.scoreDocs[0].doc, LOADED_FIELDS);
+            return new VersionedItem(toMap(document.getBinaryValue(SOURCE_FIELD)),
+                                     document.getField(VERSION_FIELD).numericValue().longValue(),
+                                     document.getField(SEQ_NO_FIELD).numericValue().longValue());
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private VersionedItem write(String id, Map<String, Object> source, VersionedItem existing) throws IOException {
+        VersionedItem written = new VersionedItem(source, existing != null ? existing.version + 1 : 1, ++maxSeqNo);
+        writer.updateDocument(new Term(ID_FIELD, id), toDocument(id, written));
+        currentWrites.put(id, written);
+        return written;
+    }
+
+    private Document toDocument(String id, VersionedItem item) throws IOException {
+        Document document = new Document();
+        document.add(new StringField(ID_FIELD, id, Field.Store.YES));
+        document.add(new StoredField(SOURCE_FIELD, BytesReference.toBytes(BytesReference.bytes(XContentFactory.jsonBuilder().map(item.source)))));
+        document.add(new StoredField(VERSION_FIELD, item.version));
+        document.add(new StoredField(SEQ_NO_FIELD, item.seqNo));
+        Set<String> fieldNames = new LinkedHashSet<>();
+        addFields(document, fieldNames, "", item.source);
+        for (String fieldName : fieldNames) {
+            document.add(new StringField(FIELD_NAMES_FIELD, fieldName, Field.Store.NO));
+        }
+        return document;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addFields(Document document, Set<String> fieldNames, String prefix, Map<String, Object> object) {
+        for (Map.Entry<String, Object> entry : object.entrySet()) {
+            String path = prefix + entry.getKey();
+            LuceneFieldMapping mapping = mappings.get(path);
+            if (entry.getValue() == null || (mapping != null && mapping.getKind() == LuceneFieldMapping.Kind.SOURCE_ONLY)) {
+                continue;
+            }
+            List<Object> values = new ArrayList<>();
+            if (entry.getValue() instanceof Collection) {
+                values.addAll((Collection<Object>) entry.getValue());
+            } else {
+                values.add(entry.getValue());
+            }
+            for (Object value : values) {
+                if (value instanceof Map) {
+                    fieldNames.add(path);
+                    addFields(document, fieldNames, path + ".", (Map<String, Object>) value);
+                } else if (value != null && addField(document, path, value)) {
+                    fieldNames.add(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the value was indexed, values that do not fit the mapping of the field are kept in the source only
+     */
+    private boolean addField(Document document, String path, Object value) {
+        LuceneFieldMapping mapping = mappings.computeIfAbsent(path, key -> LuceneFieldMapping.forValue(value));
+        List<IndexableField> fields = new ArrayList<>();
+        switch (mapping.getKind()) {
+            case LONG: {
+                long longValue;
+                try {
+                    longValue = LuceneQueryTranslator.toLong(value);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                if (mapping.isIndexed()) {
+                    fields.add(new LongPoint(path, longValue));
+                }
+                if (mapping.hasDocValues()) {
+                    fields.add(new SortedNumericDocValuesField(path, longValue));
+                }
+                break;
+            }
+            case DOUBLE: {
+                double doubleValue;
+                try {
+                    doubleValue = LuceneQueryTranslator.toDouble(value);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                if (mapping.isIndexed()) {
+                    fields.add(new DoublePoint(path, doubleValue));
+                }
+                if (mapping.hasDocValues()) {
+                    fields.add(new SortedNumericDocValuesField(path, NumericUtils.doubleToSortableLong(doubleValue)));
+                }
+                break;
+            }
+            case TEXT: {
+                String text = value.toString();
+                if (mapping.isIndexed()) {
+                    fields.add(new TextField(path, text, Field.Store.NO));
+                }
+                fields.add(new TextField(ALL_FIELD, text, Field.Store.NO));
+                break;
+            }
+            case KEYWORD: {
+                String keyword = value.toString();
+                BytesRef bytes = new BytesRef(keyword);
+                // Lucene rejects terms this long, as with ignore_above in Elasticsearch they are only kept in the source
+                if (bytes.length > IndexWriter.MAX_TERM_LENGTH) {
+                    return false;
+                }
+                if (mapping.isIndexed()) {
+                    fields.add(new StringField(path, keyword, Field.Store.NO));
+                }
+                if (mapping.hasDocValues()) {
+                    fields.add(new SortedSetDocValuesField(path, bytes));
+                }
+                fields.add(new TextField(ALL_FIELD, keyword, Field.Store.NO));
+                break;
+            }
+            default:
+                return false;
+        }
+        fields.forEach(document::add);
+        return true;
+    }
+
+    private LuceneFieldMapping getMapping(String field) {
+        LuceneFieldMapping ret = mappings.get(field);
+        return ret != null ? ret : new LuceneFieldMapping(LuceneFieldMapping.Kind.KEYWORD, true, true);
+    }
+
+    private static Map<String, Object> toMap(BytesRef source) {
+        return XContentHelper.convertToMap(new BytesArray(source), false, XContentType.JSON).v2();
+    }
+
+    static class SearchResult {
+        final List<SearchHit> hits;
+        final TotalHits totalHits;
+        final float maxScore;
+        final InternalAggregations aggregations;
+
+        SearchResult(List<SearchHit> hits, TotalHits totalHits, float maxScore, InternalAggregations aggregations) {
+            this.hits = hits;
+            this.totalHits = totalHits;
+            this.maxScore = maxScore;
+            this.aggregations = aggregations;
+        }
+
+        SearchHits toSearchHits() {
+            return new SearchHits(hits.toArray(new SearchHit[0]), totalHits, maxScore);
+        }
+    }
+
+    private static class VersionedItem {
+        private final Map<String, Object> source;
+        private final long version;
+        private final long seqNo;
+
+        VersionedItem(Map<String, Object> source, long version, long seqNo) {
+            this.source = source;
+            this.version = version;
+            this.seqNo = seqNo;
+        }
+    }
+
+    /**
+     * Counts the values of a keyword field for a terms aggregation, the only aggregation the item service uses
+     */
+    private class TermsCollector extends SimpleCollector {
+
+        private final TermsAggregationBuilder aggregation;
+        private final Map<String, Long> counts = new HashMap<>();
+        private SortedSetDocValues values;
+
+        TermsCollector(AggregationBuilder aggregation) {
+            if (!(aggregation instanceof TermsAggregationBuilder)
+                    || !aggregation.getSubAggregations().isEmpty()
+                    || getMapping(((TermsAggregationBuilder) aggregation).field()).getKind() != LuceneFieldMapping.Kind.KEYWORD) {
+                throw new UnsupportedOperationException("The lucene item storage engine only supports terms aggregations of keyword fields");
+            }
+            this.aggregation = (TermsAggregationBuilder) aggregation;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            values = DocValues.getSortedSet(context.reader(), aggregation.field());
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (values.advanceExact(doc)) {
+                for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                    counts.merge(values.lookupOrd(ord).utf8ToString(), 1L, Long::sum);
+                }
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+
+        StringTerms toTerms() {
+            return ItemSources.toStringTerms(aggregation, counts);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link ItemStorageEngine} that keeps the items in Lucene indices on the local disk, for single node deployments that
+ * do not want to run an Elasticsearch cluster. Enabled with structures.item-storage-engine=lucene.
+ * The Structures, Traits and Namespaces are kept by the engine as well, see {@link org.kinotic.structures.internal.api.services.MetadataStorage}.
+ * <p>
+ * There is one index for each item index, in a directory of structures.lucene-data-directory named after it.
+ * Field types come from the Elasticsearch mapping generated for the Structure, so queries, sorting and the terms aggregation
+ * behave as they do in Elasticsearch for keyword, text and numeric fields. See {@link LuceneQueryTranslator} for the supported queries.
+ * <p>
+ * Writes become searchable every structures.lucene-refresh-interval, or straight away for requests that ask for a refresh,
+ * and are committed every structures.lucene-commit-interval. There is no transaction log, so writes since the last commit are lost
+ * if the process is killed. Index names are used as given, so only {@link org.kinotic.structures.api.domain.IndexMode#STANDARD}
+ * Structures are supported, and scripts, routing and scrolling are not.
+ */
+@Component
+@ConditionalOnProperty(prefix = "structures", name = "item-storage-engine", havingValue = "lucene")
+public class LuceneItemStorageEngine implements ItemStorageEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(LuceneItemStorageEngine.class);
+
+    private final StructuresProperties structuresProperties;
+    private final ConcurrentHashMap<String, LuceneItemIndex> indices = new ConcurrentHashMap<>();
+    private Disposable refreshSchedule;
+    private Disposable commitSchedule;
+
+    public LuceneItemStorageEngine(StructuresProperties structuresProperties) {
+        this.structuresProperties = structuresProperties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Duration refreshInterval = structuresProperties.getLuceneRefreshInterval();
+        refreshSchedule = Flux.interval(refreshInterval, refreshInterval, Schedulers.boundedElastic())
+                              .onBackpressureDrop()
+                              .concatMap(tick -> Mono.fromRunnable(this::refreshAll))
+                              .subscribe();
+        Duration commitInterval = structuresProperties.getLuceneCommitInterval();
+        commitSchedule = Flux.interval(commitInterval, commitInterval, Schedulers.boundedElastic())
+                             .onBackpressureDrop()
+                             .concatMap(tick -> Mono.fromRunnable(this::commitAll))
+                             .subscribe();
+    }
+
+    /**
+     * Commits and closes every index, so the items are found again when the engine is next started
+     */
+    @PreDestroy
+    public void stop() {
+        if (refreshSchedule != null) {
+            refreshSchedule.dispose();
+        }
+        if (commitSchedule != null) {
+            commitSchedule.dispose();
+        }
+        commitAll();
+        for (LuceneItemIndex index : indices.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.warn("Failed to close lucene item index", e);
+            }
+        }
+        indices.clear();
+    }
+
+    @Override
+    public Mono<GetResponse> get(GetRequest request) {
+        return Mono.fromCallable(() -> new GetResponse(getResult(request.index(), request.id(), request.fetchSourceContext())))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<MultiGetResponse> multiGet(MultiGetRequest request) {
+        return Mono.fromCallable(() -> {
+            MultiGetItemResponse[] responses = new MultiGetItemResponse[request.getItems().size()];
+            for (int i = 0; i < responses.length; i++) {
+                MultiGetRequest.Item item = request.getItems().get(i);
+                responses[i] = new MultiGetItemResponse(new GetResponse(getResult(item.index(), item.id(), item.fetchSourceContext())), null);
+            }
+            return new MultiGetResponse(responses);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<SearchResponse> search(SearchRequest request) {
+        return Mono.fromCallable(() -> executeSearch(request))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<CountResponse> count(CountRequest request) {
+        return Mono.fromCallable(() -> {
+            long count = 0;
+            for (String indexName : request.indices()) {
+                LuceneItemIndex index = getIndex(indexName, false);
+                if (index == null) {
+                    throw new IndexNotFoundException(indexName);
+                }
+                count += index.search(new SearchSourceBuilder().query(request.query()).size(0)).totalHits.value;
+            }
+            return new CountResponse(count, false, new CountResponse.ShardStats(1, 1, 0, ShardSearchFailure.EMPTY_ARRAY));
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<BulkResponse> bulk(BulkRequest request) {
+        return Mono.fromCallable(() -> {
+            long start = System.currentTimeMillis();
+            BulkItemResponse[] responses = new BulkItemResponse[request.numberOfActions()];
+            Set<LuceneItemIndex> written = new HashSet<>();
+            for (int i = 0; i < responses.length; i++) {
+                DocWriteRequest<?> writeRequest = request.requests().get(i);
+                try {
+                    LuceneItemIndex index = getIndex(writeRequest.index(), true);
+                    responses[i] = BulkItemResponse.success(i, writeRequest.opType(), write(index, writeRequest));
+                    written.add(index);
+                } catch (Exception e) {
+                    responses[i] = BulkItemResponse.failure(i, writeRequest.opType(),
+                                                            new BulkItemResponse.Failure(writeRequest.index(), "_doc", writeRequest.id(), e));
+                }
+            }
+            if (request.getRefreshPolicy() != WriteRequest.RefreshPolicy.NONE) {
+                for (LuceneItemIndex index : written) {
+                    index.refresh();
+                }
+            }
+            return new BulkResponse(responses, System.currentTimeMillis() - start);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public UpdateResponse update(UpdateRequest request) throws IOException {
+        LuceneItemIndex index = getIndex(request.index(), true);
+        UpdateResponse ret = index.update(request);
+        if (request.getRefreshPolicy() != WriteRequest.RefreshPolicy.NONE) {
+            index.refresh();
+        }
+        return ret;
+    }
+
+    @Override
+    public void putMapping(String index, String mapping) throws IOException {
+        getIndex(index, true).putMapping(mapping);
+    }
+
+    @Override
+    public void deleteIndex(String index) throws IOException {
+        LuceneItemIndex removed = indices.remove(index);
+        if (removed != null) {
+            removed.close();
+        }
+        FileSystemUtils.deleteRecursively(indexPath(index));
+    }
+
+    private DocWriteResponse write(LuceneItemIndex index, DocWriteRequest<?> request) throws IOException {
+        if (request instanceof UpdateRequest) {
+            return index.update((UpdateRequest) request);
+        }
+        if (request instanceof DeleteRequest) {
+            return index.delete(request.id());
+        }
+        return index.index((IndexRequest) request);
+    }
+
+    private GetResult getResult(String indexName, String id, FetchSourceContext fetchSourceContext) throws IOException {
+        LuceneItemIndex index = getIndex(indexName, false);
+        if (index == null) {
+            return new GetResult(indexName, "_doc", id, SequenceNumbers.UNASSIGNED_SEQ_NO, SequenceNumbers.UNASSIGNED_PRIMARY_TERM, -1,
+                                 false, null, null, null);
+        }
+        return index.get(id, fetchSourceContext);
+    }
+
+    private SearchResponse executeSearch(SearchRequest request) throws IOException {
+        long start = System.currentTimeMillis();
+        if (request.indices().length != 1) {
+            // only STANDARD Structures can be published with this engine, so there is never more than one index behind an item index
+            throw new UnsupportedOperationException("The lucene item storage engine can only search one index at a time");
+        }
+        SearchSourceBuilder source = request.source() != null ? request.source() : new SearchSourceBuilder();
+        LuceneItemIndex index = getIndex(request.indices()[0], false);
+        if (index == null) {
+            throw new IndexNotFoundException(request.indices()[0]);
+        }
+        LuceneItemIndex.SearchResult result = index.search(source);
+        return new SearchResponse(new InternalSearchResponse(result.toSearchHits(), result.aggregations, null, null, false, null, 1),
+                                  null,
+                                  1,
+                                  1,
+                                  0,
+                                  System.currentTimeMillis() - start,
+                                  ShardSearchFailure.EMPTY_ARRAY,
+                                  SearchResponse.Clusters.EMPTY);
+    }
+
+    /**
+     * @param create true to create the index if it does not exist
+     * @return the open index, or null if it does not exist and create is false
+     */
+    private LuceneItemIndex getIndex(String name, boolean create) {
+        LuceneItemIndex ret = indices.get(name);
+        if (ret != null) {
+            return ret;
+        }
+        Path path = indexPath(name);
+        if (!create && !Files.isDirectory(path)) {
+            return null;
+        }
+        return indices.computeIfAbsent(name, key -> {
+            try {
+                Files.createDirectories(path);
+                return new LuceneItemIndex(key, path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path indexPath(String name) {
+        return Path.of(structuresProperties.getLuceneDataDirectory()).resolve(name);
+    }
+
+    private void refreshAll() {
+        for (LuceneItemIndex index : indices.values()) {
+            try {
+                index.refresh();
+            } catch (Exception e) {
+                log.warn("Failed to refresh lucene item index", e);
+            }
+        }
+    }
+
+    private void commitAll() {
+        for (LuceneItemIndex index : indices.values()) {
+            try {
+                index.commit();
+            } catch (Exception e) {
+                log.warn("Failed to commit lucene item index", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,387 @@
+package org.kinotic.structures.internal.api.services.storage;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.ExistsQueryBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.index.query.WildcardQueryBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.ScoreSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Turns the Elasticsearch queries and sorts built by the item service and the trait lifecycles into their Lucene equivalent,
+ * using the {@link LuceneFieldMapping} of each field to pick between exact, numeric and analyzed queries
+ */
+final class LuceneQueryTranslator {
+
+    private final Function<String, LuceneFieldMapping> mappings;
+    private final Analyzer analyzer;
+
+    LuceneQueryTranslator(Function<String, LuceneFieldMapping> mappings, Analyzer analyzer) {
+        this.mappings = mappings;
+        this.analyzer = analyzer;
+    }
+
+    Query toQuery(QueryBuilder query) {
+        if (query == null || query instanceof MatchAllQueryBuilder) {
+            return new MatchAllDocsQuery();
+        }
+        if (query instanceof BoolQueryBuilder) {
+            return toBooleanQuery((BoolQueryBuilder) query);
+        }
+        if (query instanceof ConstantScoreQueryBuilder) {
+            return new ConstantScoreQuery(toQuery(((ConstantScoreQueryBuilder) query).innerQuery()));
+        }
+        if (query instanceof IdsQueryBuilder) {
+            return new TermInSetQuery(LuceneItemIndex.ID_FIELD, toBytesRefs(((IdsQueryBuilder) query).ids()));
+        }
+        if (query instanceof TermQueryBuilder) {
+            TermQueryBuilder term = (TermQueryBuilder) query;
+            return exactQuery(term.fieldName(), term.value());
+        }
+        if (query instanceof TermsQueryBuilder) {
+            TermsQueryBuilder terms = (TermsQueryBuilder) query;
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            for (Object value : terms.values()) {
+                builder.add(exactQuery(terms.fieldName(), value), BooleanClause.Occur.SHOULD);
+            }
+            return new ConstantScoreQuery(builder.build());
+        }
+        if (query instanceof RangeQueryBuilder) {
+            RangeQueryBuilder range = (RangeQueryBuilder) query;
+            return rangeQuery(range.fieldName(), range.from(), range.to(), range.includeLower(), range.includeUpper());
+        }
+        if (query instanceof ExistsQueryBuilder) {
+            return new TermQuery(new Term(LuceneItemIndex.FIELD_NAMES_FIELD, ((ExistsQueryBuilder) query).fieldName()));
+        }
+        if (query instanceof MatchQueryBuilder) {
+            MatchQueryBuilder match = (MatchQueryBuilder) query;
+            return matchQuery(match.fieldName(), String.valueOf(match.value()));
+        }
+        if (query instanceof MultiMatchQueryBuilder) {
+            MultiMatchQueryBuilder multiMatch = (MultiMatchQueryBuilder) query;
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            for (String field : multiMatch.fields().keySet()) {
+                builder.add(matchQuery(field, String.valueOf(multiMatch.value())), BooleanClause.Occur.SHOULD);
+            }
+            return builder.build();
+        }
+        if (query instanceof QueryStringQueryBuilder) {
+            QueryStringQueryBuilder queryString = (QueryStringQueryBuilder) query;
+            String defaultField = queryString.defaultField() != null && !queryString.defaultField().equals("*")
+                    ? queryString.defaultField()
+                    : LuceneItemIndex.ALL_FIELD;
+            try {
+                return new MappedQueryParser(defaultField).parse(queryString.queryString());
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("Failed to parse query [" + queryString.queryString() + "]", e);
+            }
+        }
+        if (query instanceof WildcardQueryBuilder) {
+            WildcardQueryBuilder wildcard = (WildcardQueryBuilder) query;
+            return wildcardQuery(wildcard.fieldName(), wildcard.value(), wildcard.caseInsensitive());
+        }
+        throw new UnsupportedOperationException("The lucene item storage engine does not support " + query.getName() + " queries");
+    }
+
+    /**
+     * @return the Lucene sort, or null to sort by relevance
+     */
+    Sort toSort(List<SortBuilder<?>> sorts) {
+        if (sorts == null || sorts.isEmpty()) {
+            return null;
+        }
+        List<SortField> ret = new ArrayList<>();
+        for (SortBuilder<?> sort : sorts) {
+            boolean reverse = sort.order() == SortOrder.DESC;
+            if (sort instanceof ScoreSortBuilder) {
+                ret.add(new SortField(null, SortField.Type.SCORE, !reverse));
+            } else if (sort instanceof FieldSortBuilder) {
+                ret.add(toSortField(((FieldSortBuilder) sort).getFieldName(), reverse));
+            } else {
+                throw new UnsupportedOperationException("The lucene item storage engine does not support " + sort.getWriteableName() + " sorts");
+            }
+        }
+        return new Sort(ret.toArray(new SortField[0]));
+    }
+
+    /**
+     * Converts the sort values of the last item of a page, as given back to clients, into the position to continue after
+     */
+    FieldDoc toSearchAfter(Sort sort, Object[] searchAfter) {
+        SortField[] sortFields = sort.getSort();
+        if (searchAfter.length != sortFields.length) {
+            throw new IllegalArgumentException("search_after has " + searchAfter.length + " values but the sort has " + sortFields.length);
+        }
+        Object[] values = new Object[searchAfter.length];
+        for (int i = 0; i < searchAfter.length; i++) {
+            SortField.Type type = sortFields[i] instanceof SortedNumericSortField
+                    ? ((SortedNumericSortField) sortFields[i]).getNumericType()
+                    : sortFields[i].getType();
+            switch (type) {
+                case LONG:
+                    values[i] = toLong(searchAfter[i]);
+                    break;
+                case DOUBLE:
+                    values[i] = toDouble(searchAfter[i]);
+                    break;
+                case SCORE:
+                    values[i] = (float) toDouble(searchAfter[i]);
+                    break;
+                default:
+                    values[i] = new BytesRef(String.valueOf(searchAfter[i]));
+            }
+        }
+        // items with the same sort values as the last item have all been returned already
+        return new FieldDoc(Integer.MAX_VALUE, Float.NaN, values);
+    }
+
+    private Query toBooleanQuery(BoolQueryBuilder bool) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (QueryBuilder clause : bool.must()) {
+            builder.add(toQuery(clause), BooleanClause.Occur.MUST);
+        }
+        for (QueryBuilder clause : bool.filter()) {
+            builder.add(toQuery(clause), BooleanClause.Occur.FILTER);
+        }
+        for (QueryBuilder clause : bool.mustNot()) {
+            builder.add(toQuery(clause), BooleanClause.Occur.MUST_NOT);
+        }
+        for (QueryBuilder clause : bool.should()) {
+            builder.add(toQuery(clause), BooleanClause.Occur.SHOULD);
+        }
+        boolean onlyShould = bool.must().isEmpty() && bool.filter().isEmpty();
+        if (bool.minimumShouldMatch() != null) {
+            try {
+                builder.setMinimumNumberShouldMatch(Integer.parseInt(bool.minimumShouldMatch()));
+            } catch (NumberFormatException e) {
+                throw new UnsupportedOperationException("The lucene item storage engine only supports a whole number minimum_should_match");
+            }
+        } else if (onlyShould && !bool.should().isEmpty()) {
+            builder.setMinimumNumberShouldMatch(1);
+        }
+        if (onlyShould && bool.should().isEmpty()) {
+            // a query of only must not clauses excludes from everything, as it does in Elasticsearch
+            builder.add(new MatchAllDocsQuery(), BooleanClause.Occur.FILTER);
+        }
+        return builder.build();
+    }
+
+    private Query exactQuery(String field, Object value) {
+        if (field.equals(LuceneItemIndex.ID_FIELD)) {
+            return new TermQuery(new Term(LuceneItemIndex.ID_FIELD, String.valueOf(value)));
+        }
+        switch (mappings.apply(field).getKind()) {
+            case LONG:
+                return LongPoint.newExactQuery(field, toLong(value));
+            case DOUBLE:
+                return DoublePoint.newExactQuery(field, toDouble(value));
+            case SOURCE_ONLY:
+                return new MatchNoDocsQuery("'" + field + "' is not indexed");
+            default:
+                return new TermQuery(new Term(field, String.valueOf(value)));
+        }
+    }
+
+    private Query rangeQuery(String field, Object from, Object to, boolean includeLower, boolean includeUpper) {
+        switch (mappings.apply(field).getKind()) {
+            case LONG: {
+                long lower = from == null ? Long.MIN_VALUE : toLong(from);
+                long upper = to == null ? Long.MAX_VALUE : toLong(to);
+                if (from != null && !includeLower) {
+                    if (lower == Long.MAX_VALUE) {
+                        return new MatchNoDocsQuery();
+                    }
+                    lower++;
+                }
+                if (to != null && !includeUpper) {
+                    if (upper == Long.MIN_VALUE) {
+                        return new MatchNoDocsQuery();
+                    }
+                    upper--;
+                }
+                return LongPoint.newRangeQuery(field, lower, upper);
+            }
+            case DOUBLE: {
+                double lower = from == null ? Double.NEGATIVE_INFINITY : toDouble(from);
+                double upper = to == null ? Double.POSITIVE_INFINITY : toDouble(to);
+                if (from != null && !includeLower) {
+                    lower = DoublePoint.nextUp(lower);
+                }
+                if (to != null && !includeUpper) {
+                    upper = DoublePoint.nextDown(upper);
+                }
+                return DoublePoint.newRangeQuery(field, lower, upper);
+            }
+            case SOURCE_ONLY:
+                return new MatchNoDocsQuery("'" + field + "' is not indexed");
+            default:
+                return TermRangeQuery.newStringRange(field,
+                                                     from != null ? String.valueOf(from) : null,
+                                                     to != null ? String.valueOf(to) : null,
+                                                     includeLower,
+                                                     includeUpper);
+        }
+    }
+
+    private Query wildcardQuery(String field, String pattern, boolean caseInsensitive) {
+        if (caseInsensitive) {
+            throw new UnsupportedOperationException("The lucene item storage engine does not support case insensitive wildcard queries");
+        }
+        if (field.equals(LuceneItemIndex.ID_FIELD)) {
+            return new WildcardQuery(new Term(LuceneItemIndex.ID_FIELD, pattern));
+        }
+        switch (mappings.apply(field).getKind()) {
+            case KEYWORD:
+            case TEXT:
+                return new WildcardQuery(new Term(field, pattern));
+            case SOURCE_ONLY:
+                return new MatchNoDocsQuery("'" + field + "' is not indexed");
+            default:
+                throw new IllegalArgumentException("Can only use wildcard queries on keyword and text fields, '" + field + "' is numeric");
+        }
+    }
+
+    private Query matchQuery(String field, String text) {
+        if (mappings.apply(field).getKind() != LuceneFieldMapping.Kind.TEXT && !field.equals(LuceneItemIndex.ALL_FIELD)) {
+            return exactQuery(field, text);
+        }
+        Query ret = new org.apache.lucene.util.QueryBuilder(analyzer).createBooleanQuery(field, text);
+        return ret != null ? ret : new MatchNoDocsQuery();
+    }
+
+    private SortField toSortField(String field, boolean reverse) {
+        switch (mappings.apply(field).getKind()) {
+            case LONG: {
+                SortField ret = new SortedNumericSortField(field, SortField.Type.LONG, reverse);
+                // missing values are last, as they are in Elasticsearch
+                ret.setMissingValue(reverse ? Long.MIN_VALUE : Long.MAX_VALUE);
+                return ret;
+            }
+            case DOUBLE: {
+                SortField ret = new SortedNumericSortField(field, SortField.Type.DOUBLE, reverse);
+                ret.setMissingValue(reverse ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+                return ret;
+            }
+            default: {
+                SortField ret = new SortedSetSortField(field, reverse);
+                ret.setMissingValue(reverse ? SortField.STRING_FIRST : SortField.STRING_LAST);
+                return ret;
+            }
+        }
+    }
+
+    private static List<BytesRef> toBytesRefs(Collection<String> values) {
+        List<BytesRef> ret = new ArrayList<>(values.size());
+        for (String value : values) {
+            ret.add(new BytesRef(value));
+        }
+        return ret;
+    }
+
+    static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        String text = String.valueOf(value);
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(text);
+        }
+    }
+
+    static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(String.valueOf(value));
+    }
+
+    /**
+     * Parses query strings so that fields are queried according to their mapping, rather than always being analyzed as text
+     */
+    private class MappedQueryParser extends QueryParser {
+
+        MappedQueryParser(String defaultField) {
+            super(defaultField, LuceneQueryTranslator.this.analyzer);
+            setAllowLeadingWildcard(true);
+        }
+
+        @Override
+        protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+            if (!field.equals(LuceneItemIndex.ALL_FIELD) && mappings.apply(field).getKind() != LuceneFieldMapping.Kind.TEXT) {
+                try {
+                    return exactQuery(field, queryText);
+                } catch (NumberFormatException e) {
+                    throw new ParseException("'" + queryText + "' is not a number, which '" + field + "' requires");
+                }
+            }
+            return super.getFieldQuery(field, queryText, quoted);
+        }
+
+        @Override
+        protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive, boolean endInclusive) throws ParseException {
+            if (!field.equals(LuceneItemIndex.ALL_FIELD)) {
+                try {
+                    return rangeQuery(field,
+                                      part1 == null || part1.equals("*") ? null : part1,
+                                      part2 == null || part2.equals("*") ? null : part2,
+                                      startInclusive,
+                                      endInclusive);
+                } catch (NumberFormatException e) {
+                    throw new ParseException("The range for '" + field + "' must be numeric");
+                }
+            }
+            return super.getRangeQuery(field, part1, part2, startInclusive, endInclusive);
+        }
+
+        @Override
+        protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+            if (termStr.equals("*")) {
+                // as in Elasticsearch, a lone * matches every item and field:* every item with the field
+                return field.equals(LuceneItemIndex.ALL_FIELD)
+                        ? new MatchAllDocsQuery()
+                        : new TermQuery(new Term(LuceneItemIndex.FIELD_NAMES_FIELD, field));
+            }
+            return super.getWildcardQuery(field, termStr);
+        }
+    }
+}
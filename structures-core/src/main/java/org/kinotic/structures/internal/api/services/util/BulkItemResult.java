@@ -0,0 +1,40 @@
+package org.kinotic.structures.internal.api.services.util;
+
+/**
+ * The outcome of a single item within a bulk modification
+ */
+public class BulkItemResult {
+
+    private final String id;
+    private final boolean success;
+    private final String error;
+
+    private BulkItemResult(String id, boolean success, String error) {
+        this.id = id;
+        this.success = success;
+        this.error = error;
+    }
+
+    public static BulkItemResult success(String id){
+        return new BulkItemResult(id, true, null);
+    }
+
+    public static BulkItemResult failure(String id, String error){
+        return new BulkItemResult(id, false, error);
+    }
+
+    /**
+     * @return the id of the item, this can be null if the item failed before an id was assigned
+     */
+    public String getId() {
+        return id;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
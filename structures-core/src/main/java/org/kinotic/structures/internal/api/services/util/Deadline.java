@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.internal.api.services.util;
+
+import org.kinotic.structures.api.domain.DeadlineExceededException;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+/**
+ * A point in time by which a request must complete.
+ * Deadlines are carried through the services in the context map under {@link Deadline#CONTEXT_KEY},
+ * so they follow the request down to Elasticsearch without changing any of the service signatures.
+ */
+public final class Deadline {
+
+    /**
+     * Key used to store the {@link Deadline} in the context passed to the item services
+     */
+    public static final String CONTEXT_KEY = "__deadline";
+
+    /**
+     * Header clients can use to provide a timeout for a request, i.e. "500ms", "2s" or "1500" (milliseconds)
+     */
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    /**
+     * Query parameter clients can use to provide a timeout for a request, same format as {@link Deadline#TIMEOUT_HEADER}
+     */
+    public static final String TIMEOUT_PARAMETER = "timeout";
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Creates a deadline that expires after the given duration from now
+     * @param duration until the deadline expires
+     * @return the new {@link Deadline}
+     */
+    public static Deadline after(Duration duration){
+        return new Deadline(System.currentTimeMillis() + duration.toMillis());
+    }
+
+    /**
+     * Parses a timeout value provided by a client and creates a deadline from it
+     * @param timeout the value to parse, if null or blank no deadline is created
+     * @return the new {@link Deadline} or null if no timeout was provided
+     * @throws IllegalArgumentException if the timeout is not a valid duration
+     */
+    public static Deadline parse(String timeout){
+        Deadline ret = null;
+        if(timeout != null && !timeout.isBlank()){
+            Duration duration = DurationStyle.detectAndParse(timeout.trim(), ChronoUnit.MILLIS);
+            if(duration.isNegative() || duration.isZero()){
+                throw new IllegalArgumentException("Request timeout must be greater than zero");
+            }
+            ret = after(duration);
+        }
+        return ret;
+    }
+
+    /**
+     * @param context to get the deadline from, can be null
+     * @return the {@link Deadline} stored in the context or null if there is none
+     */
+    public static Deadline fromContext(Map<String, Object> context){
+        Deadline ret = null;
+        if(context != null && context.get(CONTEXT_KEY) instanceof Deadline){
+            ret = (Deadline) context.get(CONTEXT_KEY);
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the deadline stored in the context, if there is none a deadline is created from the default.
+     * The context is never changed, it may be immutable or reused by the caller for other requests.
+     * @param context to get the deadline from, can be null
+     * @param defaultTimeout used to create the deadline if the context does not contain one
+     * @return the {@link Deadline} for the request
+     */
+    public static Deadline resolve(Map<String, Object> context, Duration defaultTimeout){
+        Deadline ret = fromContext(context);
+        if(ret == null){
+            ret = after(defaultTimeout);
+        }
+        return ret;
+    }
+
+    public Duration remaining(){
+        return Duration.ofMillis(Math.max(0, expiresAt - System.currentTimeMillis()));
+    }
+
+    public boolean isExpired(){
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * Throws a {@link DeadlineExceededException} if this deadline has already passed.
+     * This is used to abandon work that sat in a queue longer than the client was willing to wait.
+     */
+    public void checkNotExpired() throws DeadlineExceededException {
+        if(isExpired()){
+            throw new DeadlineExceededException("Request deadline exceeded before the request could be processed");
+        }
+    }
+
+}
@@ -18,14 +18,24 @@
 package org.kinotic.structures.internal.api.services.util;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Response;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.xcontent.XContentType;
 import org.elasticsearch.core.Tuple;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.sort.SortOrder;
+import org.kinotic.structures.api.domain.DeadlineExceededException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
+import java.util.function.Function;
 
 public class EsHighLevelClientUtil {
 
@@ -50,8 +60,82 @@ public class EsHighLevelClientUtil {
     }
 
     public static <T> T getTypeFromBytesReference(BytesReference bytes, Class<T> clazz){
-        Tuple<XContentType, Map<String, Object>> linkedHashMap = XContentHelper.convertToMap(bytes, true, XContentType.JSON);
+        Tuple<XContentType, Map<String, Object>> linkedHashMap = XContentHelper.convertToMap(bytes, true, XContentHelper.xContentType(bytes));
         linkedHashMap.v2().remove("_class");
         return mapper.convertValue(linkedHashMap.v2(), clazz);
     }
+
+    /**
+     * Parses the body of a response from the low level client, in whatever format Elasticsearch sent it in.
+     * The body is assumed to be JSON when the response has no Content-Type.
+     *
+     * @param response to parse the body of
+     * @return the body as a map
+     */
+    public static Map<String, Object> responseToMap(Response response) throws IOException {
+        Header contentTypeHeader = response.getEntity().getContentType();
+        XContentType contentType = contentTypeHeader != null ? XContentType.fromMediaType(contentTypeHeader.getValue()) : null;
+        if(contentType == null){
+            contentType = XContentType.JSON;
+        }
+        try (InputStream content = response.getEntity().getContent()) {
+            return XContentHelper.convertToMap(contentType.xContent(), content, false);
+        }
+    }
+
+    /**
+     * Adapts one of the async {@link org.elasticsearch.client.RestHighLevelClient} methods to a {@link Mono}.
+     * If the subscriber cancels, the in-flight Elasticsearch request is cancelled as well.
+     *
+     * @param asyncCall function that invokes the async client method with the given listener
+     * @return a {@link Mono} that will emit the response
+     */
+    public static <T> Mono<T> toMono(Function<ActionListener<T>, Cancellable> asyncCall){
+        return Mono.create(sink -> {
+            Cancellable cancellable = asyncCall.apply(ActionListener.wrap(sink::success, sink::error));
+            sink.onCancel(cancellable::cancel);
+        });
+    }
+
+    /**
+     * Bounds the given {@link Mono} by the {@link Deadline}, if the deadline passes the subscription is cancelled which in turn cancels the Elasticsearch request.
+     *
+     * @param mono to bound
+     * @param deadline the request must complete by
+     * @return a {@link Mono} that will error with a {@link DeadlineExceededException} if the deadline passes
+     */
+    public static <T> Mono<T> withDeadline(Mono<T> mono, Deadline deadline){
+        return Mono.defer(() -> {
+            if(deadline.isExpired()){
+                return Mono.error(new DeadlineExceededException("Request deadline exceeded"));
+            }
+            return mono.timeout(deadline.remaining(),
+                                Mono.error(() -> new DeadlineExceededException("Request deadline exceeded while waiting for Elasticsearch")));
+        });
+    }
+
+    /**
+     * Blocks until the given {@link Mono} completes or the {@link Deadline} passes.
+     * When the deadline passes, or the waiting thread is interrupted, the subscription is cancelled which in turn cancels the Elasticsearch request.
+     *
+     * @param mono to wait for
+     * @param deadline the request must complete by
+     * @return the result of the {@link Mono}
+     * @throws Exception the original exception thrown by the client or a {@link DeadlineExceededException}
+     */
+    public static <T> T await(Mono<T> mono, Deadline deadline) throws Exception {
+        deadline.checkNotExpired();
+        try {
+            return withDeadline(mono, deadline).block();
+        } catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            if(cause instanceof InterruptedException){
+                Thread.currentThread().interrupt();
+            }
+            if(cause instanceof Exception){
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package org.kinotic.structures.internal.api.services.util;
+
+import org.kinotic.structures.api.domain.IndexSettings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class IndexSettingsHelper {
+
+    /**
+     * Shards much larger than this are slow to recover and rebalance, much smaller waste heap on per shard overhead
+     */
+    public static final long TARGET_SHARD_SIZE_BYTES = 30L * 1024 * 1024 * 1024;
+
+    /**
+     * Elasticsearch recommends keeping a shard below this many documents
+     */
+    public static final long MAXIMUM_DOCUMENTS_PER_SHARD = 200_000_000L;
+
+    /**
+     * Recommends the number of primary shards for an index based on how much data it is expected to hold.
+     *
+     * @param expectedDocumentCount the number of documents the index is expected to grow to
+     * @param averageDocumentSize the average size of a document in bytes, 0 or less if unknown
+     * @return the recommended number of shards, always at least 1
+     */
+    public static int recommendNumberOfShards(long expectedDocumentCount, long averageDocumentSize) {
+        long bySize = averageDocumentSize > 0
+                ? ceilDiv(multiplyCapped(expectedDocumentCount, averageDocumentSize), TARGET_SHARD_SIZE_BYTES)
+                : 1;
+        long byCount = ceilDiv(expectedDocumentCount, MAXIMUM_DOCUMENTS_PER_SHARD);
+        // Elasticsearch caps an index at 1024 shards by default
+        return (int) Math.max(1, Math.min(1024, Math.max(bySize, byCount)));
+    }
+
+    /**
+     * Creates the settings to send to Elasticsearch when creating an index.
+     *
+     * @param settings the settings requested for the index, can be null
+     * @param defaults used for any value not provided by settings
+     * @return the index settings keyed by Elasticsearch setting name
+     */
+    public static Map<String, Object> toElasticsearchSettings(IndexSettings settings, IndexSettings defaults) {
+        if (settings == null) {
+            settings = new IndexSettings();
+        }
+        HashMap<String, Object> ret = new HashMap<>();
+
+        Integer shards = settings.getNumberOfShards();
+        if (shards == null && settings.getExpectedDocumentCount() != null) {
+            shards = recommendNumberOfShards(settings.getExpectedDocumentCount(),
+                                             settings.getAverageDocumentSize() != null ? settings.getAverageDocumentSize() : 0);
+        }
+        putIfNotNull(ret, "index.number_of_shards", shards != null ? shards : defaults.getNumberOfShards());
+        putIfNotNull(ret, "index.number_of_replicas", settings.getNumberOfReplicas() != null ? settings.getNumberOfReplicas() : defaults.getNumberOfReplicas());
+        putIfNotNull(ret, "index.refresh_interval", settings.getRefreshInterval() != null ? settings.getRefreshInterval() : defaults.getRefreshInterval());
+        putIfNotNull(ret, "index.codec", settings.getCodec() != null ? settings.getCodec() : defaults.getCodec());
+
+        Map<String, String> sort = settings.getSort() != null ? settings.getSort() : defaults.getSort();
+        if (sort != null && !sort.isEmpty()) {
+            List<String> fields = new ArrayList<>(sort.size());
+            List<String> orders = new ArrayList<>(sort.size());
+            for (Map.Entry<String, String> entry : sort.entrySet()) {
+                fields.add(entry.getKey());
+                orders.add(entry.getValue() != null ? entry.getValue() : "asc");
+            }
+            ret.put("index.sort.field", fields);
+            ret.put("index.sort.order", orders);
+        }
+
+        /**
+         * fs
+         * Default file system implementation. This will pick the best implementation depending on the operating environment, which is currently mmapfs on all supported systems but is subject to change.
+         * simplefs
+         * The Simple FS type is a straightforward implementation of file system storage (maps to Lucene SimpleFsDirectory) using a random access file. This implementation has poor concurrent performance (multiple threads will bottleneck). It is usually better to use the niofs when you need index persistence.
+         * niofs
+         * The NIO FS type stores the shard index on the file system (maps to Lucene NIOFSDirectory) using NIO. It allows multiple threads to read from the same file concurrently. It is not recommended on Windows because of a bug in the SUN Java implementation.
+         * mmapfs
+         * The MMap FS type stores the shard index on the file system (maps to Lucene MMapDirectory) by mapping a file into memory (mmap). Memory mapping uses up a portion of the virtual memory address space in your process equal to the size of the file being mapped. Before using this class, be sure you have allowed plenty of virtual address space.
+         * https://www.elastic.co/guide/en/elasticsearch/reference/6.4/vm-max-map-count.html
+         */
+        ret.put("index.store.type", "fs");
+        return ret;
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static long multiplyCapped(long a, long b) {
+        long ret = a * b;
+        return (a != 0 && ret / a != b) ? Long.MAX_VALUE / 2 : ret;
+    }
+}
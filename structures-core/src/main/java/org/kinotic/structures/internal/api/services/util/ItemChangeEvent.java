@@ -0,0 +1,31 @@
+package org.kinotic.structures.internal.api.services.util;
+
+/**
+ * Emitted by the {@link org.kinotic.structures.internal.api.services.ItemChangeStream} once an item modification has been written.
+ * The item itself is not part of the event, since what a subscriber may see of it depends on the subscriber.
+ * Subscribers load it through the item service instead, so the after get lifecycles are run for each of them.
+ */
+public class ItemChangeEvent {
+
+    private final String structureId;
+    private final String id;
+    private final ItemChangeType type;
+
+    public ItemChangeEvent(String structureId, String id, ItemChangeType type) {
+        this.structureId = structureId;
+        this.id = id;
+        this.type = type;
+    }
+
+    public String getStructureId() {
+        return structureId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ItemChangeType getType() {
+        return type;
+    }
+}
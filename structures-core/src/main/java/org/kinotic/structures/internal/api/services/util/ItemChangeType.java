@@ -0,0 +1,10 @@
+package org.kinotic.structures.internal.api.services.util;
+
+/**
+ * The kind of modification an {@link ItemChangeEvent} describes
+ */
+public enum ItemChangeType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
@@ -0,0 +1,99 @@
+package org.kinotic.structures.internal.api.services.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.kinotic.structures.api.domain.Trait;
+
+import java.util.Set;
+
+public class MappingHelper {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Field types that support doc values, and so can be sorted and aggregated on
+     */
+    private static final Set<String> DOC_VALUE_TYPES = Set.of("keyword", "long", "integer", "short", "byte", "double", "float",
+                                                              "half_float", "scaled_float", "unsigned_long", "date", "date_nanos",
+                                                              "boolean", "ip", "geo_point", "version");
+
+    /**
+     * Field types that support disabling the inverted index
+     */
+    private static final Set<String> INDEXABLE_TYPES = Set.of("keyword", "text", "long", "integer", "short", "byte", "double", "float",
+                                                              "half_float", "scaled_float", "unsigned_long", "date", "date_nanos",
+                                                              "boolean", "ip", "geo_point", "version", "wildcard");
+
+    /**
+     * Checks that the usage flags of the {@link Trait} do not contradict each other, since the mapping can only honour one of them.
+     *
+     * @param name of the field or {@link Trait}, used in the error
+     * @param trait to check
+     * @throws IllegalArgumentException if the flags contradict each other
+     */
+    public static void checkFieldUsage(String name, Trait trait) {
+        if(trait.isAggregated() && (!trait.isSortable() || trait.isStoredOnly())){
+            throw new IllegalArgumentException("'" + name + "' cannot be aggregated since it is "
+                                               + (trait.isStoredOnly() ? "stored only" : "not sortable")
+                                               + ", aggregations need the doc values that removes");
+        }
+    }
+
+    /**
+     * Applies the usage flags of the {@link Trait} to its Elasticsearch mapping.
+     * Only what Elasticsearch would otherwise build by default is turned off, so the mapping is unchanged for a {@link Trait} with the default flags.
+     *
+     * @param trait to get the mapping for
+     * @return the Elasticsearch mapping for the field
+     */
+    public static String getFieldMapping(Trait trait) {
+        if(trait.isSearchable() && trait.isSortable() && !trait.isAggregated() && trait.isScored() && !trait.isStoredOnly()){
+            return trait.getEsSchema();
+        }
+        ObjectNode mapping;
+        try {
+            mapping = (ObjectNode) objectMapper.readTree(trait.getEsSchema());
+        } catch (JsonProcessingException | ClassCastException e) {
+            throw new IllegalArgumentException("Trait '" + trait.getName() + "' does not have a valid esSchema", e);
+        }
+        String type = mapping.hasNonNull("type") ? mapping.get("type").asText() : "object";
+
+        if(trait.isStoredOnly()){
+            if(type.equals("object")){
+                mapping.removeAll();
+                mapping.put("type", "object");
+                mapping.put("enabled", false);
+            }else{
+                disableIndex(mapping, type);
+                disableDocValues(mapping, type);
+            }
+        }else{
+            if(!trait.isSearchable()){
+                disableIndex(mapping, type);
+            }
+            if(!trait.isSortable()){
+                disableDocValues(mapping, type);
+            }
+            if(trait.isAggregated() && type.equals("keyword")){
+                mapping.put("eager_global_ordinals", true);
+            }
+            if(!trait.isScored() && type.equals("text")){
+                mapping.put("norms", false);
+            }
+        }
+        return mapping.toString();
+    }
+
+    private static void disableIndex(ObjectNode mapping, String type){
+        if(INDEXABLE_TYPES.contains(type)){
+            mapping.put("index", false);
+        }
+    }
+
+    private static void disableDocValues(ObjectNode mapping, String type){
+        if(DOC_VALUE_TYPES.contains(type)){
+            mapping.put("doc_values", false);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.kinotic.structures.internal.api.services.util;
+
+/**
+ * A serialized OpenAPI spec ready to be written to a response, in both plain and gzip form
+ */
+public class OpenApiDocument {
+
+    private final String eTag;
+    private final byte[] json;
+    private final byte[] gzippedJson;
+
+    public OpenApiDocument(String eTag, byte[] json, byte[] gzippedJson) {
+        this.eTag = eTag;
+        this.json = json;
+        this.gzippedJson = gzippedJson;
+    }
+
+    /**
+     * @return a quoted entity tag that changes whenever the content of the spec changes
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public byte[] getGzippedJson() {
+        return gzippedJson;
+    }
+}
@@ -0,0 +1,70 @@
+package org.kinotic.structures.internal.api.services.util;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.kinotic.structures.api.domain.Structure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class RoutingHelper {
+
+    /**
+     * @param structure the item belongs to
+     * @param item to get the routing for
+     * @return the value to route the item with, or null if the {@link Structure} does not use custom routing
+     */
+    public static String getRouting(Structure structure, Map<String, Object> item) {
+        if(structure.getRoutingField() == null){
+            return null;
+        }
+        Object value = item.get(structure.getRoutingField());
+        if(value == null){
+            throw new IllegalStateException("'" + structure.getId() + "' Structure requires '" + structure.getRoutingField() + "' to be provided for every modification");
+        }
+        return value.toString();
+    }
+
+    /**
+     * Finds the values a query requires the field to have, so the search can be sent only to the shards holding them.
+     * Only term and terms queries that every match must satisfy are considered, so the result never excludes a shard with a match.
+     *
+     * @param query to look in
+     * @param field the routing field
+     * @return the routing values, or null if the query does not restrict the field
+     */
+    public static String[] findRoutingValues(QueryBuilder query, String field) {
+        if(query instanceof TermQueryBuilder){
+            TermQueryBuilder termQuery = (TermQueryBuilder) query;
+            if(termQuery.fieldName().equals(field) && termQuery.value() != null){
+                return new String[]{termQuery.value().toString()};
+            }
+        }else if(query instanceof TermsQueryBuilder){
+            TermsQueryBuilder termsQuery = (TermsQueryBuilder) query;
+            if(termsQuery.fieldName().equals(field) && termsQuery.values() != null && !termsQuery.values().isEmpty()){
+                List<String> values = new ArrayList<>();
+                for(Object value : termsQuery.values()){
+                    values.add(value.toString());
+                }
+                return values.toArray(new String[0]);
+            }
+        }else if(query instanceof ConstantScoreQueryBuilder){
+            return findRoutingValues(((ConstantScoreQueryBuilder) query).innerQuery(), field);
+        }else if(query instanceof BoolQueryBuilder){
+            BoolQueryBuilder boolQuery = (BoolQueryBuilder) query;
+            List<QueryBuilder> required = new ArrayList<>(boolQuery.filter());
+            required.addAll(boolQuery.must());
+            for(QueryBuilder clause : required){
+                String[] ret = findRoutingValues(clause, field);
+                if(ret != null){
+                    return ret;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.internal.api.services.util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records whether anything returned for a request was served from a last known copy because Elasticsearch was unavailable.
+ * Like the {@link Deadline}, this is carried in the context map under {@link StaleReads#CONTEXT_KEY}, so the controllers can
+ * tell the client without changing any of the service signatures.
+ */
+public final class StaleReads {
+
+    /**
+     * Key used to store the marker in the context passed to the item services
+     */
+    public static final String CONTEXT_KEY = "__staleReads";
+
+    /**
+     * Value of the standard Warning header for a response that may be out of date, see RFC 7234 section 5.5.1
+     */
+    public static final String WARNING_HEADER_VALUE = "110 - \"Response is Stale\"";
+
+    private StaleReads() {
+    }
+
+    /**
+     * Adds the marker to the context, so stale reads made with it can be detected with {@link #isStale(Map)}
+     * @return the marker, which can also be shared with other contexts created for the same request
+     */
+    public static AtomicBoolean track(Map<String, Object> context){
+        AtomicBoolean ret = new AtomicBoolean(false);
+        context.put(CONTEXT_KEY, ret);
+        return ret;
+    }
+
+    /**
+     * Records that a stale copy was returned, does nothing if the context is not tracking stale reads
+     * @param context to record the stale read in, can be null
+     */
+    public static void markStale(Map<String, Object> context){
+        if(context != null && context.get(CONTEXT_KEY) instanceof AtomicBoolean){
+            ((AtomicBoolean) context.get(CONTEXT_KEY)).set(true);
+        }
+    }
+
+    /**
+     * @param context to check, can be null
+     * @return true if a stale copy was returned for any read made with the context
+     */
+    public static boolean isStale(Map<String, Object> context){
+        return context != null
+                && context.get(CONTEXT_KEY) instanceof AtomicBoolean
+                && ((AtomicBoolean) context.get(CONTEXT_KEY)).get();
+    }
+
+}
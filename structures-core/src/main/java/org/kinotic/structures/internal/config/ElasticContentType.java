@@ -0,0 +1,31 @@
+package org.kinotic.structures.internal.config;
+
+import org.elasticsearch.xcontent.XContentType;
+
+/**
+ * The format items are sent to Elasticsearch in, and that responses are requested in, see {@link StructuresProperties#getElasticContentType()}.
+ * Clients of Structures always use JSON, this only changes what goes between Structures and Elasticsearch.
+ * CBOR is not offered since the high level client can only send bulk requests as JSON or SMILE.
+ */
+public enum ElasticContentType {
+
+    /**
+     * Easiest to read when debugging, but the most expensive to write and parse, especially for numbers
+     */
+    JSON(XContentType.JSON),
+    /**
+     * Binary JSON, numbers are written as is rather than as text and repeated field names are sent once
+     */
+    SMILE(XContentType.SMILE);
+
+    private final XContentType xContentType;
+
+    ElasticContentType(XContentType xContentType) {
+        this.xContentType = xContentType;
+    }
+
+    public XContentType getXContentType() {
+        return xContentType;
+    }
+
+}
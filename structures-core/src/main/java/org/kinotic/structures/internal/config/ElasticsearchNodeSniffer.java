@@ -0,0 +1,168 @@
+package org.kinotic.structures.internal.config;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.kinotic.structures.internal.api.services.util.EsHighLevelClientUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spreads requests over the data nodes of the cluster, rather than sending all of them to the nodes in structures.elastic-uris.
+ * Enabled with structures.elastic-sniff-enabled=true.
+ * <p>
+ * The nodes are found with the nodes info API every structures.elastic-sniff-interval, only nodes with a data role and HTTP enabled are used.
+ * If none are found, or they cannot be fetched, requests go back to the configured nodes until the next attempt.
+ */
+@Component
+@ConditionalOnProperty(prefix = "structures", name = "elastic-sniff-enabled", havingValue = "true")
+public class ElasticsearchNodeSniffer {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchNodeSniffer.class);
+
+    private final RestHighLevelClient highLevelClient;
+    private final StructuresProperties structuresProperties;
+    private final List<Node> configuredNodes;
+    private Disposable schedule;
+
+    public ElasticsearchNodeSniffer(RestHighLevelClient highLevelClient, StructuresProperties structuresProperties) {
+        this.highLevelClient = highLevelClient;
+        this.structuresProperties = structuresProperties;
+        this.configuredNodes = List.copyOf(highLevelClient.getLowLevelClient().getNodes());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        schedule = Flux.interval(Duration.ZERO, structuresProperties.getElasticSniffInterval(), Schedulers.boundedElastic())
+                       .onBackpressureDrop()
+                       .concatMap(tick -> Mono.fromRunnable(this::sniff))
+                       .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    /**
+     * Finds the data nodes and sends requests to them, or to the configured nodes if none can be found
+     */
+    public void sniff() {
+        RestClient client = highLevelClient.getLowLevelClient();
+        List<Node> nodes;
+        try {
+            nodes = findDataNodes(client);
+        } catch (Exception e) {
+            log.warn("Could not find the Elasticsearch nodes, sending requests to the configured nodes", e);
+            setNodes(client, configuredNodes);
+            return;
+        }
+        if (nodes.isEmpty()) {
+            log.warn("No Elasticsearch data nodes with HTTP enabled were found, sending requests to the configured nodes");
+            setNodes(client, configuredNodes);
+        } else {
+            setNodes(client, nodes);
+        }
+    }
+
+    private List<Node> findDataNodes(RestClient client) throws IOException {
+        String scheme = structuresProperties.isElasticUseSsl() ? "https" : "http";
+        // the response may have no Content-Type, which is handled when parsing it
+        Map<String, Object> body = EsHighLevelClientUtil.responseToMap(client.performRequest(new Request("GET", "/_nodes/http")));
+        return parseDataNodes(body, scheme);
+    }
+
+    /**
+     * @param nodesInfo the response of the nodes info API for the http metric
+     * @param scheme used to reach the nodes, http or https
+     * @return the data nodes that have HTTP enabled
+     */
+    public static List<Node> parseDataNodes(Map<String, Object> nodesInfo, String scheme) {
+        List<Node> ret = new ArrayList<>();
+        Object nodes = nodesInfo.get("nodes");
+        if (nodes instanceof Map) {
+            for (Object value : ((Map<?, ?>) nodes).values()) {
+                if (!(value instanceof Map)) {
+                    continue;
+                }
+                Map<?, ?> node = (Map<?, ?>) value;
+                if (!isDataNode(node.get("roles")) || !(node.get("http") instanceof Map)) {
+                    continue;
+                }
+                Object publishAddress = ((Map<?, ?>) node.get("http")).get("publish_address");
+                if (publishAddress instanceof String) {
+                    ret.add(new Node(toHttpHost(scheme, (String) publishAddress)));
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static void setNodes(RestClient client, List<Node> nodes) {
+        Set<HttpHost> current = new HashSet<>();
+        for (Node node : client.getNodes()) {
+            current.add(node.getHost());
+        }
+        Set<HttpHost> updated = new HashSet<>();
+        for (Node node : nodes) {
+            updated.add(node.getHost());
+        }
+        if (!current.equals(updated)) {
+            log.info("Sending Elasticsearch requests to {}", updated);
+            client.setNodes(nodes);
+        }
+    }
+
+    /**
+     * Nodes from before 7.9 can use the generic data role, later versions can have data tier roles such as data_hot instead.
+     * A node without a list of roles is not used, since it cannot be known to hold data
+     */
+    private static boolean isDataNode(Object roles) {
+        if (!(roles instanceof List)) {
+            return false;
+        }
+        for (Object role : (List<?>) roles) {
+            if ("data".equals(role) || (role instanceof String && ((String) role).startsWith("data_"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The publish address is either ip:port, or hostname/ip:port when the node is configured with a hostname.
+     * The hostname is preferred so that it matches the certificate when using SSL. IPv6 addresses are in brackets, such as [::1]:9200
+     */
+    private static HttpHost toHttpHost(String scheme, String publishAddress) {
+        String address = publishAddress;
+        int slash = publishAddress.indexOf('/');
+        if (slash > 0) {
+            address = publishAddress.substring(0, slash) + publishAddress.substring(publishAddress.lastIndexOf(':'));
+        } else if (slash == 0) {
+            address = publishAddress.substring(1);
+        }
+        return HttpHost.create(scheme + "://" + address);
+    }
+
+}
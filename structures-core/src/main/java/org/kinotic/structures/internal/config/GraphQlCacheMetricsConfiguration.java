@@ -0,0 +1,39 @@
+package org.kinotic.structures.internal.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.kinotic.structures.internal.graphql.GraphQlDocumentCache;
+import org.kinotic.structures.internal.graphql.PersistedQueryCache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Publishes the hit/miss statistics of the GraphQL caches when Micrometer is available, such as when actuator is used.
+ */
+@Configuration
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+public class GraphQlCacheMetricsConfiguration {
+
+    private final ObjectProvider<MeterRegistry> meterRegistries;
+    private final GraphQlDocumentCache documentCache;
+    private final PersistedQueryCache persistedQueryCache;
+
+    public GraphQlCacheMetricsConfiguration(ObjectProvider<MeterRegistry> meterRegistries,
+                                            GraphQlDocumentCache documentCache,
+                                            PersistedQueryCache persistedQueryCache) {
+        this.meterRegistries = meterRegistries;
+        this.documentCache = documentCache;
+        this.persistedQueryCache = persistedQueryCache;
+    }
+
+    @PostConstruct
+    void bindCacheMetrics(){
+        meterRegistries.ifAvailable(registry -> {
+            CaffeineCacheMetrics.monitor(registry, documentCache.getCache(), "structures.graphql.documents");
+            CaffeineCacheMetrics.monitor(registry, persistedQueryCache.getCache(), "structures.graphql.persistedQueries");
+        });
+    }
+}
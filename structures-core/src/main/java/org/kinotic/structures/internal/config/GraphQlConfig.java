@@ -1,18 +1,26 @@
 package org.kinotic.structures.internal.config;
 
+import org.kinotic.structures.internal.graphql.PersistedQueryCache;
 import org.kinotic.structures.internal.graphql.StructuresGraphQlHttpHandler;
+import org.kinotic.structures.internal.graphql.WebSocketNamespaceInterceptor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.graphql.execution.ReactiveSecurityDataFetcherExceptionResolver;
 import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.graphql.server.webflux.GraphQlWebSocketHandler;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
 import org.springframework.web.reactive.function.server.*;
+import org.springframework.web.reactive.socket.server.support.WebSocketUpgradeHandlerPredicate;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collections;
 
 import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
@@ -29,8 +37,10 @@ public class GraphQlConfig {
             .and(contentType(MediaType.APPLICATION_GRAPHQL, MediaType.APPLICATION_JSON));
 
     @Bean
-    public StructuresGraphQlHttpHandler graphQlHttpHandler(WebGraphQlHandler graphQlHandler) {
-        return new StructuresGraphQlHttpHandler(graphQlHandler);
+    public StructuresGraphQlHttpHandler graphQlHttpHandler(WebGraphQlHandler graphQlHandler,
+                                                           PersistedQueryCache persistedQueryCache,
+                                                           StructuresProperties structuresProperties) {
+        return new StructuresGraphQlHttpHandler(graphQlHandler, persistedQueryCache, structuresProperties.getDefaultRequestTimeout());
     }
 
     @Bean
@@ -41,6 +51,31 @@ public class GraphQlConfig {
         return builder.build();
     }
 
+    @Bean
+    public GraphQlWebSocketHandler graphQlWebSocketHandler(WebGraphQlHandler graphQlHandler, ServerCodecConfigurer codecConfigurer) {
+        return new GraphQlWebSocketHandler(graphQlHandler, codecConfigurer, Duration.ofSeconds(60));
+    }
+
+    /**
+     * Subscriptions are served over a WebSocket on the same path as queries, only upgrade requests are routed here
+     */
+    @Bean
+    public HandlerMapping graphQlWebSocketMapping(GraphQlWebSocketHandler handler) {
+        SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
+        mapping.setHandlerPredicate(new WebSocketUpgradeHandlerPredicate());
+        mapping.setUrlMap(Collections.singletonMap("/graphql/*", handler));
+        mapping.setOrder(-2); // Ahead of graphQlRouterFunction
+        return mapping;
+    }
+
+    /**
+     * Subscriptions are executed against the namespace in the handshake path, whatever the client sends
+     */
+    @Bean
+    public WebSocketNamespaceInterceptor webSocketNamespaceInterceptor() {
+        return new WebSocketNamespaceInterceptor();
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public ReactiveSecurityDataFetcherExceptionResolver reactiveSecurityDataFetcherExceptionResolver() {
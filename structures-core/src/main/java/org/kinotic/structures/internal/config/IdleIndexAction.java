@@ -0,0 +1,21 @@
+package org.kinotic.structures.internal.config;
+
+/**
+ * What to do with the item index of a Structure that has not been accessed for {@link StructuresProperties#getIdleIndexThreshold()}
+ */
+public enum IdleIndexAction {
+
+    /**
+     * Leave idle indices open
+     */
+    NONE,
+    /**
+     * Block writes and merge the index down to a single segment, reads are still served without reopening it
+     */
+    READ_ONLY,
+    /**
+     * Close the index so it holds no heap or file handles, the first access afterwards waits for it to be reopened
+     */
+    CLOSE
+
+}
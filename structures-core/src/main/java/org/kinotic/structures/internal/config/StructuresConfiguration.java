@@ -17,17 +17,29 @@
 
 package org.kinotic.structures.internal.config;
 
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.xcontent.XContentType;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
-import org.springframework.data.elasticsearch.client.ClientConfiguration;
-import org.springframework.data.elasticsearch.client.RestClients;
 import org.springframework.data.elasticsearch.config.AbstractElasticsearchConfiguration;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
 @Configuration
 @EnableConfigurationProperties
 @EnableElasticsearchRepositories(basePackages = "org.kinotic.structures.internal.repositories")
@@ -41,24 +53,62 @@ public class StructuresConfiguration extends AbstractElasticsearchConfiguration
         this.structuresProperties = structuresProperties;
     }
 
+    /**
+     * The {@link RestClientBuilder} is used directly rather than a {@link org.springframework.data.elasticsearch.client.ClientConfiguration},
+     * since that does not expose request compression.
+     */
     @Bean(destroyMethod = "close")
     @Override
     public RestHighLevelClient elasticsearchClient() {
-        ClientConfiguration.MaybeSecureClientConfigurationBuilder builder
-                = ClientConfiguration.builder()
-                                     .connectedTo(structuresProperties.getElasticUris().split(","));
+        RestClientBuilder builder = RestClient.builder(createHosts(structuresProperties));
+        builder.setDefaultHeaders(createDefaultHeaders(structuresProperties));
 
-        if(structuresProperties.isElasticUseSsl()){
-            builder.usingSsl();
-        }
+        builder.setRequestConfigCallback(requestConfig -> requestConfig
+                .setConnectTimeout((int) structuresProperties.getElasticConnectionTimeout().toMillis())
+                .setSocketTimeout((int) structuresProperties.getElasticSocketTimeout().toMillis()));
 
-        if(structuresProperties.getElasticUsername() != null && !structuresProperties.getElasticUsername().isBlank()){
-            builder.withBasicAuth(structuresProperties.getElasticUsername(), structuresProperties.getElasticPassword());
-        }
+        long keepAlive = structuresProperties.getElasticConnectionKeepAlive().toMillis();
+        builder.setHttpClientConfigCallback(httpClient -> httpClient
+                .setMaxConnPerRoute(structuresProperties.getElasticMaxConnectionsPerRoute())
+                .setMaxConnTotal(structuresProperties.getElasticMaxConnectionsTotal())
+                // Elasticsearch does not send a Keep-Alive header, so without this idle connections are kept forever
+                .setKeepAliveStrategy((response, context) -> keepAlive)
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                                                          .setSoKeepAlive(true)
+                                                          .build()));
+
+        builder.setCompressionEnabled(structuresProperties.isElasticCompressionEnabled());
 
-        builder.withConnectTimeout(structuresProperties.getElasticConnectionTimeout())
-                .withSocketTimeout(structuresProperties.getElasticSocketTimeout());
+        return new RestHighLevelClient(builder);
+    }
 
-        return RestClients.create(builder.build()).rest();
+    /**
+     * @return a host for each of the comma separated structures.elastic-uris, those without a scheme use https if structures.elastic-use-ssl is set
+     */
+    public static HttpHost[] createHosts(StructuresProperties structuresProperties){
+        String scheme = structuresProperties.isElasticUseSsl() ? "https" : "http";
+        return Arrays.stream(structuresProperties.getElasticUris().split(","))
+                     .map(String::trim)
+                     .filter(uri -> !uri.isEmpty())
+                     .map(uri -> HttpHost.create(uri.contains("://") ? uri : scheme + "://" + uri))
+                     .toArray(HttpHost[]::new);
+    }
+
+    /**
+     * @return the headers sent with every request, for authentication and the content type responses should use
+     */
+    public static Header[] createDefaultHeaders(StructuresProperties structuresProperties){
+        List<Header> headers = new ArrayList<>();
+        if(structuresProperties.getElasticUsername() != null && !structuresProperties.getElasticUsername().isBlank()){
+            String credentials = structuresProperties.getElasticUsername() + ":" + structuresProperties.getElasticPassword();
+            headers.add(new BasicHeader(HttpHeaders.AUTHORIZATION,
+                                        "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8))));
+        }
+        // responses are parsed according to their content type, so they can be requested in a binary format as well
+        XContentType contentType = structuresProperties.getElasticContentType().getXContentType();
+        if(contentType != XContentType.JSON){
+            headers.add(new BasicHeader(HttpHeaders.ACCEPT, contentType.mediaTypeWithoutParameters()));
+        }
+        return headers.toArray(new Header[0]);
     }
 }
@@ -1,6 +1,7 @@
 package org.kinotic.structures.internal.config;
 
 
+import org.kinotic.structures.api.domain.IndexSettings;
 import org.kinotic.structures.internal.api.services.util.StructureHelper;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -9,6 +10,8 @@ import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 @Component
 @ConfigurationProperties(prefix = "structures")
@@ -22,6 +25,176 @@ public class StructuresProperties {
     private Duration elasticConnectionTimeout = Duration.ofMinutes(1);
     @NotNull
     private Duration elasticSocketTimeout = Duration.ofMinutes(1);
+    /**
+     * The maximum number of connections to a single Elasticsearch node, bulk requests and concurrent searches each hold one while they run
+     */
+    private int elasticMaxConnectionsPerRoute = 50;
+    /**
+     * The maximum number of connections to all Elasticsearch nodes
+     */
+    private int elasticMaxConnectionsTotal = 200;
+    /**
+     * How long an idle connection is kept for reuse. This should be less than the idle timeout of any load balancer or firewall
+     * between here and Elasticsearch, so connections are not used after being dropped
+     */
+    @NotNull
+    private Duration elasticConnectionKeepAlive = Duration.ofMinutes(1);
+    /**
+     * Compresses request bodies with gzip and asks Elasticsearch to compress responses, which is worth the CPU for bulk requests and large searches
+     */
+    @NotNull
+    private Boolean elasticCompressionEnabled = true;
+    /**
+     * The format items are written to Elasticsearch in and responses are read in, SMILE is cheaper to write and parse for number heavy items
+     */
+    @NotNull
+    private ElasticContentType elasticContentType = ElasticContentType.JSON;
+    /**
+     * Sends requests to the data nodes found in the cluster rather than only the nodes in elastic-uris.
+     * The elastic-uris are used to find the nodes and whenever none are found
+     */
+    @NotNull
+    private Boolean elasticSniffEnabled = false;
+    /**
+     * How often the nodes are found again when {@link #elasticSniffEnabled} is set
+     */
+    @NotNull
+    private Duration elasticSniffInterval = Duration.ofMinutes(5);
+    /**
+     * Stops sending requests to Elasticsearch while it is failing or its cluster health is red, so requests fail fast instead of waiting on sockets.
+     * Structure, Trait and Namespace lookups are served from the last copy read while requests are not being sent
+     */
+    @NotNull
+    private Boolean elasticCircuitBreakerEnabled = true;
+    /**
+     * The number of most recent Elasticsearch requests the failure rate is calculated over, at least half must have completed before the circuit breaker opens
+     */
+    private int elasticCircuitBreakerWindowSize = 100;
+    /**
+     * The percentage of failed requests in the window that opens the circuit breaker
+     */
+    private int elasticCircuitBreakerFailureRateThreshold = 50;
+    /**
+     * How long the circuit breaker stays open before a request is let through to see if Elasticsearch has recovered
+     */
+    @NotNull
+    private Duration elasticCircuitBreakerOpenDuration = Duration.ofSeconds(30);
+    /**
+     * How often the cluster health is checked, the circuit breaker opens while it is red and closes once it is not
+     */
+    @NotNull
+    private Duration elasticHealthCheckInterval = Duration.ofSeconds(10);
+    /**
+     * The number of Structures, Traits and Namespaces kept to be served while Elasticsearch is unavailable
+     */
+    private long staleMetadataMaximumSize = 10_000;
+    @NotNull
+    private Duration defaultRequestTimeout = Duration.ofSeconds(30);
+    @NotNull
+    private Boolean preWarmGraphQlSchemas = true;
+    /**
+     * Total number of syntax tree nodes, across all the parsed GraphQL documents, that are cached
+     */
+    private long graphQlDocumentCacheMaximumWeight = 1_000_000;
+    /**
+     * Total length of the query text, in characters, that automatic persisted queries are stored for
+     */
+    private long graphQlPersistedQueryCacheMaximumWeight = 10_000_000;
+    /**
+     * Total size in bytes of the item sources kept off heap by the item cache, for Structures that have {@link org.kinotic.structures.api.domain.Structure#isCacheItems()} set.
+     * Direct memory is allocated up to this size in 1 MiB slabs as the cache fills, and is kept for reuse once allocated.
+     * The JVM must allow at least this much direct memory, see -XX:MaxDirectMemorySize
+     */
+    private long itemCacheMaximumWeight = 64_000_000;
+    /**
+     * How long an item is cached after it is read, which limits how stale it can be.
+     * The cache is local to each node, so an item changed through another node, or without going through the item service,
+     * can be read as it was until its entry expires. Writes through this node are seen straight away whatever the expiry.
+     * The default keeps an item read about once a second served from the cache for all but one read in 30,
+     * while bounding how long another node can serve an old copy
+     */
+    @NotNull
+    private Duration itemCacheExpireAfterWrite = Duration.ofSeconds(30);
+    /**
+     * The maximum calculated cost allowed for a single GraphQL operation, 0 means no limit
+     */
+    private long graphQlMaximumQueryCost = 50_000;
+    /**
+     * Overrides {@link #graphQlMaximumQueryCost} for specific namespaces, keyed by namespace
+     */
+    private Map<String, Long> graphQlNamespaceMaximumQueryCost = new HashMap<>();
+    /**
+     * Used to create Structure item indices, for any value the Structure does not set itself
+     */
+    @NotNull
+    private IndexSettings defaultIndexSettings = new IndexSettings(1, 1, "1s");
+    /**
+     * Used to create the indices Structures uses internally such as the structure, trait and namespace indices
+     */
+    @NotNull
+    private IndexSettings systemIndexSettings = new IndexSettings(1, 1, "1s");
+    /**
+     * Used to create the index that holds the items of every {@link org.kinotic.structures.api.domain.IndexMode#SHARED} Structure in a namespace
+     */
+    @NotNull
+    private IndexSettings sharedIndexSettings = new IndexSettings(1, 1, "1s");
+    /**
+     * How long deleted items are kept before they are removed, such as 30d, for Structures that do not set their own. Null keeps them forever
+     */
+    private String defaultDeletedItemRetention = null;
+    /**
+     * How often deleted items past their retention are removed
+     */
+    @NotNull
+    private Duration itemCompactionInterval = Duration.ofHours(1);
+    /**
+     * Throttles the removal of deleted items so it does not compete with regular traffic, -1 means no limit
+     */
+    private float itemCompactionRequestsPerSecond = 1000;
+    /**
+     * What to do with the item index of a Structure that has not been accessed for {@link #idleIndexThreshold}
+     */
+    @NotNull
+    private IdleIndexAction idleIndexAction = IdleIndexAction.NONE;
+    /**
+     * How long the items of a Structure must go without being accessed before the {@link #idleIndexAction} is applied
+     */
+    @NotNull
+    private Duration idleIndexThreshold = Duration.ofDays(7);
+    /**
+     * How often Structures are checked for idle item indices
+     */
+    @NotNull
+    private Duration idleIndexCheckInterval = Duration.ofHours(1);
+    /**
+     * How long the first access to a closed item index waits for its primary shards to be started
+     */
+    @NotNull
+    private Duration idleIndexWarmUpTimeout = Duration.ofSeconds(30);
+    /**
+     * Where items are stored, elasticsearch, lucene or memory.
+     * The lucene engine keeps items in local Lucene indices for single node deployments.
+     * The memory engine is meant for tests and load benchmarks, items are lost on restart.
+     * Both only support STANDARD Structures without a routing field or archiving, and their items cannot be migrated.
+     * Both also keep the Structures, Traits and Namespaces, so Elasticsearch is not used at all and the node does not take part in a cluster
+     */
+    @NotBlank
+    private String itemStorageEngine = "elasticsearch";
+    /**
+     * The directory the lucene item storage engine keeps an index in for each Structure
+     */
+    @NotBlank
+    private String luceneDataDirectory = "data/items";
+    /**
+     * How often the lucene item storage engine makes recent writes visible to searches, writes that ask for a refresh are visible immediately
+     */
+    @NotNull
+    private Duration luceneRefreshInterval = Duration.ofSeconds(1);
+    /**
+     * How often the lucene item storage engine commits to disk, writes since the last commit are lost if the process is killed
+     */
+    @NotNull
+    private Duration luceneCommitInterval = Duration.ofSeconds(10);
     @NotBlank
     private String elasticUris = "localhost:9200";
     @NotBlank
@@ -70,6 +243,294 @@ public class StructuresProperties {
         this.elasticSocketTimeout = elasticSocketTimeout;
     }
 
+    public int getElasticMaxConnectionsPerRoute() {
+        return elasticMaxConnectionsPerRoute;
+    }
+
+    public void setElasticMaxConnectionsPerRoute(int elasticMaxConnectionsPerRoute) {
+        this.elasticMaxConnectionsPerRoute = elasticMaxConnectionsPerRoute;
+    }
+
+    public int getElasticMaxConnectionsTotal() {
+        return elasticMaxConnectionsTotal;
+    }
+
+    public void setElasticMaxConnectionsTotal(int elasticMaxConnectionsTotal) {
+        this.elasticMaxConnectionsTotal = elasticMaxConnectionsTotal;
+    }
+
+    public Duration getElasticConnectionKeepAlive() {
+        return elasticConnectionKeepAlive;
+    }
+
+    public void setElasticConnectionKeepAlive(Duration elasticConnectionKeepAlive) {
+        this.elasticConnectionKeepAlive = elasticConnectionKeepAlive;
+    }
+
+    public Boolean isElasticCompressionEnabled() {
+        return elasticCompressionEnabled;
+    }
+
+    public void setElasticCompressionEnabled(Boolean elasticCompressionEnabled) {
+        this.elasticCompressionEnabled = elasticCompressionEnabled;
+    }
+
+    public ElasticContentType getElasticContentType() {
+        return elasticContentType;
+    }
+
+    public void setElasticContentType(ElasticContentType elasticContentType) {
+        this.elasticContentType = elasticContentType;
+    }
+
+    public Boolean isElasticSniffEnabled() {
+        return elasticSniffEnabled;
+    }
+
+    public void setElasticSniffEnabled(Boolean elasticSniffEnabled) {
+        this.elasticSniffEnabled = elasticSniffEnabled;
+    }
+
+    public Duration getElasticSniffInterval() {
+        return elasticSniffInterval;
+    }
+
+    public void setElasticSniffInterval(Duration elasticSniffInterval) {
+        this.elasticSniffInterval = elasticSniffInterval;
+    }
+
+    public Boolean isElasticCircuitBreakerEnabled() {
+        return elasticCircuitBreakerEnabled;
+    }
+
+    public void setElasticCircuitBreakerEnabled(Boolean elasticCircuitBreakerEnabled) {
+        this.elasticCircuitBreakerEnabled = elasticCircuitBreakerEnabled;
+    }
+
+    public int getElasticCircuitBreakerWindowSize() {
+        return elasticCircuitBreakerWindowSize;
+    }
+
+    public void setElasticCircuitBreakerWindowSize(int elasticCircuitBreakerWindowSize) {
+        this.elasticCircuitBreakerWindowSize = elasticCircuitBreakerWindowSize;
+    }
+
+    public int getElasticCircuitBreakerFailureRateThreshold() {
+        return elasticCircuitBreakerFailureRateThreshold;
+    }
+
+    public void setElasticCircuitBreakerFailureRateThreshold(int elasticCircuitBreakerFailureRateThreshold) {
+        this.elasticCircuitBreakerFailureRateThreshold = elasticCircuitBreakerFailureRateThreshold;
+    }
+
+    public Duration getElasticCircuitBreakerOpenDuration() {
+        return elasticCircuitBreakerOpenDuration;
+    }
+
+    public void setElasticCircuitBreakerOpenDuration(Duration elasticCircuitBreakerOpenDuration) {
+        this.elasticCircuitBreakerOpenDuration = elasticCircuitBreakerOpenDuration;
+    }
+
+    public Duration getElasticHealthCheckInterval() {
+        return elasticHealthCheckInterval;
+    }
+
+    public void setElasticHealthCheckInterval(Duration elasticHealthCheckInterval) {
+        this.elasticHealthCheckInterval = elasticHealthCheckInterval;
+    }
+
+    public long getStaleMetadataMaximumSize() {
+        return staleMetadataMaximumSize;
+    }
+
+    public void setStaleMetadataMaximumSize(long staleMetadataMaximumSize) {
+        this.staleMetadataMaximumSize = staleMetadataMaximumSize;
+    }
+
+    public String getDefaultDeletedItemRetention() {
+        return defaultDeletedItemRetention;
+    }
+
+    public void setDefaultDeletedItemRetention(String defaultDeletedItemRetention) {
+        this.defaultDeletedItemRetention = defaultDeletedItemRetention;
+    }
+
+    public Duration getItemCompactionInterval() {
+        return itemCompactionInterval;
+    }
+
+    public void setItemCompactionInterval(Duration itemCompactionInterval) {
+        this.itemCompactionInterval = itemCompactionInterval;
+    }
+
+    public float getItemCompactionRequestsPerSecond() {
+        return itemCompactionRequestsPerSecond;
+    }
+
+    public void setItemCompactionRequestsPerSecond(float itemCompactionRequestsPerSecond) {
+        this.itemCompactionRequestsPerSecond = itemCompactionRequestsPerSecond;
+    }
+
+    public IdleIndexAction getIdleIndexAction() {
+        return idleIndexAction;
+    }
+
+    public void setIdleIndexAction(IdleIndexAction idleIndexAction) {
+        this.idleIndexAction = idleIndexAction;
+    }
+
+    public Duration getIdleIndexThreshold() {
+        return idleIndexThreshold;
+    }
+
+    public void setIdleIndexThreshold(Duration idleIndexThreshold) {
+        this.idleIndexThreshold = idleIndexThreshold;
+    }
+
+    public Duration getIdleIndexCheckInterval() {
+        return idleIndexCheckInterval;
+    }
+
+    public void setIdleIndexCheckInterval(Duration idleIndexCheckInterval) {
+        this.idleIndexCheckInterval = idleIndexCheckInterval;
+    }
+
+    public long getItemCacheMaximumWeight() {
+        return itemCacheMaximumWeight;
+    }
+
+    public void setItemCacheMaximumWeight(long itemCacheMaximumWeight) {
+        this.itemCacheMaximumWeight = itemCacheMaximumWeight;
+    }
+
+    public Duration getItemCacheExpireAfterWrite() {
+        return itemCacheExpireAfterWrite;
+    }
+
+    public void setItemCacheExpireAfterWrite(Duration itemCacheExpireAfterWrite) {
+        this.itemCacheExpireAfterWrite = itemCacheExpireAfterWrite;
+    }
+
+    public Duration getIdleIndexWarmUpTimeout() {
+        return idleIndexWarmUpTimeout;
+    }
+
+    public void setIdleIndexWarmUpTimeout(Duration idleIndexWarmUpTimeout) {
+        this.idleIndexWarmUpTimeout = idleIndexWarmUpTimeout;
+    }
+
+    public String getItemStorageEngine() {
+        return itemStorageEngine;
+    }
+
+    public void setItemStorageEngine(String itemStorageEngine) {
+        this.itemStorageEngine = itemStorageEngine;
+    }
+
+    public String getLuceneDataDirectory() {
+        return luceneDataDirectory;
+    }
+
+    public void setLuceneDataDirectory(String luceneDataDirectory) {
+        this.luceneDataDirectory = luceneDataDirectory;
+    }
+
+    public Duration getLuceneRefreshInterval() {
+        return luceneRefreshInterval;
+    }
+
+    public void setLuceneRefreshInterval(Duration luceneRefreshInterval) {
+        this.luceneRefreshInterval = luceneRefreshInterval;
+    }
+
+    public Duration getLuceneCommitInterval() {
+        return luceneCommitInterval;
+    }
+
+    public void setLuceneCommitInterval(Duration luceneCommitInterval) {
+        this.luceneCommitInterval = luceneCommitInterval;
+    }
+
+    public Duration getDefaultRequestTimeout() {
+        return defaultRequestTimeout;
+    }
+
+    public void setDefaultRequestTimeout(Duration defaultRequestTimeout) {
+        this.defaultRequestTimeout = defaultRequestTimeout;
+    }
+
+    public Boolean isPreWarmGraphQlSchemas() {
+        return preWarmGraphQlSchemas;
+    }
+
+    public void setPreWarmGraphQlSchemas(Boolean preWarmGraphQlSchemas) {
+        this.preWarmGraphQlSchemas = preWarmGraphQlSchemas;
+    }
+
+    public long getGraphQlDocumentCacheMaximumWeight() {
+        return graphQlDocumentCacheMaximumWeight;
+    }
+
+    public void setGraphQlDocumentCacheMaximumWeight(long graphQlDocumentCacheMaximumWeight) {
+        this.graphQlDocumentCacheMaximumWeight = graphQlDocumentCacheMaximumWeight;
+    }
+
+    public long getGraphQlPersistedQueryCacheMaximumWeight() {
+        return graphQlPersistedQueryCacheMaximumWeight;
+    }
+
+    public void setGraphQlPersistedQueryCacheMaximumWeight(long graphQlPersistedQueryCacheMaximumWeight) {
+        this.graphQlPersistedQueryCacheMaximumWeight = graphQlPersistedQueryCacheMaximumWeight;
+    }
+
+    public long getGraphQlMaximumQueryCost() {
+        return graphQlMaximumQueryCost;
+    }
+
+    public void setGraphQlMaximumQueryCost(long graphQlMaximumQueryCost) {
+        this.graphQlMaximumQueryCost = graphQlMaximumQueryCost;
+    }
+
+    public Map<String, Long> getGraphQlNamespaceMaximumQueryCost() {
+        return graphQlNamespaceMaximumQueryCost;
+    }
+
+    public void setGraphQlNamespaceMaximumQueryCost(Map<String, Long> graphQlNamespaceMaximumQueryCost) {
+        this.graphQlNamespaceMaximumQueryCost = graphQlNamespaceMaximumQueryCost;
+    }
+
+    /**
+     * @param namespace to get the maximum query cost for
+     * @return the maximum cost allowed for a single GraphQL operation in the namespace, 0 means no limit
+     */
+    public long getGraphQlMaximumQueryCost(String namespace) {
+        return graphQlNamespaceMaximumQueryCost.getOrDefault(namespace, graphQlMaximumQueryCost);
+    }
+
+    public IndexSettings getDefaultIndexSettings() {
+        return defaultIndexSettings;
+    }
+
+    public void setDefaultIndexSettings(IndexSettings defaultIndexSettings) {
+        this.defaultIndexSettings = defaultIndexSettings;
+    }
+
+    public IndexSettings getSystemIndexSettings() {
+        return systemIndexSettings;
+    }
+
+    public void setSystemIndexSettings(IndexSettings systemIndexSettings) {
+        this.systemIndexSettings = systemIndexSettings;
+    }
+
+    public IndexSettings getSharedIndexSettings() {
+        return sharedIndexSettings;
+    }
+
+    public void setSharedIndexSettings(IndexSettings sharedIndexSettings) {
+        this.sharedIndexSettings = sharedIndexSettings;
+    }
+
     public String getElasticUris() {
         return elasticUris;
     }
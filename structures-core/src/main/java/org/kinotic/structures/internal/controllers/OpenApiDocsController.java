@@ -1,23 +1,26 @@
 package org.kinotic.structures.internal.controllers;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.kinotic.structures.internal.api.services.OpenApiService;
+import org.kinotic.structures.internal.api.services.util.OpenApiDocument;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.io.IOException;
-
 /**
  * Created by Navíd Mitchell 🤪 on 3/18/23.
  */
 @RestController
 public class OpenApiDocsController {
 
+    private static final String GZIP_ETAG_SUFFIX = "-gzip\"";
+
     private final OpenApiService openApiService;
 
     public OpenApiDocsController(OpenApiService openApiService) {
@@ -26,19 +29,74 @@ public class OpenApiDocsController {
 
 
     @GetMapping(value = "/api-docs/{namespace}/openapi.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Mono<String> getOpenApiDocs(@PathVariable String namespace) {
-        return Mono.defer(() -> {
-               try {
-                   //This wacky stuff is needed since we do not want nulls in our output
-                   ObjectMapper mapper = new ObjectMapper();
-                   mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-                   String json = mapper.writeValueAsString(openApiService.getOpenApiSpec(namespace));
-                   return Mono.just(json);
-               } catch (IOException e) {
-                   return Mono.error(e);
-               }
-        })
-        .subscribeOn(Schedulers.boundedElastic());
+    public Mono<ResponseEntity<byte[]>> getOpenApiDocs(@PathVariable String namespace,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return Mono.fromCallable(() -> openApiService.getOpenApiDocument(namespace))
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .map(document -> {
+                       boolean gzip = acceptsGzip(acceptEncoding);
+                       // the gzip representation is a different entity, so it gets its own tag
+                       String eTag = gzip ? gzipETag(document.getETag()) : document.getETag();
+
+                       boolean notModified = ifNoneMatch != null
+                               && (ifNoneMatch.contains(document.getETag()) || ifNoneMatch.contains(gzipETag(document.getETag())));
+
+                       ResponseEntity.BodyBuilder builder = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                                                                          .eTag(eTag)
+                                                                          .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                       if(notModified){
+                           return builder.build();
+                       }
+
+                       if(gzip){
+                           return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                                         .contentType(MediaType.APPLICATION_JSON)
+                                         .body(document.getGzippedJson());
+                       }
+                       return builder.contentType(MediaType.APPLICATION_JSON)
+                                     .body(document.getJson());
+                   });
+    }
+
+    /**
+     * Parses the Accept-Encoding header, a coding is acceptable unless given a quality of 0 such as "gzip;q=0".
+     * An explicit gzip takes precedence over "*"
+     */
+    private static boolean acceptsGzip(String acceptEncoding){
+        if(acceptEncoding == null){
+            return false;
+        }
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for(String value : acceptEncoding.split(",")){
+            String[] parts = value.split(";");
+            String coding = parts[0].trim();
+            double quality = 1;
+            for(int i = 1; i < parts.length; i++){
+                String parameter = parts[i].trim();
+                if(parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")){
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if(coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")){
+                gzipQuality = gzipQuality != null ? Math.max(gzipQuality, quality) : quality;
+            }else if(coding.equals("*")){
+                anyQuality = quality;
+            }
+        }
+        if(gzipQuality != null){
+            return gzipQuality > 0;
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    private static String gzipETag(String eTag){
+        return eTag.substring(0, eTag.length() - 1) + GZIP_ETAG_SUFFIX;
     }
 
 }
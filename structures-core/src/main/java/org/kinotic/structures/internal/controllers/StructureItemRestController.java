@@ -2,10 +2,19 @@ package org.kinotic.structures.internal.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.elasticsearch.search.SearchHits;
+import org.kinotic.structures.api.domain.DeadlineExceededException;
+import org.kinotic.structures.api.domain.ElasticsearchUnavailableException;
 import org.kinotic.structures.api.domain.TypeCheckMap;
 import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.util.Deadline;
+import org.kinotic.structures.internal.api.services.util.StaleReads;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
@@ -31,18 +40,19 @@ public class StructureItemRestController {
     public Mono<String> listAll(@PathVariable String structureId,
                                @RequestParam(required = false, defaultValue = "0") int page,
                                @RequestParam(required = false, defaultValue = "25") int size,
-                               Principal principal) {
-        return Mono.defer(() -> {
+                               Principal principal,
+                               ServerHttpRequest request,
+                               ServerHttpResponse response) {
+        HashMap<String, Object> context = createContext(principal, request);
+        return withDeadline(structureId, Mono.defer(() -> {
             try {
-                HashMap<String, Object> context = new HashMap<>();
-                context.put("principal", principal);
                 SearchHits searchHits = itemService.getAll(structureId, size, page, context);
                 String json = objectMapper.writeValueAsString(searchHits);
                 return Mono.just(json);
             } catch (Exception e) {
                 return Mono.error(e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()), context, response);
     }
 
     @PostMapping(value = "/{structureId}/search", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -50,18 +60,19 @@ public class StructureItemRestController {
                                @RequestBody String search,
                                @RequestParam(required = false, defaultValue = "0") int page,
                                @RequestParam(required = false, defaultValue = "25") int size,
-                               Principal principal) {
-        return Mono.defer(() -> {
+                               Principal principal,
+                               ServerHttpRequest request,
+                               ServerHttpResponse response) {
+        HashMap<String, Object> context = createContext(principal, request);
+        return withDeadline(structureId, Mono.defer(() -> {
             try {
-                HashMap<String, Object> context = new HashMap<>();
-                context.put("principal", principal);
                 SearchHits searchHits = itemService.search(structureId, search, size, page, context);
                 String json = objectMapper.writeValueAsString(searchHits);
                 return Mono.just(json);
             } catch (Exception e) {
                 return Mono.error(e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()), context, response);
     }
 
     @PostMapping(value = "/{structureId}/searchWithSort", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -71,31 +82,31 @@ public class StructureItemRestController {
                                @RequestParam(required = false, defaultValue = "false") boolean isDescending,
                                @RequestParam(required = false, defaultValue = "0") int page,
                                @RequestParam(required = false, defaultValue = "25") int size,
-                               Principal principal) {
-        return Mono.defer(() -> {
+                               Principal principal,
+                               ServerHttpRequest request,
+                               ServerHttpResponse response) {
+        HashMap<String, Object> context = createContext(principal, request);
+        return withDeadline(structureId, Mono.defer(() -> {
             try {
-                HashMap<String, Object> context = new HashMap<>();
-                context.put("principal", principal);
                 SearchHits searchHits = itemService.searchWithSort(structureId, search, size, page, sortField, isDescending, context);
                 String json = objectMapper.writeValueAsString(searchHits);
                 return Mono.just(json);
             } catch (Exception e) {
                 return Mono.error(e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()), context, response);
     }
 
     @PostMapping("/{structureId}")
-    public Mono<LinkedHashMap<String, Object>> upsertItem(@PathVariable String structureId, @RequestBody Map<String, Object> item, Principal principal) {
-        return Mono.defer(() -> {
+    public Mono<LinkedHashMap<String, Object>> upsertItem(@PathVariable String structureId, @RequestBody Map<String, Object> item, Principal principal, ServerHttpRequest request, ServerHttpResponse response) {
+        HashMap<String, Object> context = createContext(principal, request);
+        return withDeadline(structureId, Mono.defer(() -> {
             try {
-                HashMap<String, Object> context = new HashMap<>();
-                context.put("principal", principal);
                 return Mono.just((LinkedHashMap<String, Object>)itemService.upsertItem(structureId, new TypeCheckMap(item), context));
             } catch (Exception e) {
                 return Mono.error(e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()), context, response);
     }
 
     @PostMapping("/{structureId}/bulk-upsert")
@@ -120,32 +131,77 @@ public class StructureItemRestController {
     }
 
     @GetMapping("/{structureId}/{id}")
-    public Mono<LinkedHashMap<String, Object>> getItemById(@PathVariable String structureId, @PathVariable String id, Principal principal) {
-        return Mono.defer(() -> {
+    public Mono<LinkedHashMap<String, Object>> getItemById(@PathVariable String structureId, @PathVariable String id, Principal principal, ServerHttpRequest request, ServerHttpResponse response) {
+        HashMap<String, Object> context = createContext(principal, request);
+        return withDeadline(structureId, Mono.defer(() -> {
             try {
-                HashMap<String, Object> context = new HashMap<>();
-                context.put("principal", principal);
                 Optional<TypeCheckMap> item = itemService.getItemById(structureId, id, context);
                 return item.map(typeCheckMap -> Mono.just((LinkedHashMap<String, Object>) typeCheckMap))
                            .orElseGet(Mono::empty);
             } catch (Exception e) {
                 return Mono.error(e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()), context, response);
     }
 
     @DeleteMapping("/{structureId}/{id}")
-    public Mono<Void> deleteItem(@PathVariable String structureId, @PathVariable String id, Principal principal) {
-        return Mono.defer(() -> {
+    public Mono<Void> deleteItem(@PathVariable String structureId, @PathVariable String id, Principal principal, ServerHttpRequest request, ServerHttpResponse response) {
+        HashMap<String, Object> context = createContext(principal, request);
+        return withDeadline(structureId, Mono.defer(() -> {
             try {
-                HashMap<String, Object> context = new HashMap<>();
-                context.put("principal", principal);
                 itemService.delete(structureId, id, context);
                 return Mono.empty().then();
             } catch (Exception e) {
                 return Mono.error(e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()), context, response);
+    }
+
+    private static HashMap<String, Object> createContext(Principal principal, ServerHttpRequest request){
+        HashMap<String, Object> context = new HashMap<>();
+        context.put("principal", principal);
+        StaleReads.track(context);
+
+        String timeout = request.getHeaders().getFirst(Deadline.TIMEOUT_HEADER);
+        if(timeout == null){
+            timeout = request.getQueryParams().getFirst(Deadline.TIMEOUT_PARAMETER);
+        }
+        try {
+            Deadline deadline = Deadline.parse(timeout);
+            if(deadline != null){
+                context.put(Deadline.CONTEXT_KEY, deadline);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid request timeout '" + timeout + "'", e);
+        }
+        return context;
+    }
+
+    /**
+     * The deadline is resolved once here, from the one the client provided or the default for the {@link org.kinotic.structures.api.domain.Structure},
+     * and the work is abandoned when it passes, this includes work still waiting for a thread.
+     * Cancelling the subscription interrupts the worker which in turn cancels any in-flight Elasticsearch request.
+     * <p>
+     * Responses built from a last known copy of the metadata or a cached item while Elasticsearch is unavailable get a Warning header,
+     * and requests that could not be served at all get a 503.
+     */
+    private <T> Mono<T> withDeadline(String structureId, Mono<T> mono, Map<String, Object> context, ServerHttpResponse response){
+        // finding the structure default may block
+        return Mono.fromCallable(() -> itemService.resolveDeadline(structureId, context))
+                   .subscribeOn(Schedulers.boundedElastic())
+                   // the context was created for this request, so every call made for it shares the deadline
+                   .doOnNext(deadline -> context.put(Deadline.CONTEXT_KEY, deadline))
+                   .flatMap(deadline -> mono.timeout(deadline.remaining(),
+                                                     Mono.error(() -> new DeadlineExceededException("Request deadline exceeded"))))
+                   .doOnSuccess(value -> {
+                       if(StaleReads.isStale(context)){
+                           response.getHeaders().add(HttpHeaders.WARNING, StaleReads.WARNING_HEADER_VALUE);
+                       }
+                   })
+                   .onErrorMap(DeadlineExceededException.class,
+                               e -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, e.getMessage(), e))
+                   .onErrorMap(ElasticsearchUnavailableException.class,
+                               e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e));
     }
 
 }
@@ -0,0 +1,30 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.util.BulkItemResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Deletes all the provided ids with a single bulk request, returning the result for each id in order
+ */
+public class BulkDeleteDataFetcher implements DataFetcher<CompletableFuture<List<BulkItemResult>>> {
+
+    private final String structureId;
+    private final ItemServiceInternal itemService;
+
+    public BulkDeleteDataFetcher(String structureId, ItemServiceInternal itemService) {
+        this.structureId = structureId;
+        this.itemService = itemService;
+    }
+
+    @Override
+    public CompletableFuture<List<BulkItemResult>> get(DataFetchingEnvironment environment) throws Exception {
+        List<String> ids = environment.getArgument("ids");
+        return itemService.bulkDeleteAsync(structureId, ids, DataFetcherUtils.createContext(environment))
+                          .toFuture();
+    }
+}
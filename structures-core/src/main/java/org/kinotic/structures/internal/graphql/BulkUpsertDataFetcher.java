@@ -0,0 +1,37 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.util.BulkItemResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Upserts all the provided inputs with a single bulk request, returning the result for each input in order
+ */
+public class BulkUpsertDataFetcher implements DataFetcher<CompletableFuture<List<BulkItemResult>>> {
+
+    private final String structureId;
+    private final ItemServiceInternal itemService;
+
+    public BulkUpsertDataFetcher(String structureId, ItemServiceInternal itemService) {
+        this.structureId = structureId;
+        this.itemService = itemService;
+    }
+
+    @Override
+    public CompletableFuture<List<BulkItemResult>> get(DataFetchingEnvironment environment) throws Exception {
+        List<Map<String, Object>> inputs = environment.getArgument("inputs");
+        List<TypeCheckMap> items = new ArrayList<>(inputs.size());
+        for (Map<String, Object> input : inputs) {
+            items.add(new TypeCheckMap(input));
+        }
+        return itemService.bulkUpsertAsync(structureId, items, DataFetcherUtils.createContext(environment))
+                          .toFuture();
+    }
+}
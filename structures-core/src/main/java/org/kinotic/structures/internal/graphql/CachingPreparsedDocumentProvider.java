@@ -1,25 +1,30 @@
 package org.kinotic.structures.internal.graphql;
 
-import com.github.benmanes.caffeine.cache.AsyncCache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import graphql.ExecutionInput;
 import graphql.execution.preparsed.PreparsedDocumentEntry;
 import graphql.execution.preparsed.PreparsedDocumentProvider;
 
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
  * A PreparsedDocumentProvider that caches the results of parsing and validating a query.
+ * The entries are stored in the shared {@link GraphQlDocumentCache}, scoped to the namespace and schema version this provider was created for.
  * Created by Navíd Mitchell 🤪 on 4/17/23.
  */
 public class CachingPreparsedDocumentProvider implements PreparsedDocumentProvider {
 
-    private final AsyncCache<String, PreparsedDocumentEntry> cache  = Caffeine.newBuilder()
-                                                                               .expireAfterWrite(10, TimeUnit.MINUTES)
-                                                                               .maximumSize(500)
-                                                                               .buildAsync();
+    private final GraphQlDocumentCache documentCache;
+    private final String schemaKey;
+
+    /**
+     * @param documentCache the cache shared by all schemas
+     * @param schemaKey identifies the namespace and version of the schema documents are validated against
+     */
+    public CachingPreparsedDocumentProvider(GraphQlDocumentCache documentCache, String schemaKey) {
+        this.documentCache = documentCache;
+        this.schemaKey = schemaKey;
+    }
 
     @Override
     public PreparsedDocumentEntry getDocument(ExecutionInput executionInput,
@@ -30,7 +35,8 @@ public class CachingPreparsedDocumentProvider implements PreparsedDocumentProvid
     @Override
     public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput,
                                                                       Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
-        Function<String, PreparsedDocumentEntry> mapCompute = key -> parseAndValidateFunction.apply(executionInput);
-        return cache.get(executionInput.getQuery(), mapCompute);
+        return documentCache.getDocument(schemaKey,
+                                         executionInput.getQuery(),
+                                         () -> parseAndValidateFunction.apply(executionInput));
     }
 }
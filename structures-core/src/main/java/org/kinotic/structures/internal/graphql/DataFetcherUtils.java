@@ -0,0 +1,104 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.GraphQLContext;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.SelectedField;
+import org.kinotic.structures.internal.api.services.util.Deadline;
+import org.kinotic.structures.internal.api.services.util.StaleReads;
+import org.kinotic.structures.internal.trait.lifecycle.ObjectReference;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers shared by the Structures {@link graphql.schema.DataFetcher}s
+ */
+public final class DataFetcherUtils {
+
+    private DataFetcherUtils() {
+    }
+
+    /**
+     * Creates the context passed to the item services for the current GraphQL execution
+     * @param environment for the field being fetched
+     * @return the new context
+     */
+    public static Map<String, Object> createContext(DataFetchingEnvironment environment){
+        return createContext(environment.getGraphQlContext());
+    }
+
+    /**
+     * Creates the context passed to the item services for the given GraphQL execution context
+     * @param graphQLContext for the current execution, may be null
+     * @return the new context
+     */
+    public static Map<String, Object> createContext(GraphQLContext graphQLContext){
+        return createContext(graphQLContext, true);
+    }
+
+    /**
+     * Creates the context passed to the item services for the given GraphQL execution context
+     * @param graphQLContext for the current execution, may be null
+     * @param includeDeadline false to leave out the request {@link Deadline}, for work that outlives the request such as subscriptions
+     * @return the new context
+     */
+    public static Map<String, Object> createContext(GraphQLContext graphQLContext, boolean includeDeadline){
+        HashMap<String, Object> context = new HashMap<>();
+        // references are resolved per field by the ReferenceDataFetcher so they can be batched
+        context.put(ObjectReference.DEFER_RESOLUTION_CONTEXT_KEY, true);
+        if(graphQLContext != null){
+            Deadline deadline = graphQLContext.get(Deadline.CONTEXT_KEY);
+            if(includeDeadline && deadline != null){
+                context.put(Deadline.CONTEXT_KEY, deadline);
+            }
+            // shared with the handler, so it can tell the client if anything was served stale
+            Object staleReads = graphQLContext.get(StaleReads.CONTEXT_KEY);
+            if(staleReads != null){
+                context.put(StaleReads.CONTEXT_KEY, staleReads);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Determines the item fields selected below the "content" field of a page response.
+     * These are passed to Elasticsearch as the _source includes, so only the requested fields are returned.
+     * @param environment for the page field being fetched
+     * @return the selected fields, or an empty array if the content was not requested at all
+     */
+    public static String[] getContentIncludes(DataFetchingEnvironment environment){
+        return getIncludes(environment, "content/*");
+    }
+
+    /**
+     * Determines the item fields selected at the given path of the selection set.
+     * Fields with a selection of their own are references, only the "structureId" and "id" stored for them are included,
+     * as dotted paths, since the {@link ReferenceDataFetcher} loads the rest from the referenced {@link org.kinotic.structures.api.domain.Structure}.
+     * @param environment for the field being fetched
+     * @param itemFieldsGlob the selection set glob that matches the fields of the items, such as "content/*"
+     * @return the selected fields, or an empty array if the items were not requested at all
+     */
+    public static String[] getIncludes(DataFetchingEnvironment environment, String itemFieldsGlob){
+        Set<String> ret = new LinkedHashSet<>();
+        String itemGlob = itemFieldsGlob.substring(0, itemFieldsGlob.lastIndexOf('/'));
+        if(environment.getSelectionSet().contains(itemGlob)){
+            for(SelectedField field : environment.getSelectionSet().getFields(itemFieldsGlob)){
+                if(!field.getName().startsWith("__")){
+                    if(field.getSelectionSet().getImmediateFields().isEmpty()){
+                        ret.add(field.getName());
+                    }else{
+                        ret.add(field.getName() + ".structureId");
+                        ret.add(field.getName() + ".id");
+                    }
+                }
+            }
+            if(ret.isEmpty()){
+                // only introspection fields such as __typename were selected, we still need an object per item
+                ret.add("id");
+            }
+        }
+        return ret.toArray(new String[0]);
+    }
+}
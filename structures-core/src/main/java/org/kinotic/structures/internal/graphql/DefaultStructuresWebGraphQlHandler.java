@@ -25,7 +25,8 @@ public class DefaultStructuresWebGraphQlHandler implements WebGraphQlHandler {
         this.executionGraphQlServiceProvider = executionGraphQlServiceProvider;
 
         WebGraphQlInterceptor.Chain endOfChain = request -> {
-            String namespace = (String) request.getExtensions().get("__structuresNamespace");
+            // set by the StructuresGraphQlHttpHandler or the WebSocketNamespaceInterceptor, never by the client
+            String namespace = (String) request.getExtensions().get(WebSocketNamespaceInterceptor.NAMESPACE_EXTENSION);
             return this.executionGraphQlServiceProvider.getService(namespace)
                                                        .flatMap(service -> service.execute(request))
                                                        .map(WebGraphQlResponse::new);
@@ -4,10 +4,12 @@ import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import org.kinotic.structures.internal.api.services.ItemServiceInternal;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Created by Navíd Mitchell 🤪 on 4/18/23.
  */
-public class DeleteDataFetcher implements DataFetcher<Boolean> {
+public class DeleteDataFetcher implements DataFetcher<CompletableFuture<Boolean>> {
 
     private final String structureId;
     private final ItemServiceInternal itemService;
@@ -18,9 +20,10 @@ public class DeleteDataFetcher implements DataFetcher<Boolean> {
     }
 
     @Override
-    public Boolean get(DataFetchingEnvironment environment) throws Exception {
+    public CompletableFuture<Boolean> get(DataFetchingEnvironment environment) throws Exception {
         String id = environment.getArgument("id");
-        itemService.delete(structureId, id, null);
-        return true;
+        return itemService.deleteAsync(structureId, id, DataFetcherUtils.createContext(environment))
+                          .thenReturn(true)
+                          .toFuture();
     }
 }
@@ -2,26 +2,33 @@ package org.kinotic.structures.internal.graphql;
 
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
-import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.dataloader.DataLoader;
+import org.kinotic.structures.api.domain.TypeCheckMap;
 
-import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by Navíd Mitchell 🤪 on 4/17/23.
  */
-public class GetItemDataFetcher implements DataFetcher<LinkedHashMap<String, Object>>{
+public class GetItemDataFetcher implements DataFetcher<CompletableFuture<TypeCheckMap>>{
 
         private final String structureId;
-        private final ItemServiceInternal itemService;
 
-        public GetItemDataFetcher(String structureId, ItemServiceInternal itemService) {
+        public GetItemDataFetcher(String structureId) {
             this.structureId = structureId;
-            this.itemService = itemService;
         }
 
         @Override
-        public LinkedHashMap<String, Object> get(DataFetchingEnvironment environment) throws Exception {
+        public CompletableFuture<TypeCheckMap> get(DataFetchingEnvironment environment) throws Exception {
             String id = environment.getArgument("id");
-            return itemService.getItemById(structureId, id, null).orElseThrow();
+            // items are loaded through the DataLoader so that many lookups in one query are batched into a single request
+            DataLoader<String, TypeCheckMap> dataLoader = environment.getDataLoader(structureId);
+            return dataLoader.load(id).thenApply(item -> {
+                if(item == null){
+                    throw new NoSuchElementException("No value present");
+                }
+                return item;
+            });
         }
 }
@@ -0,0 +1,57 @@
+package org.kinotic.structures.internal.graphql;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.language.Node;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Parsed and validated GraphQL documents shared by all namespace schemas.
+ * Entries are keyed by the schema they were validated against and the query text, and weighed by the number of nodes in the parsed document,
+ * which is what the memory they use grows with, so that a few very large queries cannot crowd out many small ones.
+ */
+@Component
+public class GraphQlDocumentCache {
+
+    private final AsyncCache<String, PreparsedDocumentEntry> cache;
+
+    public GraphQlDocumentCache(StructuresProperties structuresProperties) {
+        this.cache = Caffeine.newBuilder()
+                             .expireAfterAccess(1, TimeUnit.HOURS)
+                             .maximumWeight(structuresProperties.getGraphQlDocumentCacheMaximumWeight())
+                             .<String, PreparsedDocumentEntry>weigher((key, value) -> value.getDocument() != null ? countNodes(value.getDocument()) : 1)
+                             .recordStats()
+                             .buildAsync();
+    }
+
+    /**
+     * Gets the document for the query, parsing and validating it if needed
+     * @param schemaKey identifies the namespace and version of the schema the document is validated against
+     * @param query the query text
+     * @param parseAndValidate used to create the document when it is not cached
+     * @return the cached or newly created document
+     */
+    public CompletableFuture<PreparsedDocumentEntry> getDocument(String schemaKey,
+                                                                 String query,
+                                                                 Supplier<PreparsedDocumentEntry> parseAndValidate) {
+        return cache.get(schemaKey + "|" + query, key -> parseAndValidate.get());
+    }
+
+    public AsyncCache<String, PreparsedDocumentEntry> getCache() {
+        return cache;
+    }
+
+    private static int countNodes(Node<?> node) {
+        int ret = 1;
+        for (Node<?> child : node.getChildren()) {
+            ret += countNodes(child);
+        }
+        return ret;
+    }
+}
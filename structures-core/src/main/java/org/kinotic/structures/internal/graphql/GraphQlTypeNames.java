@@ -0,0 +1,73 @@
+package org.kinotic.structures.internal.graphql;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Names of the types in the GraphQL schema of a namespace.
+ * Every {@link org.kinotic.structures.api.domain.Structure} adds a type named after it, and a few more named by adding a suffix to its name.
+ * Since all of these share one schema, a Structure name must not be the same as any type another Structure, or the schema itself, adds.
+ */
+public final class GraphQlTypeNames {
+
+    public static final String REFERENCE_INPUT = "ObjectReferenceInput";
+    public static final String PAGE_INFO = "PageInfo";
+    public static final String BULK_ITEM_RESULT = "BulkItemResult";
+    public static final String ITEM_CHANGE_TYPE = "ItemChangeType";
+
+    public static final String INPUT_SUFFIX = "Input";
+    public static final String PAGE_SUFFIX = "Page";
+    public static final String CONNECTION_SUFFIX = "Connection";
+    public static final String EDGE_SUFFIX = "Edge";
+    public static final String CHANGE_SUFFIX = "Change";
+
+    /**
+     * Types that are part of every schema, regardless of the Structures in it
+     */
+    public static final Set<String> RESERVED = Set.of("Query", "Mutation", "Subscription", REFERENCE_INPUT, PAGE_INFO, BULK_ITEM_RESULT, ITEM_CHANGE_TYPE);
+
+    private GraphQlTypeNames() {
+    }
+
+    /**
+     * @param structureName the name of the Structure
+     * @return the names of all the types the Structure adds to the schema
+     */
+    public static Set<String> forStructure(String structureName){
+        Set<String> ret = new LinkedHashSet<>();
+        ret.add(structureName);
+        ret.add(structureName + INPUT_SUFFIX);
+        ret.add(structureName + PAGE_SUFFIX);
+        ret.add(structureName + CONNECTION_SUFFIX);
+        ret.add(structureName + EDGE_SUFFIX);
+        ret.add(structureName + CHANGE_SUFFIX);
+        return ret;
+    }
+
+    /**
+     * @param structureName the name of the Structure to check
+     * @param otherStructureNames the names of the other Structures in the same schema
+     * @return the name of the type the Structure has in common with the schema, or null if there is none
+     */
+    public static String findConflict(String structureName, Collection<String> otherStructureNames){
+        Set<String> typeNames = forStructure(structureName);
+        for(String typeName : typeNames){
+            if(RESERVED.contains(typeName)){
+                return typeName;
+            }
+        }
+        for(String otherStructureName : otherStructureNames){
+            if(otherStructureName.equals(structureName)){
+                continue;
+            }
+            for(String otherTypeName : forStructure(otherStructureName)){
+                if(typeNames.contains(otherTypeName)){
+                    return otherTypeName;
+                }
+            }
+        }
+        return null;
+    }
+
+}
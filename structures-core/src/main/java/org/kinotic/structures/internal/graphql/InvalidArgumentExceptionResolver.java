@@ -0,0 +1,25 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import graphql.schema.DataFetchingEnvironment;
+import org.springframework.graphql.execution.DataFetcherExceptionResolverAdapter;
+import org.springframework.graphql.execution.ErrorType;
+
+/**
+ * Reports an {@link IllegalArgumentException} thrown by a data fetcher, such as for an invalid cursor, as a bad request with its message.
+ * Otherwise it would be reported as an internal error and the client would not know what to change.
+ */
+public class InvalidArgumentExceptionResolver extends DataFetcherExceptionResolverAdapter {
+
+    @Override
+    protected GraphQLError resolveToSingleError(Throwable ex, DataFetchingEnvironment env) {
+        if(!(ex instanceof IllegalArgumentException)){
+            return null;
+        }
+        return GraphqlErrorBuilder.newError(env)
+                                  .errorType(ErrorType.BAD_REQUEST)
+                                  .message(ex.getMessage())
+                                  .build();
+    }
+}
@@ -0,0 +1,33 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.GraphQLContext;
+import org.dataloader.BatchLoaderEnvironment;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Loads all the items requested for a {@link Structure} during a single GraphQL execution level with one multi get request.
+ * One of these is registered per {@link Structure}, using the {@link Structure#getId()} as the DataLoader name.
+ */
+public class ItemBatchLoader implements BiFunction<Set<String>, BatchLoaderEnvironment, Mono<Map<String, TypeCheckMap>>> {
+
+    private final Structure structure;
+    private final ItemServiceInternal itemService;
+
+    public ItemBatchLoader(Structure structure, ItemServiceInternal itemService) {
+        this.structure = structure;
+        this.itemService = itemService;
+    }
+
+    @Override
+    public Mono<Map<String, TypeCheckMap>> apply(Set<String> ids, BatchLoaderEnvironment environment) {
+        GraphQLContext graphQLContext = environment.getContext() instanceof GraphQLContext ? environment.getContext() : null;
+        return itemService.getByIdsAsync(structure, ids, DataFetcherUtils.createContext(graphQLContext));
+    }
+}
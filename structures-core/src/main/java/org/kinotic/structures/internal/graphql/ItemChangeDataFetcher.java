@@ -0,0 +1,71 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.kinotic.structures.internal.api.services.ItemChangeStream;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.util.ItemChangeEvent;
+import org.kinotic.structures.internal.api.services.util.ItemChangeType;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Subscribes to changes of the items for a structure, optionally only for the given ids and types of change.
+ * <p>
+ * Every changed item is loaded through the {@link ItemServiceInternal} with the context of the subscriber, so the after get lifecycles are run for it.
+ * Changes to items the subscriber cannot get are not sent to it.
+ */
+public class ItemChangeDataFetcher implements DataFetcher<Publisher<ItemChangeResponse>> {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemChangeDataFetcher.class);
+
+    private final String structureId;
+    private final ItemChangeStream itemChangeStream;
+    private final ItemServiceInternal itemService;
+
+    public ItemChangeDataFetcher(String structureId, ItemChangeStream itemChangeStream, ItemServiceInternal itemService) {
+        this.structureId = structureId;
+        this.itemChangeStream = itemChangeStream;
+        this.itemService = itemService;
+    }
+
+    @Override
+    public Publisher<ItemChangeResponse> get(DataFetchingEnvironment environment) throws Exception {
+        List<String> ids = environment.getArgument("ids");
+        List<ItemChangeType> types = environment.getArgument("types");
+        // a subscription outlives the deadline of the request that started it, each load gets its own instead
+        Map<String, Object> context = DataFetcherUtils.createContext(environment.getGraphQlContext(), false);
+
+        Flux<ItemChangeEvent> ret = itemChangeStream.changes(structureId);
+        if(ids != null && !ids.isEmpty()){
+            Set<String> idSet = new HashSet<>(ids);
+            ret = ret.filter(event -> idSet.contains(event.getId()));
+        }
+        if(types != null && !types.isEmpty()){
+            Set<ItemChangeType> typeSet = new HashSet<>(types);
+            ret = ret.filter(event -> typeSet.contains(event.getType()));
+        }
+        return ret.concatMap(event -> loadItem(event, new HashMap<>(context)));
+    }
+
+    private Mono<ItemChangeResponse> loadItem(ItemChangeEvent event, Map<String, Object> context){
+        // after get lifecycles are allowed to block
+        return Mono.fromCallable(() -> itemService.getItemById(structureId, event.getId(), context))
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .flatMap(item -> Mono.justOrEmpty(item.map(value -> new ItemChangeResponse(event.getType(), event.getId(), value))))
+                   .onErrorResume(e -> {
+                       log.debug("Not sending the change to item '" + event.getId() + "' of Structure '" + structureId + "', it could not be loaded for the subscriber", e);
+                       return Mono.empty();
+                   });
+    }
+}
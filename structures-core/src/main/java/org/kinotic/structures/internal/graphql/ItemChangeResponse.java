@@ -0,0 +1,35 @@
+package org.kinotic.structures.internal.graphql;
+
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.internal.api.services.util.ItemChangeType;
+
+/**
+ * A change to an item as seen by one subscriber, with the item loaded for that subscriber
+ */
+public class ItemChangeResponse {
+
+    private final ItemChangeType type;
+    private final String id;
+    private final TypeCheckMap item;
+
+    public ItemChangeResponse(ItemChangeType type, String id, TypeCheckMap item) {
+        this.type = type;
+        this.id = id;
+        this.item = item;
+    }
+
+    public ItemChangeType getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the item as it is after the change, for deletes this is the item as it was marked deleted
+     */
+    public TypeCheckMap getItem() {
+        return item;
+    }
+}
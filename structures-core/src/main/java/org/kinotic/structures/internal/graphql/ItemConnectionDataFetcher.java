@@ -0,0 +1,46 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves a Relay style connection for a Structure, the "after" cursor is used with search_after so every page costs the same.
+ */
+public class ItemConnectionDataFetcher implements DataFetcher<CompletableFuture<ItemConnectionResponse>> {
+
+    private final String structureId;
+    private final ItemServiceInternal itemService;
+
+    public ItemConnectionDataFetcher(String structureId, ItemServiceInternal itemService) {
+        this.structureId = structureId;
+        this.itemService = itemService;
+    }
+
+    @Override
+    public CompletableFuture<ItemConnectionResponse> get(DataFetchingEnvironment environment) throws Exception {
+        Integer first = environment.getArgument("first");
+        String after = environment.getArgument("after");
+        String search = environment.getArgument("search");
+        if(first < 0){
+            throw new IllegalArgumentException("first must not be negative");
+        }
+
+        Object[] searchAfter = after != null ? ItemConnectionResponse.decodeCursor(after) : null;
+        // the exact count is only calculated when asked for
+        boolean trackTotalHits = environment.getSelectionSet().contains("totalElements");
+
+        // one extra item is requested to know if there is a next page
+        return itemService.searchAfterAsync(structureId,
+                                            search,
+                                            first + 1,
+                                            searchAfter,
+                                            trackTotalHits,
+                                            DataFetcherUtils.getIncludes(environment, "edges/node/*"),
+                                            DataFetcherUtils.createContext(environment))
+                          .map(searchHits -> new ItemConnectionResponse(searchHits, first))
+                          .toFuture();
+    }
+}
@@ -0,0 +1,113 @@
+package org.kinotic.structures.internal.graphql;
+
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Relay style connection over the items returned by a search_after request.
+ * <p>
+ * <a href="https://relay.dev/graphql/connections.htm">Cursor Connections Specification</a>
+ */
+public class ItemConnectionResponse {
+
+    private final SearchHits searchHits;
+    private final int first;
+    private List<Edge> edges;
+
+    /**
+     * @param searchHits the hits returned, one more than requested may be present which is used to determine if there is a next page
+     * @param first the number of items requested
+     */
+    public ItemConnectionResponse(SearchHits searchHits, int first) {
+        this.searchHits = searchHits;
+        this.first = first;
+    }
+
+    /**
+     * @return the total number of matching items, or null if the total was not requested
+     */
+    public Long getTotalElements() {
+        return searchHits.getTotalHits() != null ? searchHits.getTotalHits().value : null;
+    }
+
+    public List<Edge> getEdges() {
+        if(edges == null){
+            edges = new ArrayList<>();
+            SearchHit[] hits = searchHits.getHits();
+            for(int i = 0; i < hits.length && i < first; i++){
+                edges.add(new Edge(hits[i]));
+            }
+        }
+        return edges;
+    }
+
+    public PageInfo getPageInfo() {
+        List<Edge> edges = getEdges();
+        return new PageInfo(searchHits.getHits().length > first,
+                            !edges.isEmpty() ? edges.get(edges.size() - 1).getCursor() : null);
+    }
+
+    /**
+     * Cursors are the sort values of the item, which is the item id
+     */
+    public static String encodeCursor(SearchHit hit){
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString(String.valueOf(hit.getSortValues()[0]).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor created by {@link #encodeCursor(SearchHit)}
+     * @return the search_after values for the cursor
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static Object[] decodeCursor(String cursor){
+        try {
+            return new Object[]{new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor '" + cursor + "'", e);
+        }
+    }
+
+    public static class Edge {
+
+        private final SearchHit hit;
+
+        public Edge(SearchHit hit) {
+            this.hit = hit;
+        }
+
+        public Map<String, Object> getNode() {
+            return hit.getSourceAsMap();
+        }
+
+        public String getCursor() {
+            return encodeCursor(hit);
+        }
+    }
+
+    public static class PageInfo {
+
+        private final boolean hasNextPage;
+        private final String endCursor;
+
+        public PageInfo(boolean hasNextPage, String endCursor) {
+            this.hasNextPage = hasNextPage;
+            this.endCursor = endCursor;
+        }
+
+        public boolean isHasNextPage() {
+            return hasNextPage;
+        }
+
+        public String getEndCursor() {
+            return endCursor;
+        }
+    }
+}
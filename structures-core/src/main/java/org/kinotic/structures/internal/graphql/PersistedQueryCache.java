@@ -0,0 +1,72 @@
+package org.kinotic.structures.internal.graphql;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores queries registered using the automatic persisted query protocol, so clients only need to send the sha256 hash of a query once it is known.
+ * <p>
+ * <a href="https://www.apollographql.com/docs/apollo-server/performance/apq/">Automatic persisted queries</a>
+ */
+@Component
+public class PersistedQueryCache {
+
+    private final Cache<String, String> cache;
+
+    public PersistedQueryCache(StructuresProperties structuresProperties) {
+        this.cache = Caffeine.newBuilder()
+                             .expireAfterAccess(24, TimeUnit.HOURS)
+                             .maximumWeight(structuresProperties.getGraphQlPersistedQueryCacheMaximumWeight())
+                             .<String, String>weigher((hash, query) -> query.length())
+                             .recordStats()
+                             .build();
+    }
+
+    /**
+     * @param sha256Hash the hex encoded sha256 hash of the query
+     * @return the query or null if it has not been registered
+     */
+    public String getQuery(String sha256Hash) {
+        return cache.getIfPresent(sha256Hash.toLowerCase());
+    }
+
+    /**
+     * Registers the query for the hash
+     * @param sha256Hash the hex encoded sha256 hash of the query, as provided by the client
+     * @param query the query text
+     * @return true if the query was registered, false if the hash does not match the query
+     */
+    public boolean register(String sha256Hash, String query) {
+        String actual = sha256Hex(query);
+        if(!actual.equalsIgnoreCase(sha256Hash)){
+            return false;
+        }
+        cache.put(actual, query);
+        return true;
+    }
+
+    public Cache<String, String> getCache() {
+        return cache;
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder ret = new StringBuilder(digest.length * 2);
+            for(byte b : digest){
+                ret.append(Character.forDigit((b >> 4) & 0xF, 16))
+                   .append(Character.forDigit(b & 0xF, 16));
+            }
+            return ret.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.analysis.QueryTraverser;
+import graphql.analysis.QueryVisitorFieldEnvironment;
+import graphql.analysis.QueryVisitorStub;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.schema.GraphQLFieldsContainer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statically calculates the cost of a query before it is executed, and rejects it if it exceeds the budget for the namespace.
+ * <p>
+ * Every field costs 1, fields that result in an Elasticsearch request cost {@link #REQUEST_FIELD_COST}.
+ * The cost of a field is multiplied by the size of every list field above it, since it will be resolved once per item returned.
+ * The size of a list field is given by one of its arguments, such as "limit", and which argument that is depends on the field.
+ * When that argument is a list, such as the items given to a bulk mutation, the field itself costs {@link #REQUEST_FIELD_COST} per value provided.
+ * The calculated cost is returned in the "cost" response extension.
+ */
+public class QueryCostInstrumentation extends SimpleInstrumentation {
+
+    public static final String COST_EXTENSION = "cost";
+
+    /**
+     * The cost of a field that results in an Elasticsearch request
+     */
+    public static final long REQUEST_FIELD_COST = 10;
+
+    private final Set<String> requestFieldCoordinates;
+    private final Map<String, String> sizeArguments;
+    private final long maximumCost;
+
+    /**
+     * @param requestFieldCoordinates the "Type.field" coordinates of non root fields that result in an Elasticsearch request, root fields always do
+     * @param sizeArguments the name of the argument that determines the number of items a field returns, keyed by the "Type.field" coordinates of the field.
+     *                      Arguments of fields not in this map, such as the ids a subscription is filtered by, do not change the cost
+     * @param maximumCost the maximum cost allowed for a single operation, 0 or less means no limit
+     */
+    public QueryCostInstrumentation(Set<String> requestFieldCoordinates, Map<String, String> sizeArguments, long maximumCost) {
+        this.requestFieldCoordinates = requestFieldCoordinates;
+        this.sizeArguments = sizeArguments;
+        this.maximumCost = maximumCost;
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        return new CostState();
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters) {
+        long cost = calculateCost(parameters.getExecutionContext());
+        CostState state = parameters.getInstrumentationState();
+        if(state != null){
+            state.cost = cost;
+        }
+        if(maximumCost > 0 && cost > maximumCost){
+            throw new AbortExecutionException("Query cost " + cost + " exceeds the maximum allowed cost of " + maximumCost);
+        }
+        return super.beginExecuteOperation(parameters);
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult,
+                                                                        InstrumentationExecutionParameters parameters) {
+        CostState state = parameters.getInstrumentationState();
+        if(state == null || state.cost < 0){
+            return CompletableFuture.completedFuture(executionResult);
+        }
+        Map<Object, Object> extensions = new LinkedHashMap<>();
+        if(executionResult.getExtensions() != null){
+            extensions.putAll(executionResult.getExtensions());
+        }
+        Map<String, Object> cost = new LinkedHashMap<>();
+        cost.put("requested", state.cost);
+        cost.put("maximum", maximumCost);
+        extensions.put(COST_EXTENSION, cost);
+        return CompletableFuture.completedFuture(ExecutionResultImpl.newExecutionResult()
+                                                                    .from(executionResult)
+                                                                    .extensions(extensions)
+                                                                    .build());
+    }
+
+    private long calculateCost(ExecutionContext executionContext){
+        QueryTraverser traverser = QueryTraverser.newQueryTraverser()
+                                                 .schema(executionContext.getGraphQLSchema())
+                                                 .document(executionContext.getDocument())
+                                                 .operationName(executionContext.getOperationDefinition().getName())
+                                                 .coercedVariables(executionContext.getCoercedVariables())
+                                                 .build();
+        AtomicLong ret = new AtomicLong();
+        traverser.visitPreOrder(new QueryVisitorStub(){
+            @Override
+            public void visitField(QueryVisitorFieldEnvironment environment) {
+                if(environment.isTypeNameIntrospectionField()){
+                    return;
+                }
+                long cost = multiplyCapped(isRequestField(environment) ? REQUEST_FIELD_COST : 1, getBatchSize(environment));
+                QueryVisitorFieldEnvironment parent = environment.getParentEnvironment();
+                while(parent != null){
+                    cost = multiplyCapped(cost, getLimit(parent));
+                    parent = parent.getParentEnvironment();
+                }
+                ret.accumulateAndGet(cost, QueryCostInstrumentation::addCapped);
+            }
+        });
+        return ret.get();
+    }
+
+    private boolean isRequestField(QueryVisitorFieldEnvironment environment){
+        if(environment.getParentEnvironment() == null){
+            return true;
+        }
+        return requestFieldCoordinates.contains(getCoordinates(environment));
+    }
+
+    /**
+     * @return the number of items the field returns, one for each item returned or value provided
+     */
+    private long getLimit(QueryVisitorFieldEnvironment environment){
+        Object value = getSizeArgument(environment);
+        if(value instanceof Number){
+            return Math.max(1, ((Number) value).longValue());
+        }
+        return getBatchSize(environment);
+    }
+
+    /**
+     * @return the number of values provided when the size of the field is given by a list argument, otherwise 1
+     */
+    private long getBatchSize(QueryVisitorFieldEnvironment environment){
+        Object value = getSizeArgument(environment);
+        if(value instanceof List){
+            return Math.max(1, ((List<?>) value).size());
+        }
+        return 1;
+    }
+
+    private Object getSizeArgument(QueryVisitorFieldEnvironment environment){
+        String argument = sizeArguments.get(getCoordinates(environment));
+        return argument != null ? environment.getArguments().get(argument) : null;
+    }
+
+    private static String getCoordinates(QueryVisitorFieldEnvironment environment){
+        GraphQLFieldsContainer container = environment.getFieldsContainer();
+        return container.getName() + "." + environment.getFieldDefinition().getName();
+    }
+
+    private static long multiplyCapped(long a, long b){
+        long ret = a * b;
+        return (a != 0 && ret / a != b) ? Long.MAX_VALUE : ret;
+    }
+
+    private static long addCapped(long a, long b){
+        long ret = a + b;
+        return ret < 0 ? Long.MAX_VALUE : ret;
+    }
+
+    private static class CostState implements InstrumentationState {
+        private long cost = -1;
+    }
+}
@@ -0,0 +1,64 @@
+package org.kinotic.structures.internal.graphql;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.dataloader.DataLoader;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves an ObjectReference field, the stored reference only contains the "structureId" and "id" of the referenced item.
+ * The referenced items are loaded through the DataLoader for the referenced Structure, so all the references at one level are fetched together.
+ * If the field is a collection each of the references is loaded, and the items are returned in the same order as the references.
+ */
+public class ReferenceDataFetcher implements DataFetcher<CompletableFuture<?>> {
+
+    private final String fieldName;
+
+    public ReferenceDataFetcher(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    @Override
+    public CompletableFuture<?> get(DataFetchingEnvironment environment) throws Exception {
+        Map<String, Object> source = environment.getSource();
+        Object value = source != null ? source.get(fieldName) : null;
+        if(value instanceof List){
+            List<CompletableFuture<TypeCheckMap>> futures = new ArrayList<>();
+            for(Object reference : (List<?>) value){
+                futures.add(load(reference, environment));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                                    .thenApply(v -> {
+                                        List<TypeCheckMap> ret = new ArrayList<>(futures.size());
+                                        for(CompletableFuture<TypeCheckMap> future : futures){
+                                            ret.add(future.join());
+                                        }
+                                        return ret;
+                                    });
+        }
+        return load(value, environment);
+    }
+
+    private static CompletableFuture<TypeCheckMap> load(Object value, DataFetchingEnvironment environment){
+        if(!(value instanceof Map)){
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<?, ?> reference = (Map<?, ?>) value;
+        Object structureId = reference.get("structureId");
+        Object id = reference.get("id");
+        if(structureId == null || id == null){
+            return CompletableFuture.completedFuture(null);
+        }
+
+        DataLoader<String, TypeCheckMap> dataLoader = environment.getDataLoader(structureId.toString());
+        if(dataLoader == null){
+            throw new IllegalStateException("No DataLoader registered for Structure '" + structureId + "'");
+        }
+        return dataLoader.load(id.toString());
+    }
+}
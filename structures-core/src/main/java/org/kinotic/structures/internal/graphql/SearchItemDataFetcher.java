@@ -2,13 +2,14 @@ package org.kinotic.structures.internal.graphql;
 
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
-import org.elasticsearch.search.SearchHits;
 import org.kinotic.structures.internal.api.services.ItemServiceInternal;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Created by Navíd Mitchell 🤪 on 4/17/23.
  */
-public class SearchItemDataFetcher implements DataFetcher<ItemListResponse> {
+public class SearchItemDataFetcher implements DataFetcher<CompletableFuture<ItemListResponse>> {
 
     private final String structureId;
     private final ItemServiceInternal itemService;
@@ -19,11 +20,12 @@ public class SearchItemDataFetcher implements DataFetcher<ItemListResponse> {
     }
 
     @Override
-    public ItemListResponse get(DataFetchingEnvironment environment) throws Exception {
+    public CompletableFuture<ItemListResponse> get(DataFetchingEnvironment environment) throws Exception {
         Integer offset = environment.getArgument("offset");
         Integer limit = environment.getArgument("limit");
         String search = environment.getArgument("search");
-        SearchHits searchHits = itemService.search(structureId, search, limit, offset, null);
-        return new ItemListResponse(searchHits);
+        return itemService.searchAsync(structureId, search, limit, offset, DataFetcherUtils.getContentIncludes(environment), DataFetcherUtils.createContext(environment))
+                          .map(ItemListResponse::new)
+                          .toFuture();
     }
 }
@@ -1,20 +1,29 @@
 package org.kinotic.structures.internal.graphql;
 
+import org.kinotic.structures.api.domain.DeadlineExceededException;
+import org.kinotic.structures.internal.api.services.util.Deadline;
+import org.kinotic.structures.internal.api.services.util.StaleReads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.graphql.server.WebGraphQlHandler;
 import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.util.Assert;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by Navíd Mitchell 🤪 on 4/17/23.
@@ -29,15 +38,27 @@ public class StructuresGraphQlHttpHandler {
     private static final List<MediaType> SUPPORTED_MEDIA_TYPES =
             Arrays.asList(MediaType.APPLICATION_GRAPHQL, MediaType.APPLICATION_JSON);
 
+    private static final String PERSISTED_QUERY_NOT_FOUND = "PERSISTED_QUERY_NOT_FOUND";
+
     private final WebGraphQlHandler graphQlHandler;
+    private final PersistedQueryCache persistedQueryCache;
+    private final Duration defaultRequestTimeout;
 
     /**
      * Create a new instance.
      * @param graphQlHandler common handler for GraphQL over HTTP requests
+     * @param persistedQueryCache stores the queries registered with automatic persisted queries
+     * @param defaultRequestTimeout used when the client does not provide a timeout, a query can span many Structures so their defaults do not apply
      */
-    public StructuresGraphQlHttpHandler(WebGraphQlHandler graphQlHandler) {
+    public StructuresGraphQlHttpHandler(WebGraphQlHandler graphQlHandler,
+                                        PersistedQueryCache persistedQueryCache,
+                                        Duration defaultRequestTimeout) {
         Assert.notNull(graphQlHandler, "WebGraphQlHandler is required");
+        Assert.notNull(persistedQueryCache, "PersistedQueryCache is required");
+        Assert.notNull(defaultRequestTimeout, "defaultRequestTimeout is required");
         this.graphQlHandler = graphQlHandler;
+        this.persistedQueryCache = persistedQueryCache;
+        this.defaultRequestTimeout = defaultRequestTimeout;
     }
 
     /**
@@ -51,29 +72,112 @@ public class StructuresGraphQlHttpHandler {
                                 if(!body.containsKey("extensions")){
                                     body.put("extensions", new HashMap<>());
                                 }
+
+                                if(!resolvePersistedQuery(body)){
+                                    return persistedQueryNotFound(serverRequest);
+                                }
+
                                 WebGraphQlRequest graphQlRequest = new WebGraphQlRequest(
                                         serverRequest.uri(), serverRequest.headers().asHttpHeaders(), body,
                                         serverRequest.exchange().getRequest().getId(),
                                         serverRequest.exchange().getLocaleContext().getLocale());
 
-                                graphQlRequest.getExtensions().put("__structuresNamespace", serverRequest.pathVariable("namespace"));
+                                graphQlRequest.getExtensions().put(WebSocketNamespaceInterceptor.NAMESPACE_EXTENSION, serverRequest.pathVariable("namespace"));
+
+                                // resolved once so every field fetched for the request shares the same deadline
+                                Deadline deadline = parseDeadline(serverRequest);
+                                if(deadline == null){
+                                    deadline = Deadline.after(defaultRequestTimeout);
+                                }
+                                Map<String, Object> executionContext = new HashMap<>();
+                                AtomicBoolean stale = StaleReads.track(executionContext);
+                                executionContext.put(Deadline.CONTEXT_KEY, deadline);
+                                graphQlRequest.configureExecutionInput((input, builder) -> builder.graphQLContext(executionContext).build());
 
                                 if (log.isTraceEnabled()) {
                                     log.trace("Executing: " + graphQlRequest);
                                 }
 
-                                return this.graphQlHandler.handleRequest(graphQlRequest);
-
+                                Mono<WebGraphQlResponse> ret = this.graphQlHandler.handleRequest(graphQlRequest)
+                                                                                  .timeout(deadline.remaining(),
+                                                                                           Mono.error(() -> new DeadlineExceededException("Request deadline exceeded")));
+                                return ret.flatMap(response -> {
+                                    if (log.isTraceEnabled()) {
+                                        log.trace("Execution complete");
+                                    }
+                                    ServerResponse.BodyBuilder builder = ServerResponse.ok();
+                                    builder.headers(headers -> headers.putAll(response.getResponseHeaders()));
+                                    if(stale.get()){
+                                        // some of the data was served from a last known copy while Elasticsearch was unavailable
+                                        builder.header(HttpHeaders.WARNING, StaleReads.WARNING_HEADER_VALUE);
+                                    }
+                                    builder.contentType(selectResponseMediaType(serverRequest));
+                                    return builder.bodyValue(response.toMap());
+                                });
                             })
-                            .flatMap(response -> {
-                                if (log.isTraceEnabled()) {
-                                    log.trace("Execution complete");
-                                }
-                                ServerResponse.BodyBuilder builder = ServerResponse.ok();
-                                builder.headers(headers -> headers.putAll(response.getResponseHeaders()));
-                                builder.contentType(selectResponseMediaType(serverRequest));
-                                return builder.bodyValue(response.toMap());
-                            });
+                            .onErrorMap(DeadlineExceededException.class,
+                                        e -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, e.getMessage(), e));
+    }
+
+    /**
+     * Handles the automatic persisted query extension.
+     * If the request only contains the hash, the query is looked up and added to the body.
+     * If the request contains both the hash and the query, the query is registered for later requests.
+     *
+     * @param body of the request
+     * @return false if the request only contains a hash that is not known
+     */
+    @SuppressWarnings("unchecked")
+    private boolean resolvePersistedQuery(Map<String, Object> body){
+        Object extensions = body.get("extensions");
+        if(!(extensions instanceof Map)){
+            return true;
+        }
+        Object persistedQuery = ((Map<String, Object>) extensions).get("persistedQuery");
+        if(!(persistedQuery instanceof Map)){
+            return true;
+        }
+        Object hash = ((Map<String, Object>) persistedQuery).get("sha256Hash");
+        if(!(hash instanceof String)){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "persistedQuery extension must contain a sha256Hash");
+        }
+
+        Object query = body.get("query");
+        if(query instanceof String && !((String) query).isBlank()){
+            if(!persistedQueryCache.register((String) hash, (String) query)){
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "provided sha does not match query");
+            }
+        }else{
+            String persisted = persistedQueryCache.getQuery((String) hash);
+            if(persisted == null){
+                return false;
+            }
+            body.put("query", persisted);
+        }
+        return true;
+    }
+
+    /**
+     * Tells the client to send the full query along with the hash, so it can be registered
+     */
+    private static Mono<ServerResponse> persistedQueryNotFound(ServerRequest serverRequest){
+        Map<String, Object> error = Map.of("message", "PersistedQueryNotFound",
+                                           "extensions", Map.of("code", PERSISTED_QUERY_NOT_FOUND));
+        return ServerResponse.ok()
+                             .contentType(selectResponseMediaType(serverRequest))
+                             .bodyValue(Map.of("errors", List.of(error)));
+    }
+
+    private static Deadline parseDeadline(ServerRequest serverRequest){
+        String timeout = serverRequest.headers().firstHeader(Deadline.TIMEOUT_HEADER);
+        if(timeout == null){
+            timeout = serverRequest.queryParam(Deadline.TIMEOUT_PARAMETER).orElse(null);
+        }
+        try {
+            return Deadline.parse(timeout);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid request timeout '" + timeout + "'", e);
+        }
     }
 
     private static MediaType selectResponseMediaType(ServerRequest serverRequest) {
@@ -6,11 +6,12 @@ import org.kinotic.structures.api.domain.TypeCheckMap;
 import org.kinotic.structures.internal.api.services.ItemServiceInternal;
 
 import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by Navíd Mitchell 🤪 on 4/18/23.
  */
-public class UpsertDataFetcher implements DataFetcher<LinkedHashMap<String, Object>>{
+public class UpsertDataFetcher implements DataFetcher<CompletableFuture<TypeCheckMap>>{
 
     private final String structureId;
     private final ItemServiceInternal itemService;
@@ -21,8 +22,9 @@ public class UpsertDataFetcher implements DataFetcher<LinkedHashMap<String, Obje
     }
 
     @Override
-    public LinkedHashMap<String, Object> get(DataFetchingEnvironment environment) throws Exception {
+    public CompletableFuture<TypeCheckMap> get(DataFetchingEnvironment environment) throws Exception {
         LinkedHashMap<String, Object> item = environment.getArgument("input");
-        return itemService.upsertItem(structureId, new TypeCheckMap(item), null);
+        return itemService.upsertItemAsync(structureId, new TypeCheckMap(item), DataFetcherUtils.createContext(environment))
+                          .toFuture();
     }
 }
@@ -0,0 +1,56 @@
+package org.kinotic.structures.internal.graphql;
+
+import org.springframework.core.Ordered;
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.graphql.server.WebSocketGraphQlRequest;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sets the namespace of requests received over a WebSocket from the handshake path, /graphql/{namespace}.
+ * These requests do not pass through the {@link StructuresGraphQlHttpHandler}, so any namespace sent by the client in the extensions is replaced.
+ * Runs before any other interceptor since the request is recreated.
+ */
+public class WebSocketNamespaceInterceptor implements WebGraphQlInterceptor, Ordered {
+
+    public static final String NAMESPACE_EXTENSION = "__structuresNamespace";
+
+    @Override
+    public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain) {
+        if (!(request instanceof WebSocketGraphQlRequest)) {
+            return chain.next(request);
+        }
+        WebSocketGraphQlRequest webSocketRequest = (WebSocketGraphQlRequest) request;
+        List<String> pathSegments = webSocketRequest.getUri().getPathSegments();
+        if (pathSegments.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("The namespace is missing from the WebSocket path"));
+        }
+
+        // the extensions sent by the client may be immutable, so the request is recreated with a copy
+        Map<String, Object> extensions = new HashMap<>(webSocketRequest.getExtensions());
+        extensions.put(NAMESPACE_EXTENSION, pathSegments.get(pathSegments.size() - 1));
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("query", webSocketRequest.getDocument());
+        body.put("operationName", webSocketRequest.getOperationName());
+        body.put("variables", webSocketRequest.getVariables());
+        body.put("extensions", extensions);
+
+        return chain.next(new WebSocketGraphQlRequest(webSocketRequest.getUri().toUri(),
+                                                      webSocketRequest.getHeaders(),
+                                                      body,
+                                                      webSocketRequest.getId(),
+                                                      webSocketRequest.getLocale(),
+                                                      webSocketRequest.getSessionInfo()));
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -17,6 +17,7 @@
 
 package org.kinotic.structures.internal.trait.lifecycle;
 
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.kinotic.structures.api.domain.ReferenceLog;
@@ -27,12 +28,12 @@ import org.kinotic.structures.api.domain.traitlifecycle.HasOnAfterGet;
 import org.kinotic.structures.api.domain.traitlifecycle.HasOnAfterModify;
 import org.kinotic.structures.api.domain.traitlifecycle.HasOnBeforeModify;
 import org.kinotic.structures.internal.api.services.ItemServiceInternal;
-import org.kinotic.structures.internal.repositories.ReferenceLogElasticRepository;
+import org.kinotic.structures.internal.api.services.MetadataStorage;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 /**
  * We use a particular syntax for describing the relationships between different items.
@@ -46,12 +47,18 @@ import java.util.Optional;
 @Component
 public class ObjectReference implements HasOnBeforeModify, HasOnAfterModify, HasOnAfterGet {
 
+    /**
+     * When this key is present in the context with a value of true, references are left as is by {@link #afterGet(TypeCheckMap, Structure, String, Map)}.
+     * This is used by callers that resolve references themselves, such as GraphQL which batches them across all the items being returned.
+     */
+    public static final String DEFER_RESOLUTION_CONTEXT_KEY = "__deferReferenceResolution";
+
     private final ItemServiceInternal itemService;
-    private final ReferenceLogElasticRepository referenceLogElasticRepository;
+    private final MetadataStorage metadataStorage;
 
-    public ObjectReference(@Lazy ItemServiceInternal itemService, ReferenceLogElasticRepository referenceLogElasticRepository){
+    public ObjectReference(@Lazy ItemServiceInternal itemService, MetadataStorage metadataStorage){
         this.itemService = itemService;
-        this.referenceLogElasticRepository = referenceLogElasticRepository;
+        this.metadataStorage = metadataStorage;
     }
 
     @Override
@@ -66,6 +73,9 @@ public class ObjectReference implements HasOnBeforeModify, HasOnAfterModify, Has
 
     @Override
     public TypeCheckMap afterGet(TypeCheckMap obj, Structure structure, String fieldName, Map<String, Object> context) throws Exception {
+        if(context != null && Boolean.TRUE.equals(context.get(DEFER_RESOLUTION_CONTEXT_KEY))){
+            return obj;
+        }
         Trait fieldTrait = structure.getTraits().get(fieldName);
         if (fieldTrait.getName().contains("Reference ")) {
             // we need to fill up the field with the current version of the referenced object
@@ -125,18 +135,22 @@ public class ObjectReference implements HasOnBeforeModify, HasOnAfterModify, Has
             TypeCheckMap field = obj.getTypeCheckMap(fieldName);
 
             if (field.has("structureId") && field.has("id")) {
-                Optional<ReferenceLog> logOpt = referenceLogElasticRepository.findByOwnerIdAndOwnerStructureId(obj.getString("id"), structure.getId().toLowerCase());
+                List<ReferenceLog> logs = metadataStorage.find(ReferenceLog.class,
+                                                               QueryBuilders.boolQuery()
+                                                                            .filter(QueryBuilders.termQuery("ownerId", obj.getString("id")))
+                                                                            .filter(QueryBuilders.termQuery("ownerStructureId", structure.getId().toLowerCase())),
+                                                               1);
                 ReferenceLog log = null;
-                if (logOpt.isEmpty()) {
+                if (logs.isEmpty()) {
                     log = new ReferenceLog();
                     log.setOwnerStructureId(structure.getId().toLowerCase());
                     log.setOwnerId(obj.getString("id"));
                 } else {
-                    log = logOpt.get();
+                    log = logs.get(0);
                 }
                 if (!log.getReferences().contains(field.getString("structureId").toLowerCase() + "_" + field.getString("id"))) {
                     log.getReferences().add(field.getString("structureId").toLowerCase() + "_" + field.getString("id"));
-                    referenceLogElasticRepository.save(log);
+                    metadataStorage.save(log);
                 }
             }
         }
@@ -17,6 +17,7 @@
 
 package org.kinotic.structures.internal.trait.lifecycle;
 
+import org.kinotic.structures.api.domain.IndexMode;
 import org.kinotic.structures.api.domain.Structure;
 import org.kinotic.structures.api.domain.TypeCheckMap;
 import org.kinotic.structures.api.domain.traitlifecycle.HasOnBeforeModify;
@@ -29,7 +30,8 @@ public class StructureId implements HasOnBeforeModify {
 
     @Override
     public TypeCheckMap beforeModify(TypeCheckMap obj, Structure structure, String fieldName, Map<String, Object> context) throws Exception {
-        if(!obj.has("structureId")){
+        // items of shared structures are told apart by this field, so it can never be given by the caller
+        if(!obj.has("structureId") || structure.getIndexMode() == IndexMode.SHARED){
             obj.amend("structureId", structure.getId().trim());
         }
         return obj;
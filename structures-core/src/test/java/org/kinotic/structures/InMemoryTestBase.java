@@ -0,0 +1,40 @@
+package org.kinotic.structures;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.kinotic.structures.api.domain.AlreadyExistsException;
+import org.kinotic.structures.api.domain.PermenentTraitException;
+import org.kinotic.structures.api.domain.Trait;
+import org.kinotic.structures.api.services.TraitService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * For tests of the services that do not depend on Elasticsearch, everything is kept by the in-memory item storage engine
+ * so no Elasticsearch container is started. Nothing listens for Elasticsearch, so any request sent to it fails.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(properties = {"structures.item-storage-engine=memory",
+                              "structures.elastic-uris=localhost:1",
+                              "structures.elastic-connection-timeout=1s"})
+@ActiveProfiles("memory")
+public abstract class InMemoryTestBase {
+    @Autowired
+    private TraitService traitService;
+    @BeforeAll
+    public void setUp() throws IOException, PermenentTraitException, AlreadyExistsException {
+        Optional<Trait> ipOptional = traitService.getTraitByName("VpnIp");
+        if(ipOptional.isEmpty()){
+            Trait temp = new Trait();
+            temp.setName("VpnIp");
+            temp.setDescribeTrait("VpnIp address that the devices should be provided on the VLAN.");
+            temp.setSchema("{ \"type\": \"string\", \"format\": \"ipv4\" }");
+            temp.setEsSchema("{ \"type\": \"ip\" }");
+            traitService.save(temp);
+        }
+    }
+}
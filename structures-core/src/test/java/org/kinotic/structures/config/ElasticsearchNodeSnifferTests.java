@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.config;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.internal.config.ElasticsearchNodeSniffer;
+import org.kinotic.structures.internal.config.StructuresProperties;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class ElasticsearchNodeSnifferTests {
+
+    @Test
+    public void hostnameIsPreferredOverIp() {
+        List<Node> nodes = ElasticsearchNodeSniffer.parseDataNodes(nodesInfo(dataNode("es-1.example.com/10.0.0.1:9200"),
+                                                                             dataNode("10.0.0.2:9201")),
+                                                                   "https");
+
+        Assertions.assertEquals(List.of(new HttpHost("es-1.example.com", 9200, "https"), new HttpHost("10.0.0.2", 9201, "https")),
+                                hosts(nodes));
+    }
+
+    @Test
+    public void ipv6AddressesAreParsed() {
+        List<Node> nodes = ElasticsearchNodeSniffer.parseDataNodes(nodesInfo(dataNode("[::1]:9200"),
+                                                                             dataNode("es-2/[fe80::1]:9201")),
+                                                                   "http");
+
+        Assertions.assertEquals(List.of(new HttpHost("[::1]", 9200, "http"), new HttpHost("es-2", 9201, "http")), hosts(nodes));
+    }
+
+    @Test
+    public void onlyDataNodesWithHttpAreUsed() {
+        Map<String, Object> info = Map.of("nodes", Map.of(
+                "hot", Map.of("roles", List.of("data_hot", "ingest"), "http", Map.of("publish_address", "10.0.0.1:9200")),
+                "content", Map.of("roles", List.of("data_content"), "http", Map.of("publish_address", "10.0.0.2:9200")),
+                "data", Map.of("roles", List.of("data"), "http", Map.of("publish_address", "10.0.0.3:9200")),
+                "master", Map.of("roles", List.of("master"), "http", Map.of("publish_address", "10.0.0.4:9200")),
+                "noHttp", Map.of("roles", List.of("data")),
+                "noRoles", Map.of("http", Map.of("publish_address", "10.0.0.6:9200")),
+                "rolesNotAList", Map.of("roles", "data", "http", Map.of("publish_address", "10.0.0.7:9200"))));
+
+        List<HttpHost> hosts = hosts(ElasticsearchNodeSniffer.parseDataNodes(info, "http"));
+
+        Assertions.assertEquals(3, hosts.size());
+        Assertions.assertTrue(hosts.containsAll(List.of(HttpHost.create("http://10.0.0.1:9200"),
+                                                        HttpHost.create("http://10.0.0.2:9200"),
+                                                        HttpHost.create("http://10.0.0.3:9200"))));
+    }
+
+    @Test
+    public void configuredNodesAreUsedWhenNodesCannotBeFound() throws Exception {
+        // nothing listens on these ports, so finding the nodes fails straight away
+        HttpHost configured = new HttpHost("localhost", 1, "http");
+        try (RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(configured))) {
+            StructuresProperties properties = new StructuresProperties();
+            properties.setElasticUseSsl(false);
+            ElasticsearchNodeSniffer sniffer = new ElasticsearchNodeSniffer(client, properties);
+            // as if nodes had been found by an earlier attempt
+            client.getLowLevelClient().setNodes(List.of(new Node(new HttpHost("localhost", 2, "http"))));
+
+            sniffer.sniff();
+
+            Assertions.assertEquals(List.of(configured), hosts(client.getLowLevelClient().getNodes()));
+        }
+    }
+
+    private static Map<String, Object> nodesInfo(Map<String, Object> first, Map<String, Object> second) {
+        // ordered, so the hosts can be compared as a list
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        nodes.put("node1", first);
+        nodes.put("node2", second);
+        return Map.of("nodes", nodes);
+    }
+
+    private static Map<String, Object> dataNode(String publishAddress) {
+        return Map.of("roles", List.of("data"), "http", Map.of("publish_address", publishAddress));
+    }
+
+    private static List<HttpHost> hosts(List<Node> nodes) {
+        return nodes.stream().map(Node::getHost).collect(Collectors.toList());
+    }
+}
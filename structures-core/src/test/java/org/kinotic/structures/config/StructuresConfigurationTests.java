@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.config;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.internal.config.ElasticContentType;
+import org.kinotic.structures.internal.config.StructuresConfiguration;
+import org.kinotic.structures.internal.config.StructuresProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class StructuresConfigurationTests {
+
+    @Test
+    public void hostsWithoutSchemeUseTheConfiguredOne() {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setElasticUseSsl(true);
+        properties.setElasticUris(" es-1:9200, http://es-2:9201 ,,[::1]:9202");
+
+        HttpHost[] hosts = StructuresConfiguration.createHosts(properties);
+
+        Assertions.assertArrayEquals(new HttpHost[]{new HttpHost("es-1", 9200, "https"),
+                                                    new HttpHost("es-2", 9201, "http"),
+                                                    new HttpHost("[::1]", 9202, "https")},
+                                     hosts);
+    }
+
+    @Test
+    public void credentialsAreSentWithBasicAuth() {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setElasticUsername("elastic");
+        properties.setElasticPassword("pässword:1");
+
+        Header[] headers = StructuresConfiguration.createDefaultHeaders(properties);
+
+        Assertions.assertEquals(1, headers.length);
+        Assertions.assertEquals(HttpHeaders.AUTHORIZATION, headers[0].getName());
+        String expected = Base64.getEncoder().encodeToString("elastic:pässword:1".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals("Basic " + expected, headers[0].getValue());
+    }
+
+    @Test
+    public void noHeadersAreSentByDefault() {
+        Assertions.assertEquals(0, StructuresConfiguration.createDefaultHeaders(new StructuresProperties()).length);
+    }
+
+    @Test
+    public void smileResponsesAreRequested() {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setElasticContentType(ElasticContentType.SMILE);
+
+        Header[] headers = StructuresConfiguration.createDefaultHeaders(properties);
+
+        Assertions.assertEquals(1, headers.length);
+        Assertions.assertEquals(HttpHeaders.ACCEPT, headers[0].getName());
+        Assertions.assertEquals("application/smile", headers[0].getValue());
+    }
+}
@@ -1,6 +1,9 @@
 package org.kinotic.structures.config;
 
+import org.apache.http.Header;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.kinotic.structures.internal.config.StructuresConfiguration;
+import org.kinotic.structures.internal.config.StructuresProperties;
 import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -11,6 +14,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.data.elasticsearch.client.ClientConfiguration;
 import org.springframework.data.elasticsearch.client.RestClients;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
+import org.springframework.http.HttpHeaders;
 
 @Configuration
 @EnableElasticsearchRepositories(basePackages = "org.kinotic.structures.internal.repositories")
@@ -23,12 +27,18 @@ public class TestElasticsearchConfiguration {
         ELASTICSEARCH_CONTAINER.start();
     }
     @Bean
-    public RestHighLevelClient elasticsearchClient() {
+    public RestHighLevelClient elasticsearchClient(StructuresProperties structuresProperties) {
         ClientConfiguration.MaybeSecureClientConfigurationBuilder builder
                 = ClientConfiguration.builder()
                 .connectedTo(ELASTICSEARCH_CONTAINER.getHttpHostAddress());
 
-        builder.withConnectTimeout(60000)
+        // so the tests can be run with responses in another format, see the smileTest task
+        HttpHeaders headers = new HttpHeaders();
+        for(Header header : StructuresConfiguration.createDefaultHeaders(structuresProperties)){
+            headers.add(header.getName(), header.getValue());
+        }
+        builder.withDefaultHeaders(headers)
+                .withConnectTimeout(60000)
                 .withSocketTimeout(60000);
 
         return RestClients.create(builder.build()).rest();
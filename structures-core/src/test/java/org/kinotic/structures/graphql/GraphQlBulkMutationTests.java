@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.graphql;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kinotic.structures.ElasticsearchTestBase;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.api.domain.Trait;
+import org.kinotic.structures.api.services.TraitService;
+import org.kinotic.structures.internal.api.services.ExecutionGraphQlServiceProvider;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+public class GraphQlBulkMutationTests extends ElasticsearchTestBase {
+
+    @Autowired
+    private ItemServiceInternal itemService;
+    @Autowired
+    private TraitService traitService;
+    @Autowired
+    private StructureServiceInternal structureService;
+    @Autowired
+    private ExecutionGraphQlServiceProvider executionGraphQlServiceProvider;
+
+    @Test
+    public void bulkUpsertThenBulkDelete() throws Exception {
+
+        Structure structure = createStructure();
+        ExecutionGraphQlService service = executionGraphQlServiceProvider.getService(structure.getNamespace()).block();
+
+        ExecutionGraphQlResponse upserted = GraphQlSchemaTests.execute(service, "mutation { bulkUpsert" + structure.getName() + "(inputs: ["
+                + "{ ip: \"192.0.2.11\", mac: \"000000000001\" }, "
+                + "{ ip: \"192.0.2.12\", mac: \"000000000002\" }"
+                + "]) { id success error } }");
+        List<Map<String, Object>> upsertResults = getResults(upserted, "bulkUpsert" + structure.getName());
+
+        Assertions.assertEquals(2, upsertResults.size());
+        for (Map<String, Object> result : upsertResults) {
+            Assertions.assertEquals(true, result.get("success"), () -> String.valueOf(result.get("error")));
+            Assertions.assertNotNull(result.get("id"));
+        }
+        String firstId = (String) upsertResults.get(0).get("id");
+        String secondId = (String) upsertResults.get(1).get("id");
+
+        // bulk requests wait for the next refresh, so the items can be read as soon as the mutation returns
+        Assertions.assertEquals(2, itemService.count(structure.getId(), null));
+        Assertions.assertEquals("192.0.2.12", itemService.getItemById(structure.getId(), secondId, null).orElseThrow().getString("ip"));
+
+        ExecutionGraphQlResponse deleted = GraphQlSchemaTests.execute(service, "mutation { bulkDelete" + structure.getName() + "(ids: ["
+                + "\"" + firstId + "\", \"missing\", \"" + secondId + "\""
+                + "]) { id success error } }");
+        List<Map<String, Object>> deleteResults = getResults(deleted, "bulkDelete" + structure.getName());
+
+        // results are in the same order as the ids, and an id that does not exist does not fail the others
+        Assertions.assertEquals(3, deleteResults.size());
+        Assertions.assertEquals(firstId, deleteResults.get(0).get("id"));
+        Assertions.assertEquals(true, deleteResults.get(0).get("success"));
+        Assertions.assertEquals("missing", deleteResults.get(1).get("id"));
+        Assertions.assertEquals(false, deleteResults.get(1).get("success"));
+        Assertions.assertEquals("Item not found", deleteResults.get(1).get("error"));
+        Assertions.assertEquals(secondId, deleteResults.get(2).get("id"));
+        Assertions.assertEquals(true, deleteResults.get(2).get("success"));
+
+        Assertions.assertEquals(0, itemService.count(structure.getId(), null));
+
+        structureService.delete(structure.getId());
+
+    }
+
+    /**
+     * The Structure name is used for the GraphQL types, so unlike the other tests it cannot contain a '-'
+     */
+    private Structure createStructure() throws Exception {
+        Structure structure = new Structure();
+        structure.setName("BulkItem" + System.currentTimeMillis());
+        structure.setNamespace("graphql_bulk_" + System.currentTimeMillis() + "_");
+        structure.setDescription("Defines a BulkItem");
+
+        Trait id = traitService.getTraitByName("Id").get();
+        id.setRequired(false);
+
+        structure.getTraits().put("id", id);
+        structure.getTraits().put("ip", traitService.getTraitByName("Ip").get());
+        structure.getTraits().put("mac", traitService.getTraitByName("Mac").get());
+
+        Structure fresh = structureService.save(structure);
+        structureService.publish(fresh.getId());
+        return structureService.getById(fresh.getId()).orElseThrow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> getResults(ExecutionGraphQlResponse response, String field) {
+        Assertions.assertTrue(response.getErrors().isEmpty(), () -> response.getErrors().toString());
+        return (List<Map<String, Object>>) ((Map<String, Object>) response.getData()).get(field);
+    }
+
+}
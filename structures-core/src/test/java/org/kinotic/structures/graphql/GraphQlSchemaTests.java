@@ -0,0 +1,184 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.graphql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.api.domain.Trait;
+import org.kinotic.structures.internal.api.services.DefaultExecutionGraphQlServiceProvider;
+import org.kinotic.structures.internal.api.services.ItemChangeStream;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.graphql.GraphQlDocumentCache;
+import org.kinotic.structures.internal.graphql.GraphQlTypeNames;
+import org.mockito.Mockito;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Builds the GraphQL schemas for {@link Structure}s provided by a mocked {@link StructureServiceInternal}
+ */
+public class GraphQlSchemaTests {
+
+    private static final String NAMESPACE = "test";
+
+    private StructureServiceInternal structureService;
+    private DefaultExecutionGraphQlServiceProvider provider;
+
+    @BeforeEach
+    public void setUp() {
+        StructuresProperties properties = new StructuresProperties();
+        structureService = Mockito.mock(StructureServiceInternal.class);
+        provider = new DefaultExecutionGraphQlServiceProvider(new ObjectMapper(),
+                                                              Mockito.mock(ItemServiceInternal.class),
+                                                              structureService,
+                                                              properties,
+                                                              new GraphQlDocumentCache(properties),
+                                                              new ItemChangeStream());
+    }
+
+    @Test
+    public void changedReferencedStructureIsUsedWhenTheSchemaIsRebuilt() throws Exception {
+        Structure company = createStructure("Company", 1L, "id");
+        Structure person = createStructure("Person", 1L, "id");
+        person.getTraits().put("employer", createTrait("Reference " + company.getId()));
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(person, company));
+
+        Assertions.assertEquals(List.of("id"), getReferencedFieldNames(execute(provider.getService(NAMESPACE).block())));
+
+        // only the referenced structure changes, so the types of the person structure are built from the cached fields
+        Structure changedCompany = createStructure("Company", 2L, "id", "registration");
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(person, changedCompany));
+        provider.evictCacheFor(NAMESPACE);
+
+        Assertions.assertEquals(List.of("id", "registration"), getReferencedFieldNames(execute(provider.getService(NAMESPACE).block())));
+    }
+
+    @Test
+    public void negativeFirstIsRejected() throws Exception {
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 1L, "id")));
+
+        ExecutionGraphQlResponse response = execute(provider.getService(NAMESPACE).block(),
+                                                    "{ PersonConnection(first: -1) { edges { cursor } } }");
+
+        Assertions.assertEquals(1, response.getErrors().size());
+        Assertions.assertTrue(response.getErrors().get(0).getMessage().contains("first must not be negative"),
+                              response.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    public void structureWithConflictingTypeNamesIsLeftOutOfTheSchema() throws Exception {
+        Structure person = createStructure("Person", 1L, "id");
+        Structure personEdge = createStructure("PersonEdge", 1L, "id");
+        Structure pageInfo = createStructure("PageInfo", 1L, "id");
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(pageInfo, person, personEdge));
+
+        ExecutionGraphQlResponse response = execute(provider.getService(NAMESPACE).block(),
+                                                    "{ PersonEdge: __type(name: \"PersonEdge\") { fields { name } } "
+                                                    + "PageInfo: __type(name: \"PageInfo\") { fields { name } } "
+                                                    + "query: __type(name: \"Query\") { fields { name } } }");
+
+        Assertions.assertTrue(response.getErrors().isEmpty(), () -> response.getErrors().toString());
+        Map<String, Object> data = response.getData();
+        Assertions.assertEquals(List.of("node", "cursor"), getFieldNames(data.get("PersonEdge")));
+        Assertions.assertEquals(List.of("hasNextPage", "endCursor"), getFieldNames(data.get("PageInfo")));
+        List<String> queryFields = getFieldNames(data.get("query"));
+        Assertions.assertTrue(queryFields.contains("Person"));
+        Assertions.assertFalse(queryFields.contains("PersonEdge"));
+    }
+
+    @Test
+    public void conflictingTypeNamesAreFound() {
+        Assertions.assertEquals("PersonEdge", GraphQlTypeNames.findConflict("PersonEdge", List.of("Person")));
+        Assertions.assertEquals("PersonEdge", GraphQlTypeNames.findConflict("Person", List.of("PersonEdge")));
+        Assertions.assertEquals("PageInfo", GraphQlTypeNames.findConflict("PageInfo", List.of()));
+        Assertions.assertNull(GraphQlTypeNames.findConflict("Person", List.of("Person", "Company")));
+    }
+
+    static Structure createStructure(String name, long updated, String... fieldNames) {
+        Structure structure = new Structure();
+        structure.setId(NAMESPACE + "." + name.toLowerCase());
+        structure.setName(name);
+        structure.setNamespace(NAMESPACE);
+        structure.setUpdated(updated);
+        structure.setPublished(true);
+        for (String fieldName : fieldNames) {
+            structure.getTraits().put(fieldName, createTrait("Id"));
+        }
+        return structure;
+    }
+
+    static Trait createTrait(String name) {
+        Trait trait = new Trait();
+        trait.setName(name);
+        trait.setSchema("{}");
+        return trait;
+    }
+
+    static ExecutionGraphQlResponse execute(ExecutionGraphQlService service, String document) {
+        ExecutionGraphQlResponse response = service.execute(new DefaultExecutionGraphQlRequest(document, null, null, null, "1", Locale.ENGLISH))
+                                                   .block(Duration.ofSeconds(10));
+        Assertions.assertNotNull(response);
+        return response;
+    }
+
+    private static ExecutionGraphQlResponse execute(ExecutionGraphQlService service) {
+        ExecutionGraphQlResponse response = execute(service, "{ __type(name: \"Person\") { fields { name type { name fields { name } } } } }");
+        Assertions.assertTrue(response.getErrors().isEmpty(), () -> response.getErrors().toString());
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getFieldNames(Object type) {
+        List<String> ret = new ArrayList<>();
+        for (Map<String, Object> field : (List<Map<String, Object>>) ((Map<String, Object>) type).get("fields")) {
+            ret.add((String) field.get("name"));
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getReferencedFieldNames(ExecutionGraphQlResponse response) {
+        Map<String, Object> type = (Map<String, Object>) ((Map<String, Object>) response.getData()).get("__type");
+        for (Map<String, Object> field : (List<Map<String, Object>>) type.get("fields")) {
+            if (field.get("name").equals("employer")) {
+                Map<String, Object> fieldType = (Map<String, Object>) field.get("type");
+                Assertions.assertEquals("Company", fieldType.get("name"));
+                List<String> ret = new ArrayList<>();
+                for (Map<String, Object> referencedField : (List<Map<String, Object>>) fieldType.get("fields")) {
+                    ret.add((String) referencedField.get("name"));
+                }
+                return ret;
+            }
+        }
+        throw new AssertionError("Person has no employer field");
+    }
+
+}
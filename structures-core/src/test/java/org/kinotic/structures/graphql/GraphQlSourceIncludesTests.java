@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.graphql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.api.services.DefaultExecutionGraphQlServiceProvider;
+import org.kinotic.structures.internal.api.services.ItemChangeStream;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.graphql.DataFetcherUtils;
+import org.kinotic.structures.internal.graphql.GraphQlDocumentCache;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Checks the _source includes {@link DataFetcherUtils} determines from the fields selected in a query
+ */
+public class GraphQlSourceIncludesTests {
+
+    private static final String NAMESPACE = "test";
+
+    private ItemServiceInternal itemService;
+    private ExecutionGraphQlService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        StructuresProperties properties = new StructuresProperties();
+        StructureServiceInternal structureService = Mockito.mock(StructureServiceInternal.class);
+        Structure company = GraphQlSchemaTests.createStructure("Company", 1L, "id", "name");
+        Structure person = GraphQlSchemaTests.createStructure("Person", 1L, "id", "name", "age");
+        person.getTraits().put("employer", GraphQlSchemaTests.createTrait("Reference " + company.getId()));
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(person, company));
+
+        itemService = Mockito.mock(ItemServiceInternal.class);
+        Mockito.when(itemService.getAllAsync(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(), Mockito.any()))
+               .thenReturn(Mono.just(new SearchHits(new SearchHit[0], new TotalHits(0, TotalHits.Relation.EQUAL_TO), 0)));
+        DefaultExecutionGraphQlServiceProvider provider = new DefaultExecutionGraphQlServiceProvider(new ObjectMapper(),
+                                                                                                     itemService,
+                                                                                                     structureService,
+                                                                                                     properties,
+                                                                                                     new GraphQlDocumentCache(properties),
+                                                                                                     new ItemChangeStream());
+        service = provider.getService(NAMESPACE).block();
+    }
+
+    @Test
+    public void onlySelectedFieldsAreIncluded() {
+        Assertions.assertArrayEquals(new String[]{"id", "name"},
+                                     getIncludes("query { Persons(offset: 0, limit: 5) { content { id name __typename } } }"));
+    }
+
+    @Test
+    public void nestedSelectionsAreIncludedAsDottedPaths() {
+        Assertions.assertArrayEquals(new String[]{"name", "employer.structureId", "employer.id"},
+                                     getIncludes("query { Persons(offset: 0, limit: 5) { content { name employer { name } } } }"));
+    }
+
+    @Test
+    public void noSourceIsFetchedWhenOnlyTheTotalIsSelected() {
+        Assertions.assertArrayEquals(new String[0],
+                                     getIncludes("query { Persons(offset: 0, limit: 5) { totalElements } }"));
+    }
+
+    private String[] getIncludes(String document) {
+        ExecutionGraphQlResponse response = GraphQlSchemaTests.execute(service, document);
+        Assertions.assertTrue(response.getErrors().isEmpty(), () -> response.getErrors().toString());
+
+        ArgumentCaptor<String[]> includes = ArgumentCaptor.forClass(String[].class);
+        Mockito.verify(itemService).getAllAsync(Mockito.eq("test.person"), Mockito.eq(5), Mockito.eq(0), includes.capture(), Mockito.any());
+        return includes.getValue();
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.graphql;
+
+import graphql.GraphQLContext;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.internal.api.services.ItemChangeStream;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.util.Deadline;
+import org.kinotic.structures.internal.api.services.util.ItemChangeEvent;
+import org.kinotic.structures.internal.api.services.util.ItemChangeType;
+import org.kinotic.structures.internal.graphql.ItemChangeDataFetcher;
+import org.kinotic.structures.internal.graphql.ItemChangeResponse;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks what the subscribers of the {@link ItemChangeStream} receive
+ */
+public class ItemChangeStreamTests {
+
+    private static final String STRUCTURE_ID = "test.person";
+
+    private ItemChangeStream itemChangeStream;
+    private ItemServiceInternal itemService;
+
+    @BeforeEach
+    public void setUp() {
+        itemChangeStream = new ItemChangeStream();
+        itemService = Mockito.mock(ItemServiceInternal.class);
+    }
+
+    @Test
+    public void changesAreOnlyReceivedForTheStructure() throws Exception {
+        CompletableFuture<List<ItemChangeEvent>> received = itemChangeStream.changes(STRUCTURE_ID)
+                                                                            .take(2)
+                                                                            .collectList()
+                                                                            .toFuture();
+
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "1", ItemChangeType.CREATED));
+        itemChangeStream.emit(new ItemChangeEvent("test.company", "2", ItemChangeType.CREATED));
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "3", ItemChangeType.DELETED));
+
+        List<ItemChangeEvent> events = received.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals("1", events.get(0).getId());
+        Assertions.assertEquals("3", events.get(1).getId());
+        Assertions.assertEquals(ItemChangeType.DELETED, events.get(1).getType());
+    }
+
+    @Test
+    public void itemIsLoadedForTheSubscriber() throws Exception {
+        TypeCheckMap visible = new TypeCheckMap();
+        visible.put("id", "visible");
+        visible.put("name", "as seen by the subscriber");
+        Mockito.when(itemService.getItemById(Mockito.eq(STRUCTURE_ID), Mockito.eq("visible"), Mockito.any())).thenReturn(Optional.of(visible));
+        // the after get lifecycles remove items the subscriber is not allowed to see
+        Mockito.when(itemService.getItemById(Mockito.eq(STRUCTURE_ID), Mockito.eq("hidden"), Mockito.any())).thenReturn(Optional.empty());
+        Mockito.when(itemService.getItemById(Mockito.eq(STRUCTURE_ID), Mockito.eq("denied"), Mockito.any())).thenThrow(new IllegalStateException("Access denied"));
+
+        CompletableFuture<List<ItemChangeResponse>> received = subscribe(Map.of()).take(1).collectList().toFuture();
+
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "hidden", ItemChangeType.CREATED));
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "denied", ItemChangeType.UPDATED));
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "visible", ItemChangeType.UPDATED));
+
+        List<ItemChangeResponse> changes = received.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, changes.size());
+        Assertions.assertEquals("visible", changes.get(0).getId());
+        Assertions.assertEquals(ItemChangeType.UPDATED, changes.get(0).getType());
+        Assertions.assertEquals("as seen by the subscriber", changes.get(0).getItem().getString("name"));
+    }
+
+    @Test
+    public void subscriptionDeadlineIsNotUsedToLoadItems() throws Exception {
+        Mockito.when(itemService.getItemById(Mockito.eq(STRUCTURE_ID), Mockito.eq("1"), Mockito.any())).thenReturn(Optional.of(new TypeCheckMap()));
+
+        CompletableFuture<List<ItemChangeResponse>> received = subscribe(Map.of(Deadline.CONTEXT_KEY, Deadline.after(Duration.ofMillis(1))))
+                .take(1)
+                .collectList()
+                .toFuture();
+
+        Thread.sleep(10);
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "1", ItemChangeType.CREATED));
+
+        Assertions.assertEquals(1, received.get(10, TimeUnit.SECONDS).size());
+        Mockito.verify(itemService).getItemById(Mockito.eq(STRUCTURE_ID),
+                                                Mockito.eq("1"),
+                                                Mockito.argThat(context -> !context.containsKey(Deadline.CONTEXT_KEY)));
+    }
+
+    @Test
+    public void changesCanBeFilteredByIdAndType() throws Exception {
+        Mockito.when(itemService.getItemById(Mockito.eq(STRUCTURE_ID), Mockito.any(), Mockito.any())).thenReturn(Optional.of(new TypeCheckMap()));
+
+        CompletableFuture<List<ItemChangeResponse>> received = subscribe(Map.of(), Map.of("ids", List.of("1", "2"), "types", List.of(ItemChangeType.DELETED)))
+                .take(1)
+                .collectList()
+                .toFuture();
+
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "1", ItemChangeType.UPDATED));
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "3", ItemChangeType.DELETED));
+        itemChangeStream.emit(new ItemChangeEvent(STRUCTURE_ID, "2", ItemChangeType.DELETED));
+
+        List<ItemChangeResponse> changes = received.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals("2", changes.get(0).getId());
+        Mockito.verify(itemService, Mockito.times(1)).getItemById(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    private Flux<ItemChangeResponse> subscribe(Map<String, Object> graphQlContext) throws Exception {
+        return subscribe(graphQlContext, Map.of());
+    }
+
+    private Flux<ItemChangeResponse> subscribe(Map<String, Object> graphQlContext, Map<String, Object> arguments) throws Exception {
+        ItemChangeDataFetcher dataFetcher = new ItemChangeDataFetcher(STRUCTURE_ID, itemChangeStream, itemService);
+        return Flux.from(dataFetcher.get(DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+                                                                    .arguments(arguments)
+                                                                    .graphQLContext(GraphQLContext.of(graphQlContext))
+                                                                    .build()));
+    }
+
+}
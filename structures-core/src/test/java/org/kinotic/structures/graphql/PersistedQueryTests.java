@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.graphql;
+
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.parser.Parser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.graphql.GraphQlDocumentCache;
+import org.kinotic.structures.internal.graphql.PersistedQueryCache;
+import org.kinotic.structures.internal.graphql.StructuresGraphQlHttpHandler;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.EntityResponse;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PersistedQueryTests {
+
+    private static final String QUERY = "{ Person(id: \"1\") { id } }";
+
+    private PersistedQueryCache persistedQueryCache;
+    private WebGraphQlHandler graphQlHandler;
+    private StructuresGraphQlHttpHandler handler;
+
+    @BeforeEach
+    public void setUp() {
+        persistedQueryCache = new PersistedQueryCache(new StructuresProperties());
+        graphQlHandler = Mockito.mock(WebGraphQlHandler.class);
+        // the execution itself is not of interest here, only what is passed to it
+        Mockito.when(graphQlHandler.handleRequest(Mockito.any())).thenReturn(Mono.empty());
+        handler = new StructuresGraphQlHttpHandler(graphQlHandler, persistedQueryCache, Duration.ofSeconds(30));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void unknownHashAsksForTheQuery() {
+        ServerResponse response = handler.handleRequest(createRequest(null, sha256(QUERY))).block();
+
+        Assertions.assertNotNull(response);
+        Map<String, Object> body = ((EntityResponse<Map<String, Object>>) response).entity();
+        Map<String, Object> error = ((List<Map<String, Object>>) body.get("errors")).get(0);
+        Assertions.assertEquals("PersistedQueryNotFound", error.get("message"));
+        Assertions.assertEquals(Map.of("code", "PERSISTED_QUERY_NOT_FOUND"), error.get("extensions"));
+        Mockito.verifyNoInteractions(graphQlHandler);
+    }
+
+    @Test
+    public void queryIsRegisteredAndThenFoundByHash() {
+        String hash = sha256(QUERY);
+        handler.handleRequest(createRequest(QUERY, hash)).block();
+        Assertions.assertEquals(QUERY, persistedQueryCache.getQuery(hash));
+
+        // the hash alone is now enough, and is not case sensitive
+        handler.handleRequest(createRequest(null, hash.toUpperCase())).block();
+
+        ArgumentCaptor<WebGraphQlRequest> captor = ArgumentCaptor.forClass(WebGraphQlRequest.class);
+        Mockito.verify(graphQlHandler, Mockito.times(2)).handleRequest(captor.capture());
+        for (WebGraphQlRequest request : captor.getAllValues()) {
+            Assertions.assertEquals(QUERY, request.getDocument());
+        }
+    }
+
+    @Test
+    public void hashThatDoesNotMatchTheQueryIsRejected() {
+        String otherHash = sha256("{ Person(id: \"2\") { id } }");
+        ResponseStatusException e = Assertions.assertThrows(ResponseStatusException.class,
+                                                            () -> handler.handleRequest(createRequest(QUERY, otherHash)).block());
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        Assertions.assertNull(persistedQueryCache.getQuery(otherHash));
+        Assertions.assertNull(persistedQueryCache.getQuery(sha256(QUERY)));
+        Mockito.verifyNoInteractions(graphQlHandler);
+    }
+
+    @Test
+    public void documentsAreWeighedByTheirSize() throws Exception {
+        GraphQlDocumentCache documentCache = new GraphQlDocumentCache(new StructuresProperties());
+        String small = "{ a }";
+        String large = "{ a b c d e f g h i j k l m n o p }";
+
+        documentCache.getDocument("test:1:1", small, () -> new PreparsedDocumentEntry(Parser.parse(small))).join();
+        documentCache.getDocument("test:1:1", large, () -> new PreparsedDocumentEntry(Parser.parse(large))).join();
+
+        // a document, an operation and a selection set plus one node per field, the weights are recorded once the entries complete
+        long expected = 4 + 19;
+        long weight = 0;
+        for (int i = 0; i < 100 && weight != expected; i++) {
+            Thread.sleep(10);
+            documentCache.getCache().synchronous().cleanUp();
+            weight = documentCache.getCache().synchronous().policy().eviction().orElseThrow().weightedSize().orElseThrow();
+        }
+        Assertions.assertEquals(expected, weight);
+    }
+
+    private static MockServerRequest createRequest(String query, String hash) {
+        Map<String, Object> body = new HashMap<>();
+        if (query != null) {
+            body.put("query", query);
+        }
+        body.put("extensions", new HashMap<>(Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash))));
+        return MockServerRequest.builder()
+                                .method(HttpMethod.POST)
+                                .uri(URI.create("/graphql/test"))
+                                .pathVariable("namespace", "test")
+                                .exchange(MockServerWebExchange.from(MockServerHttpRequest.post("/graphql/test")))
+                                .body(Mono.just(body));
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder ret = new StringBuilder();
+            for (byte b : digest) {
+                ret.append(String.format("%02x", b));
+            }
+            return ret.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
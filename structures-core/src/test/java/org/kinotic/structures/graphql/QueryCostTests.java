@@ -0,0 +1,109 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.graphql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.api.services.DefaultExecutionGraphQlServiceProvider;
+import org.kinotic.structures.internal.api.services.ItemChangeStream;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.graphql.GraphQlDocumentCache;
+import org.kinotic.structures.internal.graphql.QueryCostInstrumentation;
+import org.mockito.Mockito;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Checks the cost calculated by the {@link QueryCostInstrumentation} for the fields of a Structure schema
+ */
+public class QueryCostTests {
+
+    private static final String NAMESPACE = "test";
+
+    private ExecutionGraphQlService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setGraphQlMaximumQueryCost(100);
+        StructureServiceInternal structureService = Mockito.mock(StructureServiceInternal.class);
+        Structure person = GraphQlSchemaTests.createStructure("Person", 1L, "id");
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(person));
+        ItemServiceInternal itemService = Mockito.mock(ItemServiceInternal.class);
+        Mockito.when(itemService.getAllAsync(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.any(), Mockito.any()))
+               .thenReturn(Mono.empty());
+        DefaultExecutionGraphQlServiceProvider provider = new DefaultExecutionGraphQlServiceProvider(new ObjectMapper(),
+                                                                                                     itemService,
+                                                                                                     structureService,
+                                                                                                     properties,
+                                                                                                     new GraphQlDocumentCache(properties),
+                                                                                                     new ItemChangeStream());
+        service = provider.getService(NAMESPACE).block();
+    }
+
+    @Test
+    public void listFieldMultipliesTheCostOfItsChildren() {
+        ExecutionGraphQlResponse response = GraphQlSchemaTests.execute(service, "query { Persons(offset: 0, limit: 5) { totalElements } }");
+
+        Assertions.assertEquals(QueryCostInstrumentation.REQUEST_FIELD_COST + 5, getRequestedCost(response));
+    }
+
+    @Test
+    public void subscriptionIdsDoNotMultiplyTheCost() {
+        ExecutionGraphQlResponse response = GraphQlSchemaTests.execute(service, "subscription { PersonChanged(ids: " + createIds(30) + ") { id } }");
+
+        Assertions.assertTrue(response.getErrors().isEmpty(), () -> response.getErrors().toString());
+        Assertions.assertEquals(QueryCostInstrumentation.REQUEST_FIELD_COST + 1, getRequestedCost(response));
+    }
+
+    @Test
+    public void bulkDeleteIdsMultiplyTheCost() {
+        ExecutionGraphQlResponse response = GraphQlSchemaTests.execute(service, "mutation { bulkDeletePerson(ids: " + createIds(30) + ") { id } }");
+
+        Assertions.assertEquals(1, response.getErrors().size());
+        Assertions.assertTrue(response.getErrors().get(0).getMessage().contains("Query cost 330 exceeds the maximum allowed cost of 100"),
+                              response.getErrors().get(0).getMessage());
+    }
+
+    private static String createIds(int count) {
+        return IntStream.range(0, count)
+                        .mapToObj(i -> "\"" + i + "\"")
+                        .collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long getRequestedCost(ExecutionGraphQlResponse response) {
+        Map<Object, Object> extensions = response.getExecutionResult().getExtensions();
+        Assertions.assertNotNull(extensions);
+        Map<String, Object> cost = (Map<String, Object>) extensions.get(QueryCostInstrumentation.COST_EXTENSION);
+        return ((Number) cost.get("requested")).longValue();
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.graphql;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.internal.graphql.WebSocketNamespaceInterceptor;
+import org.mockito.Mockito;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.graphql.server.WebSocketGraphQlRequest;
+import org.springframework.graphql.server.WebSocketSessionInfo;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class WebSocketNamespaceInterceptorTests {
+
+    private final WebSocketNamespaceInterceptor interceptor = new WebSocketNamespaceInterceptor();
+
+    @Test
+    public void namespaceSentByTheClientIsReplaced() {
+        WebGraphQlRequest request = webSocketRequest(Map.of("query", "subscription { x }",
+                                                            "extensions", Map.of("__structuresNamespace", "other",
+                                                                                 "persistedQuery", "abc")));
+
+        WebGraphQlRequest intercepted = intercept(request);
+
+        Assertions.assertEquals("test", intercepted.getExtensions().get("__structuresNamespace"));
+        Assertions.assertEquals("abc", intercepted.getExtensions().get("persistedQuery"));
+        Assertions.assertEquals("subscription { x }", intercepted.getDocument());
+        Assertions.assertEquals("1", intercepted.getId());
+    }
+
+    @Test
+    public void namespaceIsSetWhenTheClientSendsNoExtensions() {
+        WebGraphQlRequest intercepted = intercept(webSocketRequest(Map.of("query", "subscription { x }")));
+
+        Assertions.assertEquals("test", intercepted.getExtensions().get("__structuresNamespace"));
+    }
+
+    @Test
+    public void httpRequestsAreNotChanged() {
+        WebGraphQlRequest request = new WebGraphQlRequest(URI.create("http://localhost/graphql/test"),
+                                                          new HttpHeaders(),
+                                                          Map.of("query", "{ x }"),
+                                                          "1",
+                                                          Locale.ENGLISH);
+
+        Assertions.assertSame(request, intercept(request));
+    }
+
+    private WebGraphQlRequest webSocketRequest(Map<String, Object> body) {
+        return new WebSocketGraphQlRequest(URI.create("ws://localhost/graphql/test"),
+                                           new HttpHeaders(),
+                                           body,
+                                           "1",
+                                           Locale.ENGLISH,
+                                           Mockito.mock(WebSocketSessionInfo.class));
+    }
+
+    private WebGraphQlRequest intercept(WebGraphQlRequest request) {
+        AtomicReference<WebGraphQlRequest> ret = new AtomicReference<>();
+        interceptor.intercept(request, next -> {
+            ret.set(next);
+            return Mono.<WebGraphQlResponse>empty();
+        }).block();
+        return ret.get();
+    }
+}
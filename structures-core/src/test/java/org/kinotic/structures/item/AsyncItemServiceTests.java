@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.item;
+
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.internal.api.services.DefaultItemService;
+import org.kinotic.structures.internal.api.services.IdleItemIndexManager;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.api.services.storage.ItemStorageEngine;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.trait.TraitLifecycles;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lifecycles are allowed to block, so the non-blocking reads must never run them on the thread that completed the Elasticsearch request
+ */
+public class AsyncItemServiceTests {
+
+    private final Set<String> lifecycleThreads = ConcurrentHashMap.newKeySet();
+    private final Structure structure = new Structure();
+    private ItemStorageEngine itemStorageEngine;
+    private DefaultItemService itemService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        structure.setId("test.person");
+        structure.setItemIndex("struct_test.person");
+        structure.setPublished(true);
+
+        // emitting on the parallel scheduler stands in for the Elasticsearch client threads
+        StructureServiceInternal structureService = Mockito.mock(StructureServiceInternal.class);
+        Mockito.when(structureService.findById(Mockito.eq("test.person"), Mockito.any()))
+               .thenReturn(Mono.just(structure).publishOn(Schedulers.parallel()));
+
+        TraitLifecycles traitLifecycles = Mockito.mock(TraitLifecycles.class);
+        Mockito.when(traitLifecycles.processBeforeSearchLifecycle(Mockito.any(), Mockito.any(), Mockito.any()))
+               .thenAnswer(invocation -> {
+                   lifecycleThreads.add(Thread.currentThread().getName());
+                   return invocation.getArgument(0);
+               });
+        Mockito.when(traitLifecycles.processAfterGetLifecycle(Mockito.any(), Mockito.any(), Mockito.any()))
+               .thenAnswer(invocation -> {
+                   lifecycleThreads.add(Thread.currentThread().getName());
+                   return invocation.getArgument(0);
+               });
+
+        IdleItemIndexManager idleItemIndexManager = Mockito.mock(IdleItemIndexManager.class);
+        Mockito.when(idleItemIndexManager.ensureAvailableAsync(Mockito.any(), Mockito.anyBoolean())).thenReturn(Mono.just(structure));
+
+        itemStorageEngine = Mockito.mock(ItemStorageEngine.class);
+        itemService = new DefaultItemService(itemStorageEngine, structureService, traitLifecycles, new StructuresProperties(),
+                                             null, null, idleItemIndexManager, null, null);
+    }
+
+    @Test
+    public void searchRunsLifecyclesOnBoundedElastic() {
+        Mockito.when(itemStorageEngine.search(Mockito.any()))
+               .thenReturn(Mono.just(new SearchResponse(InternalSearchResponse.empty(), null, 1, 1, 0, 1,
+                                                        ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY))
+                               .publishOn(Schedulers.parallel()));
+
+        Map<String, Object> context = new HashMap<>();
+        Assertions.assertNotNull(itemService.searchAsync("test.person", "*", 10, 0, null, context).block(Duration.ofSeconds(10)));
+        Assertions.assertNotNull(itemService.getAllAsync("test.person", 10, 0, null, context).block(Duration.ofSeconds(10)));
+
+        assertOnlyBoundedElastic();
+    }
+
+    @Test
+    public void getByIdsRunsLifecyclesOnBoundedElastic() {
+        GetResponse getResponse = new GetResponse(new GetResult("struct_test.person", "_doc", "1", 0, 1, 1, true,
+                                                                new BytesArray("{\"id\":\"1\"}"), null, null));
+        Mockito.when(itemStorageEngine.multiGet(Mockito.any()))
+               .thenReturn(Mono.just(new MultiGetResponse(new MultiGetItemResponse[]{new MultiGetItemResponse(getResponse, null)}))
+                               .publishOn(Schedulers.parallel()));
+
+        Map<String, TypeCheckMap> items = itemService.getByIdsAsync(structure, List.of("1"), new HashMap<>()).block(Duration.ofSeconds(10));
+
+        Assertions.assertNotNull(items);
+        Assertions.assertEquals("1", items.get("1").getString("id"));
+        assertOnlyBoundedElastic();
+    }
+
+    private void assertOnlyBoundedElastic() {
+        Assertions.assertFalse(lifecycleThreads.isEmpty());
+        for (String thread : lifecycleThreads) {
+            Assertions.assertTrue(thread.startsWith("boundedElastic"), "Lifecycle ran on " + thread);
+        }
+    }
+
+}
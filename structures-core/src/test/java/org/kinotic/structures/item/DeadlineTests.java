@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.item;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.DeadlineExceededException;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.internal.api.services.DefaultItemService;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.api.services.util.Deadline;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.controllers.StructureItemRestController;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class DeadlineTests {
+
+    @Test
+    public void deadlineIsResolvedFromTheStructureDefaultWithoutChangingTheContext() throws Exception {
+        Structure structure = new Structure();
+        structure.setId("test.person");
+        structure.setRequestTimeout(200);
+        StructureServiceInternal structureService = Mockito.mock(StructureServiceInternal.class);
+        Mockito.when(structureService.getById(Mockito.eq("test.person"), Mockito.any())).thenReturn(Optional.of(structure));
+
+        DefaultItemService itemService = new DefaultItemService(null, structureService, null, new StructuresProperties(),
+                                                                null, null, null, null, null);
+        Map<String, Object> context = new HashMap<>();
+        Deadline deadline = itemService.resolveDeadline("test.person", context);
+
+        Assertions.assertTrue(deadline.remaining().toMillis() <= 200);
+        Assertions.assertTrue(deadline.remaining().toMillis() > 100);
+        // the caller's context is left alone, it may be reused for other requests
+        Assertions.assertTrue(context.isEmpty());
+        // and may be immutable
+        Assertions.assertNotNull(itemService.resolveDeadline("test.person", Map.of()));
+    }
+
+    @Test
+    public void deadlineProvidedByTheClientWins() throws Exception {
+        DefaultItemService itemService = new DefaultItemService(null, Mockito.mock(StructureServiceInternal.class), null, new StructuresProperties(),
+                                                                null, null, null, null, null);
+        Map<String, Object> context = new HashMap<>();
+        Deadline provided = Deadline.parse("5s");
+        context.put(Deadline.CONTEXT_KEY, provided);
+
+        Assertions.assertSame(provided, itemService.resolveDeadline("test.person", context));
+    }
+
+    @Test
+    public void expiredDeadlineAbandonsWork() throws Exception {
+        Deadline deadline = Deadline.after(Duration.ofMillis(10));
+        Thread.sleep(20);
+
+        Assertions.assertTrue(deadline.isExpired());
+        Assertions.assertEquals(Duration.ZERO, deadline.remaining());
+        Assertions.assertThrows(DeadlineExceededException.class, deadline::checkNotExpired);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Deadline.parse("0ms"));
+    }
+
+    @Test
+    public void passedDeadlineIsAGatewayTimeout() throws Exception {
+        ItemServiceInternal itemService = Mockito.mock(ItemServiceInternal.class);
+        Mockito.when(itemService.resolveDeadline(Mockito.eq("test.person"), Mockito.any()))
+               .thenAnswer(invocation -> Deadline.resolve(invocation.getArgument(1), Duration.ofMillis(100)));
+        Mockito.when(itemService.getItemById(Mockito.eq("test.person"), Mockito.eq("1"), Mockito.any()))
+               .thenAnswer(invocation -> {
+                   Thread.sleep(2000);
+                   return Optional.of(new TypeCheckMap());
+               });
+        StructureItemRestController controller = new StructureItemRestController(itemService, null);
+
+        ResponseStatusException e = Assertions.assertThrows(ResponseStatusException.class,
+                                                            () -> controller.getItemById("test.person",
+                                                                                         "1",
+                                                                                         null,
+                                                                                         MockServerHttpRequest.get("/api/test.person/1").build(),
+                                                                                         new MockServerHttpResponse())
+                                                                            .block(Duration.ofSeconds(1)));
+        Assertions.assertEquals(HttpStatus.GATEWAY_TIMEOUT, e.getStatus());
+    }
+
+}
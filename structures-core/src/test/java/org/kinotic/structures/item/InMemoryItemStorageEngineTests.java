@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.item;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.internal.api.services.storage.InMemoryItemStorageEngine;
+
+import java.util.List;
+import java.util.Map;
+
+public class InMemoryItemStorageEngineTests {
+
+    private static final String INDEX = "struct_test_items";
+
+    @Test
+    public void bulkCreateOfAnExistingItemFails() {
+        InMemoryItemStorageEngine engine = new InMemoryItemStorageEngine();
+        BulkRequest request = new BulkRequest();
+        request.add(new IndexRequest(INDEX).id("item1").source(Map.of("id", "item1")).opType(DocWriteRequest.OpType.CREATE));
+        request.add(new IndexRequest(INDEX).id("item1").source(Map.of("id", "item1")).opType(DocWriteRequest.OpType.CREATE));
+
+        BulkResponse response = engine.bulk(request).block();
+        Assertions.assertFalse(response.getItems()[0].isFailed());
+        Assertions.assertTrue(response.getItems()[1].isFailed());
+    }
+
+    @Test
+    public void termsAggregationCountsEverythingTheQueryMatches() {
+        InMemoryItemStorageEngine engine = createEngineWithItems();
+        SearchSourceBuilder builder = new SearchSourceBuilder()
+                .query(QueryBuilders.termQuery("deleted", false))
+                // the post filter only narrows the hits, as it does in Elasticsearch
+                .postFilter(QueryBuilders.termQuery("color", "red"))
+                .aggregation(AggregationBuilders.terms("colors").field("color"))
+                .size(10);
+
+        SearchResponse response = engine.search(new SearchRequest(INDEX).source(builder)).block();
+        Assertions.assertEquals(2, response.getHits().getTotalHits().value);
+
+        Terms colors = response.getAggregations().get("colors");
+        Assertions.assertEquals(2, colors.getBuckets().size());
+        Assertions.assertEquals("red", colors.getBuckets().get(0).getKeyAsString());
+        Assertions.assertEquals(2, colors.getBuckets().get(0).getDocCount());
+        Assertions.assertEquals("blue", colors.getBuckets().get(1).getKeyAsString());
+        Assertions.assertEquals(1, colors.getBuckets().get(1).getDocCount());
+    }
+
+    @Test
+    public void unsupportedAggregationIsRejected() {
+        InMemoryItemStorageEngine engine = createEngineWithItems();
+        SearchSourceBuilder builder = new SearchSourceBuilder().aggregation(AggregationBuilders.max("newest").field("updatedTime"));
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                                () -> engine.search(new SearchRequest(INDEX).source(builder)).block());
+    }
+
+    @Test
+    public void countMatchesTheQuery() {
+        InMemoryItemStorageEngine engine = createEngineWithItems();
+
+        Assertions.assertEquals(4, engine.count(new CountRequest(INDEX)).block().getCount());
+        Assertions.assertEquals(3, engine.count(new CountRequest(INDEX).query(QueryBuilders.termQuery("deleted", false))).block().getCount());
+        Assertions.assertEquals(0, engine.count(new CountRequest("struct_other_items")).block().getCount());
+    }
+
+    @Test
+    public void scriptedUpdateChangesTheItem() {
+        InMemoryItemStorageEngine engine = createEngineWithItems();
+        Script script = new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+                                   "ctx._source.views += params.views; ctx._source.address.city = params.city; ctx._source.remove('color')",
+                                   Map.of("views", 5, "city", "Boston"));
+
+        UpdateRequest request = new UpdateRequest(INDEX, "item1").script(script);
+        Assertions.assertEquals(DocWriteResponse.Result.UPDATED, engine.update(request).getResult());
+
+        Map<String, Object> item = engine.get(new GetRequest(INDEX, "item1")).block().getSourceAsMap();
+        Assertions.assertEquals(6, ((Number) item.get("views")).intValue());
+        Assertions.assertEquals(Map.of("city", "Boston"), item.get("address"));
+        Assertions.assertFalse(item.containsKey("color"));
+    }
+
+    @Test
+    public void removeFieldsScriptRemovesEachField() {
+        InMemoryItemStorageEngine engine = createEngineWithItems();
+        Script script = new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+                                   "for (String field : params.fields) { ctx._source.remove(field); }",
+                                   Map.of("fields", List.of("color", "views")));
+
+        engine.update(new UpdateRequest(INDEX, "item2").script(script));
+
+        Map<String, Object> item = engine.get(new GetRequest(INDEX, "item2")).block().getSourceAsMap();
+        Assertions.assertEquals(Map.of("id", "item2", "deleted", false), item);
+    }
+
+    @Test
+    public void unsupportedScriptIsRejected() {
+        InMemoryItemStorageEngine engine = createEngineWithItems();
+        Script script = new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG,
+                                   "if (ctx._source.views > 1) { ctx.op = 'delete' }", Map.of());
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> engine.update(new UpdateRequest(INDEX, "item1").script(script)));
+        // the item is left as it was
+        Assertions.assertEquals(1, ((Number) engine.get(new GetRequest(INDEX, "item1")).block().getSourceAsMap().get("views")).intValue());
+    }
+
+    private static InMemoryItemStorageEngine createEngineWithItems() {
+        InMemoryItemStorageEngine engine = new InMemoryItemStorageEngine();
+        BulkRequest request = new BulkRequest();
+        request.add(new IndexRequest(INDEX).id("item1").source(Map.of("id", "item1", "deleted", false, "color", "red", "views", 1)));
+        request.add(new IndexRequest(INDEX).id("item2").source(Map.of("id", "item2", "deleted", false, "color", "blue", "views", 2)));
+        request.add(new IndexRequest(INDEX).id("item3").source(Map.of("id", "item3", "deleted", false, "color", "red", "views", 3)));
+        request.add(new IndexRequest(INDEX).id("item4").source(Map.of("id", "item4", "deleted", true, "color", "blue", "views", 4)));
+        Assertions.assertFalse(engine.bulk(request).block().hasFailures());
+        return engine;
+    }
+}
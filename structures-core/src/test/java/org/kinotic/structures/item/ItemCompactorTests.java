@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.item;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.ItemIndexState;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.api.services.ClusterLeases;
+import org.kinotic.structures.internal.api.services.ItemCompactor;
+import org.kinotic.structures.internal.api.services.ItemIndexManager;
+import org.kinotic.structures.internal.api.services.ItemSourceCache;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ItemCompactorTests {
+
+    @Test
+    public void leaseIsRenewedWhileAStructureIsCompacted() throws Exception {
+        Structure structure = new Structure();
+        structure.setId("test.person");
+        structure.setItemIndex("struct_test.person");
+        structure.setItemIndexState(ItemIndexState.OPEN);
+
+        StructuresProperties properties = new StructuresProperties();
+        properties.setItemCompactionInterval(Duration.ofMillis(300));
+        properties.setDefaultDeletedItemRetention("1d");
+
+        StructureServiceInternal structureService = Mockito.mock(StructureServiceInternal.class);
+        Mockito.when(structureService.getAllNamespacesWithPublishedStructures()).thenReturn(Set.of("test"));
+        Mockito.when(structureService.getAllPublishedForNamespace("test")).thenReturn(List.of(structure));
+
+        // removing the items takes several times longer than the lease
+        ItemIndexManager itemIndexManager = Mockito.mock(ItemIndexManager.class);
+        Mockito.when(itemIndexManager.countItems(Mockito.anyString(), Mockito.any())).thenReturn(10L);
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(1000);
+            return null;
+        }).when(itemIndexManager).deleteItems(Mockito.any(), Mockito.any(), Mockito.anyFloat());
+
+        AtomicInteger acquired = new AtomicInteger();
+        ClusterLeases clusterLeases = Mockito.mock(ClusterLeases.class);
+        Mockito.when(clusterLeases.tryAcquire(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            acquired.incrementAndGet();
+            return true;
+        });
+
+        ItemCompactor compactor = new ItemCompactor(structureService, itemIndexManager, properties,
+                                                    Mockito.mock(ItemSourceCache.class), clusterLeases);
+        compactor.compactAll();
+
+        Mockito.verify(itemIndexManager).deleteItems(Mockito.eq(structure), Mockito.any(), Mockito.anyFloat());
+        // taken once before the structure, then renewed about every 100ms while its items were removed
+        Assertions.assertTrue(acquired.get() >= 5, "The lease was only acquired " + acquired.get() + " times");
+
+        // and no longer renewed once done
+        int afterCompaction = acquired.get();
+        Thread.sleep(400);
+        Assertions.assertEquals(afterCompaction, acquired.get());
+    }
+}
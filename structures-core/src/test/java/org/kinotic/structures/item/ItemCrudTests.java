@@ -17,24 +17,47 @@
 
 package org.kinotic.structures.item;
 
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderRegistry;
+import org.dataloader.MappedBatchLoaderWithContext;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.search.SearchHits;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.kinotic.structures.ElasticsearchTestBase;
 import org.kinotic.structures.api.domain.AlreadyExistsException;
+import org.kinotic.structures.api.domain.ItemIndexState;
 import org.kinotic.structures.api.domain.Structure;
 import org.kinotic.structures.api.domain.Trait;
 import org.kinotic.structures.api.domain.TypeCheckMap;
 import org.kinotic.structures.api.services.TraitService;
+import org.kinotic.structures.internal.api.services.IdleItemIndexManager;
+import org.kinotic.structures.internal.api.services.ItemCompactor;
+import org.kinotic.structures.internal.api.services.ItemIndexManager;
 import org.kinotic.structures.internal.api.services.ItemServiceInternal;
 import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.graphql.ItemBatchLoader;
+import org.kinotic.structures.internal.config.IdleIndexAction;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.graphql.ReferenceDataFetcher;
 import org.kinotic.structures.util.StructureTestHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
@@ -48,6 +71,16 @@ public class ItemCrudTests extends ElasticsearchTestBase {
     private StructureServiceInternal structureService;
     @Autowired
     private StructureTestHelper structureTestHelper;
+    @Autowired
+    private ItemCompactor itemCompactor;
+    @Autowired
+    private ItemIndexManager itemIndexManager;
+    @Autowired
+    private IdleItemIndexManager idleItemIndexManager;
+    @Autowired
+    private StructuresProperties structuresProperties;
+    @Autowired
+    private RestHighLevelClient highLevelClient;
 
     @Test
     public void createAndDeleteItem() throws Exception {
@@ -162,6 +195,130 @@ public class ItemCrudTests extends ElasticsearchTestBase {
     }
 
 
+    @Test
+    public void createAndDeleteItem_removedAfterRetention() throws Exception {
+
+        Structure structure = structureTestHelper.getSimpleItemStructure();
+
+        TypeCheckMap obj = new TypeCheckMap();
+        obj.put("ip", "192.0.2.11");
+        obj.put("mac", "000000000001");
+
+        TypeCheckMap saved = itemService.upsertItem(structure.getId(), obj, null);
+        itemService.delete(structure.getId(), saved.getString("id"), null);
+
+        Thread.sleep(1000);
+
+        // nothing is removed without a retention
+        Assertions.assertEquals(0, itemCompactor.compact(structure));
+
+        structure.setDeletedItemRetention("0ms");
+        structure.setArchiveDeletedItems(true);
+        Assertions.assertEquals(1, itemCompactor.compact(structure));
+
+        Thread.sleep(1000);
+
+        Assertions.assertEquals(0, itemIndexManager.countItems(structure.getItemIndex()));
+        Assertions.assertEquals(1, itemIndexManager.countItems(ItemIndexManager.getArchiveIndex(structure)));
+
+        structureService.delete(structure.getId());
+
+    }
+
+    @Test
+    public void closedItemIndexIsReopenedOnAccess() throws Exception {
+
+        Structure structure = structureTestHelper.getSimpleItemStructure();
+
+        TypeCheckMap obj = new TypeCheckMap();
+        obj.put("ip", "192.0.2.11");
+        obj.put("mac", "000000000001");
+
+        TypeCheckMap saved = itemService.upsertItem(structure.getId(), obj, null);
+
+        structureService.changeItemIndexState(structure.getId(), ItemIndexState.CLOSED);
+
+        // reads are served once the index has been reopened
+        Assertions.assertEquals(1, itemService.count(structure.getId(), null));
+        Assertions.assertEquals(ItemIndexState.OPEN, structureService.getById(structure.getId()).orElseThrow().getItemIndexState());
+
+        structureService.changeItemIndexState(structure.getId(), ItemIndexState.READ_ONLY);
+
+        // a read only index can still be read without reopening it
+        Assertions.assertTrue(itemService.getItemById(structure.getId(), saved.getString("id"), null).isPresent());
+        Assertions.assertEquals(ItemIndexState.READ_ONLY, structureService.getById(structure.getId()).orElseThrow().getItemIndexState());
+
+        itemService.delete(structure.getId(), saved.getString("id"), null);
+        Assertions.assertEquals(ItemIndexState.OPEN, structureService.getById(structure.getId()).orElseThrow().getItemIndexState());
+
+        structureService.delete(structure.getId());
+
+    }
+
+    @Test
+    public void itemIndexIsOnlyClosedOnceNoNodeUsesIt() throws Exception {
+
+        Structure structure = structureTestHelper.getSimpleItemStructure();
+
+        TypeCheckMap obj = new TypeCheckMap();
+        obj.put("ip", "192.0.2.11");
+        obj.put("mac", "000000000001");
+        itemService.upsertItem(structure.getId(), obj, null);
+
+        IdleIndexAction action = structuresProperties.getIdleIndexAction();
+        Duration threshold = structuresProperties.getIdleIndexThreshold();
+        structuresProperties.setIdleIndexAction(IdleIndexAction.CLOSE);
+        structuresProperties.setIdleIndexThreshold(Duration.ZERO);
+        try {
+            // the operations Elasticsearch has counted for the index are not known yet
+            Assertions.assertFalse(idleItemIndexManager.closeIfIdle(structure));
+
+            // a search, as another node would make, changes the count
+            highLevelClient.count(new CountRequest(structure.getItemIndex()), RequestOptions.DEFAULT);
+            Assertions.assertFalse(idleItemIndexManager.closeIfIdle(structure));
+
+            Assertions.assertTrue(idleItemIndexManager.closeIfIdle(structure));
+            Assertions.assertEquals(ItemIndexState.CLOSED, structureService.getById(structure.getId()).orElseThrow().getItemIndexState());
+        } finally {
+            structuresProperties.setIdleIndexAction(action);
+            structuresProperties.setIdleIndexThreshold(threshold);
+        }
+
+        structureService.delete(structure.getId());
+
+    }
+
+    @Test
+    public void cachedItemIsInvalidatedOnWrite() throws Exception {
+
+        Structure structure = structureTestHelper.getSimpleItemStructure();
+        structure.setCacheItems(true);
+        structure = structureService.save(structure);
+
+        TypeCheckMap obj = new TypeCheckMap();
+        obj.put("ip", "192.0.2.11");
+        obj.put("mac", "000000000001");
+
+        TypeCheckMap saved = itemService.upsertItem(structure.getId(), obj, null);
+        String id = saved.getString("id");
+
+        // the first read caches the item
+        Assertions.assertEquals("192.0.2.11", itemService.getItemById(structure.getId(), id, null).orElseThrow().getString("ip"));
+
+        // so a change made without the item service is not seen, which shows the second read is served from the cache
+        highLevelClient.update(new UpdateRequest(structure.getItemIndex(), id).doc(Map.of("ip", "192.0.2.99"))
+                                                                               .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE),
+                               RequestOptions.DEFAULT);
+        Assertions.assertEquals("192.0.2.11", itemService.getItemById(structure.getId(), id, null).orElseThrow().getString("ip"));
+
+        saved.put("ip", "192.0.2.12");
+        itemService.upsertItem(structure.getId(), saved, null);
+        Assertions.assertEquals("192.0.2.12", itemService.getItemById(structure.getId(), id, null).orElseThrow().getString("ip"));
+
+        structureService.delete(structure.getId());
+
+    }
+
     @Test
     public void createAndupsertItem() throws Exception {
 
@@ -373,4 +530,86 @@ public class ItemCrudTests extends ElasticsearchTestBase {
         }
 
     }
+
+    @Test
+    public void createItems_canWeGetByIds() throws Exception {
+
+        Structure structure = structureTestHelper.getSimpleItemStructure();
+
+        TypeCheckMap obj1 = new TypeCheckMap();
+        obj1.put("ip", "192.0.2.11");
+        obj1.put("mac", "000000000001");
+        TypeCheckMap saved1 = itemService.upsertItem(structure.getId(), obj1, null);
+
+        TypeCheckMap obj2 = new TypeCheckMap();
+        obj2.put("ip", "192.0.2.12");
+        obj2.put("mac", "000000000002");
+        TypeCheckMap saved2 = itemService.upsertItem(structure.getId(), obj2, null);
+
+        Thread.sleep(1000);
+
+        Map<String, TypeCheckMap> items = itemService.getByIds(structure,
+                                                               List.of(saved1.getString("id"), saved2.getString("id"), "doesNotExist"),
+                                                               null);
+
+        Assertions.assertEquals(2, items.size());
+        Assertions.assertEquals("000000000001", items.get(saved1.getString("id")).getString("mac"));
+        Assertions.assertEquals("000000000002", items.get(saved2.getString("id")).getString("mac"));
+
+        itemService.delete(structure.getId(), saved1.getString("id"), null);
+        itemService.delete(structure.getId(), saved2.getString("id"), null);
+
+        Thread.sleep(1000);
+
+        structureService.delete(structure.getId());
+
+    }
+
+    @Test
+    public void collectionReferenceIsResolvedInOrder() throws Exception {
+
+        Structure structure = structureTestHelper.getSimpleItemStructure();
+
+        TypeCheckMap obj1 = new TypeCheckMap();
+        obj1.put("ip", "192.0.2.11");
+        obj1.put("mac", "000000000001");
+        TypeCheckMap saved1 = itemService.upsertItem(structure.getId(), obj1, null);
+
+        TypeCheckMap obj2 = new TypeCheckMap();
+        obj2.put("ip", "192.0.2.12");
+        obj2.put("mac", "000000000002");
+        TypeCheckMap saved2 = itemService.upsertItem(structure.getId(), obj2, null);
+
+        ItemBatchLoader batchLoader = new ItemBatchLoader(structure, itemService);
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        registry.register(structure.getId(),
+                          DataLoaderFactory.newMappedDataLoader((MappedBatchLoaderWithContext<String, TypeCheckMap>)
+                                                                        (ids, environment) -> batchLoader.apply(ids, environment).toFuture()));
+
+        // the owning item only stores the structureId and id of each referenced item
+        TypeCheckMap owner = new TypeCheckMap();
+        owner.put("devices", List.of(Map.of("structureId", structure.getId(), "id", saved2.getString("id")),
+                                     Map.of("structureId", structure.getId(), "id", saved1.getString("id")),
+                                     Map.of("structureId", structure.getId(), "id", "doesNotExist")));
+        DataFetchingEnvironment environment = DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+                                                                         .source(owner)
+                                                                         .dataLoaderRegistry(registry)
+                                                                         .build();
+
+        CompletableFuture<?> future = new ReferenceDataFetcher("devices").get(environment);
+        registry.dispatchAll();
+
+        List<?> devices = (List<?>) future.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(3, devices.size());
+        Assertions.assertEquals("000000000002", ((TypeCheckMap) devices.get(0)).getString("mac"));
+        Assertions.assertEquals("000000000001", ((TypeCheckMap) devices.get(1)).getString("mac"));
+        Assertions.assertNull(devices.get(2));
+
+        itemService.delete(structure.getId(), saved1.getString("id"), null);
+        itemService.delete(structure.getId(), saved2.getString("id"), null);
+
+        structureService.delete(structure.getId());
+
+    }
+
 }
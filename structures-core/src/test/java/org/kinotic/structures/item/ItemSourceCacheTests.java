@@ -0,0 +1,103 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.item;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.xcontent.XContentFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.api.services.ItemSourceCache;
+import org.kinotic.structures.internal.config.StructuresProperties;
+
+import java.util.Map;
+
+public class ItemSourceCacheTests {
+
+    @Test
+    public void sourcesLargerThanABlockAreReadBack() throws Exception {
+        ItemSourceCache cache = new ItemSourceCache(new StructuresProperties());
+        Structure structure = createStructure();
+        Map<String, Object> source = Map.of("id", "1", "name", "x".repeat(5000));
+
+        cache.put(structure, "1", toBytes(source), cache.startLoad(structure, "1"));
+
+        Assertions.assertEquals(source, cache.get(structure, "1"));
+        Assertions.assertEquals(5 * 1024, cache.getDirectMemoryUsed());
+    }
+
+    @Test
+    public void directMemoryIsReusedOnceEntriesAreRemoved() throws Exception {
+        ItemSourceCache cache = new ItemSourceCache(new StructuresProperties());
+        Structure structure = createStructure();
+
+        for (int i = 0; i < 10_000; i++) {
+            String id = String.valueOf(i);
+            cache.put(structure, id, toBytes(Map.of("id", id, "name", "x".repeat(2000))), cache.startLoad(structure, id));
+            cache.invalidate(structure.getId(), id);
+        }
+
+        Assertions.assertEquals(0, cache.getDirectMemoryUsed());
+    }
+
+    @Test
+    public void evictedEntriesMakeRoomForNewOnes() throws Exception {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setItemCacheMaximumWeight(1024 * 1024);
+        ItemSourceCache cache = new ItemSourceCache(properties);
+        Structure structure = createStructure();
+
+        for (int i = 0; i < 2_000; i++) {
+            String id = String.valueOf(i);
+            cache.put(structure, id, toBytes(Map.of("id", id, "name", "x".repeat(2000))), cache.startLoad(structure, id));
+        }
+
+        // Caffeine decides which of the items are kept, but the memory of those evicted is given back
+        Assertions.assertTrue(cache.getDirectMemoryUsed() > 0);
+        Assertions.assertTrue(cache.getDirectMemoryUsed() <= 1024 * 1024);
+
+        cache.invalidateAll(structure.getId());
+        Assertions.assertEquals(0, cache.getDirectMemoryUsed());
+    }
+
+    @Test
+    public void itemsAreNotCachedOnceTheDirectMemoryIsUsedUp() throws Exception {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setItemCacheMaximumWeight(1024 * 1024);
+        ItemSourceCache cache = new ItemSourceCache(properties);
+        Structure structure = createStructure();
+
+        BytesReference tooLarge = toBytes(Map.of("id", "1", "name", "x".repeat(2 * 1024 * 1024)));
+        cache.put(structure, "1", tooLarge, cache.startLoad(structure, "1"));
+
+        Assertions.assertNull(cache.get(structure, "1"));
+        Assertions.assertEquals(0, cache.getDirectMemoryUsed());
+    }
+
+    private static Structure createStructure() {
+        Structure structure = new Structure();
+        structure.setId("test.person");
+        structure.setUpdated(1L);
+        structure.setCacheItems(true);
+        return structure;
+    }
+
+    private static BytesReference toBytes(Map<String, Object> source) throws Exception {
+        return BytesReference.bytes(XContentFactory.jsonBuilder().map(source));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.item;
+
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.xcontent.XContentType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kinotic.structures.internal.api.services.storage.LuceneItemStorageEngine;
+import org.kinotic.structures.internal.config.StructuresProperties;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+public class LuceneItemStorageEngineTests {
+
+    private static final String INDEX = "struct_test_items";
+    private static final String MAPPING = "{\"properties\":{"
+            + "\"id\":{\"type\":\"keyword\"},"
+            + "\"name\":{\"type\":\"text\"},"
+            + "\"team\":{\"type\":\"keyword\"},"
+            + "\"deleted\":{\"type\":\"boolean\"},"
+            + "\"updatedTime\":{\"type\":\"date\"}}}";
+
+    @TempDir
+    Path dataDirectory;
+
+    @Test
+    public void upsertThenSearchLikeTheLifecycles() throws Exception {
+        LuceneItemStorageEngine engine = createEngine();
+        String[] names = {"Alice Smith", "Bob Jones", "Carol Smith"};
+        for (int i = 1; i <= 3; i++) {
+            UpdateRequest request = new UpdateRequest(INDEX, "item" + i);
+            request.doc(Map.of("id", "item" + i,
+                               "name", names[i - 1],
+                               "team", i == 2 ? "blue" : "red",
+                               "deleted", i == 2,
+                               "updatedTime", i * 1000L), XContentType.JSON);
+            request.docAsUpsert(true);
+            Assertions.assertEquals(DocWriteResponse.Result.CREATED, engine.update(request).getResult());
+        }
+
+        // items can be read by id before they are searchable, and partial updates are merged into them
+        UpdateRequest change = new UpdateRequest(INDEX, "item3").doc(Map.of("updatedTime", 5000L), XContentType.JSON);
+        change.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        Assertions.assertEquals(DocWriteResponse.Result.UPDATED, engine.update(change).getResult());
+        Map<String, Object> item3 = engine.get(new GetRequest(INDEX, "item3")).block().getSourceAsMap();
+        Assertions.assertEquals("Carol Smith", item3.get("name"));
+        Assertions.assertEquals(5000, ((Number) item3.get("updatedTime")).intValue());
+
+        SearchSourceBuilder builder = new SearchSourceBuilder()
+                .query(QueryBuilders.boolQuery()
+                                    .filter(QueryBuilders.termQuery("deleted", false))
+                                    .filter(QueryBuilders.rangeQuery("updatedTime").gte(1000)))
+                .sort("id", SortOrder.ASC)
+                .size(1);
+        SearchResponse first = engine.search(new SearchRequest(INDEX).source(builder)).block();
+        Assertions.assertEquals(2, first.getHits().getTotalHits().value);
+        Assertions.assertEquals("item1", first.getHits().getAt(0).getId());
+
+        builder.searchAfter(first.getHits().getAt(0).getSortValues());
+        SearchResponse second = engine.search(new SearchRequest(INDEX).source(builder)).block();
+        Assertions.assertEquals("item3", second.getHits().getAt(0).getId());
+
+        // text fields are analyzed, so a single word matches
+        SearchResponse smiths = engine.search(new SearchRequest(INDEX).source(new SearchSourceBuilder().query(QueryBuilders.queryStringQuery("smith"))))
+                                      .block();
+        Assertions.assertEquals(2, smiths.getHits().getTotalHits().value);
+
+        SearchResponse teams = engine.search(new SearchRequest(INDEX).source(new SearchSourceBuilder()
+                                                                                     .size(0)
+                                                                                     .aggregation(AggregationBuilders.terms("team").field("team"))))
+                                     .block();
+        Terms terms = teams.getAggregations().get("team");
+        Assertions.assertEquals("red", terms.getBuckets().get(0).getKeyAsString());
+        Assertions.assertEquals(2, terms.getBuckets().get(0).getDocCount());
+    }
+
+    @Test
+    public void deletedIndexIsRemovedFromDisk() throws Exception {
+        LuceneItemStorageEngine engine = createEngine();
+        UpdateRequest request = new UpdateRequest(INDEX, "item1").doc(Map.of("id", "item1"), XContentType.JSON).docAsUpsert(true);
+        engine.update(request);
+        Assertions.assertTrue(dataDirectory.resolve(INDEX).toFile().exists());
+
+        engine.deleteIndex(INDEX);
+        Assertions.assertFalse(dataDirectory.resolve(INDEX).toFile().exists());
+        Assertions.assertFalse(engine.get(new GetRequest(INDEX, "item1")).block().isExists());
+    }
+
+    @Test
+    public void itemsArePersistedWhenReopened() throws Exception {
+        LuceneItemStorageEngine engine = createEngine();
+        BulkRequest request = new BulkRequest();
+        request.add(new IndexRequest(INDEX).id("item1").source(Map.of("id", "item1", "name", "Alice Smith", "deleted", false)));
+        request.add(new IndexRequest(INDEX).id("item2").source(Map.of("id", "item2", "name", "Bob Jones", "deleted", true)));
+        Assertions.assertFalse(engine.bulk(request).block().hasFailures());
+        // not refreshed or committed yet, stopping commits them
+        engine.stop();
+
+        LuceneItemStorageEngine reopened = new LuceneItemStorageEngine(createProperties());
+        try {
+            Map<String, Object> item1 = reopened.get(new GetRequest(INDEX, "item1")).block().getSourceAsMap();
+            Assertions.assertEquals("Alice Smith", item1.get("name"));
+            Assertions.assertEquals(1, reopened.count(new CountRequest(INDEX).query(QueryBuilders.termQuery("deleted", false))).block().getCount());
+
+            // the mapping is kept with the items, so name is still analyzed as text
+            SearchResponse response = reopened.search(new SearchRequest(INDEX).source(new SearchSourceBuilder().query(QueryBuilders.matchQuery("name", "jones"))))
+                                              .block();
+            Assertions.assertEquals(1, response.getHits().getTotalHits().value);
+            Assertions.assertEquals("item2", response.getHits().getAt(0).getId());
+        } finally {
+            reopened.stop();
+        }
+    }
+
+    @Test
+    public void unsupportedRequestsAreRejected() throws Exception {
+        LuceneItemStorageEngine engine = createEngine();
+        engine.update(new UpdateRequest(INDEX, "item1").doc(Map.of("id", "item1", "name", "Alice Smith"), XContentType.JSON).docAsUpsert(true));
+
+        SearchSourceBuilder fuzzy = new SearchSourceBuilder().query(QueryBuilders.fuzzyQuery("name", "alise"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> engine.search(new SearchRequest(INDEX).source(fuzzy)).block());
+
+        SearchSourceBuilder maxAggregation = new SearchSourceBuilder().aggregation(AggregationBuilders.max("newest").field("updatedTime"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> engine.search(new SearchRequest(INDEX).source(maxAggregation)).block());
+
+        // only STANDARD Structures, which have a single index, can use this engine
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                                () -> engine.search(new SearchRequest(INDEX, INDEX + "_v2").source(new SearchSourceBuilder())).block());
+
+        UpdateRequest scripted = new UpdateRequest(INDEX, "item1").script(new Script("ctx._source.name = 'Bob'"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> engine.update(scripted));
+        engine.stop();
+    }
+
+    private StructuresProperties createProperties() {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setLuceneDataDirectory(dataDirectory.toString());
+        return properties;
+    }
+
+    private LuceneItemStorageEngine createEngine() throws Exception {
+        LuceneItemStorageEngine engine = new LuceneItemStorageEngine(createProperties());
+        engine.putMapping(INDEX, MAPPING);
+        return engine;
+    }
+}
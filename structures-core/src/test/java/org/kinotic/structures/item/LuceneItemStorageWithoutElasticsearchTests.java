@@ -0,0 +1,171 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.item;
+
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kinotic.structures.api.domain.Namespace;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.api.domain.Trait;
+import org.kinotic.structures.api.domain.TypeCheckMap;
+import org.kinotic.structures.api.services.NamespaceService;
+import org.kinotic.structures.api.services.TraitService;
+import org.kinotic.structures.internal.api.services.ClusterLeases;
+import org.kinotic.structures.internal.api.services.ElasticsearchCircuitBreaker;
+import org.kinotic.structures.internal.api.services.ItemServiceInternal;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.api.services.storage.ItemStorageEngine;
+import org.kinotic.structures.internal.api.services.storage.LuceneItemStorageEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Boots the whole application with the lucene item storage engine and nothing listening for Elasticsearch,
+ * any request sent to Elasticsearch fails so this only passes if none are sent.
+ * The test profile is not active, so no Elasticsearch container is started.
+ */
+@ExtendWith(SpringExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(properties = {"structures.item-storage-engine=lucene",
+                              "structures.elastic-uris=localhost:1",
+                              "structures.elastic-connection-timeout=1s"})
+@ActiveProfiles("lucene")
+public class LuceneItemStorageWithoutElasticsearchTests {
+
+    private static final Path DATA_DIRECTORY = createDataDirectory();
+
+    @Autowired
+    private ItemStorageEngine itemStorageEngine;
+    @Autowired
+    private ItemServiceInternal itemService;
+    @Autowired
+    private StructureServiceInternal structureService;
+    @Autowired
+    private TraitService traitService;
+    @Autowired
+    private NamespaceService namespaceService;
+    @Autowired
+    private ClusterLeases clusterLeases;
+    @Autowired
+    private ElasticsearchCircuitBreaker circuitBreaker;
+    @Autowired
+    private RestHighLevelClient highLevelClient;
+
+    @DynamicPropertySource
+    static void luceneDataDirectory(DynamicPropertyRegistry registry) {
+        registry.add("structures.lucene-data-directory", DATA_DIRECTORY::toString);
+    }
+
+    @AfterAll
+    public void deleteDataDirectory() throws IOException {
+        FileSystemUtils.deleteRecursively(DATA_DIRECTORY);
+    }
+
+    @Test
+    public void bootsWithoutElasticsearch() {
+        Assertions.assertTrue(itemStorageEngine instanceof LuceneItemStorageEngine);
+        Assertions.assertThrows(IOException.class, () -> highLevelClient.ping(RequestOptions.DEFAULT),
+                                "Nothing should be listening for Elasticsearch");
+        Assertions.assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void systemTraitsAreKeptLocally() throws Exception {
+        Optional<Trait> id = traitService.getTraitByName("Id");
+        Assertions.assertTrue(id.isPresent());
+        Assertions.assertTrue(id.get().isSystemManaged());
+        Assertions.assertEquals(id.get().getName(), traitService.getTraitById(id.get().getId()).orElseThrow().getName());
+    }
+
+    @Test
+    public void namespacesAreKeptLocally() throws Exception {
+        Namespace namespace = new Namespace();
+        namespace.setName("lucene_only");
+        namespace.setDescription("Kept without Elasticsearch");
+        namespaceService.save(namespace);
+
+        Assertions.assertEquals("Kept without Elasticsearch", namespaceService.getNamespace("lucene_only").orElseThrow().getDescription());
+        Assertions.assertEquals(1, namespaceService.getAllNamespaceLike("lucene*", 10, 0, "name", false).getTotalHits().value);
+
+        namespaceService.delete("lucene_only");
+        Assertions.assertTrue(namespaceService.getNamespace("lucene_only").isEmpty());
+    }
+
+    @Test
+    public void structureAndItemLifecycle() throws Exception {
+        Structure structure = new Structure();
+        structure.setName("LuceneOnly-" + System.currentTimeMillis());
+        structure.setNamespace("org_kinotic_");
+        structure.setDescription("Kept without Elasticsearch");
+        structure.getTraits().put("ip", traitService.getTraitByName("Ip").orElseThrow());
+        structure.getTraits().put("mac", traitService.getTraitByName("Mac").orElseThrow());
+
+        Structure saved = structureService.save(structure);
+        structureService.publish(saved.getId());
+        Assertions.assertTrue(structureService.getById(saved.getId()).orElseThrow().isPublished());
+        Assertions.assertEquals(1, structureService.getAllNamespaceEquals("org_kinotic_", 100, 0, "name", true)
+                                                   .getContent()
+                                                   .stream()
+                                                   .filter(holder -> holder.getStructure().getId().equals(saved.getId()))
+                                                   .count());
+
+        TypeCheckMap item = new TypeCheckMap();
+        item.put("ip", "192.0.2.11");
+        item.put("mac", "000000000001");
+        TypeCheckMap upserted = itemService.upsertItem(saved.getId(), item, null);
+
+        TypeCheckMap read = itemService.getItemById(saved.getId(), upserted.getString("id"), null).orElseThrow();
+        Assertions.assertEquals("192.0.2.11", read.getString("ip"));
+
+        itemService.delete(saved.getId(), upserted.getString("id"), null);
+        structureService.delete(saved.getId());
+        Assertions.assertTrue(structureService.getById(saved.getId()).isEmpty());
+    }
+
+    @Test
+    public void leasesAreAlwaysHeldBySingleNode() throws Exception {
+        Assertions.assertTrue(clusterLeases.tryAcquire("lucene-only", Duration.ofMinutes(1)));
+        Assertions.assertTrue(clusterLeases.tryAcquire("lucene-only", Duration.ofMinutes(1)));
+        clusterLeases.release("lucene-only");
+    }
+
+    private static Path createDataDirectory() {
+        try {
+            return Files.createTempDirectory("structures-lucene");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -19,9 +19,10 @@ package org.kinotic.structures.item;
 
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.kinotic.structures.ElasticsearchTestBase;
+import org.kinotic.structures.InMemoryTestBase;
 import org.kinotic.structures.api.domain.Structure;
 import org.kinotic.structures.api.domain.TypeCheckMap;
 import org.kinotic.structures.api.services.TraitService;
@@ -32,9 +33,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.Set;
+
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
-public class SearchTests extends ElasticsearchTestBase {
+public class SearchTests extends InMemoryTestBase {
 
     @Autowired
     private ItemServiceInternal itemService;
@@ -88,6 +91,33 @@ public class SearchTests extends ElasticsearchTestBase {
 
     }
 
+    @Test
+    public void onlyIncludedFieldsAreReturnedInTheSource() throws Exception {
+
+        Structure structure = structureTestHelper.getSimpleItemStructure();
+
+        TypeCheckMap obj = new TypeCheckMap();
+        obj.put("vpnIp", "10.0.0.11");
+        obj.put("ip", "192.0.0.11");
+        obj.put("mac", "000000000000");
+        TypeCheckMap saved = itemService.upsertItem(structure.getId(), obj, null);
+
+        SearchHits included = itemService.getAll(structure.getId(), 100, 0, new String[]{"ip"}, null);
+        SearchHits noSource = itemService.getAll(structure.getId(), 100, 0, new String[0], null);
+        SearchHits all = itemService.getAll(structure.getId(), 100, 0, null, null);
+
+        itemService.delete(structure.getId(), saved.getString("id"), null);
+        structureService.delete(structure.getId());
+
+        Assertions.assertEquals(1, included.getTotalHits().value);
+        Assertions.assertEquals(Set.of("ip"), included.getAt(0).getSourceAsMap().keySet());
+
+        Assertions.assertEquals(1, noSource.getTotalHits().value);
+        Assertions.assertFalse(noSource.getAt(0).hasSource());
+
+        Assertions.assertEquals("000000000000", all.getAt(0).getSourceAsMap().get("mac"));
+    }
+
     @Test
     public void createFiveItemsAndSearchExact() throws Exception {
 
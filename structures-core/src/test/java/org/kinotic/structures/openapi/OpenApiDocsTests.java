@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.openapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.api.services.DefaultOpenApiService;
+import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.api.services.util.OpenApiDocument;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.kinotic.structures.internal.controllers.OpenApiDocsController;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+/**
+ * Builds the OpenAPI documents for {@link Structure}s provided by a mocked {@link StructureServiceInternal}
+ */
+public class OpenApiDocsTests {
+
+    private static final String NAMESPACE = "test";
+
+    private StructureServiceInternal structureService;
+    private DefaultOpenApiService openApiService;
+    private OpenApiDocsController controller;
+
+    @BeforeEach
+    public void setUp() {
+        structureService = Mockito.mock(StructureServiceInternal.class);
+        openApiService = new DefaultOpenApiService(new ObjectMapper(), structureService, new StructuresProperties());
+        controller = new OpenApiDocsController(openApiService);
+    }
+
+    @Test
+    public void documentIsRebuiltWhenAStructureChangesWithoutAnEviction() throws Exception {
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 1L)));
+        OpenApiDocument first = openApiService.getOpenApiDocument(NAMESPACE);
+        Assertions.assertSame(first, openApiService.getOpenApiDocument(NAMESPACE));
+
+        // changed through another node, so this node never evicted its cache
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 2L)));
+        OpenApiDocument changed = openApiService.getOpenApiDocument(NAMESPACE);
+        Assertions.assertNotEquals(first.getETag(), changed.getETag());
+
+        // a structure that is not the newest is removed
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 2L),
+                                                                                                 createStructure("Company", 1L)));
+        OpenApiDocument added = openApiService.getOpenApiDocument(NAMESPACE);
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 2L)));
+        Assertions.assertNotEquals(added.getETag(), openApiService.getOpenApiDocument(NAMESPACE).getETag());
+    }
+
+    @Test
+    public void gzipIsOnlyUsedWhenAcceptable() throws Exception {
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 1L)));
+
+        Assertions.assertFalse(isGzipped(getDocs(null)));
+        Assertions.assertTrue(isGzipped(getDocs("gzip, deflate, br")));
+        Assertions.assertTrue(isGzipped(getDocs("deflate, GZIP;Q=0.5")));
+        Assertions.assertFalse(isGzipped(getDocs("gzip;q=0")));
+        Assertions.assertFalse(isGzipped(getDocs("deflate, gzip ; q=0.0")));
+        Assertions.assertFalse(isGzipped(getDocs("gzip;q=0, *")));
+        Assertions.assertTrue(isGzipped(getDocs("*;q=0.1")));
+        Assertions.assertFalse(isGzipped(getDocs("*;q=0")));
+        Assertions.assertFalse(isGzipped(getDocs("identity")));
+    }
+
+    @Test
+    public void notModifiedWhenTheETagMatches() throws Exception {
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 1L)));
+
+        ResponseEntity<byte[]> plain = getDocs("gzip;q=0");
+        ResponseEntity<byte[]> gzipped = getDocs("gzip");
+        Assertions.assertNotEquals(plain.getHeaders().getETag(), gzipped.getHeaders().getETag());
+
+        ResponseEntity<byte[]> notModified = controller.getOpenApiDocs(NAMESPACE, gzipped.getHeaders().getETag(), "gzip").block();
+        Assertions.assertNotNull(notModified);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        Assertions.assertNull(notModified.getBody());
+
+        Mockito.when(structureService.getAllPublishedForNamespace(NAMESPACE)).thenReturn(List.of(createStructure("Person", 2L)));
+        ResponseEntity<byte[]> modified = controller.getOpenApiDocs(NAMESPACE, gzipped.getHeaders().getETag(), "gzip").block();
+        Assertions.assertNotNull(modified);
+        Assertions.assertEquals(HttpStatus.OK, modified.getStatusCode());
+    }
+
+    private ResponseEntity<byte[]> getDocs(String acceptEncoding) {
+        ResponseEntity<byte[]> ret = controller.getOpenApiDocs(NAMESPACE, null, acceptEncoding).block();
+        Assertions.assertNotNull(ret);
+        Assertions.assertEquals(HttpStatus.OK, ret.getStatusCode());
+        return ret;
+    }
+
+    private static boolean isGzipped(ResponseEntity<byte[]> response) {
+        return "gzip".equals(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    private static Structure createStructure(String name, long updated) {
+        Structure structure = new Structure();
+        structure.setId(NAMESPACE + "." + name.toLowerCase());
+        structure.setName(name);
+        structure.setNamespace(NAMESPACE);
+        structure.setUpdated(updated);
+        structure.setPublished(true);
+        return structure;
+    }
+
+}
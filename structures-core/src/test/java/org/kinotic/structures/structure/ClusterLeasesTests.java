@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kinotic.structures.structure;
+
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.kinotic.structures.ElasticsearchTestBase;
+import org.kinotic.structures.internal.api.services.ClusterLeases;
+import org.kinotic.structures.internal.api.services.storage.ItemStorageEngine;
+import org.kinotic.structures.internal.config.StructuresProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Duration;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+public class ClusterLeasesTests extends ElasticsearchTestBase {
+
+    @Autowired
+    private RestHighLevelClient highLevelClient;
+    @Autowired
+    private StructuresProperties structuresProperties;
+    @Autowired
+    private ItemStorageEngine itemStorageEngine;
+
+    @Test
+    public void leaseIsHeldByOneNodeUntilReleased() throws Exception {
+        String name = "test_" + System.currentTimeMillis();
+        // each instance acts as a separate node
+        ClusterLeases first = new ClusterLeases(highLevelClient, structuresProperties, itemStorageEngine);
+        ClusterLeases second = new ClusterLeases(highLevelClient, structuresProperties, itemStorageEngine);
+
+        Assertions.assertTrue(first.tryAcquire(name, Duration.ofMinutes(1)));
+        Assertions.assertFalse(second.tryAcquire(name, Duration.ofMinutes(1)));
+        // renewing does not need the lease to be released
+        Assertions.assertTrue(first.tryAcquire(name, Duration.ofMinutes(1)));
+
+        // only the holder can release it
+        second.release(name);
+        Assertions.assertFalse(second.tryAcquire(name, Duration.ofMinutes(1)));
+        first.release(name);
+        Assertions.assertTrue(second.tryAcquire(name, Duration.ofMinutes(1)));
+        second.release(name);
+    }
+
+    @Test
+    public void expiredLeaseIsTakenOver() throws Exception {
+        String name = "test_" + System.currentTimeMillis();
+        ClusterLeases first = new ClusterLeases(highLevelClient, structuresProperties, itemStorageEngine);
+        ClusterLeases second = new ClusterLeases(highLevelClient, structuresProperties, itemStorageEngine);
+
+        Assertions.assertTrue(first.tryAcquire(name, Duration.ofMillis(100)));
+        Thread.sleep(200);
+        Assertions.assertTrue(second.tryAcquire(name, Duration.ofMinutes(1)));
+        Assertions.assertFalse(first.tryAcquire(name, Duration.ofMinutes(1)));
+        second.release(name);
+    }
+
+}
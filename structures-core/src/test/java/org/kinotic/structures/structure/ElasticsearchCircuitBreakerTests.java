@@ -0,0 +1,86 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.structure;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kinotic.structures.api.domain.ElasticsearchUnavailableException;
+import org.kinotic.structures.api.domain.Structure;
+import org.kinotic.structures.internal.api.services.ElasticsearchCircuitBreaker;
+import org.kinotic.structures.internal.api.services.util.StaleReads;
+import org.kinotic.structures.internal.config.StructuresProperties;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class ElasticsearchCircuitBreakerTests {
+
+    @Test
+    public void opensAfterFailuresAndServesLastKnownStructure() throws Exception {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setElasticCircuitBreakerWindowSize(4);
+        properties.setElasticCircuitBreakerOpenDuration(Duration.ofMinutes(1));
+        // the health check is never started, so only the requests open the breaker
+        ElasticsearchCircuitBreaker circuitBreaker = new ElasticsearchCircuitBreaker(null, properties);
+        Cache<String, Structure> lastKnown = circuitBreaker.createLastKnownCache();
+
+        Structure structure = new Structure();
+        structure.setId("test.person");
+        Optional<Structure> read = circuitBreaker.readWithFallback("test.person", lastKnown, () -> Optional.of(structure), null);
+        Assertions.assertTrue(read.isPresent());
+
+        // one failure out of the two requests made is at the default threshold of 50%
+        Assertions.assertThrows(ConnectException.class,
+                                () -> circuitBreaker.call(() -> { throw new ConnectException("Connection refused"); }));
+        Assertions.assertTrue(circuitBreaker.isOpen());
+
+        // fails fast without making the request
+        Assertions.assertThrows(ElasticsearchUnavailableException.class,
+                                () -> circuitBreaker.call(() -> Assertions.fail("request should not be sent")));
+
+        Map<String, Object> context = new HashMap<>();
+        StaleReads.track(context);
+        Optional<Structure> stale = circuitBreaker.readWithFallback("test.person", lastKnown, Optional::empty, context);
+        Assertions.assertEquals("test.person", stale.orElseThrow().getId());
+        Assertions.assertTrue(StaleReads.isStale(context));
+
+        // nothing to fall back to
+        Assertions.assertThrows(ElasticsearchUnavailableException.class,
+                                () -> circuitBreaker.readWithFallback("test.other", lastKnown, Optional::empty, context));
+    }
+
+    @Test
+    public void errorsFromAWorkingClusterDoNotOpen() throws Exception {
+        StructuresProperties properties = new StructuresProperties();
+        properties.setElasticCircuitBreakerWindowSize(4);
+        ElasticsearchCircuitBreaker circuitBreaker = new ElasticsearchCircuitBreaker(null, properties);
+
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                                    () -> circuitBreaker.call(() -> { throw new IllegalArgumentException("bad query"); }));
+        }
+        Assertions.assertFalse(circuitBreaker.isOpen());
+        Assertions.assertEquals("ok", circuitBreaker.call(() -> "ok"));
+    }
+
+}
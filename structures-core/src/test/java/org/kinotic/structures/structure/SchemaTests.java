@@ -17,6 +17,7 @@
 
 package org.kinotic.structures.structure;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.kinotic.structures.ElasticsearchTestBase;
@@ -103,4 +104,42 @@ public class SchemaTests extends ElasticsearchTestBase {
 
 
     }
+
+    @Test
+    public void validateElasticSearchMappingGenerationWithFieldUsage() throws AlreadyExistsException, IOException, PermenentTraitException {
+        Structure structure = new Structure();
+        structure.setName("Computer13-" + System.currentTimeMillis());
+        structure.setNamespace("some_other_org_");
+        structure.setDescription("Defines the Computer Device properties");
+
+        Trait mac = traitService.getTraitByName("Mac").get();
+        mac.setSortable(false);
+        mac.setAggregated(true);
+        Trait notes = traitService.getTraitByName("TextString").get();
+        notes.setScored(false);
+        Trait ip = traitService.getTraitByName("Ip").get();
+        ip.setStoredOnly(true);
+
+        structure.getTraits().put("mac", mac);
+        structure.getTraits().put("notes", notes);
+        structure.getTraits().put("ip", ip);
+
+        // aggregations need the doc values that not being sortable removes
+        IllegalArgumentException thrown = Assertions.assertThrows(IllegalArgumentException.class, () -> structureService.save(structure));
+        Assertions.assertTrue(thrown.getMessage().contains("'mac' cannot be aggregated"), thrown.getMessage());
+
+        mac.setSortable(true);
+        final Structure saved = structureService.save(structure);
+        try {
+            String esSchema = structureService.getElasticSearchBaseMapping(saved);
+
+            Assertions.assertTrue(esSchema.contains("\"mac\":{\"type\":\"keyword\",\"eager_global_ordinals\":true}"), esSchema);
+            Assertions.assertTrue(esSchema.contains("\"notes\":{\"type\":\"text\",\"norms\":false}"), esSchema);
+            Assertions.assertTrue(esSchema.contains("\"ip\":{\"type\":\"ip\",\"index\":false,\"doc_values\":false}"), esSchema);
+            // default flags leave the mapping as is
+            Assertions.assertTrue(esSchema.contains("\"id\":{ \"type\": \"keyword\" }"), esSchema);
+        } finally {
+            structureService.delete(saved.getId());
+        }
+    }
 }
@@ -17,14 +17,30 @@
 
 package org.kinotic.structures.structure;
 
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.rollover.RolloverRequest;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.kinotic.structures.ElasticsearchTestBase;
 import org.kinotic.structures.api.domain.*;
 import org.kinotic.structures.api.services.TraitService;
+import org.kinotic.structures.internal.api.services.DefaultStructureService;
+import org.kinotic.structures.internal.api.services.ItemIndexManager;
 import org.kinotic.structures.internal.api.services.ItemServiceInternal;
 import org.kinotic.structures.internal.api.services.StructureServiceInternal;
+import org.kinotic.structures.internal.api.services.util.BulkItemResult;
+import org.kinotic.structures.internal.repositories.StructureElasticRepository;
 import org.kinotic.structures.util.StructureTestHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -32,9 +48,13 @@ import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
@@ -48,6 +68,14 @@ public class StructureCrudTests extends ElasticsearchTestBase {
     private ItemServiceInternal itemService;
 	@Autowired
 	private StructureTestHelper structureTestHelper;
+	@Autowired
+	private RestHighLevelClient highLevelClient;
+	@Autowired
+	private DefaultStructureService defaultStructureService;
+	@Autowired
+	private ItemIndexManager itemIndexManager;
+	@Autowired
+	private StructureElasticRepository structureElasticRepository;
 
 
 	@Test
@@ -408,4 +436,474 @@ public class StructureCrudTests extends ElasticsearchTestBase {
 
 		structureService.delete(structure.getId());
 	}
+
+	@Test
+	public void publishWithIndexSettings() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer13-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+
+		Optional<Trait> ipOptional = traitService.getTraitByName("Ip");
+		structure.getTraits().put("ip", ipOptional.get());
+
+		IndexSettings indexSettings = new IndexSettings(2, 0, "5s");
+		indexSettings.setCodec("best_compression");
+		structure.setIndexSettings(indexSettings);
+
+		structure = structureService.save(structure);
+
+		try {
+			structureService.publish(structure.getId());
+
+			GetSettingsResponse response = highLevelClient.indices().getSettings(new GetSettingsRequest().indices(structure.getItemIndex()), RequestOptions.DEFAULT);
+			Assertions.assertEquals("2", response.getSetting(structure.getItemIndex() + "_v1", "index.number_of_shards"));
+			Assertions.assertEquals("0", response.getSetting(structure.getItemIndex() + "_v1", "index.number_of_replicas"));
+			Assertions.assertEquals("5s", response.getSetting(structure.getItemIndex() + "_v1", "index.refresh_interval"));
+			Assertions.assertEquals("best_compression", response.getSetting(structure.getItemIndex() + "_v1", "index.codec"));
+
+			Assertions.assertEquals(2, structureService.getById(structure.getId()).get().getIndexSettings().getNumberOfShards());
+		} finally {
+			structureService.delete(structure.getId());
+		}
+	}
+
+	@Test
+	public void publishTimeSeriesStructureWithAnItem() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer14-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+		structure.setIndexMode(IndexMode.TIME_SERIES);
+
+		IndexSettings indexSettings = new IndexSettings();
+		indexSettings.setRolloverMaxDocs(1000L);
+		indexSettings.setRetention("30d");
+		structure.setIndexSettings(indexSettings);
+
+		Optional<Trait> ipOptional = traitService.getTraitByName("Ip");
+		Optional<Trait> macOptional = traitService.getTraitByName("Mac");
+		structure.getTraits().put("ip", ipOptional.get());
+		structure.getTraits().put("mac", macOptional.get());
+
+		structure = structureService.save(structure);
+		structureService.publish(structure.getId());
+
+		TypeCheckMap saved = null;
+		try {
+			Assertions.assertTrue(highLevelClient.indices().exists(new GetIndexRequest(structure.getItemIndex() + "-000001"), RequestOptions.DEFAULT));
+
+			TypeCheckMap obj = new TypeCheckMap();
+			obj.put("ip", "192.0.2.11");
+			obj.put("mac", "000000000001");
+			saved = itemService.upsertItem(structure.getId(), obj, null);
+
+			// updating an existing item must not create a second copy
+			saved.put("mac", "000000000002");
+			saved = itemService.upsertItem(structure.getId(), saved, null);
+			Assertions.assertEquals("000000000002", itemService.getItemById(structure.getId(), saved.getString("id"), null).get().getString("mac"));
+			Assertions.assertEquals(1, itemService.count(structure.getId(), null));
+		} finally {
+			if (saved != null) {
+				itemService.delete(structure.getId(), saved.getString("id"), null);
+			}
+			Thread.sleep(1000);// give time for ES to flush the deleted item
+			structureService.delete(structure.getId());
+		}
+
+		Assertions.assertFalse(highLevelClient.indices().exists(new GetIndexRequest(structure.getItemIndex()), RequestOptions.DEFAULT));
+	}
+
+	@Test
+	public void updateOfUnrefreshedItemInRolledOverIndex() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer16-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+		structure.setIndexMode(IndexMode.TIME_SERIES);
+
+		IndexSettings indexSettings = new IndexSettings();
+		indexSettings.setRolloverMaxDocs(1000L);
+		indexSettings.setRetention("30d");
+		// nothing is visible to a search until refreshed
+		indexSettings.setRefreshInterval("-1");
+		structure.setIndexSettings(indexSettings);
+
+		Optional<Trait> ipOptional = traitService.getTraitByName("Ip");
+		Optional<Trait> macOptional = traitService.getTraitByName("Mac");
+		structure.getTraits().put("ip", ipOptional.get());
+		structure.getTraits().put("mac", macOptional.get());
+
+		structure = structureService.save(structure);
+		structureService.publish(structure.getId());
+
+		try {
+			TypeCheckMap obj = new TypeCheckMap();
+			obj.put("id", "rolled");
+			obj.put("ip", "192.0.2.11");
+			obj.put("mac", "000000000001");
+			highLevelClient.index(new IndexRequest(structure.getItemIndex()).id("rolled").source(obj), RequestOptions.DEFAULT);
+			highLevelClient.indices().rollover(new RolloverRequest(structure.getItemIndex(), null), RequestOptions.DEFAULT);
+
+			obj.put("mac", "000000000002");
+			itemService.upsertItem(structure.getId(), obj, null);
+
+			highLevelClient.indices().refresh(new RefreshRequest(structure.getItemIndex()), RequestOptions.DEFAULT);
+			SearchResponse response = highLevelClient.search(new SearchRequest(structure.getItemIndex())
+																	 .source(new SearchSourceBuilder().query(QueryBuilders.idsQuery().addIds("rolled"))),
+															 RequestOptions.DEFAULT);
+			// updated where it is, rather than copied to the newest index
+			Assertions.assertEquals(1, response.getHits().getTotalHits().value);
+			Assertions.assertEquals(structure.getItemIndex() + "-000001", response.getHits().getAt(0).getIndex());
+			Assertions.assertEquals("000000000002", response.getHits().getAt(0).getSourceAsMap().get("mac"));
+		} finally {
+			structureService.delete(structure.getId());
+		}
+	}
+
+	@Test
+	public void migratePublishedStructureWithAnItem() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer15-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+
+		Optional<Trait> ipOptional = traitService.getTraitByName("Ip");
+		Optional<Trait> macOptional = traitService.getTraitByName("Mac");
+		structure.getTraits().put("ip", ipOptional.get());
+		structure.getTraits().put("mac", macOptional.get());
+
+		structure = structureService.save(structure);
+		structureService.publish(structure.getId());
+
+		TypeCheckMap saved = null;
+		try {
+			TypeCheckMap obj = new TypeCheckMap();
+			obj.put("ip", "192.0.2.11");
+			obj.put("mac", "000000000001");
+			saved = itemService.upsertItem(structure.getId(), obj, null);
+
+			// drops ip and changes the type of mac, neither can be done in place
+			LinkedHashMap<String, Trait> traits = new LinkedHashMap<>();
+			traits.put("mac", traitService.getTraitByName("KeywordString").get());
+			ItemIndexMigration migration = structureService.migrate(structure.getId(), traits);
+			Assertions.assertEquals(structure.getItemIndex() + "_v2", migration.getTargetIndex());
+
+			long waitUntil = System.currentTimeMillis() + 60000;
+			while (migration.getState() == ItemIndexMigration.State.RUNNING && System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(500);
+			}
+			Assertions.assertEquals(ItemIndexMigration.State.COMPLETED, migration.getState(), migration.getMessage());
+			Assertions.assertFalse(highLevelClient.indices().exists(new GetIndexRequest(structure.getItemIndex() + "_v1"), RequestOptions.DEFAULT));
+
+			Structure migrated = structureService.getById(structure.getId()).get();
+			Assertions.assertNull(migrated.getPendingItemIndex());
+			Assertions.assertFalse(migrated.getTraits().containsKey("ip"));
+
+			TypeCheckMap item = itemService.getItemById(structure.getId(), saved.getString("id"), null).get();
+			Assertions.assertEquals("000000000001", item.getString("mac"));
+			Assertions.assertFalse(item.has("ip"));
+		} finally {
+			if (saved != null) {
+				itemService.delete(structure.getId(), saved.getString("id"), null);
+			}
+			Thread.sleep(1000);// give time for ES to flush the deleted item
+			structureService.delete(structure.getId());
+		}
+	}
+
+	@Test
+	public void resumeMigrationStartedOnAnotherNode() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer20-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+		structure.getTraits().put("ip", traitService.getTraitByName("Ip").get());
+		structure.getTraits().put("mac", traitService.getTraitByName("Mac").get());
+
+		structure = structureService.save(structure);
+		structureService.publish(structure.getId());
+		structure = structureService.getById(structure.getId()).get();
+
+		try {
+			TypeCheckMap obj = new TypeCheckMap();
+			obj.put("ip", "192.0.2.12");
+			obj.put("mac", "000000000001");
+			TypeCheckMap first = itemService.upsertItem(structure.getId(), obj, null);
+
+			// what a node records when it starts a migration, before it stops
+			long startedTime = System.currentTimeMillis();
+			String targetIndex = structure.getItemIndex() + "_v2";
+			itemIndexManager.createMigrationIndex(structure, targetIndex, structureService.getElasticSearchBaseMapping(structure.getId()));
+			String task = itemIndexManager.startCopy(structure, targetIndex, Set.of());
+			long waitUntil = System.currentTimeMillis() + 60000;
+			while (!itemIndexManager.updateCopyProgress(task, new ItemIndexMigration()) && System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(500);
+			}
+			structure.setPendingItemIndex(targetIndex);
+			structure.setPendingTraits(new LinkedHashMap<>(structure.getTraits()));
+			structure.setPendingItemIndexTask(task);
+			structure.setPendingItemIndexStartedTime(startedTime);
+			structureElasticRepository.save(structure);
+
+			// written after the copy completed, by a node that may not have seen the new index yet,
+			// so they are copied by the catch up when the migration completes if they were not written to both indexes
+			first.put("mac", "000000000002");
+			itemService.upsertItem(structure.getId(), first, null);
+			TypeCheckMap second = new TypeCheckMap();
+			second.put("ip", "192.0.2.13");
+			second.put("mac", "000000000003");
+			second = itemService.upsertItem(structure.getId(), second, null);
+
+			defaultStructureService.resumeMigrations();
+			ItemIndexMigration migration = structureService.getMigration(structure.getId());
+			Assertions.assertNotNull(migration);
+			waitUntil = System.currentTimeMillis() + 60000;
+			while (migration.getState() == ItemIndexMigration.State.RUNNING && System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(500);
+			}
+			Assertions.assertEquals(ItemIndexMigration.State.COMPLETED, migration.getState(), migration.getMessage());
+
+			Structure migrated = structureService.getById(structure.getId()).get();
+			Assertions.assertNull(migrated.getPendingItemIndex());
+			Assertions.assertNull(migrated.getPendingItemIndexTask());
+			Assertions.assertEquals(targetIndex, itemIndexManager.getCurrentIndex(migrated));
+
+			Assertions.assertEquals("000000000002", itemService.getItemById(structure.getId(), first.getString("id"), null).get().getString("mac"));
+			Assertions.assertTrue(itemService.getItemById(structure.getId(), second.getString("id"), null).isPresent());
+		} finally {
+			structureService.delete(structure.getId());
+		}
+	}
+
+	@Test
+	public void writesDuringMigrationAreNotLost() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer22-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+		structure.getTraits().put("ip", traitService.getTraitByName("Ip").get());
+		structure.getTraits().put("mac", traitService.getTraitByName("Mac").get());
+
+		structure = structureService.save(structure);
+		structureService.publish(structure.getId());
+
+		try {
+			Map<String, String> written = new LinkedHashMap<>();
+			for (int i = 0; i < 200; i++) {
+				TypeCheckMap obj = new TypeCheckMap();
+				obj.put("ip", "192.0.2." + (i % 250));
+				obj.put("mac", String.format("%012d", i));
+				written.put(itemService.upsertItem(structure.getId(), obj, null).getString("id"), obj.getString("mac"));
+			}
+
+			LinkedHashMap<String, Trait> traits = new LinkedHashMap<>();
+			traits.put("mac", traitService.getTraitByName("KeywordString").get());
+			ItemIndexMigration migration = structureService.migrate(structure.getId(), traits);
+
+			// new items are added and existing ones changed for as long as the migration runs, none of the writes may fail
+			List<String> ids = new ArrayList<>(written.keySet());
+			long waitUntil = System.currentTimeMillis() + 60000;
+			int i = 200;
+			while (migration.getState() == ItemIndexMigration.State.RUNNING && System.currentTimeMillis() < waitUntil) {
+				TypeCheckMap obj = new TypeCheckMap();
+				obj.put("ip", "192.0.2." + (i % 250));
+				obj.put("mac", String.format("%012d", i));
+				written.put(itemService.upsertItem(structure.getId(), obj, null).getString("id"), obj.getString("mac"));
+
+				String id = ids.get(i % ids.size());
+				TypeCheckMap existing = new TypeCheckMap();
+				existing.put("id", id);
+				existing.put("ip", "192.0.2.1");
+				existing.put("mac", String.format("%012d", i + 1000000));
+				itemService.upsertItem(structure.getId(), existing, null);
+				written.put(id, existing.getString("mac"));
+				i++;
+			}
+			Assertions.assertEquals(ItemIndexMigration.State.COMPLETED, migration.getState(), migration.getMessage());
+			Assertions.assertTrue(i > 200, "No items were written during the migration");
+
+			for (Map.Entry<String, String> entry : written.entrySet()) {
+				Optional<TypeCheckMap> item = itemService.getItemById(structure.getId(), entry.getKey(), null);
+				Assertions.assertTrue(item.isPresent(), "Item " + entry.getKey() + " was lost");
+				Assertions.assertEquals(entry.getValue(), item.get().getString("mac"));
+			}
+			Assertions.assertEquals(written.size(), itemService.count(structure.getId(), null));
+		} finally {
+			structureService.delete(structure.getId());
+		}
+	}
+
+	@Test
+	public void publishWithRoutingFieldAndIndexSort() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer16-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+		structure.setRoutingField("mac");
+
+		IndexSettings indexSettings = new IndexSettings();
+		indexSettings.setSort(new LinkedHashMap<>(Map.of("updatedTime", "desc")));
+		structure.setIndexSettings(indexSettings);
+
+		Optional<Trait> ipOptional = traitService.getTraitByName("Ip");
+		Optional<Trait> macOptional = traitService.getTraitByName("Mac");
+		structure.getTraits().put("ip", ipOptional.get());
+		structure.getTraits().put("mac", macOptional.get());
+
+		structure = structureService.save(structure);
+
+		TypeCheckMap saved = null;
+		try {
+			structureService.publish(structure.getId());
+
+			TypeCheckMap obj = new TypeCheckMap();
+			obj.put("ip", "192.0.2.11");
+			obj.put("mac", "000000000001");
+			saved = itemService.upsertItem(structure.getId(), obj, null);
+
+			Assertions.assertTrue(itemService.getItemById(structure.getId(), saved.getString("id"), null).isPresent());
+			Assertions.assertEquals(1, itemService.searchTerms(structure.getId(), 10, 0, "mac", null, "000000000001").getTotalHits().value);
+		} finally {
+			if (saved != null) {
+				itemService.delete(structure.getId(), saved.getString("id"), null);
+			}
+			Thread.sleep(1000);// give time for ES to flush the deleted item
+			structureService.delete(structure.getId());
+		}
+	}
+
+	@Test
+	public void routingFieldOfExistingItemCannotBeChanged() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer21-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+		structure.setRoutingField("mac");
+		structure.getTraits().put("ip", traitService.getTraitByName("Ip").get());
+		structure.getTraits().put("mac", traitService.getTraitByName("Mac").get());
+
+		structure = structureService.save(structure);
+		final String structureId = structure.getId();
+		try {
+			structureService.publish(structureId);
+
+			TypeCheckMap obj = new TypeCheckMap();
+			obj.put("ip", "192.0.2.11");
+			obj.put("mac", "000000000001");
+			TypeCheckMap saved = itemService.upsertItem(structureId, obj, null);
+
+			// the item would be written again to the shard for the new value, leaving the old copy behind
+			TypeCheckMap moved = new TypeCheckMap();
+			moved.put("id", saved.getString("id"));
+			moved.put("ip", "192.0.2.12");
+			moved.put("mac", "000000000002");
+			IllegalStateException thrown = Assertions.assertThrows(IllegalStateException.class, () -> itemService.upsertItem(structureId, moved, null));
+			Assertions.assertTrue(thrown.getMessage().contains("'mac' cannot be changed"), thrown.getMessage());
+
+			List<BulkItemResult> results = itemService.bulkUpsertAsync(structureId, List.of(moved), null).block();
+			Assertions.assertFalse(results.get(0).isSuccess());
+
+			// the same routing value can still be written
+			moved.put("mac", "000000000001");
+			itemService.upsertItem(structureId, moved, null);
+			Assertions.assertEquals(1, itemService.count(structureId, null));
+			Assertions.assertEquals("192.0.2.12", itemService.getItemById(structureId, saved.getString("id"), null).get().getString("ip"));
+		} finally {
+			structureService.delete(structureId);
+		}
+	}
+
+	@Test
+	public void publishWithUnknownRoutingFieldFails() throws Exception {
+		Structure structure = new Structure();
+		structure.setName("Computer17-" + System.currentTimeMillis());
+		structure.setNamespace("some_other_org_");
+		structure.setDescription("Defines the Computer Device properties");
+		structure.setRoutingField("tenant");
+
+		Optional<Trait> macOptional = traitService.getTraitByName("Mac");
+		structure.getTraits().put("mac", macOptional.get());
+
+		final Structure saved = structureService.save(structure);
+		try {
+			Assertions.assertThrows(IllegalStateException.class, () -> structureService.publish(saved.getId()));
+		} finally {
+			structureService.delete(saved.getId());
+		}
+	}
+
+	@Test
+	public void publishSharedStructuresThenGraduateOne() throws Exception {
+		String namespace = "shared_org_" + System.currentTimeMillis();
+		Structure first = createSharedStructure("Computer18", namespace);
+		Structure second = createSharedStructure("Computer19", namespace);
+
+		TypeCheckMap firstItem = null;
+		TypeCheckMap secondItem = null;
+		try {
+			TypeCheckMap obj = new TypeCheckMap();
+			obj.put("ip", "192.0.2.11");
+			obj.put("mac", "000000000001");
+			firstItem = itemService.upsertItem(first.getId(), obj, null);
+
+			obj = new TypeCheckMap();
+			obj.put("ip", "192.0.2.12");
+			obj.put("mac", "000000000002");
+			secondItem = itemService.upsertItem(second.getId(), obj, null);
+
+			// each structure only sees its own items
+			Assertions.assertEquals(1, itemService.count(first.getId(), null));
+			Assertions.assertEquals(1, itemService.count(second.getId(), null));
+			Assertions.assertTrue(itemService.getItemById(second.getId(), firstItem.getString("id"), null).isEmpty());
+
+			// an id used by one structure cannot be used by another
+			TypeCheckMap duplicate = new TypeCheckMap();
+			duplicate.put("id", firstItem.getString("id"));
+			duplicate.put("ip", "192.0.2.13");
+			duplicate.put("mac", "000000000003");
+			Assertions.assertThrows(IllegalStateException.class, () -> itemService.upsertItem(second.getId(), duplicate, null));
+
+			ItemIndexMigration migration = structureService.graduate(first.getId());
+			Assertions.assertEquals(first.getItemIndex() + "_v1", migration.getTargetIndex());
+
+			long waitUntil = System.currentTimeMillis() + 60000;
+			while (migration.getState() == ItemIndexMigration.State.RUNNING && System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(500);
+			}
+			Assertions.assertEquals(ItemIndexMigration.State.COMPLETED, migration.getState(), migration.getMessage());
+			Assertions.assertEquals(IndexMode.STANDARD, structureService.getById(first.getId()).get().getIndexMode());
+
+			Assertions.assertTrue(itemService.getItemById(first.getId(), firstItem.getString("id"), null).isPresent());
+			Assertions.assertTrue(itemService.getItemById(second.getId(), secondItem.getString("id"), null).isPresent());
+			Assertions.assertEquals(1, itemService.count(second.getId(), null));
+		} finally {
+			if (firstItem != null) {
+				itemService.delete(first.getId(), firstItem.getString("id"), null);
+			}
+			if (secondItem != null) {
+				itemService.delete(second.getId(), secondItem.getString("id"), null);
+			}
+			Thread.sleep(1000);// give time for ES to flush the deleted items
+			structureService.delete(first.getId());
+			structureService.delete(second.getId());
+		}
+	}
+
+	private Structure createSharedStructure(String name, String namespace) throws Exception {
+		Structure structure = new Structure();
+		structure.setName(name);
+		structure.setNamespace(namespace);
+		structure.setDescription("Defines the Computer Device properties");
+		structure.setIndexMode(IndexMode.SHARED);
+
+		Optional<Trait> ipOptional = traitService.getTraitByName("Ip");
+		Optional<Trait> macOptional = traitService.getTraitByName("Mac");
+		structure.getTraits().put("ip", ipOptional.get());
+		structure.getTraits().put("mac", macOptional.get());
+
+		structure = structureService.save(structure);
+		structureService.publish(structure.getId());
+		return structure;
+	}
 }
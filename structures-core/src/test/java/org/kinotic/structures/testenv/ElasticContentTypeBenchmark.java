@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kinotic.structures.testenv;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.xcontent.XContentBuilder;
+import org.elasticsearch.xcontent.XContentFactory;
+import org.elasticsearch.xcontent.XContentType;
+import org.kinotic.structures.internal.config.ElasticContentType;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the CPU cost of writing and parsing number heavy items in each {@link ElasticContentType}.
+ * This is the work done in Structures for each item sent to or read from Elasticsearch, Elasticsearch does the same work in reverse.
+ * Not a test, run the main method with the test classpath.
+ */
+public class ElasticContentTypeBenchmark {
+
+    private static final int ITEMS = 10_000;
+    private static final int WARM_UP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws IOException {
+        List<Map<String, Object>> items = createTelemetryItems();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        for (ElasticContentType contentType : ElasticContentType.values()) {
+            XContentType xContentType = contentType.getXContentType();
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                parse(write(items, xContentType), xContentType);
+            }
+
+            long writeNanos = 0;
+            long parseNanos = 0;
+            long bytes = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = threadMXBean.getCurrentThreadCpuTime();
+                List<BytesReference> written = write(items, xContentType);
+                long writtenAt = threadMXBean.getCurrentThreadCpuTime();
+                parse(written, xContentType);
+                long end = threadMXBean.getCurrentThreadCpuTime();
+
+                writeNanos += writtenAt - start;
+                parseNanos += end - writtenAt;
+                for (BytesReference source : written) {
+                    bytes += source.length();
+                }
+            }
+            long count = (long) ITEMS * ROUNDS;
+            System.out.printf("%-5s write %6d ns/item, parse %6d ns/item, %5d bytes/item%n",
+                              contentType, writeNanos / count, parseNanos / count, bytes / count);
+        }
+    }
+
+    private static List<BytesReference> write(List<Map<String, Object>> items, XContentType xContentType) throws IOException {
+        List<BytesReference> ret = new ArrayList<>(items.size());
+        for (Map<String, Object> item : items) {
+            try (XContentBuilder builder = XContentFactory.contentBuilder(xContentType)) {
+                ret.add(BytesReference.bytes(builder.map(item)));
+            }
+        }
+        return ret;
+    }
+
+    private static long parse(List<BytesReference> sources, XContentType xContentType) {
+        long ret = 0;
+        for (BytesReference source : sources) {
+            ret += XContentHelper.convertToMap(source, true, xContentType).v2().size();
+        }
+        return ret;
+    }
+
+    /**
+     * Items shaped like device telemetry, a few identifying fields and many readings
+     */
+    private static List<Map<String, Object>> createTelemetryItems() {
+        Random random = new Random(42);
+        List<Map<String, Object>> ret = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", "device-" + i);
+            item.put("deviceType", "sensor");
+            item.put("timestamp", 1_700_000_000_000L + i * 1000L);
+            for (int reading = 0; reading < 40; reading++) {
+                item.put("reading" + reading, random.nextDouble() * 1000);
+            }
+            for (int counter = 0; counter < 10; counter++) {
+                item.put("counter" + counter, random.nextInt(1_000_000));
+            }
+            ret.add(item);
+        }
+        return ret;
+    }
+
+}